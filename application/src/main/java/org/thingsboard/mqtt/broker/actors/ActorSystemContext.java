@@ -28,6 +28,7 @@ import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
 import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 
 import java.util.concurrent.TimeUnit;
@@ -42,6 +43,7 @@ public class ActorSystemContext {
     private final DeviceSessionCtxService deviceSessionCtxService;
     private final DevicePacketIdAndSerialNumberService serialNumberService;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
+    private final MsgExpiryService msgExpiryService;
     private final ClientMqttActorManager clientMqttActorManager;
     private final ActorProcessingMetricService actorProcessingMetricService;
     private final ClientLogger clientLogger;
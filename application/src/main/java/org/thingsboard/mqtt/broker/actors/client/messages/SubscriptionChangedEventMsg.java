@@ -21,16 +21,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.mqtt.broker.actors.TbActorId;
 import org.thingsboard.mqtt.broker.actors.msg.MsgType;
 import org.thingsboard.mqtt.broker.actors.msg.TbActorMsg;
-import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
-
-import java.util.Set;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 
 @Slf4j
 @Getter
 @RequiredArgsConstructor
 public class SubscriptionChangedEventMsg extends AbstractTimedMsg implements TbActorMsg {
 
-    private final Set<TopicSubscription> topicSubscriptions;
+    private final ClientSubscriptionsChange change;
 
     @Override
     public MsgType getMsgType() {
@@ -35,10 +35,14 @@ import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.common.data.id.ActorType;
 import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsConsumer;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsIndexService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.cleanup.ClientSessionExpiryService;
 import org.thingsboard.mqtt.broker.service.mqtt.client.disconnect.DisconnectClientCommandConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventService;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionPageInfos;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.queue.DeviceMsgQueueConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgConsumer;
@@ -46,11 +50,14 @@ import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgListenerServic
 import org.thingsboard.mqtt.broker.service.processing.PublishMsgConsumerService;
 import org.thingsboard.mqtt.broker.service.processing.downlink.basic.BasicDownLinkConsumer;
 import org.thingsboard.mqtt.broker.service.processing.downlink.persistent.PersistentDownLinkConsumer;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshotService;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionConsumer;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -65,10 +72,13 @@ public class BrokerInitializer {
     private final ClientSubscriptionConsumer clientSubscriptionConsumer;
     private final ClientSessionConsumer clientSessionConsumer;
     private final RetainedMsgConsumer retainedMsgConsumer;
+    private final ClientCredentialsConsumer clientCredentialsConsumer;
 
     private final ClientSubscriptionService clientSubscriptionService;
     private final ClientSessionService clientSessionService;
+    private final ClientSessionPageInfos clientSessionPageInfos;
     private final RetainedMsgListenerService retainedMsgListenerService;
+    private final ClientCredentialsIndexService clientCredentialsIndexService;
 
     private final ActorSystemContext actorSystemContext;
     private final TbActorSystem actorSystem;
@@ -82,18 +92,32 @@ public class BrokerInitializer {
     private final PublishMsgConsumerService publishMsgConsumerService;
     private final BasicDownLinkConsumer basicDownLinkConsumer;
     private final PersistentDownLinkConsumer persistentDownLinkConsumer;
+    private final StateSnapshotService stateSnapshotService;
+    private final SharedSubscriptionCacheService sharedSubscriptionCacheService;
+    private final ClientSessionExpiryService clientSessionExpiryService;
 
     @EventListener(ApplicationReadyEvent.class)
     @Order(value = 1)
     public void onApplicationEvent(ApplicationReadyEvent event) {
         log.info("Initializing Client Sessions and Subscriptions.");
         try {
+            clientSessionService.addSessionChangesListener((clientId, serviceId, clientSessionInfo) ->
+                    sharedSubscriptionCacheService.onSessionChanged(clientId));
+            clientSessionService.addSessionChangesListener((clientId, serviceId, clientSessionInfo) ->
+                    clientSessionPageInfos.onSessionChanged(clientId, clientSessionInfo));
+            clientSessionService.addSessionChangesListener((clientId, serviceId, clientSessionInfo) ->
+                    clientSessionExpiryService.onSessionChanged(clientId, clientSessionInfo));
+
+            clientCredentialsIndexService.init(clientCredentialsConsumer);
+
             Map<String, ClientSessionInfo> allClientSessions = initClientSessions();
 
             initClientSubscriptions(allClientSessions);
 
             clearNonPersistentClientsOnCurrentNode(allClientSessions);
 
+            clientSessionExpiryService.init(clientSessionService.getAllClientSessions());
+
             clientSessionService.startListening(clientSessionConsumer);
 
             startSubscriptionListening();
@@ -103,6 +127,8 @@ public class BrokerInitializer {
 
             log.info("Starting Queue consumers that depend on Client Sessions or Subscriptions.");
             startConsuming();
+
+            stateSnapshotService.startSnapshotting();
         } catch (Exception e) {
             log.error("Failed to initialize broker", e);
             throw new RuntimeException(e);
@@ -137,6 +163,20 @@ public class BrokerInitializer {
 
         log.info("Initializing SubscriptionManager with {} client subscriptions.", allClientSubscriptions.size());
         clientSubscriptionService.init(allClientSubscriptions);
+
+        // snapshots of the clients of this node might have been lost on crash, this node re-writes them right away,
+        // the ones of other nodes are snapshotted on connect or once the delta gets stale, e.g. when that node is down
+        Set<String> currentNodeClients = filterSessions(allClientSessions).keySet();
+        List<String> clientsWithTrailingDeltas = clientSubscriptionConsumer.getClientsWithTrailingDeltas().stream()
+                .filter(allClientSubscriptions::containsKey)
+                .collect(Collectors.toList());
+        if (!clientsWithTrailingDeltas.isEmpty()) {
+            log.info("{} clients have subscriptions deltas without a snapshot, scheduling snapshots.", clientsWithTrailingDeltas.size());
+            clientSubscriptionService.markTrailingDeltas(clientsWithTrailingDeltas);
+            clientSubscriptionService.markSnapshotsPending(clientsWithTrailingDeltas.stream()
+                    .filter(currentNodeClients::contains)
+                    .collect(Collectors.toList()));
+        }
     }
 
     private void removeSubscriptionIfSessionIsAbsent(Map<String, ClientSessionInfo> allClientSessions,
@@ -159,6 +199,7 @@ public class BrokerInitializer {
         allClientSessions.putAll(currentNodeSessions);
 
         clientSessionService.init(allClientSessions);
+        clientSessionPageInfos.init(allClientSessions);
 
         return allClientSessions;
     }
@@ -180,7 +221,7 @@ public class BrokerInitializer {
     }
 
     private void startSubscriptionListening() {
-        clientSubscriptionConsumer.listen((clientId, serviceId, topicSubscriptions) -> {
+        clientSubscriptionConsumer.listen((clientId, serviceId, change) -> {
             if (serviceInfoProvider.getServiceId().equals(serviceId)) {
                 if (log.isTraceEnabled()) {
                     log.trace("[{}] Msg was already processed.", clientId);
@@ -194,7 +235,7 @@ public class BrokerInitializer {
                 clientActorRef = createRootActor(clientId);
             }
 
-            clientActorRef.tellWithHighPriority(new SubscriptionChangedEventMsg(topicSubscriptions));
+            clientActorRef.tellWithHighPriority(new SubscriptionChangedEventMsg(change));
             return true;
         });
     }
@@ -19,6 +19,7 @@ import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.exception.MqttException;
+import org.thingsboard.mqtt.broker.service.limits.FlowControlService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.RetransmissionService;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
@@ -30,6 +31,7 @@ public class MqttPubCompHandler {
 
     private final MsgPersistenceManager msgPersistenceManager;
     private final RetransmissionService retransmissionService;
+    private final FlowControlService flowControlService;
 
     public void process(ClientSessionCtx ctx, int messageId) throws MqttException {
         if (log.isTraceEnabled()) {
@@ -39,5 +41,6 @@ public class MqttPubCompHandler {
             msgPersistenceManager.processPubComp(ctx, messageId);
         }
         retransmissionService.onPubCompReceived(ctx, messageId);
+        flowControlService.onOutboundMsgAcknowledged(ctx);
     }
 }
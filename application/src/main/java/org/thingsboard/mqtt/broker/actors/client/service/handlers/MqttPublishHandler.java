@@ -35,6 +35,7 @@ import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgProcessor;
 import org.thingsboard.mqtt.broker.service.mqtt.validation.TopicValidationService;
@@ -85,7 +86,8 @@ public class MqttPublishHandler {
         if (isTraceEnabled) {
             log.trace("[{}][{}] Processing publish msg: {}", ctx.getClientId(), ctx.getSessionId(), publishMsg);
         }
-        boolean validateSuccess = validatePubMsg(ctx, publishMsg);
+        ParsedTopic topic = ParsedTopic.parse(publishMsg.getTopicName());
+        boolean validateSuccess = validatePubMsg(ctx, publishMsg, topic);
         if (!validateSuccess) {
             return;
         }
@@ -100,16 +102,16 @@ public class MqttPublishHandler {
             if (isTraceEnabled) {
                 log.trace("[{}] Processing retain msg {}", ctx.getClientId(), publishMsg);
             }
-            publishMsg = retainedMsgProcessor.process(publishMsg);
+            publishMsg = retainedMsgProcessor.process(publishMsg, topic);
         }
 
         clientLogger.logEvent(ctx.getClientId(), this.getClass(), "Sending PUBLISH");
         persistPubMsg(ctx, publishMsg, actorRef);
     }
 
-    private boolean validatePubMsg(ClientSessionCtx ctx, PublishMsg publishMsg) {
+    private boolean validatePubMsg(ClientSessionCtx ctx, PublishMsg publishMsg, ParsedTopic topic) {
         try {
-            topicValidationService.validateTopic(publishMsg.getTopicName());
+            topicValidationService.validateTopic(topic);
         } catch (DataValidationException e) {
             log.warn("[{}] Failed to validate topic for Pub msg {}", ctx.getClientId(), publishMsg, e);
             var code = MqttReasonCodeResolver.topicNameInvalid(ctx);
@@ -120,7 +122,7 @@ public class MqttPublishHandler {
             return false;
         }
         try {
-            validateClientAccess(ctx, publishMsg.getTopicName());
+            validateClientAccess(ctx, topic.getTopic());
         } catch (MqttException e) {
             var code = MqttReasonCodeResolver.notAuthorized(ctx);
             if (code == null) {
@@ -154,7 +156,7 @@ public class MqttPublishHandler {
     }
 
     void persistPubMsg(ClientSessionCtx ctx, PublishMsg publishMsg, TbActorRef actorRef) {
-        msgDispatcherService.persistPublishMsg(ctx.getSessionInfo(), publishMsg, new TbQueueCallback() {
+        msgDispatcherService.persistPublishMsg(ctx.getSessionInfo(), publishMsg, ctx.getPublishLanesCtx(), new TbQueueCallback() {
             @Override
             public void onSuccess(TbQueueMsgMetadata metadata) {
                 callbackProcessor.submit(() -> {
@@ -245,7 +247,7 @@ public class MqttPublishHandler {
     }
 
     void validateClientAccess(ClientSessionCtx ctx, String topic) {
-        boolean isClientAuthorized = authorizationRuleService.isPubAuthorized(ctx.getClientId(), topic, ctx.getAuthRulePatterns());
+        boolean isClientAuthorized = authorizationRuleService.isPubAuthorized(topic, ctx.getAuthRulePatterns());
         if (!isClientAuthorized) {
             log.warn("[{}][{}][{}] Client is not authorized to publish to the topic {}",
                     ctx.getClientId(), ctx.getSessionId(), ctx.getAuthRulePatterns(), topic);
@@ -37,10 +37,8 @@ import org.thingsboard.mqtt.broker.dao.client.application.ApplicationSharedSubsc
 import org.thingsboard.mqtt.broker.dao.exception.DataValidationException;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
-import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
-import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
-import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgDeliveryService;
 import org.thingsboard.mqtt.broker.service.mqtt.validation.TopicValidationService;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
@@ -66,8 +64,7 @@ public class MqttSubscribeHandler {
     private final ClientSubscriptionService clientSubscriptionService;
     private final TopicValidationService topicValidationService;
     private final AuthorizationRuleService authorizationRuleService;
-    private final RetainedMsgService retainedMsgService;
-    private final PublishMsgDeliveryService publishMsgDeliveryService;
+    private final RetainedMsgDeliveryService retainedMsgDeliveryService;
     private final ClientMqttActorManager clientMqttActorManager;
     private final ApplicationSharedSubscriptionService applicationSharedSubscriptionService;
     private final MsgPersistenceManager msgPersistenceManager;
@@ -202,49 +199,19 @@ public class MqttSubscribeHandler {
     private void processRetainedMessages(ClientSessionCtx ctx,
                                          List<TopicSubscription> newSubscriptions,
                                          Set<TopicSubscription> currentSubscriptions) {
-        Set<RetainedMsg> retainedMsgSet = getRetainedMessagesForTopicSubscriptions(newSubscriptions, currentSubscriptions);
-        retainedMsgSet.forEach(retainedMsg -> publishMsgDeliveryService.sendPublishRetainedMsgToClient(ctx, retainedMsg));
+        List<TopicSubscription> subscriptions = getTopicSubscriptionsToSendRetainedMsgs(newSubscriptions, currentSubscriptions);
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx, subscriptions);
     }
 
-    Set<RetainedMsg> getRetainedMessagesForTopicSubscriptions(List<TopicSubscription> newSubscriptions,
-                                                              Set<TopicSubscription> currentSubscriptions) {
+    List<TopicSubscription> getTopicSubscriptionsToSendRetainedMsgs(List<TopicSubscription> newSubscriptions,
+                                                                    Set<TopicSubscription> currentSubscriptions) {
         return newSubscriptions
                 .stream()
                 .filter(topicSubscription -> StringUtils.isEmpty(topicSubscription.getShareName()))
                 .filter(topicSubscription ->
                         topicSubscription.getOptions().needSendRetainedForTopicSubscription(
                                 ts -> !currentSubscriptions.contains(ts), topicSubscription))
-                .map(this::getRetainedMessagesForTopicSubscription)
-                .flatMap(List::stream)
-                .collect(Collectors.toSet());
-    }
-
-    private List<RetainedMsg> getRetainedMessagesForTopicSubscription(TopicSubscription topicSubscription) {
-        List<RetainedMsg> retainedMessages = getRetainedMessages(topicSubscription);
-        return retainedMessages
-                .stream()
-                .map(retainedMsg -> {
-                    int minQoSValue = getMinQoSValue(topicSubscription, retainedMsg);
-                    return newRetainedMsg(retainedMsg, minQoSValue);
-                }).collect(Collectors.toList());
-    }
-
-    private List<RetainedMsg> getRetainedMessages(TopicSubscription topicSubscription) {
-        return retainedMsgService.getRetainedMessages(topicSubscription.getTopicFilter());
-    }
-
-    private RetainedMsg newRetainedMsg(RetainedMsg retainedMsg, int minQoSValue) {
-        return new RetainedMsg(
-                retainedMsg.getTopic(),
-                retainedMsg.getPayload(),
-                minQoSValue,
-                retainedMsg.getProperties(),
-                retainedMsg.getCreatedTime()
-        );
-    }
-
-    private int getMinQoSValue(TopicSubscription topicSubscription, RetainedMsg retainedMsg) {
-        return Math.min(topicSubscription.getQos(), retainedMsg.getQosLevel());
+                .collect(Collectors.toList());
     }
 
     private void startProcessingSharedSubscriptions(ClientSessionCtx ctx, List<TopicSubscription> topicSubscriptions) {
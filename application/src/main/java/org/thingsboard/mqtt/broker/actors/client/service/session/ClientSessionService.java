@@ -19,6 +19,7 @@ import org.thingsboard.mqtt.broker.common.data.BasicCallback;
 import org.thingsboard.mqtt.broker.common.data.ClientSession;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionChangesCallback;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
 
 import java.util.Map;
@@ -29,6 +30,8 @@ public interface ClientSessionService extends ClientSessionCache {
 
     void startListening(ClientSessionConsumer clientSessionConsumer);
 
+    void addSessionChangesListener(ClientSessionChangesCallback listener);
+
     void saveClientSession(String clientId, ClientSession clientSession, BasicCallback callback);
 
     void clearClientSession(String clientId, BasicCallback callback);
@@ -27,15 +27,18 @@ import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.exception.MqttException;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionChangesCallback;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionPersistenceService;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /*
@@ -50,6 +53,8 @@ public class ClientSessionServiceImpl implements ClientSessionService {
     private final ServiceInfoProvider serviceInfoProvider;
     private final StatsManager statsManager;
 
+    private final List<ClientSessionChangesCallback> sessionChangesListeners = new CopyOnWriteArrayList<>();
+
     private ConcurrentMap<String, ClientSessionInfo> clientSessionMap;
 
     @Override
@@ -63,6 +68,11 @@ public class ClientSessionServiceImpl implements ClientSessionService {
         clientSessionConsumer.listen(this::processSessionUpdate);
     }
 
+    @Override
+    public void addSessionChangesListener(ClientSessionChangesCallback listener) {
+        sessionChangesListeners.add(listener);
+    }
+
     @Override
     public void saveClientSession(String clientId, ClientSession clientSession, BasicCallback callback) {
         if (!clientId.equals(clientSession.getSessionInfo().getClientInfo().getClientId())) {
@@ -76,6 +86,7 @@ public class ClientSessionServiceImpl implements ClientSessionService {
 
         ClientSessionInfo clientSessionInfo = ClientSessionInfoFactory.clientSessionToClientSessionInfo(clientSession);
         clientSessionMap.put(clientId, clientSessionInfo);
+        notifySessionChangesListeners(clientId, serviceInfoProvider.getServiceId(), clientSessionInfo);
 
         QueueProtos.ClientSessionInfoProto clientSessionInfoProto = ProtoConverter.convertToClientSessionInfoProto(clientSessionInfo);
         clientSessionPersistenceService.persistClientSessionInfoAsync(clientId, clientSessionInfoProto, callback);
@@ -93,6 +104,8 @@ public class ClientSessionServiceImpl implements ClientSessionService {
         ClientSessionInfo removedClientSessionInfo = clientSessionMap.remove(clientId);
         if (removedClientSessionInfo == null) {
             log.warn("[{}] No client session found while clearing session.", clientId);
+        } else {
+            notifySessionChangesListeners(clientId, serviceInfoProvider.getServiceId(), null);
         }
         clientSessionPersistenceService.persistClientSessionInfoAsync(clientId, QueueConstants.EMPTY_CLIENT_SESSION_INFO_PROTO, callback);
     }
@@ -148,6 +161,17 @@ public class ClientSessionServiceImpl implements ClientSessionService {
             }
             clientSessionMap.put(clientId, clientSessionInfo);
         }
+        notifySessionChangesListeners(clientId, serviceId, clientSessionInfo);
+    }
+
+    private void notifySessionChangesListeners(String clientId, String serviceId, ClientSessionInfo clientSessionInfo) {
+        for (ClientSessionChangesCallback listener : sessionChangesListeners) {
+            try {
+                listener.accept(clientId, serviceId, clientSessionInfo);
+            } catch (Exception e) {
+                log.warn("[{}] Failed to notify listener about ClientSession change.", clientId, e);
+            }
+        }
     }
 
     private boolean isPersistent(ClientSessionInfo clientSessionInfo) {
@@ -150,6 +150,9 @@ public class SessionClusterManagerImpl implements SessionClusterManager {
             }
             clearSubscriptionsAndSendResponseIfReady(clientInfo, connectionRequestInfo, finishedOperations, wasErrorProcessed);
             clearPersistedMessages(clientInfo);
+        } else if (sessionPresent) {
+            // the node that persisted the latest delta of the client may not serve it anymore, the snapshot is written here
+            clientSubscriptionService.persistPendingSnapshot(clientInfo.getClientId());
         }
 
         boolean applicationRemoved = isApplicationRemoved(previousSessionInfo, clientInfo);
@@ -260,6 +263,8 @@ public class SessionClusterManagerImpl implements SessionClusterManager {
         if (sessionInfo.isPersistent()) {
             ClientSession disconnectedClientSession = markSessionDisconnected(clientSession, sessionExpiryInterval);
             saveClientSession(clientId, disconnectedClientSession);
+            // the subscriptions of the disconnected client may not change for a long time, so no delta is left as its latest record
+            clientSubscriptionService.persistPendingSnapshot(clientId);
             return false;
         }
         clearSessionAndSubscriptions(clientId);
@@ -43,4 +43,26 @@ public interface ClientSubscriptionService extends ClientSubscriptionCache {
     void clearSubscriptionsInternally(String clientId);
 
     int getClientSubscriptionsCount();
+
+    long getSubscriptionsVersion(String clientId);
+
+    /**
+     * Applies the version of the change persisted by another node, a delta stays tracked until a snapshot follows it.
+     */
+    void setSubscriptionsVersion(String clientId, long version, boolean delta);
+
+    /**
+     * Persists the full snapshot of the client subscriptions if its latest persisted change is a delta.
+     */
+    void persistPendingSnapshot(String clientId);
+
+    /**
+     * Makes the next periodic snapshot include the clients, e.g. the ones whose last persisted change is a delta.
+     */
+    void markSnapshotsPending(Collection<String> clientIds);
+
+    /**
+     * Marks the latest persisted change of the clients as a delta, snapshotted on connect or once it gets stale.
+     */
+    void markTrailingDeltas(Collection<String> clientIds);
 }
@@ -16,20 +16,26 @@
 package org.thingsboard.mqtt.broker.actors.client.service.subscription;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.adaptor.NettyMqttConverter;
 import org.thingsboard.mqtt.broker.common.data.BasicCallback;
 import org.thingsboard.mqtt.broker.common.data.StringUtils;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionPersistenceService;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessor;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 
+import javax.annotation.PreDestroy;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -52,15 +58,27 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
     private final SharedSubscriptionCacheService sharedSubscriptionCacheService;
     private final StatsManager statsManager;
 
+    private final ConcurrentMap<String, SubscriptionsVersion> clientSubscriptionsVersions = new ConcurrentHashMap<>();
+
     private ConcurrentMap<String, Set<TopicSubscription>> clientSubscriptionsMap;
 
-    // TODO: sync subscriptions (and probably ClientSession)
-    //      - store events for each action in separate topic + sometimes make snapshots (apply events on 'value' sequentially)
-    //      - manage subscriptions in one thread and one node (probably merge subscriptions with ClientSession)
+    @Setter
+    @Value("${queue.client-subscriptions.max-deltas-before-snapshot:100}")
+    private int maxDeltasBeforeSnapshot;
+    @Setter
+    @Value("${queue.client-subscriptions.trailing-delta-snapshot-delay-ms:180000}")
+    private long trailingDeltaSnapshotDelayMs;
+
+    // TODO: manage subscriptions in one thread and one node (probably merge subscriptions with ClientSession)
 
     @Override
     public void init(Map<String, Set<TopicSubscription>> clientTopicSubscriptions) {
-        this.clientSubscriptionsMap = new ConcurrentHashMap<>(clientTopicSubscriptions);
+        this.clientSubscriptionsMap = new ConcurrentHashMap<>(clientTopicSubscriptions.size());
+        clientTopicSubscriptions.forEach((clientId, topicSubscriptions) -> {
+            Set<TopicSubscription> clientSubscriptions = newSubscriptionsSet();
+            clientSubscriptions.addAll(topicSubscriptions);
+            clientSubscriptionsMap.put(clientId, clientSubscriptions);
+        });
         statsManager.registerClientSubscriptionsStats(clientSubscriptionsMap);
 
         log.info("Restoring persisted subscriptions for {} clients.", clientSubscriptionsMap.size());
@@ -90,9 +108,9 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         if (log.isTraceEnabled()) {
             log.trace("[{}] Subscribing to {}.", clientId, topicSubscriptions);
         }
-        Set<TopicSubscription> clientSubscriptions = subscribe(clientId, topicSubscriptions);
+        subscribe(clientId, topicSubscriptions);
 
-        subscriptionPersistenceService.persistClientSubscriptionsAsync(clientId, clientSubscriptions, callback);
+        persistChange(clientId, new HashSet<>(topicSubscriptions), Collections.emptySet(), callback);
     }
 
     @Override
@@ -108,7 +126,7 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
 
         sharedSubscriptionCacheService.put(clientId, topicSubscriptions);
 
-        Set<TopicSubscription> clientSubscriptions = clientSubscriptionsMap.computeIfAbsent(clientId, s -> new HashSet<>());
+        Set<TopicSubscription> clientSubscriptions = clientSubscriptionsMap.computeIfAbsent(clientId, s -> newSubscriptionsSet());
         clientSubscriptions.removeIf(topicSubscriptions::contains);
         clientSubscriptions.addAll(topicSubscriptions);
         return clientSubscriptions;
@@ -131,9 +149,10 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         if (log.isTraceEnabled()) {
             log.trace("[{}] Unsubscribing from {}.", clientId, topicFilters);
         }
-        Set<TopicSubscription> updatedClientSubscriptions = unsubscribe(clientId, topicFilters);
+        List<String> topics = extractTopicFilterFromSharedTopic(topicFilters);
+        unsubscribe(clientId, topics);
 
-        subscriptionPersistenceService.persistClientSubscriptionsAsync(clientId, updatedClientSubscriptions, callback);
+        persistChange(clientId, Collections.emptySet(), new HashSet<>(topics), callback);
     }
 
     @Override
@@ -141,14 +160,13 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         if (log.isTraceEnabled()) {
             log.trace("[{}] Unsubscribing internally from {}.", clientId, topicFilters);
         }
-        unsubscribe(clientId, topicFilters);
+        unsubscribe(clientId, extractTopicFilterFromSharedTopic(topicFilters));
     }
 
-    private Set<TopicSubscription> unsubscribe(String clientId, Collection<String> topicFilters) {
-        List<String> topics = extractTopicFilterFromSharedTopic(topicFilters);
+    private void unsubscribe(String clientId, List<String> topics) {
         subscriptionService.unsubscribe(clientId, topics);
 
-        Set<TopicSubscription> clientSubscriptions = clientSubscriptionsMap.computeIfAbsent(clientId, s -> new HashSet<>());
+        Set<TopicSubscription> clientSubscriptions = clientSubscriptionsMap.computeIfAbsent(clientId, s -> newSubscriptionsSet());
         clientSubscriptions.removeIf(topicSubscription -> {
             boolean unsubscribe = topics.contains(topicSubscription.getTopicFilter());
             if (unsubscribe) {
@@ -156,7 +174,6 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
             }
             return unsubscribe;
         });
-        return clientSubscriptions;
     }
 
     private List<String> extractTopicFilterFromSharedTopic(Collection<String> topicFilters) {
@@ -170,8 +187,19 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         if (log.isTraceEnabled()) {
             log.trace("[{}] Clearing all subscriptions.", clientId);
         }
-        clearSubscriptions(clientId);
-        subscriptionPersistenceService.persistClientSubscriptionsAsync(clientId, Collections.emptySet(), callback);
+        SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.remove(clientId);
+        if (subscriptionsVersion == null) {
+            clearSubscriptions(clientId);
+            subscriptionPersistenceService.persistClientSubscriptionsAsync(clientId, Collections.emptySet(), callback);
+            return;
+        }
+        // the periodic snapshot of the client must not be persisted after the cleared subscriptions
+        synchronized (subscriptionsVersion) {
+            subscriptionsVersion.pendingDeltas = 0;
+            subscriptionsVersion.trailingDeltaTs = 0;
+            clearSubscriptions(clientId);
+            subscriptionPersistenceService.persistClientSubscriptionsAsync(clientId, Collections.emptySet(), callback);
+        }
     }
 
     @Override
@@ -179,6 +207,7 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         if (log.isTraceEnabled()) {
             log.trace("[{}] Clearing all subscriptions internally.", clientId);
         }
+        clientSubscriptionsVersions.remove(clientId);
         clearSubscriptions(clientId);
     }
 
@@ -187,6 +216,153 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         return clientSubscriptionsMap.values().stream().mapToInt(Set::size).sum();
     }
 
+    @Override
+    public long getSubscriptionsVersion(String clientId) {
+        SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.get(clientId);
+        if (subscriptionsVersion == null) {
+            return 0;
+        }
+        synchronized (subscriptionsVersion) {
+            return subscriptionsVersion.version;
+        }
+    }
+
+    @Override
+    public void setSubscriptionsVersion(String clientId, long version, boolean delta) {
+        SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.computeIfAbsent(clientId, id -> new SubscriptionsVersion());
+        synchronized (subscriptionsVersion) {
+            subscriptionsVersion.version = version;
+            // the change was persisted by another node, only the node that persists the deltas counts them
+            subscriptionsVersion.pendingDeltas = 0;
+            if (delta) {
+                markTrailingDelta(subscriptionsVersion, System.currentTimeMillis());
+            } else {
+                subscriptionsVersion.trailingDeltaTs = 0;
+            }
+        }
+    }
+
+    /**
+     * Persists the change as a delta, or as the full snapshot once there are too many deltas since the last snapshot.
+     * The version lock keeps the order of the change and of the periodic snapshot of the same client in the topic.
+     */
+    private void persistChange(String clientId, Set<TopicSubscription> addedSubscriptions, Set<String> removedTopicFilters,
+                               BasicCallback callback) {
+        SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.computeIfAbsent(clientId, id -> new SubscriptionsVersion());
+        synchronized (subscriptionsVersion) {
+            if (maxDeltasBeforeSnapshot > 0 && subscriptionsVersion.pendingDeltas >= maxDeltasBeforeSnapshot) {
+                persistSnapshot(clientId, subscriptionsVersion, callback);
+                return;
+            }
+            long version = ++subscriptionsVersion.version;
+            ClientSubscriptionsChange change = ClientSubscriptionsChange.delta(version, addedSubscriptions, removedTopicFilters);
+            subscriptionsVersion.pendingDeltas++;
+            markTrailingDelta(subscriptionsVersion, System.currentTimeMillis());
+            subscriptionPersistenceService.persistClientSubscriptionsChangeAsync(clientId, change, callback);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${queue.client-subscriptions.snapshot-interval-ms:60000}")
+    void persistPendingSnapshots() {
+        long trailingDeltaDeadline = System.currentTimeMillis() - trailingDeltaSnapshotDelayMs;
+        clientSubscriptionsVersions.forEach((clientId, subscriptionsVersion) ->
+                persistPendingSnapshot(clientId, subscriptionsVersion, trailingDeltaDeadline));
+    }
+
+    @Override
+    public void persistPendingSnapshot(String clientId) {
+        SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.get(clientId);
+        if (subscriptionsVersion != null) {
+            persistPendingSnapshot(clientId, subscriptionsVersion, Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void markSnapshotsPending(Collection<String> clientIds) {
+        long ts = System.currentTimeMillis();
+        for (String clientId : clientIds) {
+            SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.computeIfAbsent(clientId, id -> new SubscriptionsVersion());
+            synchronized (subscriptionsVersion) {
+                subscriptionsVersion.pendingDeltas = Math.max(subscriptionsVersion.pendingDeltas, 1);
+                markTrailingDelta(subscriptionsVersion, ts);
+            }
+        }
+    }
+
+    @Override
+    public void markTrailingDeltas(Collection<String> clientIds) {
+        long ts = System.currentTimeMillis();
+        for (String clientId : clientIds) {
+            SubscriptionsVersion subscriptionsVersion = clientSubscriptionsVersions.computeIfAbsent(clientId, id -> new SubscriptionsVersion());
+            synchronized (subscriptionsVersion) {
+                markTrailingDelta(subscriptionsVersion, ts);
+            }
+        }
+    }
+
+    private void markTrailingDelta(SubscriptionsVersion subscriptionsVersion, long ts) {
+        if (subscriptionsVersion.trailingDeltaTs == 0) {
+            subscriptionsVersion.trailingDeltaTs = ts;
+        }
+    }
+
+    /**
+     * The snapshot is persisted by the node that persisted the deltas. The trailing delta of a client persisted by
+     * another node is snapshotted by any node once it is older than the deadline, e.g. when that node is down.
+     */
+    private void persistPendingSnapshot(String clientId, SubscriptionsVersion subscriptionsVersion, long trailingDeltaDeadline) {
+        synchronized (subscriptionsVersion) {
+            boolean staleTrailingDelta = subscriptionsVersion.trailingDeltaTs != 0 && subscriptionsVersion.trailingDeltaTs <= trailingDeltaDeadline;
+            if (subscriptionsVersion.pendingDeltas == 0 && !staleTrailingDelta) {
+                return;
+            }
+            BasicCallback callback = createCallback(
+                    () -> {
+                        if (log.isTraceEnabled()) {
+                            log.trace("[{}] Persisted subscriptions snapshot", clientId);
+                        }
+                    },
+                    t -> log.warn("[{}] Failed to persist subscriptions snapshot, will retry with the next periodic snapshot", clientId, t));
+            persistSnapshot(clientId, subscriptionsVersion, callback);
+        }
+    }
+
+    /**
+     * Until the snapshot is persisted a delta may stay the latest record of the client in the compacted topic,
+     * so a failed snapshot is re-armed to be written again by the next periodic snapshot.
+     */
+    private void persistSnapshot(String clientId, SubscriptionsVersion subscriptionsVersion, BasicCallback callback) {
+        long version = ++subscriptionsVersion.version;
+        int pendingDeltas = subscriptionsVersion.pendingDeltas;
+        long trailingDeltaTs = subscriptionsVersion.trailingDeltaTs;
+        subscriptionsVersion.pendingDeltas = 0;
+        subscriptionsVersion.trailingDeltaTs = 0;
+        ClientSubscriptionsChange snapshot = ClientSubscriptionsChange.snapshot(version, getClientSubscriptions(clientId));
+        subscriptionPersistenceService.persistClientSubscriptionsChangeAsync(clientId, snapshot, createCallback(
+                () -> {
+                    if (callback != null) {
+                        callback.onSuccess();
+                    }
+                },
+                t -> {
+                    synchronized (subscriptionsVersion) {
+                        // a newer snapshot resets the version, newer deltas are pending anyway
+                        if (subscriptionsVersion.version == version) {
+                            subscriptionsVersion.pendingDeltas = Math.max(subscriptionsVersion.pendingDeltas, pendingDeltas);
+                            markTrailingDelta(subscriptionsVersion, trailingDeltaTs);
+                        }
+                    }
+                    if (callback != null) {
+                        callback.onFailure(t);
+                    }
+                }));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        persistPendingSnapshots();
+    }
+
     private void clearSubscriptions(String clientId) {
         Set<TopicSubscription> clientSubscriptions = clientSubscriptionsMap.remove(clientId);
         if (clientSubscriptions == null) {
@@ -207,6 +383,19 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
         return new HashSet<>(clientSubscriptionsMap.getOrDefault(clientId, Collections.emptySet()));
     }
 
+    @Override
+    public Map<String, Set<TopicSubscription>> getAllClientSubscriptions() {
+        Map<String, Set<TopicSubscription>> allClientSubscriptions = new HashMap<>(clientSubscriptionsMap.size());
+        clientSubscriptionsMap.forEach((clientId, topicSubscriptions) ->
+                allClientSubscriptions.put(clientId, new HashSet<>(topicSubscriptions)));
+        return allClientSubscriptions;
+    }
+
+    // subscriptions of the client are updated by its actor while snapshots are copied from other threads
+    private static Set<TopicSubscription> newSubscriptionsSet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+
     private void processSharedUnsubscribe(String clientId, TopicSubscription topicSubscription) {
         if (isSharedSubscription(topicSubscription)) {
             unsubscribeSharedSubscription(topicSubscription);
@@ -225,4 +414,15 @@ public class ClientSubscriptionServiceImpl implements ClientSubscriptionService
     private TopicSharedSubscription getSharedSubscriptionTopicFilter(TopicSubscription topicSubscription) {
         return new TopicSharedSubscription(topicSubscription.getTopicFilter(), topicSubscription.getShareName());
     }
+
+    /**
+     * Version of the client subscriptions, incremented on every persisted change. Deltas persisted by this node since
+     * the last full snapshot are counted so that the snapshot is written by the node serving the client. Every node
+     * remembers since when the latest record of the client is a delta, whichever node persisted it.
+     */
+    private static class SubscriptionsVersion {
+        private long version;
+        private int pendingDeltas;
+        private long trailingDeltaTs;
+    }
 }
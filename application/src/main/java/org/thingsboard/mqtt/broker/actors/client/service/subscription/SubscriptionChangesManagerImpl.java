@@ -19,6 +19,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.actors.client.messages.SubscriptionChangedEventMsg;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.util.CollectionsUtil;
 
@@ -35,8 +36,33 @@ public class SubscriptionChangesManagerImpl implements SubscriptionChangesManage
 
     @Override
     public void processSubscriptionChangedEvent(String clientId, SubscriptionChangedEventMsg msg) {
+        ClientSubscriptionsChange change = msg.getChange();
+        if (change.isDelta()) {
+            processDelta(clientId, change);
+        } else {
+            processSnapshot(clientId, change);
+        }
+    }
+
+    private void processDelta(String clientId, ClientSubscriptionsChange delta) {
+        long currentVersion = clientSubscriptionService.getSubscriptionsVersion(clientId);
+        if (delta.getVersion() != currentVersion + 1 && log.isDebugEnabled()) {
+            // e.g. the client moved to the node that was restarted, the next full snapshot brings all nodes in sync
+            log.debug("[{}] Applying subscriptions delta with version {}, current version - {}.",
+                    clientId, delta.getVersion(), currentVersion);
+        }
+        if (!delta.getRemovedTopicFilters().isEmpty()) {
+            clientSubscriptionService.unsubscribeInternally(clientId, delta.getRemovedTopicFilters());
+        }
+        if (!delta.getTopicSubscriptions().isEmpty()) {
+            clientSubscriptionService.subscribeInternally(clientId, delta.getTopicSubscriptions());
+        }
+        clientSubscriptionService.setSubscriptionsVersion(clientId, delta.getVersion(), true);
+    }
+
+    private void processSnapshot(String clientId, ClientSubscriptionsChange snapshot) {
+        Set<TopicSubscription> newTopicSubscriptions = snapshot.getTopicSubscriptions();
         Set<TopicSubscription> currentTopicSubscriptions = clientSubscriptionService.getClientSubscriptions(clientId);
-        Set<TopicSubscription> newTopicSubscriptions = msg.getTopicSubscriptions();
 
         if (log.isDebugEnabled()) {
             log.debug("[{}] Updating Client's subscriptions, new subscriptions size - {}, current subscriptions size - {}.",
@@ -51,6 +77,8 @@ public class SubscriptionChangesManagerImpl implements SubscriptionChangesManage
         processUnsubscribe(clientId, newTopicSubscriptions, currentTopicSubscriptions);
 
         processSubscribe(clientId, newTopicSubscriptions, currentTopicSubscriptions);
+
+        clientSubscriptionService.setSubscriptionsVersion(clientId, snapshot.getVersion(), false);
     }
 
     private void processUnsubscribe(String clientId, Set<TopicSubscription> newTopicSubscriptions, Set<TopicSubscription> currentTopicSubscriptions) {
@@ -19,6 +19,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.stats.timer.SubscriptionTimerStats;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscription;
@@ -77,7 +78,7 @@ public class SubscriptionServiceImpl implements SubscriptionService {
     @Override
     public List<ValueWithTopicFilter<ClientSubscription>> getSubscriptions(String topic) {
         long startTime = System.nanoTime();
-        List<ValueWithTopicFilter<ClientSubscription>> subscriptions = subscriptionTrie.get(topic);
+        List<ValueWithTopicFilter<ClientSubscription>> subscriptions = subscriptionTrie.get(ParsedTopic.parse(topic));
         subscriptionTimerStats.logSubscriptionsLookup(startTime, TimeUnit.NANOSECONDS);
         return subscriptions;
     }
@@ -19,6 +19,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.handler.codec.mqtt.MqttProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.actors.ActorSystemContext;
@@ -33,6 +34,7 @@ import org.thingsboard.mqtt.broker.actors.device.messages.SharedSubscriptionEven
 import org.thingsboard.mqtt.broker.actors.device.messages.StopDeviceActorCommandMsg;
 import org.thingsboard.mqtt.broker.actors.shared.AbstractContextAwareMsgProcessor;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
 import org.thingsboard.mqtt.broker.common.util.DonAsynchron;
 import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
 import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
@@ -43,6 +45,7 @@ import org.thingsboard.mqtt.broker.dto.SharedSubscriptionPublishPacket;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
@@ -65,6 +68,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
     private final DeviceSessionCtxService deviceSessionCtxService;
     private final DevicePacketIdAndSerialNumberService serialNumberService;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
+    private final MsgExpiryService msgExpiryService;
     private final ClientMqttActorManager clientMqttActorManager;
     private final ClientLogger clientLogger;
     private final DeviceActorConfiguration deviceActorConfig;
@@ -84,6 +88,7 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         this.deviceSessionCtxService = systemContext.getDeviceSessionCtxService();
         this.serialNumberService = systemContext.getSerialNumberService();
         this.publishMsgDeliveryService = systemContext.getPublishMsgDeliveryService();
+        this.msgExpiryService = systemContext.getMsgExpiryService();
         this.clientMqttActorManager = systemContext.getClientMqttActorManager();
         this.clientLogger = systemContext.getClientLogger();
         this.deviceActorConfig = systemContext.getDeviceActorConfiguration();
@@ -167,6 +172,11 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
             case PUBLISH:
                 // TODO: guaranty that DUP flag is correctly set even if Device Actor is dropped
                 boolean isDup = inFlightPacketIds.contains(persistedMessage.getPacketId());
+                if (!isDup && isExpired(persistedMessage)) {
+                    lastPersistedMsgSentSerialNumber = persistedMessage.getSerialNumber();
+                    removeExpiredMsg(getSharedSubscriptionPublishPacket(persistedMessage.getPacketId()));
+                    break;
+                }
                 if (!isDup) {
                     inFlightPacketIds.add(persistedMessage.getPacketId());
                 }
@@ -201,6 +211,11 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
         checkForMissedMsgsAndProcessBeforeFirstIncomingMsg(publishMsg);
         processedAnyMsg = true;
 
+        if (isExpired(publishMsg)) {
+            removeExpiredMsg(newSharedSubscriptionPublishPacket(clientId, publishMsg.getPacketId()));
+            return;
+        }
+
         inFlightPacketIds.add(publishMsg.getPacketId());
         try {
             PublishMsg pubMsg = getPublishMsg(publishMsg, false);
@@ -241,6 +256,25 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
                         DisconnectReasonType.ON_ERROR, message)));
     }
 
+    private boolean isExpired(DevicePublishMsg publishMsg) {
+        long createdTime = publishMsg.getTime() != null ? publishMsg.getTime() : 0L;
+        return msgExpiryService.isExpired(clientId, createdTime, MqttPropertiesUtil.getMsgExpiryInterval(publishMsg.getProperties()));
+    }
+
+    private void removeExpiredMsg(SharedSubscriptionPublishPacket packet) {
+        var targetClientId = packet.getKey();
+        ListenableFuture<Void> resultFuture = deviceMsgService.tryRemovePersistedMessage(targetClientId, packet.getPacketId());
+        DonAsynchron.withCallback(
+                resultFuture,
+                unused -> {
+                    if (log.isDebugEnabled()) {
+                        log.debug("[{}] Removed expired msg {} from the DB", targetClientId, packet.getPacketId());
+                    }
+                },
+                throwable -> log.warn("[{}] Failed to remove expired msg {} from the DB", targetClientId, packet.getPacketId(), throwable)
+        );
+    }
+
     private PublishMsg getPublishMsg(DevicePublishMsg publishMsg, boolean isDup) {
         return PublishMsg.builder()
                 .packetId(publishMsg.getPacketId())
@@ -248,11 +282,23 @@ class PersistedDeviceActorMessageProcessor extends AbstractContextAwareMsgProces
                 .payload(publishMsg.getPayload())
                 .qosLevel(publishMsg.getQos())
                 .isDup(isDup)
-                .properties(publishMsg.getProperties())
+                .properties(getOutboundProperties(publishMsg))
                 .isRetained(publishMsg.isRetained())
                 .build();
     }
 
+    private MqttProperties getOutboundProperties(DevicePublishMsg publishMsg) {
+        MqttProperties properties = publishMsg.getProperties();
+        Integer msgExpiryInterval = MqttPropertiesUtil.getMsgExpiryInterval(properties);
+        if (msgExpiryInterval == null || publishMsg.getTime() == null) {
+            return properties;
+        }
+        MqttProperties outboundProperties = new MqttProperties();
+        properties.listAll().forEach(outboundProperties::add);
+        MqttPropertiesUtil.setRemainingMsgExpiryInterval(outboundProperties, publishMsg.getTime(), msgExpiryInterval, System.currentTimeMillis());
+        return outboundProperties;
+    }
+
     public void processPacketAcknowledge(PacketAcknowledgedEventMsg msg) {
         SharedSubscriptionPublishPacket packet = getSharedSubscriptionPublishPacket(msg.getPacketId());
         var targetClientId = packet.getKey();
@@ -65,21 +65,48 @@ public class NettyMqttConverter {
     }
 
     public static MqttSubscribeMsg createMqttSubscribeMsg(UUID sessionId, MqttSubscribeMessage nettySubscribeMsg) {
-        List<TopicSubscription> topicSubscriptions = nettySubscribeMsg.payload().topicSubscriptions()
-                .stream()
-                .map(mqttTopicSubscription ->
-                        new TopicSubscription(
-                                getTopicName(mqttTopicSubscription.topicName()),
-                                mqttTopicSubscription.qualityOfService().value(),
-                                getShareName(mqttTopicSubscription.topicName()),
-                                SubscriptionOptions.newInstance(mqttTopicSubscription.option())))
-                .collect(Collectors.toList());
         MqttMessageIdAndPropertiesVariableHeader mqttMessageIdVariableHeader = nettySubscribeMsg.idAndPropertiesVariableHeader();
         int messageId = mqttMessageIdVariableHeader.messageId();
         MqttProperties properties = mqttMessageIdVariableHeader.properties();
+        int shareWeight = getShareWeight(properties);
+
+        List<TopicSubscription> topicSubscriptions = nettySubscribeMsg.payload().topicSubscriptions()
+                .stream()
+                .map(mqttTopicSubscription -> {
+                    String shareName = getShareName(mqttTopicSubscription.topicName());
+                    return new TopicSubscription(
+                            getTopicName(mqttTopicSubscription.topicName()),
+                            mqttTopicSubscription.qualityOfService().value(),
+                            shareName,
+                            SubscriptionOptions.newInstance(mqttTopicSubscription.option()),
+                            shareName == null ? 0 : shareWeight);
+                })
+                .collect(Collectors.toList());
         return new MqttSubscribeMsg(sessionId, messageId, topicSubscriptions, properties);
     }
 
+    static int getShareWeight(MqttProperties properties) {
+        if (properties == null) {
+            return 0;
+        }
+        MqttProperties.UserProperties userProperties = (MqttProperties.UserProperties) properties
+                .getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value());
+        if (userProperties == null) {
+            return 0;
+        }
+        for (MqttProperties.StringPair stringPair : userProperties.value()) {
+            if (BrokerConstants.SHARE_WEIGHT_USER_PROPERTY.equals(stringPair.key)) {
+                try {
+                    return Math.max(0, Integer.parseInt(stringPair.value));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid '{}' user property value {}, ignoring it", stringPair.key, stringPair.value);
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
     public static String getTopicName(String topicName) {
         return isSharedTopic(topicName) ?
                 topicName.substring(topicName.indexOf("/", BrokerConstants.SHARE_NAME_IDX) + 1) : topicName;
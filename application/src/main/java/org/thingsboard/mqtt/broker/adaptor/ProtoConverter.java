@@ -26,10 +26,15 @@ import org.thingsboard.mqtt.broker.common.data.ConnectionInfo;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.common.data.security.ClientCredentialsType;
+import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.client.event.ConnectionResponse;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.OffHeapRetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
@@ -37,6 +42,7 @@ import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -54,7 +60,12 @@ public class ProtoConverter {
                 .setQos(publishMsg.getQosLevel())
                 .setRetain(publishMsg.isRetained())
                 .addAllUserProperties(userPropertyProtos)
-                .setClientId(sessionInfo.getClientInfo().getClientId());
+                .setClientId(sessionInfo.getClientInfo().getClientId())
+                .setCreatedTime(System.currentTimeMillis());
+        Integer msgExpiryInterval = MqttPropertiesUtil.getMsgExpiryInterval(publishMsg.getProperties());
+        if (msgExpiryInterval != null) {
+            builder.setMsgExpiryInterval(msgExpiryInterval);
+        }
         if (publishMsg.getByteBuf() != null) {
             builder.setPayload(ByteString.copyFrom(publishMsg.getByteBuf().nioBuffer()));
             publishMsg.getByteBuf().release();
@@ -86,14 +97,35 @@ public class ProtoConverter {
     public static QueueProtos.PublishMsgProto convertToPublishProtoMessage(DevicePublishMsg devicePublishMsg) {
         UserProperties userProperties = getUserProperties(devicePublishMsg.getProperties());
         List<QueueProtos.UserPropertyProto> userPropertyProtos = toUserPropertyProtos(userProperties);
-        return QueueProtos.PublishMsgProto.newBuilder()
+        QueueProtos.PublishMsgProto.Builder builder = QueueProtos.PublishMsgProto.newBuilder()
                 .setPacketId(devicePublishMsg.getPacketId())
                 .setTopicName(devicePublishMsg.getTopic())
                 .setQos(devicePublishMsg.getQos())
                 .setPayload(ByteString.copyFrom(devicePublishMsg.getPayload()))
                 .addAllUserProperties(userPropertyProtos)
-                .setRetain(devicePublishMsg.isRetained())
-                .build();
+                .setRetain(devicePublishMsg.isRetained());
+        if (devicePublishMsg.getTime() != null) {
+            builder.setCreatedTime(devicePublishMsg.getTime());
+        }
+        Integer msgExpiryInterval = MqttPropertiesUtil.getMsgExpiryInterval(devicePublishMsg.getProperties());
+        if (msgExpiryInterval != null) {
+            builder.setMsgExpiryInterval(msgExpiryInterval);
+        }
+        return builder.build();
+    }
+
+    public static Integer getMsgExpiryInterval(QueueProtos.PublishMsgProto publishMsgProto) {
+        return publishMsgProto.hasMsgExpiryInterval() ? publishMsgProto.getMsgExpiryInterval() : null;
+    }
+
+    /**
+     * @return properties of the outbound msg with the Message Expiry Interval reduced by the time the msg has been waiting in the broker
+     */
+    public static MqttProperties createOutboundMqttProperties(QueueProtos.PublishMsgProto publishMsgProto) {
+        MqttProperties properties = createMqttProperties(publishMsgProto.getUserPropertiesList());
+        MqttPropertiesUtil.setRemainingMsgExpiryInterval(properties, publishMsgProto.getCreatedTime(),
+                getMsgExpiryInterval(publishMsgProto), System.currentTimeMillis());
+        return properties;
     }
 
     public static String getClientId(QueueProtos.PublishMsgProto publishMsgProto) {
@@ -106,7 +138,7 @@ public class ProtoConverter {
                 .topicName(publishMsgProto.getTopicName())
                 .isRetained(publishMsgProto.getRetain())
                 .payload(publishMsgProto.getPayload().toByteArray())
-                .properties(createMqttProperties(publishMsgProto.getUserPropertiesList()))
+                .properties(createOutboundMqttProperties(publishMsgProto))
                 .packetId(packetId)
                 .qosLevel(qos)
                 .isDup(isDup)
@@ -208,12 +240,24 @@ public class ProtoConverter {
     }
 
     public static QueueProtos.ClientSubscriptionsProto convertToClientSubscriptionsProto(Collection<TopicSubscription> topicSubscriptions) {
-        List<QueueProtos.TopicSubscriptionProto> topicSubscriptionsProto = topicSubscriptions.stream()
+        return QueueProtos.ClientSubscriptionsProto.newBuilder().addAllSubscriptions(getTopicSubscriptionProtos(topicSubscriptions)).build();
+    }
+
+    public static QueueProtos.ClientSubscriptionsProto convertToClientSubscriptionsProto(ClientSubscriptionsChange change) {
+        return QueueProtos.ClientSubscriptionsProto.newBuilder()
+                .addAllSubscriptions(getTopicSubscriptionProtos(change.getTopicSubscriptions()))
+                .setVersion(change.getVersion())
+                .setDelta(change.isDelta())
+                .addAllRemovedTopicFilters(change.getRemovedTopicFilters())
+                .build();
+    }
+
+    private static List<QueueProtos.TopicSubscriptionProto> getTopicSubscriptionProtos(Collection<TopicSubscription> topicSubscriptions) {
+        return topicSubscriptions.stream()
                 .map(topicSubscription -> topicSubscription.getShareName() == null ?
                         getTopicSubscriptionProto(topicSubscription) :
                         getTopicSubscriptionProtoWithShareName(topicSubscription))
                 .collect(Collectors.toList());
-        return QueueProtos.ClientSubscriptionsProto.newBuilder().addAllSubscriptions(topicSubscriptionsProto).build();
     }
 
     private static QueueProtos.SubscriptionOptionsProto prepareOptionsProto(TopicSubscription topicSubscription) {
@@ -237,12 +281,15 @@ public class ProtoConverter {
     }
 
     private static QueueProtos.TopicSubscriptionProto getTopicSubscriptionProtoWithShareName(TopicSubscription topicSubscription) {
-        return QueueProtos.TopicSubscriptionProto.newBuilder()
+        QueueProtos.TopicSubscriptionProto.Builder builder = QueueProtos.TopicSubscriptionProto.newBuilder()
                 .setQos(topicSubscription.getQos())
                 .setTopic(topicSubscription.getTopicFilter())
                 .setShareName(topicSubscription.getShareName())
-                .setOptions(prepareOptionsProto(topicSubscription))
-                .build();
+                .setOptions(prepareOptionsProto(topicSubscription));
+        if (topicSubscription.getShareWeight() > 0) {
+            builder.setShareWeight(topicSubscription.getShareWeight());
+        }
+        return builder.build();
     }
 
     public static Set<TopicSubscription> convertToClientSubscriptions(QueueProtos.ClientSubscriptionsProto clientSubscriptionsProto) {
@@ -252,8 +299,17 @@ public class ProtoConverter {
                         .topicFilter(topicSubscriptionProto.getTopic())
                         .shareName(topicSubscriptionProto.hasShareName() ? topicSubscriptionProto.getShareName() : null)
                         .options(createOptions(topicSubscriptionProto))
+                        .shareWeight(topicSubscriptionProto.hasShareWeight() ? topicSubscriptionProto.getShareWeight() : 0)
                         .build())
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    public static ClientSubscriptionsChange convertToClientSubscriptionsChange(QueueProtos.ClientSubscriptionsProto clientSubscriptionsProto) {
+        Set<TopicSubscription> topicSubscriptions = convertToClientSubscriptions(clientSubscriptionsProto);
+        return clientSubscriptionsProto.getDelta() ?
+                ClientSubscriptionsChange.delta(clientSubscriptionsProto.getVersion(), topicSubscriptions,
+                        new HashSet<>(clientSubscriptionsProto.getRemovedTopicFiltersList())) :
+                ClientSubscriptionsChange.snapshot(clientSubscriptionsProto.getVersion(), topicSubscriptions);
     }
 
     private static SubscriptionOptions createOptions(QueueProtos.TopicSubscriptionProto topicSubscriptionProto) {
@@ -281,15 +337,16 @@ public class ProtoConverter {
                 .topic(publishMsgProto.getTopicName())
                 .qos(publishMsgProto.getQos())
                 .payload(publishMsgProto.getPayload().toByteArray())
-                .properties(createMqttProperties(publishMsgProto.getUserPropertiesList()))
+                .properties(createMqttProperties(publishMsgProto.getUserPropertiesList(), getMsgExpiryInterval(publishMsgProto)))
                 .isRetained(publishMsgProto.getRetain())
+                .time(publishMsgProto.getCreatedTime() > 0 ? publishMsgProto.getCreatedTime() : null)
                 .build();
     }
 
     public static QueueProtos.DevicePublishMsgProto toDevicePublishMsgProto(DevicePublishMsg devicePublishMsg) {
         UserProperties userProperties = getUserProperties(devicePublishMsg.getProperties());
         List<QueueProtos.UserPropertyProto> userPropertyProtos = toUserPropertyProtos(userProperties);
-        return QueueProtos.DevicePublishMsgProto.newBuilder()
+        QueueProtos.DevicePublishMsgProto.Builder builder = QueueProtos.DevicePublishMsgProto.newBuilder()
                 .setSerialNumber(devicePublishMsg.getSerialNumber())
                 .setTime(devicePublishMsg.getTime())
                 .setPacketId(devicePublishMsg.getPacketId())
@@ -299,8 +356,12 @@ public class ProtoConverter {
                 .setClientId(devicePublishMsg.getClientId())
                 .setPacketType(devicePublishMsg.getPacketType().toString())
                 .addAllUserProperties(userPropertyProtos)
-                .setRetain(devicePublishMsg.isRetained())
-                .build();
+                .setRetain(devicePublishMsg.isRetained());
+        Integer msgExpiryInterval = MqttPropertiesUtil.getMsgExpiryInterval(devicePublishMsg.getProperties());
+        if (msgExpiryInterval != null) {
+            builder.setMsgExpiryInterval(msgExpiryInterval);
+        }
+        return builder.build();
     }
 
     public static DevicePublishMsg toDevicePublishMsg(QueueProtos.DevicePublishMsgProto devicePublishMsgProto) {
@@ -313,7 +374,8 @@ public class ProtoConverter {
                 .topic(devicePublishMsgProto.getTopicName())
                 .clientId(devicePublishMsgProto.getClientId())
                 .packetType(PersistedPacketType.valueOf(devicePublishMsgProto.getPacketType()))
-                .properties(createMqttProperties(devicePublishMsgProto.getUserPropertiesList()))
+                .properties(createMqttProperties(devicePublishMsgProto.getUserPropertiesList(),
+                        devicePublishMsgProto.hasMsgExpiryInterval() ? devicePublishMsgProto.getMsgExpiryInterval() : null))
                 .isRetained(devicePublishMsgProto.getRetain())
                 .build();
     }
@@ -325,15 +387,27 @@ public class ProtoConverter {
                 .build();
     }
 
+    /**
+     * @return proto of the msg or null if an off-heap msg was already replaced or cleared
+     */
     public static QueueProtos.RetainedMsgProto convertToRetainedMsgProto(RetainedMsg retainedMsg) {
+        if (retainedMsg instanceof OffHeapRetainedMsg) {
+            retainedMsg = ((OffHeapRetainedMsg) retainedMsg).toHeapMsg();
+            if (retainedMsg == null) {
+                return null;
+            }
+        }
         List<QueueProtos.UserPropertyProto> userPropertyProtos = getUserPropertyProtos(retainedMsg);
-        return QueueProtos.RetainedMsgProto.newBuilder()
+        QueueProtos.RetainedMsgProto.Builder builder = QueueProtos.RetainedMsgProto.newBuilder()
                 .setPayload(ByteString.copyFrom(retainedMsg.getPayload()))
                 .setQos(retainedMsg.getQosLevel())
                 .setTopic(retainedMsg.getTopic())
                 .addAllUserProperties(userPropertyProtos)
-                .setCreatedTime(retainedMsg.getCreatedTime())
-                .build();
+                .setCreatedTime(retainedMsg.getCreatedTime());
+        if (retainedMsg.getMsgExpiryInterval() != null) {
+            builder.setMsgExpiryInterval(retainedMsg.getMsgExpiryInterval());
+        }
+        return builder.build();
     }
 
     private static List<QueueProtos.UserPropertyProto> getUserPropertyProtos(RetainedMsg retainedMsg) {
@@ -351,10 +425,36 @@ public class ProtoConverter {
                 retainedMsgProto.getPayload().toByteArray(),
                 retainedMsgProto.getQos(),
                 createMqttProperties(retainedMsgProto.getUserPropertiesList()),
-                retainedMsgProto.getCreatedTime()
+                retainedMsgProto.getCreatedTime(),
+                retainedMsgProto.hasMsgExpiryInterval() ? retainedMsgProto.getMsgExpiryInterval() : null
         );
     }
 
+    public static QueueProtos.MqttClientCredentialsProto convertToMqttClientCredentialsProto(MqttClientCredentials credentials) {
+        return QueueProtos.MqttClientCredentialsProto.newBuilder()
+                .setIdMSB(credentials.getId().getMostSignificantBits())
+                .setIdLSB(credentials.getId().getLeastSignificantBits())
+                .setCreatedTime(credentials.getCreatedTime())
+                .setCredentialsId(credentials.getCredentialsId())
+                .setName(credentials.getName())
+                .setClientType(credentials.getClientType().name())
+                .setCredentialsType(credentials.getCredentialsType().name())
+                .setCredentialsValue(credentials.getCredentialsValue())
+                .build();
+    }
+
+    public static MqttClientCredentials convertToMqttClientCredentials(QueueProtos.MqttClientCredentialsProto credentialsProto) {
+        MqttClientCredentials credentials = new MqttClientCredentials(
+                new UUID(credentialsProto.getIdMSB(), credentialsProto.getIdLSB()));
+        credentials.setCreatedTime(credentialsProto.getCreatedTime());
+        credentials.setCredentialsId(credentialsProto.getCredentialsId());
+        credentials.setName(credentialsProto.getName());
+        credentials.setClientType(ClientType.valueOf(credentialsProto.getClientType()));
+        credentials.setCredentialsType(ClientCredentialsType.valueOf(credentialsProto.getCredentialsType()));
+        credentials.setCredentialsValue(credentialsProto.getCredentialsValue());
+        return credentials;
+    }
+
     public static MqttProperties createMqttProperties(List<QueueProtos.UserPropertyProto> userPropertiesList) {
         MqttProperties mqttProperties = new MqttProperties();
         UserProperties userProperties = createUserProperties(userPropertiesList);
@@ -362,6 +462,14 @@ public class ProtoConverter {
         return mqttProperties;
     }
 
+    private static MqttProperties createMqttProperties(List<QueueProtos.UserPropertyProto> userPropertiesList, Integer msgExpiryInterval) {
+        MqttProperties mqttProperties = createMqttProperties(userPropertiesList);
+        if (msgExpiryInterval != null) {
+            MqttPropertiesUtil.setMsgExpiryInterval(mqttProperties, msgExpiryInterval);
+        }
+        return mqttProperties;
+    }
+
     private static UserProperties createUserProperties(List<QueueProtos.UserPropertyProto> userPropertiesList) {
         UserProperties userProperties = new UserProperties();
         for (QueueProtos.UserPropertyProto userPropertyProto : userPropertiesList) {
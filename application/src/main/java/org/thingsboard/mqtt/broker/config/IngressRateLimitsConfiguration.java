@@ -0,0 +1,42 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "mqtt.rate-limits.ingress")
+@Data
+public class IngressRateLimitsConfiguration {
+
+    private boolean enabled;
+    // limits in the "capacity:seconds,capacity:seconds" format, empty value turns the limiter off
+    private String nodeMsgsConfig;
+    private String nodeBytesConfig;
+    private List<TopicFilterLimit> topicFilters = new ArrayList<>();
+    private long maxPauseMs = 1000;
+
+    @Data
+    public static class TopicFilterLimit {
+        private String filter;
+        private String config;
+    }
+}
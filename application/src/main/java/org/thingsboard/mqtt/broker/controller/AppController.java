@@ -26,8 +26,8 @@ import org.springframework.web.bind.annotation.RestController;
 import org.thingsboard.mqtt.broker.actors.TbActorId;
 import org.thingsboard.mqtt.broker.actors.TbActorSystem;
 import org.thingsboard.mqtt.broker.common.data.exception.ThingsboardException;
-import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.page.SnapshotPageData;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
@@ -75,7 +75,7 @@ public class AppController extends BaseController {
     @PreAuthorize("hasAuthority('SYS_ADMIN')")
     @RequestMapping(value = "/cluster-info", method = RequestMethod.GET)
     @ResponseBody
-    public PageData<KafkaBroker> getKafkaClusterInfo() throws ThingsboardException {
+    public SnapshotPageData<KafkaBroker> getKafkaClusterInfo() throws ThingsboardException {
         try {
             return checkNotNull(tbQueueAdmin.getClusterInfo());
         } catch (Exception e) {
@@ -86,7 +86,7 @@ public class AppController extends BaseController {
     @PreAuthorize("hasAuthority('SYS_ADMIN')")
     @RequestMapping(value = "/kafka-topics", params = {"pageSize", "page"}, method = RequestMethod.GET)
     @ResponseBody
-    public PageData<KafkaTopic> getKafkaTopics(@RequestParam int pageSize,
+    public SnapshotPageData<KafkaTopic> getKafkaTopics(@RequestParam int pageSize,
                                                @RequestParam int page,
                                                @RequestParam(required = false) String textSearch,
                                                @RequestParam(required = false) String sortProperty,
@@ -102,7 +102,7 @@ public class AppController extends BaseController {
     @PreAuthorize("hasAuthority('SYS_ADMIN')")
     @RequestMapping(value = "/consumer-groups", params = {"pageSize", "page"}, method = RequestMethod.GET)
     @ResponseBody
-    public PageData<KafkaConsumerGroup> getKafkaConsumerGroups(@RequestParam int pageSize,
+    public SnapshotPageData<KafkaConsumerGroup> getKafkaConsumerGroups(@RequestParam int pageSize,
                                                                @RequestParam int page,
                                                                @RequestParam(required = false) String textSearch,
                                                                @RequestParam(required = false) String sortProperty,
@@ -30,6 +30,7 @@ import org.springframework.web.context.request.async.DeferredResult;
 import org.thingsboard.mqtt.broker.common.data.User;
 import org.thingsboard.mqtt.broker.common.data.exception.ThingsboardErrorCode;
 import org.thingsboard.mqtt.broker.common.data.exception.ThingsboardException;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
@@ -132,20 +133,26 @@ public abstract class BaseController {
     }
 
     PageLink createPageLink(int pageSize, int page, String textSearch, String sortProperty, String sortOrder) throws ThingsboardException {
-        if (!StringUtils.isEmpty(sortProperty)) {
-            SortOrder.Direction direction = SortOrder.Direction.ASC;
-            if (!StringUtils.isEmpty(sortOrder)) {
-                try {
-                    direction = SortOrder.Direction.valueOf(sortOrder.toUpperCase());
-                } catch (IllegalArgumentException e) {
-                    throw new ThingsboardException("Unsupported sort order '" + sortOrder + "'! Only 'ASC' or 'DESC' types are allowed.", ThingsboardErrorCode.BAD_REQUEST_PARAMS);
-                }
+        return new PageLink(pageSize, page, textSearch, createSortOrder(sortProperty, sortOrder));
+    }
+
+    CursorPageLink createCursorPageLink(int pageSize, String cursor, String textSearch, String sortProperty, String sortOrder) throws ThingsboardException {
+        return new CursorPageLink(pageSize, cursor, textSearch, createSortOrder(sortProperty, sortOrder));
+    }
+
+    private SortOrder createSortOrder(String sortProperty, String sortOrder) throws ThingsboardException {
+        if (StringUtils.isEmpty(sortProperty)) {
+            return null;
+        }
+        SortOrder.Direction direction = SortOrder.Direction.ASC;
+        if (!StringUtils.isEmpty(sortOrder)) {
+            try {
+                direction = SortOrder.Direction.valueOf(sortOrder.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ThingsboardException("Unsupported sort order '" + sortOrder + "'! Only 'ASC' or 'DESC' types are allowed.", ThingsboardErrorCode.BAD_REQUEST_PARAMS);
             }
-            SortOrder sort = new SortOrder(sortProperty, direction);
-            return new PageLink(pageSize, page, textSearch, sort);
-        } else {
-            return new PageLink(pageSize, page, textSearch);
         }
+        return new SortOrder(sortProperty, direction);
     }
 
     void validatePassword(BCryptPasswordEncoder passwordEncoder,
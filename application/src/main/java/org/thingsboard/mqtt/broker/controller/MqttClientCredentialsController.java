@@ -38,8 +38,12 @@ import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
 import org.thingsboard.mqtt.broker.common.util.JacksonUtil;
 import org.thingsboard.mqtt.broker.common.util.MqttClientCredentialsUtil;
 import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsIndexService;
 import org.thingsboard.mqtt.broker.service.security.model.ChangePasswordRequest;
 
+import java.util.Optional;
+import java.util.UUID;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api/mqtt/client/credentials")
@@ -47,6 +51,7 @@ public class MqttClientCredentialsController extends BaseController {
 
     private final MqttClientCredentialsService mqttClientCredentialsService;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final ClientCredentialsIndexService clientCredentialsIndexService;
 
     @PreAuthorize("hasAnyAuthority('SYS_ADMIN')")
     @RequestMapping(value = "", method = RequestMethod.POST)
@@ -60,7 +65,7 @@ public class MqttClientCredentialsController extends BaseController {
                 mqttClientCredentials.setCredentialsValue(JacksonUtil.toString(mqttCredentials));
             }
 
-            return checkNotNull(mqttClientCredentialsService.saveCredentials(mqttClientCredentials));
+            return saveCredentials(mqttClientCredentials);
         } catch (Exception e) {
             throw handleException(e);
         }
@@ -96,7 +101,12 @@ public class MqttClientCredentialsController extends BaseController {
     @RequestMapping(value = "/{credentialsId}", method = RequestMethod.DELETE)
     public void deleteCredentials(@PathVariable("credentialsId") String strCredentialsId) throws ThingsboardException {
         try {
-            mqttClientCredentialsService.deleteCredentials(toUUID(strCredentialsId));
+            UUID credentialsId = toUUID(strCredentialsId);
+            // loaded before the deletion, since the index has to publish the removal by the lookup key of the credentials
+            Optional<MqttClientCredentials> deletedCredentials = clientCredentialsIndexService.isEnabled() ?
+                    mqttClientCredentialsService.getCredentialsById(credentialsId) : Optional.empty();
+            mqttClientCredentialsService.deleteCredentials(credentialsId);
+            deletedCredentials.ifPresent(clientCredentialsIndexService::onCredentialsDeleted);
         } catch (Exception e) {
             throw handleException(e);
         }
@@ -119,7 +129,7 @@ public class MqttClientCredentialsController extends BaseController {
             basicMqttCredentials.setPassword(encodePasswordIfNotEmpty(changePasswordRequest.getNewPassword()));
             mqttClientCredentials.setCredentialsValue(JacksonUtil.toString(basicMqttCredentials));
 
-            return checkNotNull(mqttClientCredentialsService.saveCredentials(mqttClientCredentials));
+            return saveCredentials(mqttClientCredentials);
         } catch (Exception e) {
             throw handleException(e);
         }
@@ -136,6 +146,12 @@ public class MqttClientCredentialsController extends BaseController {
         }
     }
 
+    private MqttClientCredentials saveCredentials(MqttClientCredentials mqttClientCredentials) throws ThingsboardException {
+        MqttClientCredentials savedCredentials = checkNotNull(mqttClientCredentialsService.saveCredentials(mqttClientCredentials));
+        clientCredentialsIndexService.onCredentialsSaved(savedCredentials);
+        return savedCredentials;
+    }
+
     private String encodePasswordIfNotEmpty(String password) {
         return StringUtils.isEmpty(password) ? null : passwordEncoder.encode(password);
     }
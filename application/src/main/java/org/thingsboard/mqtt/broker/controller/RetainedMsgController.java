@@ -23,6 +23,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.thingsboard.mqtt.broker.common.data.exception.ThingsboardException;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
@@ -87,4 +89,20 @@ public class RetainedMsgController extends BaseController {
             throw handleException(e);
         }
     }
+
+    @PreAuthorize("hasAnyAuthority('SYS_ADMIN')")
+    @RequestMapping(value = "/cursor", params = {"pageSize"}, method = RequestMethod.GET)
+    @ResponseBody
+    public CursorPageData<RetainedMsgDto> getRetainedMessagesByCursor(@RequestParam int pageSize,
+                                                                      @RequestParam(required = false) String cursor,
+                                                                      @RequestParam(required = false) String textSearch,
+                                                                      @RequestParam(required = false) String sortProperty,
+                                                                      @RequestParam(required = false) String sortOrder) throws ThingsboardException {
+        try {
+            CursorPageLink pageLink = createCursorPageLink(pageSize, cursor, textSearch, sortProperty, sortOrder);
+            return checkNotNull(retainedMsgPageService.getRetainedMessages(pageLink));
+        } catch (Exception e) {
+            throw handleException(e);
+        }
+    }
 }
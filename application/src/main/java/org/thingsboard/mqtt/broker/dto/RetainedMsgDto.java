@@ -18,6 +18,7 @@ package org.thingsboard.mqtt.broker.dto;
 import lombok.Data;
 import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
 import org.thingsboard.mqtt.broker.dao.data.UserProperties;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.OffHeapRetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
 
 import java.nio.charset.StandardCharsets;
@@ -33,7 +34,16 @@ public class RetainedMsgDto {
     private final long createdTime;
     private final UserProperties userProperties;
 
+    /**
+     * @return dto of the msg or null if an off-heap msg was already replaced or cleared
+     */
     public static RetainedMsgDto newInstance(RetainedMsg retainedMsg) {
+        if (retainedMsg instanceof OffHeapRetainedMsg) {
+            retainedMsg = ((OffHeapRetainedMsg) retainedMsg).toHeapMsg();
+            if (retainedMsg == null) {
+                return null;
+            }
+        }
         return new RetainedMsgDto(
                 retainedMsg.getTopic(),
                 new String(retainedMsg.getPayload(), StandardCharsets.UTF_8),
@@ -23,6 +23,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.service.install.DatabaseSchemaService;
+import org.thingsboard.mqtt.broker.service.install.DatabaseUpgradeService;
 import org.thingsboard.mqtt.broker.service.install.SystemDataLoaderService;
 
 @Service
@@ -34,14 +35,22 @@ public class ThingsboardMqttBrokerInstallService {
     @Value("${install.upgrade:false}")
     private Boolean isUpgrade;
 
+    @Value("${install.upgrade.from_version:1.0.0}")
+    private String upgradeFromVersion;
+
     private final DatabaseSchemaService databaseSchemaService;
+    private final DatabaseUpgradeService databaseUpgradeService;
     private final ApplicationContext context;
     private final SystemDataLoaderService systemDataLoaderService;
 
     public void performInstall() {
         try {
             if (isUpgrade) {
-                log.warn("Nothing to upgrade yet...");
+                log.info("Starting ThingsBoard MQTT Broker Upgrade from version {} ...", upgradeFromVersion);
+
+                databaseUpgradeService.upgradeDatabase(upgradeFromVersion);
+
+                log.info("Upgrade finished successfully!");
             } else {
                 log.info("Starting ThingsBoard MQTT Broker Installation...");
 
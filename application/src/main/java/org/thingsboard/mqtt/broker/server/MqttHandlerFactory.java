@@ -19,4 +19,6 @@ import io.netty.handler.ssl.SslHandler;
 
 public interface MqttHandlerFactory {
     MqttSessionHandler create(SslHandler sslHandler);
+
+    MqttTopicAliasHandler createTopicAliasHandler();
 }
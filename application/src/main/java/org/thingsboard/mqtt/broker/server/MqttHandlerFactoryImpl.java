@@ -20,7 +20,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.limits.IngressRateLimitService;
 import org.thingsboard.mqtt.broker.service.limits.RateLimitService;
+import org.thingsboard.mqtt.broker.service.limits.SlowConsumerService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 
 @Service
@@ -30,12 +32,22 @@ public class MqttHandlerFactoryImpl implements MqttHandlerFactory {
     private final ClientMqttActorManager actorManager;
     private final ClientLogger clientLogger;
     private final RateLimitService rateLimitService;
+    private final IngressRateLimitService ingressRateLimitService;
+    private final SlowConsumerService slowConsumerService;
 
     @Value("${mqtt.max-in-flight-msgs:1000}")
     private int maxInFlightMsgs;
+    @Value("${mqtt.topic-alias.max-outbound-aliases:64}")
+    private int maxOutboundAliases;
 
     @Override
     public MqttSessionHandler create(SslHandler sslHandler) {
-        return new MqttSessionHandler(actorManager, clientLogger, rateLimitService, sslHandler, maxInFlightMsgs);
+        return new MqttSessionHandler(actorManager, clientLogger, rateLimitService, ingressRateLimitService, slowConsumerService,
+                sslHandler, maxInFlightMsgs);
+    }
+
+    @Override
+    public MqttTopicAliasHandler createTopicAliasHandler() {
+        return new MqttTopicAliasHandler(maxOutboundAliases);
     }
 }
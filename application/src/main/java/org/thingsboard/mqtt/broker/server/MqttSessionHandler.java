@@ -22,6 +22,7 @@ import io.netty.handler.codec.mqtt.MqttConnectMessage;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttProperties;
 import io.netty.handler.codec.mqtt.MqttPubAckMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttSubscribeMessage;
@@ -42,7 +43,9 @@ import org.thingsboard.mqtt.broker.common.data.StringUtils;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.exception.ProtocolViolationException;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.limits.IngressRateLimitService;
 import org.thingsboard.mqtt.broker.service.limits.RateLimitService;
+import org.thingsboard.mqtt.broker.service.limits.SlowConsumerService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
@@ -62,6 +65,8 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
     private final ClientMqttActorManager clientMqttActorManager;
     private final ClientLogger clientLogger;
     private final RateLimitService rateLimitService;
+    private final IngressRateLimitService ingressRateLimitService;
+    private final SlowConsumerService slowConsumerService;
     private final ClientSessionCtx clientSessionCtx;
     @Getter
     private final UUID sessionId = UUID.randomUUID();
@@ -70,10 +75,13 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
     private InetSocketAddress address;
 
     public MqttSessionHandler(ClientMqttActorManager clientMqttActorManager, ClientLogger clientLogger,
-                              RateLimitService rateLimitService, SslHandler sslHandler, int maxInFlightMsgs) {
+                              RateLimitService rateLimitService, IngressRateLimitService ingressRateLimitService,
+                              SlowConsumerService slowConsumerService, SslHandler sslHandler, int maxInFlightMsgs) {
         this.clientMqttActorManager = clientMqttActorManager;
         this.clientLogger = clientLogger;
         this.rateLimitService = rateLimitService;
+        this.ingressRateLimitService = ingressRateLimitService;
+        this.slowConsumerService = slowConsumerService;
         this.clientSessionCtx = new ClientSessionCtx(sessionId, sslHandler, maxInFlightMsgs);
     }
 
@@ -162,7 +170,10 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
 
     private void processPublish(MqttMessage msg) {
         if (checkLimits(msg)) {
-            clientMqttActorManager.processMqttMsg(clientId, NettyMqttConverter.createMqttPublishMsg(sessionId, (MqttPublishMessage) msg));
+            MqttPublishMessage publishMsg = (MqttPublishMessage) msg;
+            // node and topic level limits only slow down reading from the channel, the msg itself is processed
+            ingressRateLimitService.checkLimits(clientSessionCtx.getChannel(), publishMsg);
+            clientMqttActorManager.processMqttMsg(clientId, NettyMqttConverter.createMqttPublishMsg(sessionId, publishMsg));
         } else {
             if (log.isDebugEnabled()) {
                 log.debug("[{}][{}] Disconnecting client on rate limits detection!", clientId, sessionId);
@@ -180,6 +191,7 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
         boolean isClientIdGenerated = StringUtils.isEmpty(clientId);
         clientId = isClientIdGenerated ? generateClientId() : clientId;
         clientSessionCtx.setMqttVersion(getMqttVersion(connectMessage));
+        clientSessionCtx.setReceiveMaximum(getReceiveMaximum(connectMessage));
         clientMqttActorManager.initSession(clientId, isClientIdGenerated, new SessionInitMsg(
                 clientSessionCtx,
                 connectMessage.payload().userName(),
@@ -196,11 +208,29 @@ public class MqttSessionHandler extends ChannelInboundHandlerAdapter implements
         return MqttVersion.fromProtocolNameAndLevel(protocolName, version);
     }
 
+    private int getReceiveMaximum(MqttConnectMessage connectMessage) {
+        MqttProperties.MqttProperty<?> property = connectMessage.variableHeader().properties()
+                .getProperty(MqttProperties.MqttPropertyType.RECEIVE_MAXIMUM.value());
+        int receiveMaximum = property == null ? 0 : (Integer) property.value();
+        return receiveMaximum > 0 ? receiveMaximum : BrokerConstants.DEFAULT_RECEIVE_MAXIMUM;
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
         ctx.flush();
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (ctx.channel().isWritable()) {
+            if (log.isTraceEnabled()) {
+                log.trace("[{}][{}] Channel became writable", clientId, sessionId);
+            }
+            slowConsumerService.onChannelWritable(clientSessionCtx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         String exceptionMessage;
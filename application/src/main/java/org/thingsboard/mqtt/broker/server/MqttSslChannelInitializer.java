@@ -47,6 +47,7 @@ public class MqttSslChannelInitializer extends ChannelInitializer<SocketChannel>
 
         pipeline.addLast("decoder", new MqttDecoder(context.getMaxPayloadSize(), maxClientIdLength));
         pipeline.addLast("encoder", MqttEncoder.INSTANCE);
+        pipeline.addLast("topicAlias", handlerFactory.createTopicAliasHandler());
 
         MqttSessionHandler handler = handlerFactory.create(sslHandler);
 
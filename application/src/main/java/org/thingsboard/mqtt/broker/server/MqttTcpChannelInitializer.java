@@ -42,6 +42,7 @@ public class MqttTcpChannelInitializer extends ChannelInitializer<SocketChannel>
         ChannelPipeline pipeline = ch.pipeline();
         pipeline.addLast("decoder", new MqttDecoder(context.getMaxPayloadSize(), maxClientIdLength));
         pipeline.addLast("encoder", MqttEncoder.INSTANCE);
+        pipeline.addLast("topicAlias", handlerFactory.createTopicAliasHandler());
 
         MqttSessionHandler handler = handlerFactory.create(null);
 
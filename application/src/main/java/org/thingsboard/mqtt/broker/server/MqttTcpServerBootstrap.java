@@ -19,6 +19,7 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.ResourceLeakDetector;
@@ -54,6 +55,11 @@ public class MqttTcpServerBootstrap {
     @Value("${listener.tcp.netty.so_keep_alive}")
     private boolean keepAlive;
 
+    @Value("${listener.tcp.netty.write_buffer_low_water_mark:131072}")
+    private int writeBufferLowWaterMark;
+    @Value("${listener.tcp.netty.write_buffer_high_water_mark:262144}")
+    private int writeBufferHighWaterMark;
+
     @Value("${listener.tcp.netty.shutdown_quiet_period:0}")
     private Integer shutdownQuietPeriod;
     @Value("${listener.tcp.netty.shutdown_timeout:5}")
@@ -78,7 +84,8 @@ public class MqttTcpServerBootstrap {
         b.group(bossGroup, workerGroup)
                 .channel(NioServerSocketChannel.class)
                 .childHandler(mqttTcpChannelInitializer)
-                .childOption(ChannelOption.SO_KEEPALIVE, keepAlive);
+                .childOption(ChannelOption.SO_KEEPALIVE, keepAlive)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
 
         serverChannel = b.bind(host, port).sync().channel();
         log.info("[TCP Server] Mqtt server started!");
@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Assigns MQTT 5 Topic Aliases to outbound PUBLISH packets of one connection. The first packet for a topic carries
+ * both the topic and the alias, the following ones carry the alias only. When all aliases allowed by the client's
+ * Topic Alias Maximum are taken, the alias of the least recently used topic is reassigned.
+ * <p>
+ * Aliases are assigned here, right before encoding, so that they always follow the order in which packets
+ * are written to the connection, including retransmissions and deferred packets.
+ */
+@Slf4j
+public class MqttTopicAliasHandler extends ChannelDuplexHandler {
+
+    private final int maxOutboundAliases;
+    private final LinkedHashMap<String, Integer> topicAliases = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Getter
+    private int topicAliasMaximum;
+
+    public MqttTopicAliasHandler(int maxOutboundAliases) {
+        this.maxOutboundAliases = maxOutboundAliases;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof MqttConnectMessage) {
+            topicAliasMaximum = getTopicAliasMaximum((MqttConnectMessage) msg);
+            topicAliases.clear();
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof MqttPublishMessage) {
+            MqttPublishMessage mqttPubMsg = (MqttPublishMessage) msg;
+            if (topicAliasMaximum > 0) {
+                msg = applyTopicAlias(mqttPubMsg);
+            } else if (hasTopicAlias(mqttPubMsg.variableHeader().properties())) {
+                msg = withoutTopicAlias(mqttPubMsg);
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    MqttPublishMessage applyTopicAlias(MqttPublishMessage mqttPubMsg) {
+        MqttPublishVariableHeader variableHeader = mqttPubMsg.variableHeader();
+        String topic = variableHeader.topicName();
+        if (topic == null || topic.isEmpty()) {
+            return mqttPubMsg;
+        }
+        String topicName = topic;
+        Integer alias = topicAliases.get(topic);
+        if (alias != null) {
+            topicName = BrokerConstants.EMPTY_STR;
+        } else {
+            alias = nextAlias();
+            topicAliases.put(topic, alias);
+        }
+        MqttProperties properties = copyWithTopicAlias(variableHeader.properties(), alias);
+        MqttPublishVariableHeader aliasedHeader = new MqttPublishVariableHeader(topicName, variableHeader.packetId(), properties);
+        return new MqttPublishMessage(mqttPubMsg.fixedHeader(), aliasedHeader, mqttPubMsg.payload());
+    }
+
+    private MqttPublishMessage withoutTopicAlias(MqttPublishMessage mqttPubMsg) {
+        MqttPublishVariableHeader variableHeader = mqttPubMsg.variableHeader();
+        MqttPublishVariableHeader header = new MqttPublishVariableHeader(variableHeader.topicName(), variableHeader.packetId(),
+                copyWithoutTopicAlias(variableHeader.properties()));
+        return new MqttPublishMessage(mqttPubMsg.fixedHeader(), header, mqttPubMsg.payload());
+    }
+
+    private boolean hasTopicAlias(MqttProperties properties) {
+        return properties != null && properties.getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value()) != null;
+    }
+
+    private int nextAlias() {
+        if (topicAliases.size() < topicAliasMaximum) {
+            return topicAliases.size() + 1;
+        }
+        Iterator<Map.Entry<String, Integer>> iterator = topicAliases.entrySet().iterator();
+        Map.Entry<String, Integer> leastRecentlyUsed = iterator.next();
+        iterator.remove();
+        if (log.isTraceEnabled()) {
+            log.trace("Reassigning topic alias {} from topic {}", leastRecentlyUsed.getValue(), leastRecentlyUsed.getKey());
+        }
+        return leastRecentlyUsed.getValue();
+    }
+
+    private int getTopicAliasMaximum(MqttConnectMessage connectMessage) {
+        MqttProperties.MqttProperty<?> property = connectMessage.variableHeader().properties()
+                .getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value());
+        if (property == null) {
+            return 0;
+        }
+        return Math.min((Integer) property.value(), maxOutboundAliases);
+    }
+
+    /*
+        Properties of a PUBLISH packet can be shared by msgs sent to many subscribers, so they are copied.
+        A Topic Alias coming from the publisher is specific to its connection and is never forwarded.
+     */
+    private MqttProperties copyWithTopicAlias(MqttProperties properties, int alias) {
+        MqttProperties result = copyWithoutTopicAlias(properties);
+        result.add(new MqttProperties.IntegerProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value(), alias));
+        return result;
+    }
+
+    private MqttProperties copyWithoutTopicAlias(MqttProperties properties) {
+        MqttProperties result = new MqttProperties();
+        if (properties != null) {
+            for (MqttProperties.MqttProperty<?> property : properties.listAll()) {
+                if (property.propertyId() != MqttProperties.MqttPropertyType.TOPIC_ALIAS.value()) {
+                    result.add(property);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -15,8 +15,13 @@
  */
 package org.thingsboard.mqtt.broker.service.auth;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.common.data.client.credentials.BasicMqttCredentials;
@@ -25,22 +30,34 @@ import org.thingsboard.mqtt.broker.common.data.client.credentials.SslMqttCredent
 import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class DefaultAuthorizationRuleService implements AuthorizationRuleService {
 
+    /*
+        Compiled rules are interned by their content, so every client authenticated with the same credentials
+        shares one AuthRulePatterns instance and, through it, the same cached decisions.
+     */
+    private final Cache<List<List<String>>, AuthRulePatterns> compiledRulesCache;
     @Getter
-    private final ConcurrentMap<String, ConcurrentMap<String, Boolean>> publishAuthMap = new ConcurrentHashMap<>();
+    private final Cache<AuthDecisionKey, Boolean> authDecisionCache;
+
+    public DefaultAuthorizationRuleService(@Value("${security.mqtt.authorization.compiled-rules-cache-max-size:10000}") long compiledRulesCacheMaxSize,
+                                           @Value("${security.mqtt.authorization.decision-cache-max-size:100000}") long decisionCacheMaxSize) {
+        // evictions run on the calling thread, so the caches stay bounded even when the common pool is busy
+        this.compiledRulesCache = Caffeine.newBuilder().maximumSize(compiledRulesCacheMaxSize).executor(Runnable::run).build();
+        this.authDecisionCache = Caffeine.newBuilder().maximumSize(decisionCacheMaxSize).executor(Runnable::run).build();
+    }
 
     @Override
     public List<AuthRulePatterns> parseSslAuthorizationRule(SslMqttCredentials credentials, String clientCommonName) throws AuthenticationException {
@@ -48,7 +65,7 @@ public class DefaultAuthorizationRuleService implements AuthorizationRuleService
             throw new AuthenticationException("Cannot parse SslMqttCredentials.");
         }
 
-        List<AuthRulePatterns> authRulePatterns = credentials.getAuthRulesMapping().entrySet().stream()
+        List<PubSubAuthorizationRules> matchedRules = credentials.getAuthRulesMapping().entrySet().stream()
                 .filter(entry -> {
                     String certificateMatcherRegex = entry.getKey();
                     Pattern pattern = Pattern.compile(certificateMatcherRegex);
@@ -56,15 +73,14 @@ public class DefaultAuthorizationRuleService implements AuthorizationRuleService
                     return commonNameMatcher.find();
                 })
                 .map(Map.Entry::getValue)
-                .map(this::newAuthRulePatterns)
                 .collect(Collectors.toList());
 
-        if (authRulePatterns.isEmpty()) {
+        if (matchedRules.isEmpty()) {
             log.warn("[{}] Cannot find authorization rules for common name {}", clientCommonName, credentials);
             throw new AuthenticationException("Cannot find authorization rules for common name");
         }
 
-        return authRulePatterns;
+        return Collections.singletonList(getAuthRulePatterns(mergeRules(matchedRules)));
     }
 
     @Override
@@ -72,13 +88,35 @@ public class DefaultAuthorizationRuleService implements AuthorizationRuleService
         if (credentials == null) {
             throw new AuthenticationException("Cannot parse BasicMqttCredentials.");
         }
-        return newAuthRulePatterns(credentials.getAuthRules());
+        return getAuthRulePatterns(credentials.getAuthRules());
+    }
+
+    private PubSubAuthorizationRules mergeRules(List<PubSubAuthorizationRules> rules) {
+        if (rules.size() == 1) {
+            return rules.get(0);
+        }
+        Set<String> pubRules = new LinkedHashSet<>();
+        Set<String> subRules = new LinkedHashSet<>();
+        for (PubSubAuthorizationRules rule : rules) {
+            if (rule.getPubAuthRulePatterns() != null) {
+                pubRules.addAll(rule.getPubAuthRulePatterns());
+            }
+            if (rule.getSubAuthRulePatterns() != null) {
+                subRules.addAll(rule.getSubAuthRulePatterns());
+            }
+        }
+        return new PubSubAuthorizationRules(new ArrayList<>(pubRules), new ArrayList<>(subRules));
     }
 
-    private AuthRulePatterns newAuthRulePatterns(PubSubAuthorizationRules pubSubAuthRules) {
-        return new AuthRulePatterns(
-                compilePatterns(pubSubAuthRules.getPubAuthRulePatterns()),
-                compilePatterns(pubSubAuthRules.getSubAuthRulePatterns()));
+    private AuthRulePatterns getAuthRulePatterns(PubSubAuthorizationRules pubSubAuthRules) {
+        List<String> pubRules = toKeyPart(pubSubAuthRules.getPubAuthRulePatterns());
+        List<String> subRules = toKeyPart(pubSubAuthRules.getSubAuthRulePatterns());
+        return compiledRulesCache.get(List.of(pubRules, subRules),
+                key -> new AuthRulePatterns(compilePatterns(pubRules), compilePatterns(subRules)));
+    }
+
+    private List<String> toKeyPart(List<String> authRulePatterns) {
+        return CollectionUtils.isEmpty(authRulePatterns) ? Collections.emptyList() : List.copyOf(authRulePatterns);
     }
 
     private List<Pattern> compilePatterns(List<String> authRulePatterns) {
@@ -87,45 +125,37 @@ public class DefaultAuthorizationRuleService implements AuthorizationRuleService
     }
 
     @Override
-    public boolean isPubAuthorized(String clientId, String topic, List<AuthRulePatterns> authRulePatterns) {
-        ConcurrentMap<String, Boolean> topicAuthMap = publishAuthMap.get(clientId);
-        if (topicAuthMap == null) {
-            topicAuthMap = publishAuthMap.computeIfAbsent(clientId, s -> new ConcurrentHashMap<>());
+    public boolean isPubAuthorized(String topic, List<AuthRulePatterns> authRulePatterns) {
+        if (CollectionUtils.isEmpty(authRulePatterns)) {
+            return true;
         }
-        Boolean isAuthorized = topicAuthMap.get(topic);
-        if (isAuthorized == null) {
-            return topicAuthMap.computeIfAbsent(topic, s -> {
-                if (CollectionUtils.isEmpty(authRulePatterns)) {
-                    return true;
-                }
-                Stream<List<Pattern>> pubPatterns = authRulePatterns.stream().map(AuthRulePatterns::getPubPatterns);
-                return isAuthorized(topic, pubPatterns);
-            });
+        if (authRulePatterns.size() == 1) {
+            AuthRulePatterns rules = authRulePatterns.get(0);
+            return authDecisionCache.get(new AuthDecisionKey(rules, topic, true), key -> rules.isPubAllowed(topic));
         }
-        return isAuthorized;
+        return authRulePatterns.stream().anyMatch(rules -> rules.isPubAllowed(topic));
     }
 
     @Override
     public boolean isSubAuthorized(String topic, List<AuthRulePatterns> authRulePatterns) {
-        Stream<List<Pattern>> subPatterns = authRulePatterns.stream().map(AuthRulePatterns::getSubPatterns);
-        return isAuthorized(topic, subPatterns);
-    }
-
-    private boolean isAuthorized(String topic, Stream<List<Pattern>> stream) {
-        List<Pattern> patterns = stream.flatMap(List::stream).collect(Collectors.toList());
-        if (CollectionUtils.isEmpty(patterns)) {
+        if (CollectionUtils.isEmpty(authRulePatterns)) {
             return false;
         }
-        return patterns.stream().anyMatch(pattern -> pattern.matcher(topic).matches());
+        if (authRulePatterns.size() == 1) {
+            AuthRulePatterns rules = authRulePatterns.get(0);
+            return authDecisionCache.get(new AuthDecisionKey(rules, topic, false), key -> rules.isSubAllowed(topic));
+        }
+        return authRulePatterns.stream().anyMatch(rules -> rules.isSubAllowed(topic));
     }
 
-    @Override
-    public void evict(String clientId) {
-        if (clientId != null) {
-            var topicAuthMap = publishAuthMap.remove(clientId);
-            if (topicAuthMap != null) {
-                topicAuthMap.clear();
-            }
-        }
+    /*
+        AuthRulePatterns has identity equality, so a decision is only reused by the sessions holding the same interned rules.
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    static class AuthDecisionKey {
+        private final AuthRulePatterns rules;
+        private final String topic;
+        private final boolean publish;
     }
 }
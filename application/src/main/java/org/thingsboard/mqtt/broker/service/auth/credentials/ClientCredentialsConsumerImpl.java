@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.auth.credentials;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.provider.ClientCredentialsQueueFactory;
+import org.thingsboard.mqtt.broker.service.state.PartitionedStateConsumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClientCredentialsConsumerImpl implements ClientCredentialsConsumer {
+
+    private volatile boolean initializing = true;
+
+    @Value("${queue.client-credentials.poll-interval:100}")
+    private long pollDuration;
+
+    private final ClientCredentialsQueueFactory clientCredentialsQueueFactory;
+    private final ServiceInfoProvider serviceInfoProvider;
+    private final TbQueueAdmin queueAdmin;
+
+    private PartitionedStateConsumer<TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto>> clientCredentialsConsumer;
+
+    @PostConstruct
+    public void init() {
+        this.clientCredentialsConsumer = new PartitionedStateConsumer<>("client-credentials", pollDuration);
+    }
+
+    @Override
+    public Map<String, MqttClientCredentials> initLoad() throws QueuePersistenceException {
+        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
+        Map<String, MqttClientCredentials> allCredentials = clientCredentialsConsumer.initLoad(queueAdmin,
+                partition -> clientCredentialsQueueFactory.createConsumer(serviceInfoProvider.getServiceId() + "-" + partition, uniqueConsumerGroupId),
+                Optional.empty(),
+                msg -> isClientCredentialsProtoEmpty(msg.getValue()) ? null : ProtoConverter.convertToMqttClientCredentials(msg.getValue()));
+
+        initializing = false;
+
+        return allCredentials;
+    }
+
+    @Override
+    public void listen(ClientCredentialsChangesCallback callback) {
+        if (initializing) {
+            throw new RuntimeException("Cannot start listening before client credentials initialization is finished.");
+        }
+        clientCredentialsConsumer.listen(messages -> {
+            for (TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto> msg : messages) {
+                String credentialsId = msg.getKey();
+                String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
+                if (isClientCredentialsProtoEmpty(msg.getValue())) {
+                    callback.accept(credentialsId, serviceId, null);
+                } else {
+                    callback.accept(credentialsId, serviceId, ProtoConverter.convertToMqttClientCredentials(msg.getValue()));
+                }
+            }
+        });
+    }
+
+    private boolean isClientCredentialsProtoEmpty(QueueProtos.MqttClientCredentialsProto credentialsProto) {
+        return credentialsProto.getCredentialsId().isEmpty();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (clientCredentialsConsumer != null) {
+            clientCredentialsConsumer.destroy(queueAdmin);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.auth.credentials;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.page.PageData;
+import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
+import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
+import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+import org.thingsboard.mqtt.broker.queue.provider.ClientCredentialsQueueFactory;
+import org.thingsboard.mqtt.broker.util.BytesUtil;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Service
+public class ClientCredentialsIndexServiceImpl implements ClientCredentialsIndexService {
+
+    private final MqttClientCredentialsService clientCredentialsService;
+    private final ServiceInfoProvider serviceInfoProvider;
+    private final boolean enabled;
+    private final long retryDelayMs;
+    private final TbQueueProducer<TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto>> clientCredentialsProducer;
+    private final ScheduledExecutorService retryExecutor;
+
+    // credentialsId (the lookup hash used on CONNECT) -> credentials
+    private final ConcurrentMap<String, MqttClientCredentials> credentialsIndex = new ConcurrentHashMap<>();
+    // id -> credentialsId, to find the previous lookup key when credentials are updated or deleted
+    private final ConcurrentMap<UUID, String> credentialsIds = new ConcurrentHashMap<>();
+    // credentialsId -> id of the latest change not yet persisted, a failed change is retried only while it is the latest one
+    private final ConcurrentMap<String, Long> pendingChanges = new ConcurrentHashMap<>();
+    private final AtomicLong changeIdSeq = new AtomicLong();
+
+    private volatile boolean initialized = false;
+    private volatile boolean stopped = false;
+
+    public ClientCredentialsIndexServiceImpl(MqttClientCredentialsService clientCredentialsService,
+                                             ClientCredentialsQueueFactory clientCredentialsQueueFactory,
+                                             ServiceInfoProvider serviceInfoProvider,
+                                             @Value("${security.mqtt.credentials-index.enabled:false}") boolean enabled,
+                                             @Value("${security.mqtt.credentials-index.retry-delay-ms:1000}") long retryDelayMs) {
+        this.clientCredentialsService = clientCredentialsService;
+        this.serviceInfoProvider = serviceInfoProvider;
+        this.enabled = enabled;
+        this.retryDelayMs = retryDelayMs;
+        this.clientCredentialsProducer = enabled ? clientCredentialsQueueFactory.createProducer() : null;
+        this.retryExecutor = enabled ? Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("credentials-index-retry")) : null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void init(ClientCredentialsConsumer clientCredentialsConsumer) throws QueuePersistenceException {
+        if (!enabled) {
+            return;
+        }
+        /*
+            The database stays the source of truth on start, since the topic is empty when the index is enabled
+            on an existing cluster. Replaying the topic first positions the consumers, so every change published
+            after that point is applied on top of the state loaded from the database.
+         */
+        Map<String, MqttClientCredentials> replayedCredentials = clientCredentialsConsumer.initLoad();
+        log.info("Replayed {} client credentials changes from Kafka.", replayedCredentials.size());
+
+        loadCredentials();
+        initialized = true;
+        log.info("Loaded {} client credentials into the in-memory index.", credentialsIndex.size());
+
+        clientCredentialsConsumer.listen(this::processCredentialsUpdate);
+    }
+
+    @Override
+    public List<MqttClientCredentials> findMatchingCredentials(List<String> credentialIds) {
+        if (!initialized) {
+            return clientCredentialsService.findMatchingCredentials(credentialIds);
+        }
+        List<MqttClientCredentials> result = new ArrayList<>(credentialIds.size());
+        for (String credentialsId : credentialIds) {
+            MqttClientCredentials credentials = credentialsIndex.get(credentialsId);
+            if (credentials != null) {
+                result.add(credentials);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onCredentialsSaved(MqttClientCredentials credentials) {
+        if (!enabled) {
+            return;
+        }
+        String prevCredentialsId = putCredentials(credentials);
+        if (prevCredentialsId != null && !prevCredentialsId.equals(credentials.getCredentialsId())) {
+            persistChange(prevCredentialsId, QueueConstants.EMPTY_CLIENT_CREDENTIALS_PROTO);
+        }
+        persistChange(credentials.getCredentialsId(), ProtoConverter.convertToMqttClientCredentialsProto(credentials));
+    }
+
+    /**
+     * @param credentials deleted credentials as they were loaded from the database before the deletion. The tombstone
+     *                    is published even if the index of this node doesn't know them yet (e.g. created on another node)
+     */
+    @Override
+    public void onCredentialsDeleted(MqttClientCredentials credentials) {
+        if (!enabled) {
+            return;
+        }
+        String indexedCredentialsId = credentialsIds.remove(credentials.getId());
+        if (indexedCredentialsId != null && !indexedCredentialsId.equals(credentials.getCredentialsId())) {
+            credentialsIndex.remove(indexedCredentialsId);
+            persistChange(indexedCredentialsId, QueueConstants.EMPTY_CLIENT_CREDENTIALS_PROTO);
+        }
+        credentialsIndex.remove(credentials.getCredentialsId());
+        persistChange(credentials.getCredentialsId(), QueueConstants.EMPTY_CLIENT_CREDENTIALS_PROTO);
+    }
+
+    void processCredentialsUpdate(String credentialsId, String serviceId, MqttClientCredentials credentials) {
+        if (serviceInfoProvider.getServiceId().equals(serviceId)) {
+            if (log.isTraceEnabled()) {
+                log.trace("[{}] Msg was already processed.", credentialsId);
+            }
+            return;
+        }
+        if (credentials == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("[{}][{}] Removing remote client credentials.", serviceId, credentialsId);
+            }
+            MqttClientCredentials removed = credentialsIndex.remove(credentialsId);
+            if (removed != null) {
+                credentialsIds.remove(removed.getId(), credentialsId);
+            }
+        } else {
+            if (log.isTraceEnabled()) {
+                log.trace("[{}][{}] Saving remote client credentials.", serviceId, credentialsId);
+            }
+            putCredentials(credentials);
+        }
+    }
+
+    private String putCredentials(MqttClientCredentials credentials) {
+        String prevCredentialsId = credentialsIds.put(credentials.getId(), credentials.getCredentialsId());
+        if (prevCredentialsId != null && !prevCredentialsId.equals(credentials.getCredentialsId())) {
+            credentialsIndex.remove(prevCredentialsId);
+        }
+        credentialsIndex.put(credentials.getCredentialsId(), credentials);
+        return prevCredentialsId;
+    }
+
+    private void loadCredentials() {
+        PageLink pageLink = new PageLink(BrokerConstants.DEFAULT_PAGE_SIZE);
+        PageData<MqttClientCredentials> batch;
+        do {
+            batch = clientCredentialsService.getFullCredentials(pageLink);
+            batch.getData().forEach(this::putCredentials);
+            pageLink = pageLink.nextPageLink();
+        } while (batch.hasNext());
+    }
+
+    private void persistChange(String credentialsId, QueueProtos.MqttClientCredentialsProto credentialsProto) {
+        long changeId = changeIdSeq.incrementAndGet();
+        pendingChanges.put(credentialsId, changeId);
+        sendChange(credentialsId, credentialsProto, changeId);
+    }
+
+    /*
+        Other nodes serve credentials from their index only, so a lost change (e.g. revoked credentials) would stay
+        there until restart. Failed changes are retried until persisted, unless a newer change of the same
+        credentials was published in the meantime.
+     */
+    private void sendChange(String credentialsId, QueueProtos.MqttClientCredentialsProto credentialsProto, long changeId) {
+        TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto> request = new TbProtoQueueMsg<>(credentialsId, credentialsProto);
+        request.getHeaders().put(BrokerConstants.SERVICE_ID_HEADER, BytesUtil.stringToBytes(serviceInfoProvider.getServiceId()));
+        clientCredentialsProducer.send(request, new TbQueueCallback() {
+            @Override
+            public void onSuccess(TbQueueMsgMetadata metadata) {
+                pendingChanges.remove(credentialsId, changeId);
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Persisted client credentials change", credentialsId);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (stopped) {
+                    log.warn("[{}] Failed to persist client credentials change", credentialsId, t);
+                    return;
+                }
+                log.warn("[{}] Failed to persist client credentials change, retrying in {} ms", credentialsId, retryDelayMs, t);
+                retryExecutor.schedule(() -> retryChange(credentialsId, credentialsProto, changeId), retryDelayMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private void retryChange(String credentialsId, QueueProtos.MqttClientCredentialsProto credentialsProto, long changeId) {
+        Long latestChangeId = pendingChanges.get(credentialsId);
+        if (latestChangeId == null || latestChangeId != changeId) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Newer client credentials change was published, skipping retry.", credentialsId);
+            }
+            return;
+        }
+        sendChange(credentialsId, credentialsProto, changeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        stopped = true;
+        if (retryExecutor != null) {
+            retryExecutor.shutdownNow();
+        }
+        if (clientCredentialsProducer != null) {
+            clientCredentialsProducer.stop();
+        }
+    }
+}
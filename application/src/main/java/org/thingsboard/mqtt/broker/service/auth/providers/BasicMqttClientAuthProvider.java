@@ -31,10 +31,10 @@ import org.thingsboard.mqtt.broker.common.data.client.credentials.BasicMqttCrede
 import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
 import org.thingsboard.mqtt.broker.common.util.JacksonUtil;
 import org.thingsboard.mqtt.broker.common.util.MqttClientCredentialsUtil;
-import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
 import org.thingsboard.mqtt.broker.dao.util.protocol.ProtocolUtil;
 import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsIndexService;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 
 import java.nio.charset.StandardCharsets;
@@ -49,18 +49,18 @@ import java.util.List;
 public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
 
     private final AuthorizationRuleService authorizationRuleService;
-    private final MqttClientCredentialsService clientCredentialsService;
+    private final ClientCredentialsIndexService clientCredentialsIndexService;
     private final CacheManager cacheManager;
     private BCryptPasswordEncoder passwordEncoder;
     private HashFunction hashFunction;
 
     @Autowired
     public BasicMqttClientAuthProvider(AuthorizationRuleService authorizationRuleService,
-                                       MqttClientCredentialsService clientCredentialsService,
+                                       ClientCredentialsIndexService clientCredentialsIndexService,
                                        CacheManager cacheManager,
                                        @Lazy BCryptPasswordEncoder passwordEncoder) {
         this.authorizationRuleService = authorizationRuleService;
-        this.clientCredentialsService = clientCredentialsService;
+        this.clientCredentialsIndexService = clientCredentialsIndexService;
         this.cacheManager = cacheManager;
         this.passwordEncoder = passwordEncoder;
         this.hashFunction = Hashing.sha256();
@@ -85,7 +85,7 @@ public class BasicMqttClientAuthProvider implements MqttClientAuthProvider {
 
     private MqttClientCredentials authWithBasicCredentials(String clientId, String username, byte[] passwordBytes) {
         List<String> credentialIds = getCredentialIds(clientId, username);
-        List<MqttClientCredentials> matchingCredentialsList = clientCredentialsService.findMatchingCredentials(credentialIds);
+        List<MqttClientCredentials> matchingCredentialsList = clientCredentialsIndexService.findMatchingCredentials(credentialIds);
         if (log.isDebugEnabled()) {
             log.debug("Found credentials {} for credentialIds {}", matchingCredentialsList, credentialIds);
         }
@@ -23,10 +23,10 @@ import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.data.client.credentials.SslMqttCredentials;
 import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
 import org.thingsboard.mqtt.broker.common.util.JacksonUtil;
-import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
 import org.thingsboard.mqtt.broker.dao.util.protocol.ProtocolUtil;
 import org.thingsboard.mqtt.broker.exception.AuthenticationException;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsIndexService;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 import org.thingsboard.mqtt.broker.util.SslUtil;
 
@@ -41,7 +41,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class SslMqttClientAuthProvider implements MqttClientAuthProvider {
 
-    private final MqttClientCredentialsService clientCredentialsService;
+    private final ClientCredentialsIndexService clientCredentialsIndexService;
     private final AuthorizationRuleService authorizationRuleService;
 
     @Value("${listener.ssl.config.skip_validity_check_for_client_cert:false}")
@@ -97,7 +97,7 @@ public class SslMqttClientAuthProvider implements MqttClientAuthProvider {
                 log.trace("[{}] Trying to authorize client with common name - {}.", clientId, commonName);
             }
             String sslCredentialsId = ProtocolUtil.sslCredentialsId(commonName);
-            List<MqttClientCredentials> matchingCredentials = clientCredentialsService.findMatchingCredentials(Collections.singletonList(sslCredentialsId));
+            List<MqttClientCredentials> matchingCredentials = clientCredentialsIndexService.findMatchingCredentials(Collections.singletonList(sslCredentialsId));
             if (!matchingCredentials.isEmpty()) {
                 return matchingCredentials.get(0);
             }
@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.install;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.dao.util.PsqlDao;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+@Service
+@PsqlDao
+@Profile("install")
+@Slf4j
+public class PsqlDatabaseUpgradeService implements DatabaseUpgradeService {
+
+    private static final String SQL_DIR = "sql";
+    private static final String UPGRADE_DIR = "upgrade";
+    private static final String SCHEMA_UPDATE_SQL = "schema-update.sql";
+
+    @Value("${spring.datasource.url}")
+    private String dbUrl;
+
+    @Value("${spring.datasource.username}")
+    private String dbUserName;
+
+    @Value("${spring.datasource.password}")
+    private String dbPassword;
+
+    @Autowired
+    private InstallScripts installScripts;
+
+    /**
+     * The update script is idempotent, so it is applied as a whole regardless of the version the install comes from.
+     */
+    @Override
+    public void upgradeDatabase(String fromVersion) throws Exception {
+        log.info("Updating SQL DataBase schema from version {} ...", fromVersion);
+        Path schemaUpdateFile = Paths.get(installScripts.getDataDir(), SQL_DIR, UPGRADE_DIR, SCHEMA_UPDATE_SQL);
+        String sql = Files.readString(schemaUpdateFile);
+        try (Connection conn = DriverManager.getConnection(dbUrl, dbUserName, dbPassword)) {
+            conn.createStatement().execute(sql); //NOSONAR, ignoring because method used to upgrade thingsboard_mqtt_broker database schema
+        }
+        log.info("SQL DataBase schema updated.");
+    }
+}
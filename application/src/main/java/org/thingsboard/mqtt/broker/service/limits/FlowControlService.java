@@ -0,0 +1,33 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.function.Consumer;
+
+public interface FlowControlService {
+
+    /**
+     * Sends the QoS 1 and 2 PUBLISH msg with the given sender while the number of unacknowledged msgs of the client
+     * is below its Receive Maximum. Otherwise, the msg is held in the session's pending queue until PUBACK or PUBCOMP
+     * frees the quota. The client is disconnected once its pending msgs exceed the configured limit.
+     */
+    void sendPublish(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> sender);
+
+    void onOutboundMsgAcknowledged(ClientSessionCtx sessionCtx);
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.DeferredPublishesCtx;
+import org.thingsboard.mqtt.broker.session.DeferredPublishesCtx.DeferredPublish;
+import org.thingsboard.mqtt.broker.session.DisconnectReason;
+import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
+
+@Slf4j
+@Service
+public class FlowControlServiceImpl implements FlowControlService {
+
+    private final ClientMqttActorManager clientMqttActorManager;
+    private final TbMessageStatsReportClient tbMessageStatsReportClient;
+    private final AtomicLong delayedMsgsCounter;
+    private final AtomicLong disconnectsCounter;
+
+    @Setter
+    @Value("${mqtt.flow-control.enabled:true}")
+    private boolean enabled;
+    @Setter
+    @Value("${mqtt.flow-control.max-pending-msgs:1000}")
+    private int maxPendingMsgs;
+
+    public FlowControlServiceImpl(ClientMqttActorManager clientMqttActorManager,
+                                  StatsManager statsManager,
+                                  TbMessageStatsReportClient tbMessageStatsReportClient) {
+        this.clientMqttActorManager = clientMqttActorManager;
+        this.tbMessageStatsReportClient = tbMessageStatsReportClient;
+        this.delayedMsgsCounter = statsManager.createReceiveMaxDelayedMsgsCounter();
+        this.disconnectsCounter = statsManager.createReceiveMaxDisconnectsCounter();
+    }
+
+    @Override
+    public void sendPublish(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> sender) {
+        if (mqttPubMsg.fixedHeader().qosLevel() == MqttQoS.AT_MOST_ONCE) {
+            sender.accept(mqttPubMsg);
+            return;
+        }
+        if (!enabled) {
+            send(sessionCtx, mqttPubMsg, sender);
+            return;
+        }
+        DeferredPublishesCtx pendingPublishesCtx = sessionCtx.getReceiveMaxPendingPublishesCtx();
+        int discardedMsgs;
+        synchronized (pendingPublishesCtx) {
+            if (pendingPublishesCtx.isEmpty() && hasQuota(sessionCtx)) {
+                send(sessionCtx, mqttPubMsg, sender);
+                return;
+            }
+            pendingPublishesCtx.defer(mqttPubMsg, sender);
+            delayedMsgsCounter.incrementAndGet();
+            if (pendingPublishesCtx.size() <= maxPendingMsgs) {
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Receive Maximum {} reached, pending PUBLISH msgs {}",
+                            sessionCtx.getClientId(), sessionCtx.getReceiveMaximum(), pendingPublishesCtx.size());
+                }
+                return;
+            }
+            discardedMsgs = pendingPublishesCtx.release();
+        }
+        onPendingLimitExceeded(sessionCtx, discardedMsgs);
+    }
+
+    @Override
+    public void onOutboundMsgAcknowledged(ClientSessionCtx sessionCtx) {
+        sessionCtx.onOutboundMsgAcknowledged();
+        DeferredPublishesCtx pendingPublishesCtx = sessionCtx.getReceiveMaxPendingPublishesCtx();
+        boolean sent = false;
+        boolean quotaAvailable;
+        synchronized (pendingPublishesCtx) {
+            DeferredPublish pendingPublish;
+            while (hasQuota(sessionCtx) && (pendingPublish = pendingPublishesCtx.poll()) != null) {
+                try {
+                    send(sessionCtx, pendingPublish.getMqttPubMsg(), pendingPublish.getSender());
+                    sent = true;
+                } catch (Exception e) {
+                    log.warn("[{}][{}] Failed to send pending PUBLISH msg to MQTT client.",
+                            sessionCtx.getClientId(), sessionCtx.getSessionId(), e);
+                    tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+                }
+            }
+            quotaAvailable = pendingPublishesCtx.isEmpty() && hasQuota(sessionCtx);
+        }
+        if (sent && sessionCtx.getChannel() != null) {
+            sessionCtx.getChannel().flush();
+        }
+        if (quotaAvailable) {
+            sessionCtx.notifyOutboundQuotaWaiter();
+        }
+    }
+
+    private void send(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> sender) {
+        sessionCtx.onOutboundMsgSent();
+        try {
+            sender.accept(mqttPubMsg);
+        } catch (Exception e) {
+            sessionCtx.onOutboundMsgAcknowledged();
+            throw e;
+        }
+    }
+
+    private boolean hasQuota(ClientSessionCtx sessionCtx) {
+        return sessionCtx.getInFlightOutboundMsgs() < sessionCtx.getReceiveMaximum();
+    }
+
+    private void onPendingLimitExceeded(ClientSessionCtx sessionCtx, int discardedMsgs) {
+        log.warn("[{}][{}] Pending msgs exceeded the limit of {} while Receive Maximum {} is reached, disconnecting client. " +
+                        "Discarded {} msgs", sessionCtx.getClientId(), sessionCtx.getSessionId(), maxPendingMsgs,
+                sessionCtx.getReceiveMaximum(), discardedMsgs);
+        for (int i = 0; i < discardedMsgs; i++) {
+            tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+        }
+        disconnectsCounter.incrementAndGet();
+        clientMqttActorManager.disconnect(sessionCtx.getClientId(), new MqttDisconnectMsg(sessionCtx.getSessionId(),
+                new DisconnectReason(DisconnectReasonType.ON_QUOTA_EXCEEDED, "Receive Maximum pending msgs limit exceeded")));
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+
+public interface IngressRateLimitService {
+
+    /**
+     * Consumes the node level and topic filter level quotas for the incoming PUBLISH msg. The msg is accepted anyway,
+     * but once any of the quotas is exhausted reading from the channel is paused until that quota is refilled,
+     * so the client is slowed down by TCP backpressure instead of being disconnected.
+     *
+     * @return true if the msg fits into all the limits
+     */
+    boolean checkLimits(ChannelHandlerContext channelCtx, MqttPublishMessage msg);
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.StringUtils;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.common.util.TbRateLimits;
+import org.thingsboard.mqtt.broker.config.IngressRateLimitsConfiguration;
+import org.thingsboard.mqtt.broker.config.IngressRateLimitsConfiguration.TopicFilterLimit;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Service
+public class IngressRateLimitServiceImpl implements IngressRateLimitService {
+
+    static final String NODE_MSGS_LIMITER = "nodeMsgs";
+    static final String NODE_BYTES_LIMITER = "nodeBytes";
+    static final String TOPIC_FILTER_LIMITER_PREFIX = "topicFilter:";
+
+    private final boolean enabled;
+    private final long maxPauseNanos;
+    private final Limiter nodeMsgsLimiter;
+    private final Limiter nodeBytesLimiter;
+    private final List<TopicFilterLimiter> topicFilterLimiters = new ArrayList<>();
+
+    public IngressRateLimitServiceImpl(IngressRateLimitsConfiguration config, StatsManager statsManager) {
+        this.enabled = config.isEnabled();
+        this.maxPauseNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxPauseMs());
+        this.nodeMsgsLimiter = StringUtils.isEmpty(config.getNodeMsgsConfig()) ? null :
+                new Limiter(NODE_MSGS_LIMITER, config.getNodeMsgsConfig(), statsManager);
+        this.nodeBytesLimiter = StringUtils.isEmpty(config.getNodeBytesConfig()) ? null :
+                new Limiter(NODE_BYTES_LIMITER, config.getNodeBytesConfig(), statsManager);
+        for (TopicFilterLimit topicFilterLimit : config.getTopicFilters()) {
+            topicFilterLimiters.add(new TopicFilterLimiter(topicFilterLimit, statsManager));
+        }
+        if (enabled) {
+            log.info("Ingress rate limits initialized: node msgs - {}, node bytes - {}, topic filters - {}.",
+                    config.getNodeMsgsConfig(), config.getNodeBytesConfig(), config.getTopicFilters());
+        }
+    }
+
+    @Override
+    public boolean checkLimits(ChannelHandlerContext channelCtx, MqttPublishMessage msg) {
+        if (!enabled) {
+            return true;
+        }
+        long nanosToWait = 0;
+        if (nodeMsgsLimiter != null) {
+            nanosToWait = nodeMsgsLimiter.tryConsume(1);
+        }
+        if (nodeBytesLimiter != null) {
+            nanosToWait = Math.max(nanosToWait, nodeBytesLimiter.tryConsume(msg.payload().readableBytes()));
+        }
+        if (!topicFilterLimiters.isEmpty()) {
+            String topic = msg.variableHeader().topicName();
+            for (TopicFilterLimiter limiter : topicFilterLimiters) {
+                if (limiter.matches(topic)) {
+                    nanosToWait = Math.max(nanosToWait, limiter.tryConsume(1));
+                }
+            }
+        }
+        if (nanosToWait == 0) {
+            return true;
+        }
+        pauseReading(channelCtx, Math.max(1, Math.min(nanosToWait, maxPauseNanos)));
+        return false;
+    }
+
+    private void pauseReading(ChannelHandlerContext channelCtx, long pauseNanos) {
+        Channel channel = channelCtx.channel();
+        if (!channel.config().isAutoRead()) {
+            // already paused, the scheduled resume will turn reading back on
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Ingress rate limits detected, pausing reading for {} ns.", channel.id(), pauseNanos);
+        }
+        channel.config().setAutoRead(false);
+        channelCtx.executor().schedule(() -> resumeReading(channel), pauseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void resumeReading(Channel channel) {
+        if (channel.isActive()) {
+            if (log.isTraceEnabled()) {
+                log.trace("[{}] Resuming reading after ingress rate limits pause.", channel.id());
+            }
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    private static class Limiter {
+
+        private final TbRateLimits rateLimits;
+        private final AtomicLong throttledMsgsCounter;
+
+        Limiter(String name, String limitsConfig, StatsManager statsManager) {
+            this.rateLimits = new TbRateLimits(limitsConfig);
+            this.throttledMsgsCounter = statsManager.createIngressThrottledMsgsCounter(name);
+        }
+
+        long tryConsume(long tokens) {
+            long nanosToWait = rateLimits.tryConsumeOrGetNanosToWait(tokens);
+            if (nanosToWait > 0) {
+                throttledMsgsCounter.incrementAndGet();
+            }
+            return nanosToWait;
+        }
+    }
+
+    private static class TopicFilterLimiter extends Limiter {
+
+        private final String[] filterLevels;
+
+        TopicFilterLimiter(TopicFilterLimit topicFilterLimit, StatsManager statsManager) {
+            super(TOPIC_FILTER_LIMITER_PREFIX + topicFilterLimit.getFilter(), topicFilterLimit.getConfig(), statsManager);
+            this.filterLevels = topicFilterLimit.getFilter().split(String.valueOf(BrokerConstants.TOPIC_DELIMITER), -1);
+        }
+
+        boolean matches(String topic) {
+            if (topic.startsWith("$") && isWildcard(filterLevels[0])) {
+                return false;
+            }
+            int length = topic.length();
+            int levelStart = 0;
+            for (String filterLevel : filterLevels) {
+                if (BrokerConstants.MULTI_LEVEL_WILDCARD.equals(filterLevel)) {
+                    return true;
+                }
+                if (levelStart > length) {
+                    return false;
+                }
+                int levelEnd = topic.indexOf(BrokerConstants.TOPIC_DELIMITER, levelStart);
+                if (levelEnd < 0) {
+                    levelEnd = length;
+                }
+                if (!BrokerConstants.SINGLE_LEVEL_WILDCARD.equals(filterLevel)
+                        && !(filterLevel.length() == levelEnd - levelStart && topic.startsWith(filterLevel, levelStart))) {
+                    return false;
+                }
+                levelStart = levelEnd + 1;
+            }
+            return levelStart > length;
+        }
+
+        private boolean isWildcard(String filterLevel) {
+            return BrokerConstants.MULTI_LEVEL_WILDCARD.equals(filterLevel) || BrokerConstants.SINGLE_LEVEL_WILDCARD.equals(filterLevel);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.ReferenceCountUtil;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.DeferredPublishesCtx;
+import org.thingsboard.mqtt.broker.session.DeferredPublishesCtx.DeferredPublish;
+import org.thingsboard.mqtt.broker.session.DisconnectReason;
+import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
+
+@Slf4j
+@Service
+public class SlowConsumerServiceImpl implements SlowConsumerService {
+
+    private final ClientMqttActorManager clientMqttActorManager;
+    private final TbMessageStatsReportClient tbMessageStatsReportClient;
+    private final AtomicLong droppedMsgsCounter;
+    private final AtomicLong deferredMsgsCounter;
+    private final AtomicLong disconnectsCounter;
+
+    @Setter
+    @Value("${mqtt.slow-consumer.enabled:true}")
+    private boolean enabled;
+    @Setter
+    @Value("${mqtt.slow-consumer.max-deferred-bytes:1048576}")
+    private long maxDeferredBytes;
+
+    public SlowConsumerServiceImpl(ClientMqttActorManager clientMqttActorManager,
+                                   StatsManager statsManager,
+                                   TbMessageStatsReportClient tbMessageStatsReportClient) {
+        this.clientMqttActorManager = clientMqttActorManager;
+        this.tbMessageStatsReportClient = tbMessageStatsReportClient;
+        this.droppedMsgsCounter = statsManager.createSlowConsumerDroppedMsgsCounter();
+        this.deferredMsgsCounter = statsManager.createSlowConsumerDeferredMsgsCounter();
+        this.disconnectsCounter = statsManager.createSlowConsumerDisconnectsCounter();
+    }
+
+    @Override
+    public void sendPublish(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> sender) {
+        if (!enabled) {
+            sender.accept(mqttPubMsg);
+            return;
+        }
+        DeferredPublishesCtx deferredPublishesCtx = sessionCtx.getDeferredPublishesCtx();
+        int discardedMsgs;
+        synchronized (deferredPublishesCtx) {
+            boolean writable = isWritable(sessionCtx);
+            if (mqttPubMsg.fixedHeader().qosLevel() == MqttQoS.AT_MOST_ONCE) {
+                if (writable) {
+                    sender.accept(mqttPubMsg);
+                } else {
+                    dropQoS0Msg(sessionCtx, mqttPubMsg);
+                }
+                return;
+            }
+            if (writable && deferredPublishesCtx.isEmpty()) {
+                sender.accept(mqttPubMsg);
+                return;
+            }
+            long deferredBytes = deferredPublishesCtx.defer(mqttPubMsg, sender);
+            deferredMsgsCounter.incrementAndGet();
+            if (deferredBytes <= maxDeferredBytes) {
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Deferred PUBLISH msg for slow consumer, deferred bytes {}", sessionCtx.getClientId(), deferredBytes);
+                }
+                return;
+            }
+            discardedMsgs = deferredPublishesCtx.release();
+        }
+        onDeferredLimitExceeded(sessionCtx, discardedMsgs);
+    }
+
+    @Override
+    public void onChannelWritable(ClientSessionCtx sessionCtx) {
+        DeferredPublishesCtx deferredPublishesCtx = sessionCtx.getDeferredPublishesCtx();
+        boolean sent = false;
+        synchronized (deferredPublishesCtx) {
+            DeferredPublish deferredPublish;
+            while (isWritable(sessionCtx) && (deferredPublish = deferredPublishesCtx.poll()) != null) {
+                try {
+                    deferredPublish.send();
+                    sent = true;
+                } catch (Exception e) {
+                    log.warn("[{}][{}] Failed to send deferred PUBLISH msg to MQTT client.",
+                            sessionCtx.getClientId(), sessionCtx.getSessionId(), e);
+                    tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+                }
+            }
+        }
+        if (sent) {
+            sessionCtx.getChannel().flush();
+        }
+    }
+
+    private void dropQoS0Msg(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg) {
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Dropping QoS 0 PUBLISH msg for slow consumer", sessionCtx.getClientId());
+        }
+        ReferenceCountUtil.safeRelease(mqttPubMsg);
+        droppedMsgsCounter.incrementAndGet();
+        tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+    }
+
+    private void onDeferredLimitExceeded(ClientSessionCtx sessionCtx, int discardedMsgs) {
+        log.warn("[{}][{}] Deferred msgs exceeded the limit of {} bytes, disconnecting slow consumer. Discarded {} msgs",
+                sessionCtx.getClientId(), sessionCtx.getSessionId(), maxDeferredBytes, discardedMsgs);
+        droppedMsgsCounter.addAndGet(discardedMsgs);
+        for (int i = 0; i < discardedMsgs; i++) {
+            tbMessageStatsReportClient.reportStats(DROPPED_MSGS);
+        }
+        disconnectsCounter.incrementAndGet();
+        clientMqttActorManager.disconnect(sessionCtx.getClientId(), new MqttDisconnectMsg(sessionCtx.getSessionId(),
+                new DisconnectReason(DisconnectReasonType.ON_QUOTA_EXCEEDED, "Slow consumer exceeded deferred msgs limit")));
+    }
+
+    private boolean isWritable(ClientSessionCtx sessionCtx) {
+        return sessionCtx.getChannel() == null || sessionCtx.getChannel().channel().isWritable();
+    }
+}
@@ -38,6 +38,8 @@ import io.netty.handler.codec.mqtt.MqttUnsubAckMessage;
 import io.netty.handler.codec.mqtt.MqttUnsubAckPayload;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.OffHeapRetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
 import org.thingsboard.mqtt.broker.util.MqttReasonCode;
 
@@ -154,8 +156,26 @@ public class DefaultMqttMessageCreator implements MqttMessageGenerator {
 
     @Override
     public MqttPublishMessage createPubRetainMsg(int msgId, RetainedMsg retainedMsg) {
+        if (retainedMsg instanceof OffHeapRetainedMsg) {
+            return getOffHeapMqttPublishMessage(msgId, (OffHeapRetainedMsg) retainedMsg);
+        }
         return getMqttPublishMessage(false, retainedMsg.getQosLevel(), true,
-                retainedMsg.getTopic(), msgId, retainedMsg.getPayload(), retainedMsg.getProperties());
+                retainedMsg.getTopic(), msgId, retainedMsg.getPayload(), getRetainedMsgProperties(retainedMsg));
+    }
+
+    private MqttProperties getRetainedMsgProperties(RetainedMsg retainedMsg) {
+        MqttProperties properties = retainedMsg.getProperties();
+        if (retainedMsg.getMsgExpiryInterval() == null) {
+            return properties;
+        }
+        // the stored properties are shared by all deliveries of the retained msg
+        MqttProperties result = new MqttProperties();
+        if (properties != null) {
+            properties.listAll().forEach(result::add);
+        }
+        MqttPropertiesUtil.setRemainingMsgExpiryInterval(result, retainedMsg.getCreatedTime(),
+                retainedMsg.getMsgExpiryInterval(), System.currentTimeMillis());
+        return result;
     }
 
     private MqttPublishMessage getMqttPublishMessage(boolean isDup, int qos, boolean isRetain,
@@ -168,6 +188,19 @@ public class DefaultMqttMessageCreator implements MqttMessageGenerator {
         return new MqttPublishMessage(mqttFixedHeader, header, payload);
     }
 
+    private MqttPublishMessage getOffHeapMqttPublishMessage(int msgId, OffHeapRetainedMsg retainedMsg) {
+        MqttProperties properties = getRetainedMsgProperties(retainedMsg);
+        ByteBuf payload = ALLOCATOR.buffer(retainedMsg.getPayloadLength());
+        if (!retainedMsg.writePayloadTo(payload)) {
+            payload.release();
+            return null;
+        }
+        MqttFixedHeader mqttFixedHeader =
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.valueOf(retainedMsg.getQosLevel()), true, 0);
+        MqttPublishVariableHeader header = new MqttPublishVariableHeader(retainedMsg.getTopic(), msgId, properties);
+        return new MqttPublishMessage(mqttFixedHeader, header, payload);
+    }
+
     @Override
     public MqttMessage createPingRespMsg() {
         return new MqttMessage(new MqttFixedHeader(PINGRESP, false, AT_MOST_ONCE, false, 0));
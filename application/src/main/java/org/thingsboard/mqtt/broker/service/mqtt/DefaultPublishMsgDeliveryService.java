@@ -20,6 +20,8 @@ import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.limits.FlowControlService;
+import org.thingsboard.mqtt.broker.service.limits.SlowConsumerService;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.RetransmissionService;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
@@ -42,15 +44,21 @@ public class DefaultPublishMsgDeliveryService implements PublishMsgDeliveryServi
     private final RetransmissionService retransmissionService;
     private final DeliveryTimerStats deliveryTimerStats;
     private final TbMessageStatsReportClient tbMessageStatsReportClient;
+    private final SlowConsumerService slowConsumerService;
+    private final FlowControlService flowControlService;
 
     public DefaultPublishMsgDeliveryService(MqttMessageGenerator mqttMessageGenerator,
                                             RetransmissionService retransmissionService,
                                             StatsManager statsManager,
-                                            TbMessageStatsReportClient tbMessageStatsReportClient) {
+                                            TbMessageStatsReportClient tbMessageStatsReportClient,
+                                            SlowConsumerService slowConsumerService,
+                                            FlowControlService flowControlService) {
         this.mqttMessageGenerator = mqttMessageGenerator;
         this.retransmissionService = retransmissionService;
         this.deliveryTimerStats = statsManager.getDeliveryTimerStats();
         this.tbMessageStatsReportClient = tbMessageStatsReportClient;
+        this.slowConsumerService = slowConsumerService;
+        this.flowControlService = flowControlService;
     }
 
     @Override
@@ -80,6 +88,13 @@ public class DefaultPublishMsgDeliveryService implements PublishMsgDeliveryServi
         }
         int packetId = sessionCtx.getMsgIdSeq().nextMsgId();
         MqttPublishMessage mqttPubMsg = mqttMessageGenerator.createPubRetainMsg(packetId, retainedMsg);
+        if (mqttPubMsg == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Retained msg for topic {} was replaced or cleared before sending, skipping it",
+                        sessionCtx.getClientId(), retainedMsg.getTopic());
+            }
+            return;
+        }
         sendPublishMsgToClient(sessionCtx, mqttPubMsg);
     }
 
@@ -110,7 +125,8 @@ public class DefaultPublishMsgDeliveryService implements PublishMsgDeliveryServi
     private void processSendPublish(ClientSessionCtx sessionCtx, MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> processor) {
         long startTime = System.nanoTime();
         try {
-            processor.accept(mqttPubMsg);
+            flowControlService.sendPublish(sessionCtx, mqttPubMsg,
+                    msg -> slowConsumerService.sendPublish(sessionCtx, msg, processor));
         } catch (Exception e) {
             log.warn("[{}][{}] Failed to send PUBLISH msg to MQTT client.",
                     sessionCtx.getClientId(), sessionCtx.getSessionId(), e);
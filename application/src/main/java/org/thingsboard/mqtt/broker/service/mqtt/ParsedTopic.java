@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+
+import java.util.Arrays;
+
+/**
+ * Topic name split into segments in a single pass. Segment strings are created lazily and at most once,
+ * so validation, retained msg processing and subscription trie matching share the same parsing work.
+ * <p>
+ * Segmentation is the one used by the tries: a trailing empty segment (topic ending with '/') is not counted.
+ */
+public final class ParsedTopic {
+
+    private static final char MULTI_LEVEL_WILDCARD_CHAR = BrokerConstants.MULTI_LEVEL_WILDCARD.charAt(0);
+    private static final char SINGLE_LEVEL_WILDCARD_CHAR = BrokerConstants.SINGLE_LEVEL_WILDCARD.charAt(0);
+
+    private final String topic;
+    // exclusive end index of every segment, segment i starts right after the end of segment i - 1
+    private final int[] segmentEnds;
+    private final String[] segments;
+    private final int delimitersCount;
+    private final boolean containsWildcard;
+    private final boolean containsNullChar;
+    private final int hash;
+
+    private ParsedTopic(String topic, int[] segmentEnds, int delimitersCount, boolean containsWildcard, boolean containsNullChar) {
+        this.topic = topic;
+        this.segmentEnds = segmentEnds;
+        this.segments = new String[segmentEnds.length];
+        this.delimitersCount = delimitersCount;
+        this.containsWildcard = containsWildcard;
+        this.containsNullChar = containsNullChar;
+        this.hash = topic.hashCode();
+    }
+
+    public static ParsedTopic parse(String topic) {
+        if (topic == null) {
+            throw new IllegalArgumentException("Topic cannot be null");
+        }
+        int length = topic.length();
+        int[] segmentEnds = new int[8];
+        int segmentsCount = 0;
+        boolean containsWildcard = false;
+        boolean containsNullChar = false;
+        for (int i = 0; i < length; i++) {
+            char c = topic.charAt(i);
+            if (c == BrokerConstants.TOPIC_DELIMITER) {
+                if (segmentsCount == segmentEnds.length) {
+                    segmentEnds = Arrays.copyOf(segmentEnds, segmentsCount * 2);
+                }
+                segmentEnds[segmentsCount++] = i;
+            } else if (c == MULTI_LEVEL_WILDCARD_CHAR || c == SINGLE_LEVEL_WILDCARD_CHAR) {
+                containsWildcard = true;
+            } else if (c == '\u0000') {
+                containsNullChar = true;
+            }
+        }
+        int delimitersCount = segmentsCount;
+        int lastSegmentStart = segmentsCount == 0 ? 0 : segmentEnds[segmentsCount - 1] + 1;
+        if (lastSegmentStart < length) {
+            if (segmentsCount == segmentEnds.length) {
+                segmentEnds = Arrays.copyOf(segmentEnds, segmentsCount + 1);
+            }
+            segmentEnds[segmentsCount++] = length;
+        }
+        return new ParsedTopic(topic, Arrays.copyOf(segmentEnds, segmentsCount), delimitersCount, containsWildcard, containsNullChar);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getSegmentsCount() {
+        return segmentEnds.length;
+    }
+
+    public int getDelimitersCount() {
+        return delimitersCount;
+    }
+
+    public int getSegmentStart(int level) {
+        return level == 0 ? 0 : segmentEnds[level - 1] + 1;
+    }
+
+    public int getSegmentEnd(int level) {
+        return segmentEnds[level];
+    }
+
+    public String getSegment(int level) {
+        String segment = segments[level];
+        if (segment == null) {
+            segment = topic.substring(getSegmentStart(level), segmentEnds[level]);
+            segments[level] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Compares the segment in place, without creating the segment string.
+     */
+    public boolean segmentEquals(int level, String value) {
+        int start = getSegmentStart(level);
+        return value.length() == segmentEnds[level] - start && topic.regionMatches(start, value, 0, value.length());
+    }
+
+    public boolean isSystemTopic() {
+        return !topic.isEmpty() && topic.charAt(0) == '$';
+    }
+
+    public boolean containsWildcard() {
+        return containsWildcard;
+    }
+
+    public boolean containsNullChar() {
+        return containsNullChar;
+    }
+
+    public int length() {
+        return topic.length();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ParsedTopic that = (ParsedTopic) o;
+        return hash == that.hash && topic.equals(that.topic);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return topic;
+    }
+}
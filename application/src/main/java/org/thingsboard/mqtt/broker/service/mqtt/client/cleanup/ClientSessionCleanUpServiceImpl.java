@@ -88,6 +88,9 @@ public class ClientSessionCleanUpServiceImpl implements ClientSessionCleanUpServ
         return !sessionId.equals(currentSessionId);
     }
 
+    /*
+        Expired sessions are cleared by ClientSessionExpiryService as soon as they expire, this full scan is only a fallback
+     */
     @Scheduled(cron = "${mqtt.client-session-expiry.cron}", zone = "${mqtt.client-session-expiry.zone}")
     public void cleanUp() {
         log.info("Starting cleaning up expired ClientSessions.");
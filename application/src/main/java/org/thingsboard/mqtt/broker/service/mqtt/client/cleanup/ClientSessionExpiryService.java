@@ -0,0 +1,35 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.client.cleanup;
+
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+
+import java.util.Map;
+
+public interface ClientSessionExpiryService {
+
+    /**
+     * Indexes the disconnected client sessions of the current node by their expiry time and starts cleaning up
+     * each of them as soon as it expires.
+     */
+    void init(Map<String, ClientSessionInfo> clientSessionInfos);
+
+    /**
+     * Schedules the expiry of the session once the client disconnects and cancels it once the client reconnects
+     * or the session is cleared.
+     */
+    void onSessionChanged(String clientId, ClientSessionInfo clientSessionInfo);
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.client.cleanup;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClientSessionExpiryServiceImpl implements ClientSessionExpiryService {
+
+    private static final Comparator<SessionExpiry> EXPIRY_ORDER = Comparator
+            .comparingLong(SessionExpiry::getExpiryTime)
+            .thenComparing(SessionExpiry::getClientId);
+
+    private final ClientSessionCache clientSessionCache;
+    private final ClientSessionEventService clientSessionEventService;
+    private final ServiceInfoProvider serviceInfoProvider;
+
+    @Setter
+    @Value("${mqtt.client-session-expiry.ttl:0}")
+    private int ttl;
+    @Value("${mqtt.client-session-expiry.check-interval-ms:1000}")
+    private long checkIntervalMs;
+
+    @Setter(AccessLevel.PACKAGE)
+    private Clock clock = Clock.systemUTC();
+
+    /*
+        Both structures are guarded by 'this'. The set is ordered by expiry time, the map points to the entry
+        of each client, so that rescheduling or cancelling the expiry does not require a scan.
+     */
+    private final NavigableSet<SessionExpiry> expiryQueue = new TreeSet<>(EXPIRY_ORDER);
+    private final Map<String, SessionExpiry> sessionExpiries = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void init(Map<String, ClientSessionInfo> clientSessionInfos) {
+        clientSessionInfos.forEach(this::onSessionChanged);
+        log.info("Indexed {} expiring client sessions.", getScheduledExpiriesCount());
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("client-session-expiry-scheduler"));
+        this.scheduler.scheduleWithFixedDelay(this::processExpiredSessions, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onSessionChanged(String clientId, ClientSessionInfo clientSessionInfo) {
+        Long expiryTime = clientSessionInfo == null ? null : getExpiryTime(clientSessionInfo);
+        synchronized (this) {
+            SessionExpiry previous = sessionExpiries.remove(clientId);
+            if (previous != null) {
+                expiryQueue.remove(previous);
+            }
+            if (expiryTime != null) {
+                SessionExpiry sessionExpiry = new SessionExpiry(clientId, clientSessionInfo.getSessionId(), expiryTime);
+                sessionExpiries.put(clientId, sessionExpiry);
+                expiryQueue.add(sessionExpiry);
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Session expiry time is set to {}", clientId, expiryTime);
+        }
+    }
+
+    void processExpiredSessions() {
+        try {
+            List<SessionExpiry> expired = pollExpired(clock.millis());
+            if (expired.isEmpty()) {
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Cleaning up {} expired client sessions.", expired.size());
+            }
+            for (SessionExpiry sessionExpiry : expired) {
+                cleanUpIfStillExpired(sessionExpiry);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to process expired client sessions.", e);
+        }
+    }
+
+    synchronized int getScheduledExpiriesCount() {
+        return sessionExpiries.size();
+    }
+
+    private synchronized List<SessionExpiry> pollExpired(long now) {
+        List<SessionExpiry> expired = new ArrayList<>();
+        while (!expiryQueue.isEmpty() && expiryQueue.first().getExpiryTime() <= now) {
+            SessionExpiry sessionExpiry = expiryQueue.pollFirst();
+            sessionExpiries.remove(sessionExpiry.getClientId());
+            expired.add(sessionExpiry);
+        }
+        return expired;
+    }
+
+    private void cleanUpIfStillExpired(SessionExpiry sessionExpiry) {
+        ClientSessionInfo clientSessionInfo = clientSessionCache.getClientSessionInfo(sessionExpiry.getClientId());
+        if (clientSessionInfo == null || !Objects.equals(sessionExpiry.getSessionId(), clientSessionInfo.getSessionId())) {
+            return;
+        }
+        Long expiryTime = getExpiryTime(clientSessionInfo);
+        if (expiryTime == null) {
+            return;
+        }
+        if (expiryTime > clock.millis()) {
+            onSessionChanged(sessionExpiry.getClientId(), clientSessionInfo);
+            return;
+        }
+        SessionInfo sessionInfo = ClientSessionInfoFactory.clientSessionInfoToSessionInfo(clientSessionInfo);
+        clientSessionEventService.requestSessionCleanup(sessionInfo);
+    }
+
+    /**
+     * @return the time when the session expires or null if it is connected, belongs to another node or never expires
+     */
+    private Long getExpiryTime(ClientSessionInfo clientSessionInfo) {
+        if (clientSessionInfo.isConnected() || !serviceInfoProvider.getServiceId().equals(clientSessionInfo.getServiceId())) {
+            return null;
+        }
+        SessionInfo sessionInfo = ClientSessionInfoFactory.clientSessionInfoToSessionInfo(clientSessionInfo);
+        int sessionExpiryInterval;
+        if (sessionInfo.isNotCleanSession()) {
+            if (ttl <= 0) {
+                return null;
+            }
+            sessionExpiryInterval = ttl;
+        } else {
+            sessionExpiryInterval = sessionInfo.safeGetSessionExpiryInterval();
+        }
+        return clientSessionInfo.getDisconnectedAt() + TimeUnit.SECONDS.toMillis(sessionExpiryInterval);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class SessionExpiry {
+        private final String clientId;
+        private final UUID sessionId;
+        private final long expiryTime;
+    }
+}
@@ -26,4 +26,6 @@ public interface ClientSessionConsumer {
 
     void listen(ClientSessionChangesCallback callback);
 
+    Map<Integer, Long> getConsumedOffsets();
+
 }
@@ -23,93 +23,60 @@ import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
-import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
-import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
-import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
 import org.thingsboard.mqtt.broker.queue.provider.ClientSessionQueueFactory;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshotStorage;
+import org.thingsboard.mqtt.broker.service.state.PartitionedStateConsumer;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
-import static org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory.getClientSessionInfo;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ClientSessionConsumerImpl implements ClientSessionConsumer {
     private volatile boolean initializing = true;
-    private volatile boolean stopped = false;
-
-    private final ExecutorService consumerExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("client-session-listener"));
 
     @Value("${queue.client-session.poll-interval}")
     private long pollDuration;
 
     private final ClientSessionQueueFactory clientSessionQueueFactory;
     private final ServiceInfoProvider serviceInfoProvider;
-    private final ClientSessionPersistenceService persistenceService;
     private final TbQueueAdmin queueAdmin;
+    private final StateSnapshotStorage snapshotStorage;
 
-    private TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto>> clientSessionConsumer;
+    private PartitionedStateConsumer<TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto>> clientSessionConsumer;
 
     @PostConstruct
     public void init() {
-        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
-        this.clientSessionConsumer = clientSessionQueueFactory.createConsumer(serviceInfoProvider.getServiceId(), uniqueConsumerGroupId);
+        this.clientSessionConsumer = new PartitionedStateConsumer<>("client-session", pollDuration);
     }
 
     @Override
     public Map<String, ClientSessionInfo> initLoad() throws QueuePersistenceException {
         log.info("Loading client sessions.");
 
-        String dummySessionClientId = persistDummySession();
-
-        clientSessionConsumer.subscribe();
-
-        List<TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto>> messages;
-        boolean encounteredDummySession = false;
-        Map<String, ClientSessionInfo> allClientSessions = new HashMap<>();
-        do {
-            try {
-                // TODO: think how to migrate data inside of the Kafka (in case of any changes to the protocol)
-                messages = clientSessionConsumer.poll(pollDuration);
-                for (TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto> msg : messages) {
-                    String clientId = msg.getKey();
+        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
+        // TODO: think how to migrate data inside of the Kafka (in case of any changes to the protocol)
+        Map<String, ClientSessionInfo> allClientSessions = clientSessionConsumer.initLoad(queueAdmin,
+                partition -> clientSessionQueueFactory.createConsumer(serviceInfoProvider.getServiceId() + "-" + partition, uniqueConsumerGroupId),
+                snapshotStorage.loadClientSessions(),
+                msg -> {
                     if (isClientSessionInfoProtoEmpty(msg.getValue())) {
                         // this means Kafka log compaction service haven't cleared empty message yet
                         if (log.isDebugEnabled()) {
-                            log.debug("[{}] Encountered empty ClientSessionInfo.", clientId);
-                        }
-                        allClientSessions.remove(clientId);
-                    } else {
-                        ClientSessionInfo clientSession = ProtoConverter.convertToClientSessionInfo(msg.getValue());
-                        if (dummySessionClientId.equals(clientId)) {
-                            encounteredDummySession = true;
-                        } else {
-                            allClientSessions.put(clientId, clientSession);
+                            log.debug("[{}] Encountered empty ClientSessionInfo.", msg.getKey());
                         }
+                        return null;
                     }
-                }
-                clientSessionConsumer.commitSync();
-            } catch (Exception e) {
-                log.error("Failed to load client sessions.", e);
-                throw e;
-            }
-        } while (!stopped && !encounteredDummySession);
-
-        clearDummySession(dummySessionClientId);
+                    return ProtoConverter.convertToClientSessionInfo(msg.getValue());
+                });
 
         initializing = false;
 
@@ -123,52 +90,24 @@ public class ClientSessionConsumerImpl implements ClientSessionConsumer {
         if (initializing) {
             throw new RuntimeException("Cannot start listening before initialization is finished.");
         }
-        // TODO: add concurrent consumers for multiple partitions
-        consumerExecutor.execute(() -> {
-            while (!stopped) {
-                try {
-                    // TODO: test what happens if we got disconnected and connected again (will we read all msgs from beginning?)
-                    List<TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto>> messages = clientSessionConsumer.poll(pollDuration);
-                    if (messages.isEmpty()) {
-                        continue;
-                    }
-                    for (TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto> msg : messages) {
-                        String clientId = msg.getKey();
-                        String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
-                        if (isClientSessionInfoProtoEmpty(msg.getValue())) {
-                            callback.accept(clientId, serviceId, null);
-                        } else {
-                            ClientSessionInfo clientSession = ProtoConverter.convertToClientSessionInfo(msg.getValue());
-                            callback.accept(clientId, serviceId, clientSession);
-                        }
-                    }
-                    clientSessionConsumer.commitSync();
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("Failed to process messages from queue.", e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            if (log.isTraceEnabled()) {
-                                log.trace("Failed to wait until the server has capacity to handle new requests", e2);
-                            }
-                        }
-                    }
+        // TODO: test what happens if we got disconnected and connected again (will we read all msgs from beginning?)
+        clientSessionConsumer.listen(messages -> {
+            for (TbProtoQueueMsg<QueueProtos.ClientSessionInfoProto> msg : messages) {
+                String clientId = msg.getKey();
+                String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
+                if (isClientSessionInfoProtoEmpty(msg.getValue())) {
+                    callback.accept(clientId, serviceId, null);
+                } else {
+                    ClientSessionInfo clientSession = ProtoConverter.convertToClientSessionInfo(msg.getValue());
+                    callback.accept(clientId, serviceId, clientSession);
                 }
             }
         });
-
     }
 
-    private String persistDummySession() throws QueuePersistenceException {
-        String dummyClientId = UUID.randomUUID().toString();
-        ClientSessionInfo dummyClientSessionInfo = getClientSessionInfo(dummyClientId, serviceInfoProvider.getServiceId(), false);
-        persistenceService.persistClientSessionInfoSync(dummyClientId, ProtoConverter.convertToClientSessionInfoProto(dummyClientSessionInfo));
-        return dummyClientId;
-    }
-
-    private void clearDummySession(String clientId) throws QueuePersistenceException {
-        persistenceService.persistClientSessionInfoSync(clientId, QueueConstants.EMPTY_CLIENT_SESSION_INFO_PROTO);
+    @Override
+    public Map<Integer, Long> getConsumedOffsets() {
+        return clientSessionConsumer.getConsumedOffsets();
     }
 
     private boolean isClientSessionInfoProtoEmpty(QueueProtos.ClientSessionInfoProto clientSessionInfoProto) {
@@ -178,13 +117,8 @@ public class ClientSessionConsumerImpl implements ClientSessionConsumer {
 
     @PreDestroy
     public void destroy() {
-        stopped = true;
         if (clientSessionConsumer != null) {
-            clientSessionConsumer.unsubscribeAndClose();
-            if (this.clientSessionConsumer.getConsumerGroupId() != null) {
-                queueAdmin.deleteConsumerGroups(Collections.singleton(this.clientSessionConsumer.getConsumerGroupId()));
-            }
+            clientSessionConsumer.destroy(queueAdmin);
         }
-        consumerExecutor.shutdownNow();
     }
 }
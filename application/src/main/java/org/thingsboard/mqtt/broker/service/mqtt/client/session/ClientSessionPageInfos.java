@@ -15,15 +15,26 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.client.session;
 
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.dto.ClientSessionStatsInfoDto;
 import org.thingsboard.mqtt.broker.dto.ShortClientSessionInfoDto;
 
+import java.util.Map;
+
 public interface ClientSessionPageInfos {
 
+    void init(Map<String, ClientSessionInfo> clientSessionInfos);
+
+    void onSessionChanged(String clientId, ClientSessionInfo clientSessionInfo);
+
     PageData<ShortClientSessionInfoDto> getClientSessionInfos(PageLink pageLink);
 
+    CursorPageData<ShortClientSessionInfoDto> getClientSessionInfos(CursorPageLink pageLink);
+
     ClientSessionStatsInfoDto getClientSessionStatsInfo();
 
 }
@@ -19,17 +19,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
 import org.thingsboard.mqtt.broker.common.data.ConnectionState;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
 import org.thingsboard.mqtt.broker.dto.ClientSessionStatsInfoDto;
 import org.thingsboard.mqtt.broker.dto.ShortClientSessionInfoDto;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionCache;
 import org.thingsboard.mqtt.broker.util.BytesUtil;
+import org.thingsboard.mqtt.broker.util.SortedIndexes;
 
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -37,14 +44,46 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ClientSessionPageInfosImpl implements ClientSessionPageInfos {
 
+    private static final String CLIENT_ID = "clientId";
+    private static final String CONNECTED_AT = "connectedAt";
+    private static final String NODE_ID = "nodeId";
+    private static final String CLIENT_TYPE = "clientType";
+
     private final ClientSessionCache clientSessionCache;
     private final ClientSubscriptionCache clientSubscriptionCache;
 
+    private final SortedIndexes<ClientSessionInfo> sessionIndexes = new SortedIndexes<ClientSessionInfo>()
+            .addIndex(CLIENT_ID, ClientSessionInfo::getClientId, Function.identity())
+            .addIndex(CONNECTED_AT, ClientSessionInfo::getConnectedAt, Long::valueOf)
+            .addIndex(NODE_ID, ClientSessionInfo::getServiceId, Function.identity())
+            .addIndex(CLIENT_TYPE, ClientSessionInfo::getType, ClientType::valueOf);
+
+    @Override
+    public void init(Map<String, ClientSessionInfo> clientSessionInfos) {
+        sessionIndexes.putAll(clientSessionInfos);
+    }
+
+    @Override
+    public void onSessionChanged(String clientId, ClientSessionInfo clientSessionInfo) {
+        if (clientSessionInfo == null) {
+            sessionIndexes.remove(clientId);
+        } else {
+            sessionIndexes.put(clientId, clientSessionInfo);
+        }
+    }
+
     @Override
     public PageData<ShortClientSessionInfoDto> getClientSessionInfos(PageLink pageLink) {
-        Map<String, ClientSessionInfo> allClientSessions = clientSessionCache.getAllClientSessions();
+        Predicate<ClientSessionInfo> filter = textSearchFilter(pageLink.getTextSearch());
+        SortOrder sortOrder = pageLink.getSortOrder();
+
+        if (sortOrder == null || sessionIndexes.isIndexed(toIndexProperty(sortOrder))) {
+            PageData<ClientSessionInfo> page = sessionIndexes.findPage(toIndexProperty(sortOrder), toDirection(sortOrder),
+                    pageLink.getPage(), pageLink.getPageSize(), filter, clientSessionCache::getClientSessionInfo);
+            return new PageData<>(toShortSessionInfos(page.getData()), page.getTotalPages(), page.getTotalElements(), page.hasNext());
+        }
 
-        List<ClientSessionInfo> filteredByTextSearch = filterClientSessionInfos(allClientSessions, pageLink);
+        List<ClientSessionInfo> filteredByTextSearch = sessionIndexes.findAll(filter, clientSessionCache::getClientSessionInfo);
 
         List<ShortClientSessionInfoDto> data = filteredByTextSearch.stream()
                 .map(this::toShortSessionInfo)
@@ -59,6 +98,15 @@ public class ClientSessionPageInfosImpl implements ClientSessionPageInfos {
                 pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < filteredByTextSearch.size());
     }
 
+    @Override
+    public CursorPageData<ShortClientSessionInfoDto> getClientSessionInfos(CursorPageLink pageLink) {
+        SortOrder sortOrder = pageLink.getSortOrder();
+        CursorPageData<ClientSessionInfo> page = sessionIndexes.findPage(toIndexProperty(sortOrder), toDirection(sortOrder),
+                pageLink.getCursor(), pageLink.getPageSize(), textSearchFilter(pageLink.getTextSearch()),
+                clientSessionCache::getClientSessionInfo);
+        return page.mapData(this::toShortSessionInfo);
+    }
+
     @Override
     public ClientSessionStatsInfoDto getClientSessionStatsInfo() {
         var allClientSessions = clientSessionCache.getAllClientSessions();
@@ -68,6 +116,10 @@ public class ClientSessionPageInfosImpl implements ClientSessionPageInfos {
         return new ClientSessionStatsInfoDto(connectedCount, disconnectedCount, totalCount);
     }
 
+    private List<ShortClientSessionInfoDto> toShortSessionInfos(List<ClientSessionInfo> clientSessionInfos) {
+        return clientSessionInfos.stream().map(this::toShortSessionInfo).collect(Collectors.toList());
+    }
+
     private ShortClientSessionInfoDto toShortSessionInfo(ClientSessionInfo clientSessionInfo) {
         return ShortClientSessionInfoDto.builder()
                 .id(clientSessionInfo.getClientId())
@@ -89,16 +141,22 @@ public class ClientSessionPageInfosImpl implements ClientSessionPageInfos {
                 Comparator.nullsLast(ShortClientSessionInfoDto.getComparator(pageLink.getSortOrder()));
     }
 
-    private List<ClientSessionInfo> filterClientSessionInfos(Map<String, ClientSessionInfo> allClientSessions, PageLink pageLink) {
-        return allClientSessions.values().stream()
-                .filter(clientSessionInfo -> filter(pageLink, clientSessionInfo))
-                .collect(Collectors.toList());
+    private String toIndexProperty(SortOrder sortOrder) {
+        if (sortOrder == null || "id".equals(sortOrder.getProperty())) {
+            return CLIENT_ID;
+        }
+        return sortOrder.getProperty();
+    }
+
+    private SortOrder.Direction toDirection(SortOrder sortOrder) {
+        return sortOrder == null || sortOrder.getDirection() == null ? SortOrder.Direction.ASC : sortOrder.getDirection();
     }
 
-    private boolean filter(PageLink pageLink, ClientSessionInfo clientSessionInfo) {
-        if (pageLink.getTextSearch() != null) {
-            return clientSessionInfo.getClientId().toLowerCase().contains(pageLink.getTextSearch().toLowerCase());
+    private Predicate<ClientSessionInfo> textSearchFilter(String textSearch) {
+        if (textSearch == null) {
+            return null;
         }
-        return true;
+        String textSearchLowerCase = textSearch.toLowerCase();
+        return clientSessionInfo -> clientSessionInfo.getClientId().toLowerCase().contains(textSearchLowerCase);
     }
 }
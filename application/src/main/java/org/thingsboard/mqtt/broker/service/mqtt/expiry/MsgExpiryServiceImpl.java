@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.expiry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Service
+public class MsgExpiryServiceImpl implements MsgExpiryService {
+
+    private final AtomicLong expiredMsgsCounter;
+
+    public MsgExpiryServiceImpl(StatsManager statsManager) {
+        this.expiredMsgsCounter = statsManager.createExpiredMsgsCounter();
+    }
+
+    @Override
+    public boolean isExpired(String clientId, long createdTime, Integer msgExpiryInterval) {
+        if (!MqttPropertiesUtil.isExpired(createdTime, msgExpiryInterval, System.currentTimeMillis())) {
+            return false;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Skipping expired msg, created at {}, expiry interval {} s", clientId, createdTime, msgExpiryInterval);
+        }
+        expiredMsgsCounter.incrementAndGet();
+        return true;
+    }
+}
@@ -37,6 +37,7 @@ import org.thingsboard.mqtt.broker.queue.provider.ApplicationPersistenceMsgQueue
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.data.ApplicationSharedSubscriptionCtx;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.data.ApplicationSharedSubscriptionJob;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationAckStrategy;
@@ -103,6 +104,7 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
     private final ServiceInfoProvider serviceInfoProvider;
     private final ClientLogger clientLogger;
     private final ApplicationTopicService applicationTopicService;
+    private final MsgExpiryService msgExpiryService;
     private final boolean isTraceEnabled = log.isTraceEnabled();
     private final boolean isDebugEnabled = log.isDebugEnabled();
 
@@ -747,15 +749,19 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
         );
     }
 
-    private List<PersistedPublishMsg> toPublishMessagesToDeliver(ClientSessionCtx clientSessionCtx,
-                                                                 ApplicationPersistedMsgCtx persistedMsgCtx,
-                                                                 List<TbProtoQueueMsg<PublishMsgProto>> publishProtoMessages,
-                                                                 TopicSharedSubscription subscription) {
+    List<PersistedPublishMsg> toPublishMessagesToDeliver(ClientSessionCtx clientSessionCtx,
+                                                         ApplicationPersistedMsgCtx persistedMsgCtx,
+                                                         List<TbProtoQueueMsg<PublishMsgProto>> publishProtoMessages,
+                                                         TopicSharedSubscription subscription) {
         List<PersistedPublishMsg> result = new ArrayList<>(publishProtoMessages.size());
         for (TbProtoQueueMsg<PublishMsgProto> msg : publishProtoMessages) {
             var msgPacketId = persistedMsgCtx.getMsgPacketId(msg.getOffset());
-            int packetId = msgPacketId != null ? msgPacketId : clientSessionCtx.getMsgIdSeq().nextMsgId();
             boolean isDup = msgPacketId != null;
+            // once the delivery of a msg has started it is completed even if the msg expires meanwhile
+            if (!isDup && isExpired(clientSessionCtx.getClientId(), msg.getValue())) {
+                continue;
+            }
+            int packetId = isDup ? msgPacketId : clientSessionCtx.getMsgIdSeq().nextMsgId();
             int minQoSValue = getMinQoSValue(subscription, msg.getValue().getQos());
             PublishMsg publishMsg = toPubMsg(msg.getValue(), packetId, minQoSValue, isDup);
             result.add(new PersistedPublishMsg(publishMsg, msg.getOffset()));
@@ -763,6 +769,10 @@ public class ApplicationPersistenceProcessorImpl implements ApplicationPersisten
         return result;
     }
 
+    private boolean isExpired(String clientId, PublishMsgProto persistedMsgProto) {
+        return msgExpiryService.isExpired(clientId, persistedMsgProto.getCreatedTime(), ProtoConverter.getMsgExpiryInterval(persistedMsgProto));
+    }
+
     private PublishMsg toPubMsg(PublishMsgProto persistedMsgProto, int packetId, int qos, boolean isDup) {
         return ProtoConverter.convertToPublishMsg(persistedMsgProto, packetId, qos, isDup);
     }
@@ -183,7 +183,7 @@ public class DeviceMsgProcessorImpl implements DeviceMsgProcessor {
                         .packetId(BLANK_PACKET_ID)
                         .serialNumber(BLANK_SERIAL_NUMBER)
                         .packetType(PersistedPacketType.PUBLISH)
-                        .time(System.currentTimeMillis())
+                        .time(devicePublishMsg.getTime() != null ? devicePublishMsg.getTime() : System.currentTimeMillis())
                         .build())
                 .collect(Collectors.toList());
     }
@@ -23,16 +23,17 @@ import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
 import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
-import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.DevicePersistenceMsgQueueFactory;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.processing.DeviceMsgProcessor;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ConsumerAutoscaler;
+import org.thingsboard.mqtt.broker.service.processing.scaling.PackHandler;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ScalableConsumerGroup;
 import org.thingsboard.mqtt.broker.service.stats.DeviceProcessorStats;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -41,12 +42,11 @@ import java.util.concurrent.ExecutorService;
 @RequiredArgsConstructor
 public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
 
-    private final List<TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>> consumers = new ArrayList<>();
-
     private final DevicePersistenceMsgQueueFactory devicePersistenceMsgQueueFactory;
     private final DeviceMsgProcessor deviceMsgProcessor;
     private final StatsManager statsManager;
     private final ServiceInfoProvider serviceInfoProvider;
+    private final ConsumerAutoscaler consumerAutoscaler;
 
     @Value("${queue.device-persisted-msg.consumers-count}")
     private int consumersCount;
@@ -54,65 +54,58 @@ public class DeviceMsgQueueConsumerImpl implements DeviceMsgQueueConsumer {
     private long pollDuration;
     @Value("${queue.device-persisted-msg.threads-count}")
     private int threadsCount;
+    @Value("${queue.device-persisted-msg.autoscaling.min-consumers:1}")
+    private int minConsumers;
+    @Value("${queue.device-persisted-msg.autoscaling.max-consumers:4}")
+    private int maxConsumers;
 
-    private volatile boolean stopped = false;
     private ExecutorService consumersExecutor;
+    private ScalableConsumerGroup<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumerGroup;
 
     @PostConstruct
     public void init() {
-        this.consumersExecutor = ThingsBoardExecutors.initExecutorService(threadsCount, "device-persisted-msg-consumer");
+        this.consumersExecutor = ThingsBoardExecutors.initExecutorService(Math.max(threadsCount, maxConsumers), "device-persisted-msg-consumer");
     }
 
     @Override
     public void startConsuming() {
-        for (int i = 0; i < consumersCount; i++) {
-            String consumerId = serviceInfoProvider.getServiceId() + "-" + i;
-            TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer = devicePersistenceMsgQueueFactory.createConsumer(consumerId);
-            consumers.add(consumer);
-            consumer.subscribe();
-            launchConsumer(consumerId, consumer);
-        }
+        consumerGroup = ScalableConsumerGroup.<TbProtoQueueMsg<QueueProtos.PublishMsgProto>>builder()
+                .name("device-persisted-msg")
+                .consumerIdPrefix(serviceInfoProvider.getServiceId() + "-")
+                .consumerFactory(devicePersistenceMsgQueueFactory::createConsumer)
+                .packHandlerFactory(this::newPackHandler)
+                .executor(consumersExecutor)
+                .pollDuration(pollDuration)
+                .minConsumers(minConsumers)
+                .maxConsumers(maxConsumers)
+                .consumersCountGauge(statsManager.createConsumersCountGauge("device-persisted-msg"))
+                .removedConsumerHandler(statsManager::clearDeviceProcessorStats)
+                .build();
+        consumerGroup.start(consumersCount);
+        consumerAutoscaler.register(consumerGroup);
     }
 
-    private void launchConsumer(String consumerId, TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumer) {
+    private PackHandler<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> newPackHandler(String consumerId) {
         DeviceProcessorStats stats = statsManager.createDeviceProcessorStats(consumerId);
-        consumersExecutor.submit(() -> {
-            while (!stopped) {
-                try {
-                    // TODO: corner case: if Kafka rebalances partitions while node is processing - multiple nodes can persist same msg multiple times
-                    List<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> msgs = consumer.poll(pollDuration);
-                    if (msgs.isEmpty()) {
-                        continue;
-                    }
-
-                    List<DevicePublishMsg> devicePublishMessages = deviceMsgProcessor.persistMessages(msgs, stats, consumerId);
+        return (consumer, msgs) -> {
+            // TODO: corner case: if Kafka rebalances partitions while node is processing - multiple nodes can persist same msg multiple times
+            List<DevicePublishMsg> devicePublishMessages = deviceMsgProcessor.persistMessages(msgs, stats, consumerId);
 
-                    try {
-                        consumer.commitSync();
-                    } catch (Exception e) {
-                        log.warn("[{}] Failed to commit polled messages.", consumerId, e);
-                    }
-
-                    deviceMsgProcessor.deliverMessages(devicePublishMessages);
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("[{}] Failed to process messages from queue.", consumerId, e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            log.trace("[{}] Failed to wait until the server has capacity to handle new requests", consumerId, e2);
-                        }
-                    }
-                }
+            try {
+                consumer.commitSync();
+            } catch (Exception e) {
+                log.warn("[{}] Failed to commit polled messages.", consumerId, e);
             }
-            log.info("[{}] Device Persisted Msg Consumer stopped.", consumerId);
-        });
+
+            deviceMsgProcessor.deliverMessages(devicePublishMessages);
+        };
     }
 
     @PreDestroy
     public void destroy() {
-        stopped = true;
-        consumers.forEach(TbQueueConsumer::unsubscribeAndClose);
+        if (consumerGroup != null) {
+            consumerGroup.stop();
+        }
         if (consumersExecutor != null) {
             consumersExecutor.shutdownNow();
         }
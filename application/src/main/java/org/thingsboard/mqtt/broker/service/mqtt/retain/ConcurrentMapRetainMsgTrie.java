@@ -23,16 +23,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -44,6 +48,7 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
 
     private final AtomicInteger size;
     private final AtomicLong nodesCount;
+    private final AtomicLong reclaimedNodes;
     private final Node<T> root = new Node<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -54,13 +59,21 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
     public ConcurrentMapRetainMsgTrie(StatsManager statsManager) {
         this.size = statsManager.createRetainMsgSizeCounter();
         this.nodesCount = statsManager.createRetainMsgTrieNodesCounter();
+        this.reclaimedNodes = statsManager.createRetainMsgTrieReclaimedNodesCounter();
     }
 
     @EqualsAndHashCode
     private static class Node<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> WRITERS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "writers");
+        private static final int REMOVED = -1;
+
         private final AtomicReference<T> value = new AtomicReference<>();
         private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<>();
         private String key;
+        // number of writers currently modifying the node or REMOVED once the node is (being) unlinked from the trie
+        @EqualsAndHashCode.Exclude
+        private volatile int writers;
 
         public Node() {
         }
@@ -68,54 +81,122 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         public Node(String key) {
             this.key = key;
         }
+
+        boolean pin() {
+            while (true) {
+                int current = writers;
+                if (current == REMOVED) {
+                    return false;
+                }
+                if (WRITERS.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin() {
+            WRITERS.decrementAndGet(this);
+        }
+
+        boolean tryMarkRemoved() {
+            return WRITERS.compareAndSet(this, 0, REMOVED);
+        }
+
+        void unmarkRemoved() {
+            writers = 0;
+        }
+
+        boolean isEmpty() {
+            return value.get() == null && children.isEmpty();
+        }
     }
 
     @Override
     public List<T> get(String topicFilter) {
+        List<T> result = new ArrayList<>();
+        iterate(topicFilter).forEachRemaining(result::add);
+        return result;
+    }
+
+    @Override
+    public Iterator<T> iterate(String topicFilter) {
         if (topicFilter == null) {
             throw new IllegalArgumentException("Topic filter cannot be null");
         }
-        List<T> result = new ArrayList<>();
-        Stack<TopicPosition<T>> topicPositions = new Stack<>();
-        topicPositions.add(new TopicPosition<>(0, root, false));
-
-        while (!topicPositions.isEmpty()) {
-            TopicPosition<T> topicPosition = topicPositions.pop();
-            ConcurrentMap<String, Node<T>> childNodes = topicPosition.node.children;
-            T value = topicPosition.node.value.get();
-            if (topicPosition.isMultiLevelWildcard) {
-                if (value != null) {
-                    result.add(value);
-                }
-                for (Node<T> childNode : childNodes.values()) {
-                    topicPositions.add(new TopicPosition<>(0, childNode, true));
-                }
-                continue;
+        return new MatchingValuesIterator(topicFilter);
+    }
+
+    /**
+     * Walks the trie lazily, so only the pending branches are kept in memory instead of all matching values.
+     */
+    private class MatchingValuesIterator implements Iterator<T> {
+
+        private final String topicFilter;
+        private final Stack<TopicPosition<T>> topicPositions = new Stack<>();
+        private T next;
+
+        MatchingValuesIterator(String topicFilter) {
+            this.topicFilter = topicFilter;
+            this.topicPositions.add(new TopicPosition<>(0, root, false));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = findNext();
             }
-            if (topicPosition.prevDelimiterIndex >= topicFilter.length()) {
-                if (value != null) {
-                    result.add(value);
-                }
-                continue;
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
-            String segment = getSegment(topicFilter, topicPosition.prevDelimiterIndex);
-            int nextDelimiterIndex = topicPosition.prevDelimiterIndex + segment.length() + 1;
-            if (segment.equals(BrokerConstants.MULTI_LEVEL_WILDCARD)) {
-                childNodes.values().stream()
-                        .filter(childNode -> notStartingWith$(topicPosition.prevDelimiterIndex == 0, childNode))
-                        .forEach(childNode -> topicPositions.add(new TopicPosition<>(0, childNode, true)));
-            } else if (segment.equals(BrokerConstants.SINGLE_LEVEL_WILDCARD)) {
-                childNodes.values().stream()
-                        .filter(childNode -> notStartingWith$(topicPosition.prevDelimiterIndex == 0, childNode))
-                        .forEach(childNode -> topicPositions.add(new TopicPosition<>(nextDelimiterIndex, childNode, false)));
-            } else {
-                Node<T> segmentNode = childNodes.get(segment);
-                if (segmentNode != null) {
-                    topicPositions.add(new TopicPosition<>(nextDelimiterIndex, segmentNode, false));
+            T value = next;
+            next = null;
+            return value;
+        }
+
+        private T findNext() {
+            while (!topicPositions.isEmpty()) {
+                TopicPosition<T> topicPosition = topicPositions.pop();
+                ConcurrentMap<String, Node<T>> childNodes = topicPosition.node.children;
+                T value = topicPosition.node.value.get();
+                if (topicPosition.isMultiLevelWildcard) {
+                    for (Node<T> childNode : childNodes.values()) {
+                        topicPositions.add(new TopicPosition<>(0, childNode, true));
+                    }
+                    if (value != null) {
+                        return value;
+                    }
+                    continue;
+                }
+                if (topicPosition.prevDelimiterIndex >= topicFilter.length()) {
+                    if (value != null) {
+                        return value;
+                    }
+                    continue;
+                }
+                String segment = getSegment(topicFilter, topicPosition.prevDelimiterIndex);
+                int nextDelimiterIndex = topicPosition.prevDelimiterIndex + segment.length() + 1;
+                if (segment.equals(BrokerConstants.MULTI_LEVEL_WILDCARD)) {
+                    childNodes.values().stream()
+                            .filter(childNode -> notStartingWith$(topicPosition.prevDelimiterIndex == 0, childNode))
+                            .forEach(childNode -> topicPositions.add(new TopicPosition<>(0, childNode, true)));
+                } else if (segment.equals(BrokerConstants.SINGLE_LEVEL_WILDCARD)) {
+                    childNodes.values().stream()
+                            .filter(childNode -> notStartingWith$(topicPosition.prevDelimiterIndex == 0, childNode))
+                            .forEach(childNode -> topicPositions.add(new TopicPosition<>(nextDelimiterIndex, childNode, false)));
+                } else {
+                    Node<T> segmentNode = childNodes.get(segment);
+                    if (segmentNode != null) {
+                        topicPositions.add(new TopicPosition<>(nextDelimiterIndex, segmentNode, false));
+                    }
                 }
             }
+            return null;
         }
-        return result;
     }
 
     private boolean notStartingWith$(boolean isFirstSegment, Node<T> childNode) {
@@ -130,57 +211,113 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
     }
 
     @Override
-    public void put(String topic, T val) {
+    public void put(ParsedTopic topic, T val) {
         log.trace("Executing put [{}] [{}]", topic, val);
         if (topic == null || val == null) {
             throw new IllegalArgumentException("Topic or value cannot be null");
         }
         lock.readLock().lock();
         try {
-            put(root, topic, val, 0);
+            while (!tryPut(topic, val)) {
+                // one of the nodes on the path was pruned concurrently, retrying with the re-created path
+                Thread.onSpinWait();
+            }
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    private void put(Node<T> x, String topic, T val, int prevDelimiterIndex) {
-        if (prevDelimiterIndex >= topic.length()) {
-            T prevValue = x.value.getAndSet(val);
-            if (prevValue == null) {
-                size.getAndIncrement();
-            }
-        } else {
-            String segment = getSegment(topic, prevDelimiterIndex);
+    /**
+     * Walks the path hand-over-hand, pinning each node before modifying it, so that concurrent pruning
+     * can't unlink a node that is about to receive a child or a value.
+     *
+     * @return false if a node on the path was already pruned
+     */
+    private boolean tryPut(ParsedTopic topic, T val) {
+        Node<T> x = root;
+        for (int level = 0; level < topic.getSegmentsCount(); level++) {
+            String segment = topic.getSegment(level);
             Node<T> nextNode = x.children.computeIfAbsent(segment, s -> {
                 nodesCount.incrementAndGet();
                 return new Node<>(segment);
             });
-            put(nextNode, topic, val, prevDelimiterIndex + segment.length() + 1);
+            boolean pinned = nextNode.pin();
+            if (x != root) {
+                x.unpin();
+            }
+            if (!pinned) {
+                return false;
+            }
+            x = nextNode;
         }
+        try {
+            T prevValue = x.value.getAndSet(val);
+            if (prevValue == null) {
+                size.getAndIncrement();
+            }
+        } finally {
+            if (x != root) {
+                x.unpin();
+            }
+        }
+        return true;
     }
 
     @Override
-    public void delete(String topic) {
+    public void delete(ParsedTopic topic) {
         log.trace("Executing delete [{}]", topic);
         if (topic == null) {
             throw new IllegalArgumentException("Topic cannot be null");
         }
-        Node<T> x = getNode(root, topic, 0);
+        List<Node<T>> path = new ArrayList<>();
+        Node<T> x = getNode(topic, path);
         if (x != null) {
             T prevValue = x.value.getAndSet(null);
             if (prevValue != null) {
                 size.decrementAndGet();
+                pruneEmptyNodes(path);
             }
         }
     }
 
-    private Node<T> getNode(Node<T> x, String topic, int prevDelimiterIndex) {
-        if (x == null) return null;
-        if (prevDelimiterIndex >= topic.length()) {
-            return x;
+    private Node<T> getNode(ParsedTopic topic, List<Node<T>> path) {
+        Node<T> x = root;
+        path.add(x);
+        for (int level = 0; level < topic.getSegmentsCount(); level++) {
+            x = x.children.get(topic.getSegment(level));
+            if (x == null) {
+                return null;
+            }
+            path.add(x);
         }
-        String segment = getSegment(topic, prevDelimiterIndex);
-        return getNode(x.children.get(segment), topic, prevDelimiterIndex + segment.length() + 1);
+        return x;
+    }
+
+    private void pruneEmptyNodes(List<Node<T>> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            if (!tryUnlink(path.get(i - 1), path.get(i))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lock-free unlink of an empty node. The node is tombstoned first, which only succeeds if no writer has it pinned,
+     * and emptiness is re-checked afterwards since a writer could have filled the node and unpinned it in between.
+     */
+    private boolean tryUnlink(Node<T> parent, Node<T> node) {
+        if (!node.isEmpty() || !node.tryMarkRemoved()) {
+            return false;
+        }
+        if (!node.isEmpty()) {
+            node.unmarkRemoved();
+            return false;
+        }
+        if (parent.children.remove(node.key, node)) {
+            nodesCount.decrementAndGet();
+            reclaimedNodes.incrementAndGet();
+        }
+        return true;
     }
 
     @Override
@@ -216,9 +353,10 @@ public class ConcurrentMapRetainMsgTrie<T> implements RetainMsgTrie<T> {
         for (Map.Entry<String, ConcurrentMapRetainMsgTrie.Node<T>> entry : node.children.entrySet()) {
             ConcurrentMapRetainMsgTrie.Node<T> value = entry.getValue();
             boolean isChildEmpty = clearEmptyChildren(value);
-            if (isChildEmpty) {
-                node.children.remove(entry.getKey());
-                nodesCount.decrementAndGet();
+            if (isChildEmpty && value.tryMarkRemoved()) {
+                if (node.children.remove(entry.getKey(), value)) {
+                    nodesCount.decrementAndGet();
+                }
             } else {
                 isNodeEmpty = false;
             }
@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Retained msg whose payload and user properties live in {@link RetainedMsgPayloadArena}.
+ * The record is laid out as payload bytes followed by the encoded user properties.
+ * <p>
+ * Several instances (e.g. with different QoS for different subscribers) may share the same handle,
+ * only the instance cached by {@link RetainedMsgOffHeapStorage} owns it.
+ */
+public class OffHeapRetainedMsg extends RetainedMsg {
+
+    private final RetainedMsgPayloadArena arena;
+    @Getter
+    private final long handle;
+    private final int payloadLength;
+    private final int propertiesLength;
+
+    OffHeapRetainedMsg(String topic, int qosLevel, long createdTime, Integer msgExpiryInterval, RetainedMsgPayloadArena arena,
+                       long handle, int payloadLength, int propertiesLength) {
+        super(topic, null, qosLevel, null, createdTime, msgExpiryInterval);
+        this.arena = arena;
+        this.handle = handle;
+        this.payloadLength = payloadLength;
+        this.propertiesLength = propertiesLength;
+    }
+
+    /**
+     * @return copy of the payload or null if the msg was already replaced or cleared
+     */
+    @Override
+    public byte[] getPayload() {
+        return arena.read(handle, 0, payloadLength);
+    }
+
+    @Override
+    public MqttProperties getProperties() {
+        MqttProperties properties = new MqttProperties();
+        if (propertiesLength > 0) {
+            byte[] encoded = arena.read(handle, payloadLength, propertiesLength);
+            if (encoded != null) {
+                properties.add(decodeUserProperties(encoded));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Copies the payload and user properties out of the slot at once, so both come from the same record.
+     *
+     * @return on-heap copy of the msg or null if the msg was already replaced or cleared
+     */
+    public RetainedMsg toHeapMsg() {
+        byte[] record = arena.read(handle, 0, payloadLength + propertiesLength);
+        if (record == null) {
+            return null;
+        }
+        byte[] payload = Arrays.copyOf(record, payloadLength);
+        MqttProperties properties = new MqttProperties();
+        if (propertiesLength > 0) {
+            properties.add(decodeUserProperties(Arrays.copyOfRange(record, payloadLength, record.length)));
+        }
+        return new RetainedMsg(getTopic(), payload, getQosLevel(), properties, getCreatedTime(), getMsgExpiryInterval());
+    }
+
+    /**
+     * Writes the payload straight from the off-heap slot into the buffer.
+     *
+     * @return false if the msg was already replaced or cleared
+     */
+    public boolean writePayloadTo(ByteBuf dst) {
+        return arena.readTo(handle, 0, payloadLength, dst);
+    }
+
+    @Override
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    @Override
+    public RetainedMsg withQosLevel(int qosLevel) {
+        return new OffHeapRetainedMsg(getTopic(), qosLevel, getCreatedTime(), getMsgExpiryInterval(), arena, handle, payloadLength, propertiesLength);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OffHeapRetainedMsg that = (OffHeapRetainedMsg) o;
+        return handle == that.handle && getQosLevel() == that.getQosLevel() && Objects.equals(getTopic(), that.getTopic());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getTopic(), handle, getQosLevel());
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapRetainedMsg(topic=" + getTopic() + ", qosLevel=" + getQosLevel() + ", createdTime=" + getCreatedTime()
+                + ", handle=" + handle + ", payloadLength=" + payloadLength + ")";
+    }
+
+    static byte[] encodeUserProperties(MqttProperties properties) {
+        MqttProperties.UserProperties userProperties = properties == null ? null :
+                (MqttProperties.UserProperties) properties.getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value());
+        if (userProperties == null || userProperties.value().isEmpty()) {
+            return new byte[0];
+        }
+        int size = Integer.BYTES;
+        byte[][] strings = new byte[userProperties.value().size() * 2][];
+        int i = 0;
+        for (MqttProperties.StringPair pair : userProperties.value()) {
+            strings[i] = pair.key.getBytes(StandardCharsets.UTF_8);
+            strings[i + 1] = pair.value.getBytes(StandardCharsets.UTF_8);
+            size += 2 * Integer.BYTES + strings[i].length + strings[i + 1].length;
+            i += 2;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(userProperties.value().size());
+        for (byte[] string : strings) {
+            buffer.putInt(string.length);
+            buffer.put(string);
+        }
+        return buffer.array();
+    }
+
+    private static MqttProperties.UserProperties decodeUserProperties(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        MqttProperties.UserProperties userProperties = new MqttProperties.UserProperties();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            userProperties.add(readString(buffer), readString(buffer));
+        }
+        return userProperties;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -16,16 +16,28 @@
 package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
 import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 
+import java.util.Iterator;
 import java.util.List;
 
 public interface RetainMsgTrie<T> {
 
     List<T> get(String topicFilter);
 
-    void put(String topic, T val);
+    Iterator<T> iterate(String topicFilter);
 
-    void delete(String topic);
+    default void put(String topic, T val) {
+        put(ParsedTopic.parse(topic), val);
+    }
+
+    void put(ParsedTopic topic, T val);
+
+    default void delete(String topic) {
+        delete(ParsedTopic.parse(topic));
+    }
+
+    void delete(ParsedTopic topic);
 
     int size();
 
@@ -28,6 +28,10 @@ public class RetainedMsg {
     private final int qosLevel;
     private final MqttProperties properties;
     private final long createdTime;
+    /*
+        Message Expiry Interval in seconds, null if the msg never expires
+     */
+    private final Integer msgExpiryInterval;
 
     public RetainedMsg(String topic, byte[] payload, int qosLevel) {
         this(topic, payload, qosLevel, MqttProperties.NO_PROPERTIES, System.currentTimeMillis());
@@ -36,4 +40,16 @@ public class RetainedMsg {
     public RetainedMsg(String topic, byte[] payload, int qosLevel, MqttProperties properties) {
         this(topic, payload, qosLevel, properties, System.currentTimeMillis());
     }
+
+    public RetainedMsg(String topic, byte[] payload, int qosLevel, MqttProperties properties, long createdTime) {
+        this(topic, payload, qosLevel, properties, createdTime, null);
+    }
+
+    public int getPayloadLength() {
+        return payload == null ? 0 : payload.length;
+    }
+
+    public RetainedMsg withQosLevel(int qosLevel) {
+        return new RetainedMsg(topic, payload, qosLevel, properties, createdTime, msgExpiryInterval);
+    }
 }
@@ -24,4 +24,6 @@ public interface RetainedMsgConsumer {
     Map<String, RetainedMsg> initLoad() throws QueuePersistenceException;
 
     void listen(RetainedMsgChangesCallback callback);
+
+    Map<Integer, Long> getConsumedOffsets();
 }
@@ -16,31 +16,24 @@
 package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
-import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
-import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
-import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
 import org.thingsboard.mqtt.broker.queue.provider.RetainedMsgQueueFactory;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshotStorage;
+import org.thingsboard.mqtt.broker.service.state.PartitionedStateConsumer;
 import org.thingsboard.mqtt.broker.service.stats.RetainedMsgConsumerStats;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.nio.charset.StandardCharsets;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
 
@@ -48,68 +41,49 @@ import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
 @Component
 public class RetainedMsgConsumerImpl implements RetainedMsgConsumer {
 
-    private static final String DUMMY_TOPIC_PREFIX = "dummy/topic/";
-    private static final byte[] DUMMY_PAYLOAD = "test".getBytes(StandardCharsets.UTF_8);
-
     private volatile boolean initializing = true;
-    private volatile boolean stopped = false;
-
-    private final ExecutorService consumerExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("retained-msg-listener"));
 
     @Value("${queue.retained-msg.poll-interval}")
     private long pollDuration;
 
-    private final RetainedMsgPersistenceService persistenceService;
-    private final TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.RetainedMsgProto>> retainedMsgConsumer;
+    private final RetainedMsgQueueFactory retainedMsgQueueFactory;
+    private final ServiceInfoProvider serviceInfoProvider;
     private final TbQueueAdmin queueAdmin;
     private final RetainedMsgConsumerStats stats;
+    private final StateSnapshotStorage snapshotStorage;
+
+    private PartitionedStateConsumer<TbProtoQueueMsg<QueueProtos.RetainedMsgProto>> retainedMsgConsumer;
 
     public RetainedMsgConsumerImpl(RetainedMsgQueueFactory retainedMsgQueueFactory, ServiceInfoProvider serviceInfoProvider,
-                                   RetainedMsgPersistenceService persistenceService, TbQueueAdmin queueAdmin, StatsManager statsManager) {
-        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
-        this.retainedMsgConsumer = retainedMsgQueueFactory.createConsumer(serviceInfoProvider.getServiceId(), uniqueConsumerGroupId);
+                                   TbQueueAdmin queueAdmin, StatsManager statsManager, StateSnapshotStorage snapshotStorage) {
+        this.retainedMsgQueueFactory = retainedMsgQueueFactory;
+        this.serviceInfoProvider = serviceInfoProvider;
         this.queueAdmin = queueAdmin;
-        this.persistenceService = persistenceService;
         this.stats = statsManager.getRetainedMsgConsumerStats();
+        this.snapshotStorage = snapshotStorage;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.retainedMsgConsumer = new PartitionedStateConsumer<>("retained-msg", pollDuration);
     }
 
     @Override
     public Map<String, RetainedMsg> initLoad() throws QueuePersistenceException {
-        String dummyTopic = persistDummyRetainedMsg();
-
-        retainedMsgConsumer.subscribe();
-
-        List<TbProtoQueueMsg<QueueProtos.RetainedMsgProto>> messages;
-        boolean encounteredDummyTopic = false;
-        Map<String, RetainedMsg> allRetainedMsgs = new HashMap<>();
-        do {
-            try {
-                messages = retainedMsgConsumer.poll(pollDuration);
-                for (TbProtoQueueMsg<QueueProtos.RetainedMsgProto> msg : messages) {
-                    String topic = msg.getKey();
+        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
+        Map<String, RetainedMsg> allRetainedMsgs = retainedMsgConsumer.initLoad(queueAdmin,
+                partition -> retainedMsgQueueFactory.createConsumer(serviceInfoProvider.getServiceId() + "-" + partition, uniqueConsumerGroupId),
+                snapshotStorage.loadRetainedMessages(),
+                msg -> {
                     if (isRetainedMsgProtoEmpty(msg.getValue())) {
                         // this means Kafka log compaction service haven't cleared empty message yet
                         if (log.isDebugEnabled()) {
-                            log.debug("[{}] Encountered empty RetainedMsg.", topic);
-                        }
-                        allRetainedMsgs.remove(topic);
-                    } else {
-                        RetainedMsg retainedMsg = ProtoConverter.convertToRetainedMsg(msg.getValue());
-                        if (dummyTopic.equals(topic)) {
-                            encounteredDummyTopic = true;
-                        } else {
-                            allRetainedMsgs.put(topic, retainedMsg);
+                            log.debug("[{}] Encountered empty RetainedMsg.", msg.getKey());
                         }
+                        return null;
                     }
-                }
-                retainedMsgConsumer.commitSync();
-            } catch (Exception e) {
-                log.error("Failed to load retained messages.", e);
-                throw e;
-            }
-        } while (!stopped && !encounteredDummyTopic);
-
-        clearDummyRetainedMsg(dummyTopic);
+                    return ProtoConverter.convertToRetainedMsg(msg.getValue());
+                });
 
         initializing = false;
 
@@ -121,54 +95,30 @@ public class RetainedMsgConsumerImpl implements RetainedMsgConsumer {
         if (initializing) {
             throw new RuntimeException("Cannot start listening before retained messages initialization is finished.");
         }
-        consumerExecutor.execute(() -> {
-            while (!stopped) {
-                try {
-                    List<TbProtoQueueMsg<QueueProtos.RetainedMsgProto>> messages = retainedMsgConsumer.poll(pollDuration);
-                    if (messages.isEmpty()) {
-                        continue;
-                    }
-                    stats.logTotal(messages.size());
-                    int newRetainedMsgCount = 0;
-                    int clearedRetainedMsgCount = 0;
-                    for (TbProtoQueueMsg<QueueProtos.RetainedMsgProto> msg : messages) {
-                        String topic = msg.getKey();
-                        String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
-
-                        if (isRetainedMsgProtoEmpty(msg.getValue())) {
-                            callback.accept(topic, serviceId, null);
-                            clearedRetainedMsgCount++;
-                        } else {
-                            RetainedMsg retainedMsg = ProtoConverter.convertToRetainedMsg(msg.getValue());
-                            callback.accept(topic, serviceId, retainedMsg);
-                            newRetainedMsgCount++;
-                        }
-                    }
-                    stats.log(newRetainedMsgCount, clearedRetainedMsgCount);
-                    retainedMsgConsumer.commitSync();
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("Failed to process messages from queue.", e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            log.trace("Failed to wait until the server has capacity to handle new requests", e2);
-                        }
-                    }
+        retainedMsgConsumer.listen(messages -> {
+            stats.logTotal(messages.size());
+            int newRetainedMsgCount = 0;
+            int clearedRetainedMsgCount = 0;
+            for (TbProtoQueueMsg<QueueProtos.RetainedMsgProto> msg : messages) {
+                String topic = msg.getKey();
+                String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
+
+                if (isRetainedMsgProtoEmpty(msg.getValue())) {
+                    callback.accept(topic, serviceId, null);
+                    clearedRetainedMsgCount++;
+                } else {
+                    RetainedMsg retainedMsg = ProtoConverter.convertToRetainedMsg(msg.getValue());
+                    callback.accept(topic, serviceId, retainedMsg);
+                    newRetainedMsgCount++;
                 }
             }
+            stats.log(newRetainedMsgCount, clearedRetainedMsgCount);
         });
     }
 
-    private String persistDummyRetainedMsg() throws QueuePersistenceException {
-        String dummyTopic = DUMMY_TOPIC_PREFIX + RandomStringUtils.randomAlphanumeric(8);
-        RetainedMsg retainedMsg = new RetainedMsg(dummyTopic, DUMMY_PAYLOAD, 0);
-        persistenceService.persistRetainedMsgSync(dummyTopic, ProtoConverter.convertToRetainedMsgProto(retainedMsg));
-        return dummyTopic;
-    }
-
-    private void clearDummyRetainedMsg(String topic) throws QueuePersistenceException {
-        persistenceService.persistRetainedMsgSync(topic, QueueConstants.EMPTY_RETAINED_MSG_PROTO);
+    @Override
+    public Map<Integer, Long> getConsumedOffsets() {
+        return retainedMsgConsumer.getConsumedOffsets();
     }
 
     private boolean isRetainedMsgProtoEmpty(QueueProtos.RetainedMsgProto retainedMsgProto) {
@@ -177,13 +127,8 @@ public class RetainedMsgConsumerImpl implements RetainedMsgConsumer {
 
     @PreDestroy
     public void destroy() {
-        stopped = true;
         if (retainedMsgConsumer != null) {
-            retainedMsgConsumer.unsubscribeAndClose();
-            if (this.retainedMsgConsumer.getConsumerGroupId() != null) {
-                queueAdmin.deleteConsumerGroups(Collections.singleton(this.retainedMsgConsumer.getConsumerGroupId()));
-            }
+            retainedMsgConsumer.destroy(queueAdmin);
         }
-        consumerExecutor.shutdownNow();
     }
 }
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the retained messages matching new subscriptions to the client instead of collecting them upfront.
+ * Messages are written in batches while the channel is writable and the client's Receive Maximum has room,
+ * so that the stream never fills the queue of PUBLISH msgs pending for the Receive Maximum. The delivery is resumed
+ * when the client acknowledges in-flight msgs, or later on the channel's executor when the channel is not writable.
+ */
+@Slf4j
+@Service
+public class RetainedMsgDeliveryServiceImpl implements RetainedMsgDeliveryService {
+
+    private final RetainedMsgService retainedMsgService;
+    private final PublishMsgDeliveryService publishMsgDeliveryService;
+    private final MsgExpiryService msgExpiryService;
+    private final AtomicLong truncatedDeliveriesCounter;
+
+    @Setter
+    @Value("${mqtt.retain-msg-delivery.max-msgs-per-subscribe:0}")
+    private int maxMsgsPerSubscribe;
+    @Setter
+    @Value("${mqtt.retain-msg-delivery.max-bytes-per-subscribe:0}")
+    private long maxBytesPerSubscribe;
+    @Setter
+    @Value("${mqtt.retain-msg-delivery.batch-size:100}")
+    private int batchSize;
+    @Setter
+    @Value("${mqtt.retain-msg-delivery.resume-delay-ms:10}")
+    private long resumeDelayMs;
+    @Setter
+    @Value("${mqtt.max-in-flight-msgs:1000}")
+    private int maxInFlightMsgs;
+
+    public RetainedMsgDeliveryServiceImpl(RetainedMsgService retainedMsgService,
+                                          PublishMsgDeliveryService publishMsgDeliveryService,
+                                          MsgExpiryService msgExpiryService,
+                                          StatsManager statsManager) {
+        this.retainedMsgService = retainedMsgService;
+        this.publishMsgDeliveryService = publishMsgDeliveryService;
+        this.msgExpiryService = msgExpiryService;
+        this.truncatedDeliveriesCounter = statsManager.createRetainedMsgTruncatedDeliveriesCounter();
+    }
+
+    @Override
+    public void deliverRetainedMessages(ClientSessionCtx ctx, List<TopicSubscription> topicSubscriptions) {
+        if (topicSubscriptions.isEmpty()) {
+            return;
+        }
+        new RetainedMsgStream(ctx, topicSubscriptions).run();
+    }
+
+    private class RetainedMsgStream implements Runnable {
+
+        private final ClientSessionCtx ctx;
+        private final List<TopicSubscription> topicSubscriptions;
+        // overlapping filters of the same SUBSCRIBE must not deliver a topic twice
+        private final Set<String> deliveredTopics;
+
+        private int subscriptionIdx;
+        private TopicSubscription currentSubscription;
+        private Iterator<RetainedMsg> currentIterator;
+        private int sentMsgs;
+        private long sentBytes;
+
+        RetainedMsgStream(ClientSessionCtx ctx, List<TopicSubscription> topicSubscriptions) {
+            this.ctx = ctx;
+            this.topicSubscriptions = topicSubscriptions;
+            this.deliveredTopics = topicSubscriptions.size() > 1 ? new HashSet<>() : null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int sentInBatch = 0;
+                while (true) {
+                    if (!ctx.getChannel().channel().isActive()) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("[{}] Channel is closed, stopping retained msgs delivery after {} msgs", ctx.getClientId(), sentMsgs);
+                        }
+                        return;
+                    }
+                    if (!hasOutboundQuota()) {
+                        ctx.awaitOutboundQuota(this);
+                        // the quota may have been freed before the stream started waiting for it
+                        if (hasOutboundQuota()) {
+                            ctx.notifyOutboundQuotaWaiter();
+                        }
+                        return;
+                    }
+                    if (!ctx.getChannel().channel().isWritable()) {
+                        ctx.getChannel().executor().schedule(this, resumeDelayMs, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                    if (sentInBatch >= batchSize) {
+                        ctx.getChannel().executor().execute(this);
+                        return;
+                    }
+                    RetainedMsg retainedMsg = nextRetainedMsg();
+                    if (retainedMsg == null) {
+                        return;
+                    }
+                    if (isLimitReached(retainedMsg)) {
+                        truncatedDeliveriesCounter.incrementAndGet();
+                        log.warn("[{}] Retained msgs delivery is truncated after {} msgs and {} bytes",
+                                ctx.getClientId(), sentMsgs, sentBytes);
+                        return;
+                    }
+                    publishMsgDeliveryService.sendPublishRetainedMsgToClient(ctx, retainedMsg);
+                    sentMsgs++;
+                    sentBytes += retainedMsg.getPayloadLength();
+                    sentInBatch++;
+                }
+            } catch (Exception e) {
+                log.warn("[{}] Failed to deliver retained msgs", ctx.getClientId(), e);
+            }
+        }
+
+        private boolean hasOutboundQuota() {
+            int inFlightMsgs = ctx.getInFlightOutboundMsgs();
+            return inFlightMsgs < ctx.getReceiveMaximum() && inFlightMsgs < maxInFlightMsgs
+                    && ctx.getReceiveMaxPendingPublishesCtx().isEmpty();
+        }
+
+        private boolean isLimitReached(RetainedMsg retainedMsg) {
+            if (maxMsgsPerSubscribe > 0 && sentMsgs >= maxMsgsPerSubscribe) {
+                return true;
+            }
+            return maxBytesPerSubscribe > 0 && sentBytes + retainedMsg.getPayloadLength() > maxBytesPerSubscribe;
+        }
+
+        private RetainedMsg nextRetainedMsg() {
+            while (true) {
+                if (currentIterator != null && currentIterator.hasNext()) {
+                    RetainedMsg retainedMsg = currentIterator.next();
+                    if (deliveredTopics != null && !deliveredTopics.add(retainedMsg.getTopic())) {
+                        continue;
+                    }
+                    if (msgExpiryService.isExpired(ctx.getClientId(), retainedMsg.getCreatedTime(), retainedMsg.getMsgExpiryInterval())) {
+                        continue;
+                    }
+                    return retainedMsg.withQosLevel(Math.min(currentSubscription.getQos(), retainedMsg.getQosLevel()));
+                }
+                if (subscriptionIdx >= topicSubscriptions.size()) {
+                    return null;
+                }
+                currentSubscription = topicSubscriptions.get(subscriptionIdx++);
+                currentIterator = retainedMsgService.iterateRetainedMessages(currentSubscription.getTopicFilter());
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@ package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
 import org.thingsboard.mqtt.broker.common.data.BasicCallback;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
+import org.thingsboard.mqtt.broker.util.SortedIndexes;
 
 import java.util.List;
 import java.util.Map;
@@ -29,18 +31,31 @@ public interface RetainedMsgListenerService {
 
     void cacheRetainedMsgAndPersist(String topic, RetainedMsg retainedMsg);
 
+    void cacheRetainedMsgAndPersist(ParsedTopic topic, RetainedMsg retainedMsg);
+
     void cacheRetainedMsgAndPersist(String topic, RetainedMsg retainedMsg, BasicCallback callback);
 
     void cacheRetainedMsg(String topic, RetainedMsg retainedMsg);
 
     void clearRetainedMsgAndPersist(String topic);
 
+    void clearRetainedMsgAndPersist(ParsedTopic topic);
+
     void clearRetainedMsgAndPersist(String topic, BasicCallback callback);
 
     void clearRetainedMsg(String topic);
 
     RetainedMsgDto getRetainedMsgForTopic(String topic);
 
+    RetainedMsg getRetainedMsg(String topic);
+
+    /**
+     * @return cached retained msg without copying its payload, it may live off-heap and be replaced or cleared meanwhile
+     */
+    RetainedMsg getCachedRetainedMsg(String topic);
+
     List<RetainedMsg> getRetainedMessages();
 
+    SortedIndexes<RetainedMsg> getRetainedMsgIndexes();
+
 }
@@ -24,13 +24,16 @@ import org.thingsboard.mqtt.broker.common.data.BasicCallback;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.util.SortedIndexes;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import static org.thingsboard.mqtt.broker.common.data.util.CallbackUtil.createCallback;
 
@@ -43,20 +46,30 @@ public class RetainedMsgListenerServiceImpl implements RetainedMsgListenerServic
     private final RetainedMsgPersistenceService retainedMsgPersistenceService;
     private final ServiceInfoProvider serviceInfoProvider;
     private final StatsManager statsManager;
+    private final RetainedMsgOffHeapStorage retainedMsgOffHeapStorage;
+
+    // property names match the sort properties of RetainedMsgDto
+    private final SortedIndexes<RetainedMsg> retainedMsgIndexes = new SortedIndexes<RetainedMsg>()
+            .addIndex("topic", RetainedMsg::getTopic, Function.identity())
+            .addIndex("createdTime", RetainedMsg::getCreatedTime, Long::valueOf)
+            .addIndex("qos", RetainedMsg::getQosLevel, Integer::valueOf);
 
     private ConcurrentMap<String, RetainedMsg> retainedMessagesMap;
 
     @Override
     public void init(Map<String, RetainedMsg> retainedMsgMap) {
-        this.retainedMessagesMap = new ConcurrentHashMap<>(retainedMsgMap);
-        statsManager.registerRetainedMsgStats(retainedMessagesMap);
+        this.retainedMessagesMap = new ConcurrentHashMap<>(retainedMsgMap.size());
+        statsManager.registerRetainedMsgStats(retainedMessagesMap, retainedMsgOffHeapStorage.getArena());
 
         log.info("Restoring stored retained messages for {} topics.", retainedMsgMap.size());
         retainedMsgMap.forEach((topic, retainedMsg) -> {
             if (log.isTraceEnabled()) {
                 log.trace("[{}] Restoring retained msg - {}.", topic, retainedMsg);
             }
-            retainedMsgService.saveRetainedMsg(topic, retainedMsg);
+            RetainedMsg storedRetainedMsg = retainedMsgOffHeapStorage.store(retainedMsg);
+            retainedMessagesMap.put(topic, storedRetainedMsg);
+            retainedMsgIndexes.put(topic, retainedMsg);
+            retainedMsgService.saveRetainedMsg(ParsedTopic.parse(topic), storedRetainedMsg);
         });
     }
 
@@ -67,6 +80,11 @@ public class RetainedMsgListenerServiceImpl implements RetainedMsgListenerServic
 
     @Override
     public void cacheRetainedMsgAndPersist(String topic, RetainedMsg retainedMsg) {
+        cacheRetainedMsgAndPersist(ParsedTopic.parse(topic), retainedMsg);
+    }
+
+    @Override
+    public void cacheRetainedMsgAndPersist(ParsedTopic topic, RetainedMsg retainedMsg) {
         BasicCallback callback = createCallback(
                 () -> {
                     if (log.isTraceEnabled()) {
@@ -79,26 +97,45 @@ public class RetainedMsgListenerServiceImpl implements RetainedMsgListenerServic
 
     @Override
     public void cacheRetainedMsgAndPersist(String topic, RetainedMsg retainedMsg, BasicCallback callback) {
+        cacheRetainedMsgAndPersist(ParsedTopic.parse(topic), retainedMsg, callback);
+    }
+
+    private void cacheRetainedMsgAndPersist(ParsedTopic topic, RetainedMsg retainedMsg, BasicCallback callback) {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Executing cacheRetainedMsgAndPersist {}.", topic, retainedMsg);
         }
+        // converted before caching, the cached off-heap copy may be replaced concurrently
+        QueueProtos.RetainedMsgProto retainedMsgProto = ProtoConverter.convertToRetainedMsgProto(retainedMsg);
         cacheRetainedMsg(topic, retainedMsg);
 
-        QueueProtos.RetainedMsgProto retainedMsgProto = ProtoConverter.convertToRetainedMsgProto(retainedMsg);
-        retainedMsgPersistenceService.persistRetainedMsgAsync(topic, retainedMsgProto, callback);
+        retainedMsgPersistenceService.persistRetainedMsgAsync(topic.getTopic(), retainedMsgProto, callback);
     }
 
     @Override
     public void cacheRetainedMsg(String topic, RetainedMsg retainedMsg) {
+        cacheRetainedMsg(ParsedTopic.parse(topic), retainedMsg);
+    }
+
+    private void cacheRetainedMsg(ParsedTopic topic, RetainedMsg retainedMsg) {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Executing cacheRetainedMsg {}.", topic, retainedMsg);
         }
-        retainedMsgService.saveRetainedMsg(topic, retainedMsg);
-        retainedMessagesMap.put(topic, retainedMsg);
+        RetainedMsg storedRetainedMsg = retainedMsgOffHeapStorage.store(retainedMsg);
+        retainedMsgService.saveRetainedMsg(topic, storedRetainedMsg);
+        RetainedMsg prevRetainedMsg = retainedMessagesMap.put(topic.getTopic(), storedRetainedMsg);
+        retainedMsgIndexes.put(topic.getTopic(), retainedMsg);
+        if (prevRetainedMsg != null) {
+            retainedMsgOffHeapStorage.release(prevRetainedMsg);
+        }
     }
 
     @Override
     public void clearRetainedMsgAndPersist(String topic) {
+        clearRetainedMsgAndPersist(ParsedTopic.parse(topic));
+    }
+
+    @Override
+    public void clearRetainedMsgAndPersist(ParsedTopic topic) {
         BasicCallback callback = createCallback(
                 () -> {
                     if (log.isTraceEnabled()) {
@@ -111,21 +148,33 @@ public class RetainedMsgListenerServiceImpl implements RetainedMsgListenerServic
 
     @Override
     public void clearRetainedMsgAndPersist(String topic, BasicCallback callback) {
+        clearRetainedMsgAndPersist(ParsedTopic.parse(topic), callback);
+    }
+
+    private void clearRetainedMsgAndPersist(ParsedTopic topic, BasicCallback callback) {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Executing clearRetainedMsgAndPersist", topic);
         }
         clearRetainedMsg(topic);
 
-        retainedMsgPersistenceService.persistRetainedMsgAsync(topic, QueueConstants.EMPTY_RETAINED_MSG_PROTO, callback);
+        retainedMsgPersistenceService.persistRetainedMsgAsync(topic.getTopic(), QueueConstants.EMPTY_RETAINED_MSG_PROTO, callback);
     }
 
     @Override
     public void clearRetainedMsg(String topic) {
+        clearRetainedMsg(ParsedTopic.parse(topic));
+    }
+
+    private void clearRetainedMsg(ParsedTopic topic) {
         if (log.isTraceEnabled()) {
             log.trace("[{}] Executing clearRetainedMsg", topic);
         }
         retainedMsgService.clearRetainedMsg(topic);
-        retainedMessagesMap.remove(topic);
+        RetainedMsg prevRetainedMsg = retainedMessagesMap.remove(topic.getTopic());
+        retainedMsgIndexes.remove(topic.getTopic());
+        if (prevRetainedMsg != null) {
+            retainedMsgOffHeapStorage.release(prevRetainedMsg);
+        }
     }
 
     @Override
@@ -133,16 +182,42 @@ public class RetainedMsgListenerServiceImpl implements RetainedMsgListenerServic
         if (log.isTraceEnabled()) {
             log.trace("[{}] Executing getRetainedMsgForTopic", topic);
         }
-        RetainedMsg retainedMsg = retainedMessagesMap.getOrDefault(topic, null);
+        RetainedMsg retainedMsg = getRetainedMsg(topic);
         return retainedMsg != null ? RetainedMsgDto.newInstance(retainedMsg) : null;
     }
 
+    @Override
+    public RetainedMsg getRetainedMsg(String topic) {
+        RetainedMsg retainedMsg = retainedMessagesMap.getOrDefault(topic, null);
+        return retainedMsg != null ? retainedMsgOffHeapStorage.toHeapMsg(retainedMsg) : null;
+    }
+
+    @Override
+    public RetainedMsg getCachedRetainedMsg(String topic) {
+        return retainedMessagesMap.get(topic);
+    }
+
+    @Override
+    public SortedIndexes<RetainedMsg> getRetainedMsgIndexes() {
+        return retainedMsgIndexes;
+    }
+
     @Override
     public List<RetainedMsg> getRetainedMessages() {
         if (log.isTraceEnabled()) {
             log.trace("Executing getRetainedMessages");
         }
-        return new ArrayList<>(retainedMessagesMap.values());
+        if (!retainedMsgOffHeapStorage.isEnabled()) {
+            return new ArrayList<>(retainedMessagesMap.values());
+        }
+        List<RetainedMsg> retainedMessages = new ArrayList<>(retainedMessagesMap.size());
+        for (RetainedMsg retainedMsg : retainedMessagesMap.values()) {
+            RetainedMsg heapRetainedMsg = retainedMsgOffHeapStorage.toHeapMsg(retainedMsg);
+            if (heapRetainedMsg != null) {
+                retainedMessages.add(heapRetainedMsg);
+            }
+        }
+        return retainedMessages;
     }
 
     private void processRetainedMsgUpdate(String topic, String serviceId, RetainedMsg retainedMsg) {
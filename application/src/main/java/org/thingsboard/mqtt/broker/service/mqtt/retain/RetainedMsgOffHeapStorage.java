@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Moves retained messages cached by the broker into off-heap memory when {@code mqtt.retain-msg-off-heap.enabled}
+ * is set, so that millions of retained topics don't inflate the old generation. Messages bigger than
+ * the max record size stay on heap.
+ */
+@Slf4j
+@Component
+public class RetainedMsgOffHeapStorage {
+
+    @Getter
+    @Value("${mqtt.retain-msg-off-heap.enabled:false}")
+    private boolean enabled;
+    @Value("${mqtt.retain-msg-off-heap.slab-size:1048576}")
+    private int slabSize;
+    @Value("${mqtt.retain-msg-off-heap.max-record-size:65536}")
+    private int maxRecordSize;
+
+    @Getter
+    private RetainedMsgPayloadArena arena;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            arena = new RetainedMsgPayloadArena(slabSize, maxRecordSize);
+            log.info("Storing retained messages off-heap, slab size {} bytes, max record size {} bytes.", slabSize, maxRecordSize);
+        }
+    }
+
+    /**
+     * @return off-heap copy of the msg owning its arena slot or the msg itself if off-heap storage is disabled
+     * or the msg doesn't fit into a slot
+     */
+    public RetainedMsg store(RetainedMsg retainedMsg) {
+        if (!enabled || retainedMsg instanceof OffHeapRetainedMsg) {
+            return retainedMsg;
+        }
+        byte[] payload = retainedMsg.getPayload();
+        byte[] properties = OffHeapRetainedMsg.encodeUserProperties(retainedMsg.getProperties());
+        byte[] record = new byte[payload.length + properties.length];
+        System.arraycopy(payload, 0, record, 0, payload.length);
+        System.arraycopy(properties, 0, record, payload.length, properties.length);
+
+        long handle = arena.allocate(record);
+        if (handle == RetainedMsgPayloadArena.NO_HANDLE) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Retained msg of {} bytes is too big for off-heap storage, keeping it on heap.",
+                        retainedMsg.getTopic(), record.length);
+            }
+            return retainedMsg;
+        }
+        return new OffHeapRetainedMsg(retainedMsg.getTopic(), retainedMsg.getQosLevel(), retainedMsg.getCreatedTime(),
+                retainedMsg.getMsgExpiryInterval(), arena, handle, payload.length, properties.length);
+    }
+
+    /**
+     * Frees the arena slot of a msg previously returned by {@link #store(RetainedMsg)}.
+     */
+    public void release(RetainedMsg retainedMsg) {
+        if (retainedMsg instanceof OffHeapRetainedMsg) {
+            arena.release(((OffHeapRetainedMsg) retainedMsg).getHandle());
+        }
+    }
+
+    /**
+     * @return on-heap copy of the msg or null if an off-heap msg was replaced or cleared concurrently
+     */
+    public RetainedMsg toHeapMsg(RetainedMsg retainedMsg) {
+        if (!(retainedMsg instanceof OffHeapRetainedMsg)) {
+            return retainedMsg;
+        }
+        return ((OffHeapRetainedMsg) retainedMsg).toHeapMsg();
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
@@ -23,4 +25,6 @@ public interface RetainedMsgPageService {
 
     PageData<RetainedMsgDto> getRetainedMessages(PageLink pageLink);
 
+    CursorPageData<RetainedMsgDto> getRetainedMessages(CursorPageLink pageLink);
+
 }
@@ -18,12 +18,17 @@ package org.thingsboard.mqtt.broker.service.mqtt.retain;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
+import org.thingsboard.mqtt.broker.util.SortedIndexes;
 
-import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,20 +36,29 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RetainedMsgPageServiceImpl implements RetainedMsgPageService {
 
+    private static final String TOPIC = "topic";
+
     private final RetainedMsgListenerService retainedMsgListenerService;
 
     @Override
     public PageData<RetainedMsgDto> getRetainedMessages(PageLink pageLink) {
-        List<RetainedMsg> retainedMessages = retainedMsgListenerService.getRetainedMessages();
+        SortedIndexes<RetainedMsg> retainedMsgIndexes = retainedMsgListenerService.getRetainedMsgIndexes();
+        Predicate<RetainedMsg> filter = textSearchFilter(pageLink.getTextSearch());
+        SortOrder sortOrder = pageLink.getSortOrder();
+
+        if (sortOrder == null || retainedMsgIndexes.isIndexed(toIndexProperty(sortOrder))) {
+            PageData<RetainedMsg> page = retainedMsgIndexes.findPage(toIndexProperty(sortOrder), toDirection(sortOrder),
+                    pageLink.getPage(), pageLink.getPageSize(), filter, retainedMsgListenerService::getCachedRetainedMsg);
+            return new PageData<>(toRetainedMsgDtos(page.getData()), page.getTotalPages(), page.getTotalElements(), page.hasNext());
+        }
 
-        List<RetainedMsg> filteredByTextSearch = filterRetainedMessages(retainedMessages, pageLink);
+        // every sortable property is indexed, msgs are not sorted by an unknown property
+        List<RetainedMsg> filteredByTextSearch = retainedMsgIndexes.findAll(filter, retainedMsgListenerService::getCachedRetainedMsg);
 
-        List<RetainedMsgDto> data = filteredByTextSearch.stream()
-                .map(this::toRetainedMsgDto)
-                .sorted(sorted(pageLink))
+        List<RetainedMsgDto> data = toRetainedMsgDtos(filteredByTextSearch.stream()
                 .skip((long) pageLink.getPage() * pageLink.getPageSize())
                 .limit(pageLink.getPageSize())
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
 
         return new PageData<>(data,
                 filteredByTextSearch.size() / pageLink.getPageSize(),
@@ -52,25 +66,41 @@ public class RetainedMsgPageServiceImpl implements RetainedMsgPageService {
                 pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < filteredByTextSearch.size());
     }
 
-    private RetainedMsgDto toRetainedMsgDto(RetainedMsg retainedMsg) {
-        return RetainedMsgDto.newInstance(retainedMsg);
+    @Override
+    public CursorPageData<RetainedMsgDto> getRetainedMessages(CursorPageLink pageLink) {
+        SortOrder sortOrder = pageLink.getSortOrder();
+        CursorPageData<RetainedMsg> page = retainedMsgListenerService.getRetainedMsgIndexes().findPage(
+                toIndexProperty(sortOrder), toDirection(sortOrder), pageLink.getCursor(), pageLink.getPageSize(),
+                textSearchFilter(pageLink.getTextSearch()), retainedMsgListenerService::getCachedRetainedMsg);
+        return new CursorPageData<>(toRetainedMsgDtos(page.getData()), page.getNextCursor(), page.hasNext());
     }
 
-    private Comparator<? super RetainedMsgDto> sorted(PageLink pageLink) {
-        return pageLink.getSortOrder() == null ? (o1, o2) -> 0 :
-                Comparator.nullsLast(RetainedMsgDto.getComparator(pageLink.getSortOrder()));
+    /**
+     * Pages are read from the cached msgs whose payload may be off-heap, only the msgs of the page are copied to heap.
+     * Msgs cleared after the page was read are skipped.
+     */
+    private List<RetainedMsgDto> toRetainedMsgDtos(List<RetainedMsg> cachedRetainedMessages) {
+        return cachedRetainedMessages.stream()
+                .map(retainedMsg -> retainedMsgListenerService.getRetainedMsg(retainedMsg.getTopic()))
+                .filter(Objects::nonNull)
+                .map(RetainedMsgDto::newInstance)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
-    private List<RetainedMsg> filterRetainedMessages(List<RetainedMsg> retainedMessages, PageLink pageLink) {
-        return retainedMessages.stream()
-                .filter(retainedMsg -> filter(pageLink, retainedMsg))
-                .collect(Collectors.toList());
+    private String toIndexProperty(SortOrder sortOrder) {
+        return sortOrder == null ? TOPIC : sortOrder.getProperty();
+    }
+
+    private SortOrder.Direction toDirection(SortOrder sortOrder) {
+        return sortOrder == null || sortOrder.getDirection() == null ? SortOrder.Direction.ASC : sortOrder.getDirection();
     }
 
-    private boolean filter(PageLink pageLink, RetainedMsg retainedMsg) {
-        if (pageLink.getTextSearch() != null) {
-            return retainedMsg.getTopic().toLowerCase().contains(pageLink.getTextSearch().toLowerCase());
+    private Predicate<RetainedMsg> textSearchFilter(String textSearch) {
+        if (textSearch == null) {
+            return null;
         }
-        return true;
+        String textSearchLowerCase = textSearch.toLowerCase();
+        return retainedMsg -> retainedMsg.getTopic().toLowerCase().contains(textSearchLowerCase);
     }
 }
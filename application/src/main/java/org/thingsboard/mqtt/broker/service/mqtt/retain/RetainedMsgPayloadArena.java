@@ -0,0 +1,287 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Slab allocator of direct memory for retained message records.
+ * <p>
+ * Records are placed into power-of-two sized slots (from {@value #MIN_SLOT_SIZE} bytes up to the max slot size)
+ * carved out of fixed-size direct slabs. Every slot is reference counted: the owner holds one reference,
+ * readers take a temporary one while copying, and the slot goes back to the free list once the count drops to zero.
+ * This way a record replaced or cleared concurrently with a subscriber reading it is never overwritten mid-copy.
+ * <p>
+ * Every allocation of a slot bumps its generation, which is a part of the handle. A stale handle of a freed record
+ * does not match the generation of the slot anymore, so it can't be used to read or free the record that reuses the slot.
+ * <p>
+ * Slabs are never returned to the OS, freed slots are reused by subsequent allocations of the same size class.
+ */
+public class RetainedMsgPayloadArena {
+
+    public static final long NO_HANDLE = -1;
+
+    static final int MIN_SLOT_SIZE = 64;
+    private static final int MIN_SLOT_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+
+    // handle layout: size class (5 bits) | generation (20 bits) | slab (15 bits) | slot (24 bits)
+    private static final int CLASS_SHIFT = 59;
+    private static final int GENERATION_SHIFT = 39;
+    private static final long GENERATION_MASK = (1L << 20) - 1;
+    private static final int SLAB_SHIFT = 24;
+    private static final int MAX_SLABS = 1 << 15;
+    private static final int SLOT_MASK = (1 << 24) - 1;
+    private static final int MAX_SLAB_SIZE = MIN_SLOT_SIZE << 24;
+
+    // slot state layout: generation (high 32 bits) | reference count (low 32 bits)
+    private static final long REF_COUNT_MASK = 0xFFFFFFFFL;
+
+    private final int slabSize;
+    private final int maxSlotSize;
+    private final SizeClass[] sizeClasses;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    public RetainedMsgPayloadArena(int slabSize, int maxSlotSize) {
+        if (slabSize <= 0 || slabSize > MAX_SLAB_SIZE) {
+            throw new IllegalArgumentException("Slab size should not be bigger than " + MAX_SLAB_SIZE);
+        }
+        if (Integer.bitCount(maxSlotSize) != 1 || maxSlotSize < MIN_SLOT_SIZE || maxSlotSize > slabSize) {
+            throw new IllegalArgumentException("Max slot size should be a power of two between "
+                    + MIN_SLOT_SIZE + " and slab size " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.maxSlotSize = maxSlotSize;
+        int classes = Integer.numberOfTrailingZeros(maxSlotSize) - MIN_SLOT_SIZE_SHIFT + 1;
+        this.sizeClasses = new SizeClass[classes];
+        for (int i = 0; i < classes; i++) {
+            sizeClasses[i] = new SizeClass(MIN_SLOT_SIZE << i, slabSize / (MIN_SLOT_SIZE << i));
+        }
+    }
+
+    public int getMaxRecordSize() {
+        return maxSlotSize;
+    }
+
+    /**
+     * @return direct memory occupied by live records (slot granularity)
+     */
+    public AtomicLong getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return direct memory allocated for slabs
+     */
+    public AtomicLong getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Copies the record into a free slot. The caller owns the returned handle and must {@link #release(long)} it.
+     *
+     * @return handle of the record or {@link #NO_HANDLE} if the record is bigger than the max slot size
+     */
+    public long allocate(byte[] record) {
+        if (record.length > maxSlotSize) {
+            return NO_HANDLE;
+        }
+        int classIdx = sizeClassIdx(record.length);
+        SizeClass sizeClass = sizeClasses[classIdx];
+        long slot = sizeClass.acquireSlot();
+        Slab slab = sizeClass.slabs[slabIdx(slot)];
+        int slotIdx = slotIdx(slot);
+        slab.buffer.put(slotIdx * sizeClass.slotSize, record);
+        // the slot is free, nobody else can change its state until the handle is returned
+        long generation = (generation(slab.states.get(slotIdx)) + 1) & GENERATION_MASK;
+        slab.states.set(slotIdx, (generation << 32) | 1);
+        usedBytes.addAndGet(sizeClass.slotSize);
+        return ((long) classIdx << CLASS_SHIFT) | (generation << GENERATION_SHIFT) | slot;
+    }
+
+    /**
+     * Takes an additional reference to the record.
+     *
+     * @return false if the record was already freed, even if its slot is reused by another record
+     */
+    public boolean retain(long handle) {
+        AtomicLongArray states = slab(handle).states;
+        int slotIdx = slotIdx(handle);
+        while (true) {
+            long state = states.get(slotIdx);
+            if (!isLive(state, handle)) {
+                return false;
+            }
+            if (states.compareAndSet(slotIdx, state, state + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops a reference to the record. Releasing a stale handle is a no-op, so it can't free the record that reuses the slot.
+     */
+    public void release(long handle) {
+        AtomicLongArray states = slab(handle).states;
+        int slotIdx = slotIdx(handle);
+        while (true) {
+            long state = states.get(slotIdx);
+            if (!isLive(state, handle)) {
+                return;
+            }
+            if (states.compareAndSet(slotIdx, state, state - 1)) {
+                if ((state & REF_COUNT_MASK) == 1) {
+                    SizeClass sizeClass = sizeClasses[classIdx(handle)];
+                    usedBytes.addAndGet(-sizeClass.slotSize);
+                    sizeClass.releaseSlot(slotAddress(slabIdx(handle), slotIdx));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return copy of the record region or null if the record was already freed
+     */
+    public byte[] read(long handle, int offset, int length) {
+        if (!retain(handle)) {
+            return null;
+        }
+        try {
+            byte[] result = new byte[length];
+            slab(handle).buffer.get(recordOffset(handle) + offset, result);
+            return result;
+        } finally {
+            release(handle);
+        }
+    }
+
+    /**
+     * Writes the record region straight from the slab into the buffer.
+     *
+     * @return false if the record was already freed
+     */
+    public boolean readTo(long handle, int offset, int length, ByteBuf dst) {
+        if (!retain(handle)) {
+            return false;
+        }
+        try {
+            dst.writeBytes(slab(handle).buffer.slice(recordOffset(handle) + offset, length));
+            return true;
+        } finally {
+            release(handle);
+        }
+    }
+
+    private Slab slab(long handle) {
+        return sizeClasses[classIdx(handle)].slabs[slabIdx(handle)];
+    }
+
+    private int recordOffset(long handle) {
+        return slotIdx(handle) * sizeClasses[classIdx(handle)].slotSize;
+    }
+
+    private static int sizeClassIdx(int length) {
+        if (length <= MIN_SLOT_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SLOT_SIZE_SHIFT;
+    }
+
+    private static boolean isLive(long state, long handle) {
+        return (state & REF_COUNT_MASK) > 0 && generation(state) == ((handle >>> GENERATION_SHIFT) & GENERATION_MASK);
+    }
+
+    private static long generation(long state) {
+        return state >>> 32;
+    }
+
+    private static long slotAddress(int slabIdx, int slotIdx) {
+        return ((long) slabIdx << SLAB_SHIFT) | slotIdx;
+    }
+
+    private static int classIdx(long handle) {
+        return (int) (handle >>> CLASS_SHIFT);
+    }
+
+    private static int slabIdx(long handle) {
+        return (int) (handle >>> SLAB_SHIFT) & (MAX_SLABS - 1);
+    }
+
+    private static int slotIdx(long handle) {
+        return (int) handle & SLOT_MASK;
+    }
+
+    private class SizeClass {
+        private final int slotSize;
+        private final int slotsPerSlab;
+        private volatile Slab[] slabs = new Slab[0];
+        private long[] freeSlots = new long[16];
+        private int freeSlotsCount;
+
+        SizeClass(int slotSize, int slotsPerSlab) {
+            this.slotSize = slotSize;
+            this.slotsPerSlab = slotsPerSlab;
+        }
+
+        synchronized long acquireSlot() {
+            if (freeSlotsCount == 0) {
+                addSlab();
+            }
+            return freeSlots[--freeSlotsCount];
+        }
+
+        synchronized void releaseSlot(long slot) {
+            if (freeSlotsCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeSlotsCount++] = slot;
+        }
+
+        private void addSlab() {
+            int slabIdx = slabs.length;
+            if (slabIdx >= MAX_SLABS) {
+                throw new IllegalStateException("Too many slabs for slot size " + slotSize);
+            }
+            Slab[] newSlabs = Arrays.copyOf(slabs, slabIdx + 1);
+            newSlabs[slabIdx] = new Slab(ByteBuffer.allocateDirect(slabSize), new AtomicLongArray(slotsPerSlab));
+            slabs = newSlabs;
+            reservedBytes.addAndGet(slabSize);
+            if (freeSlots.length < slotsPerSlab) {
+                freeSlots = Arrays.copyOf(freeSlots, slotsPerSlab);
+            }
+            for (int slotIdx = slotsPerSlab - 1; slotIdx >= 0; slotIdx--) {
+                freeSlots[freeSlotsCount++] = slotAddress(slabIdx, slotIdx);
+            }
+        }
+    }
+
+    private static class Slab {
+        private final ByteBuffer buffer;
+        private final AtomicLongArray states;
+
+        Slab(ByteBuffer buffer, AtomicLongArray states) {
+            this.buffer = buffer;
+            this.states = states;
+        }
+    }
+}
@@ -15,9 +15,12 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 
 public interface RetainedMsgProcessor {
 
     PublishMsg process(PublishMsg publishMsg);
+
+    PublishMsg process(PublishMsg publishMsg, ParsedTopic topic);
 }
@@ -20,6 +20,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.adaptor.NettyMqttConverter;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 
 @Slf4j
@@ -31,18 +33,23 @@ public class RetainedMsgProcessorImpl implements RetainedMsgProcessor {
 
     @Override
     public PublishMsg process(PublishMsg publishMsg) {
+        return process(publishMsg, ParsedTopic.parse(publishMsg.getTopicName()));
+    }
+
+    @Override
+    public PublishMsg process(PublishMsg publishMsg, ParsedTopic topic) {
         if (publishMsg.getByteBuf() != null && publishMsg.getPayload() == null) {
             byte[] payload = NettyMqttConverter.toBytes(publishMsg.getByteBuf());
             publishMsg = publishMsg.toBuilder().payload(payload).build();
         }
-        return processRetainedMsg(publishMsg);
+        return processRetainedMsg(publishMsg, topic);
     }
 
-    private PublishMsg processRetainedMsg(PublishMsg publishMsg) {
+    private PublishMsg processRetainedMsg(PublishMsg publishMsg, ParsedTopic topic) {
         if (payloadIsEmpty(publishMsg)) {
-            retainedMsgListenerService.clearRetainedMsgAndPersist(publishMsg.getTopicName());
+            retainedMsgListenerService.clearRetainedMsgAndPersist(topic);
         } else {
-            retainedMsgListenerService.cacheRetainedMsgAndPersist(publishMsg.getTopicName(), newRetainedMsg(publishMsg));
+            retainedMsgListenerService.cacheRetainedMsgAndPersist(topic, newRetainedMsg(publishMsg));
         }
         return publishMsg;
     }
@@ -57,7 +64,8 @@ public class RetainedMsgProcessorImpl implements RetainedMsgProcessor {
         if (property != null) {
             properties.add(property);
         }
-        return new RetainedMsg(publishMsg.getTopicName(), publishMsg.getPayload(), publishMsg.getQosLevel(), properties);
+        return new RetainedMsg(publishMsg.getTopicName(), publishMsg.getPayload(), publishMsg.getQosLevel(), properties,
+                System.currentTimeMillis(), MqttPropertiesUtil.getMsgExpiryInterval(publishMsg.getProperties()));
     }
 
     private MqttProperties.MqttProperty getUserProperties(PublishMsg publishMsg) {
@@ -16,16 +16,20 @@
 package org.thingsboard.mqtt.broker.service.mqtt.retain;
 
 import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 
+import java.util.Iterator;
 import java.util.List;
 
 public interface RetainedMsgService {
 
-    void saveRetainedMsg(String topic, RetainedMsg retainedMsg);
+    void saveRetainedMsg(ParsedTopic topic, RetainedMsg retainedMsg);
 
-    void clearRetainedMsg(String topic);
+    void clearRetainedMsg(ParsedTopic topic);
 
     List<RetainedMsg> getRetainedMessages(String topicFilter);
 
+    Iterator<RetainedMsg> iterateRetainedMessages(String topicFilter);
+
     void clearEmptyTopicNodes() throws RetainMsgTrieClearException;
 }
@@ -19,9 +19,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.exception.RetainMsgTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -38,7 +40,7 @@ public class RetainedMsgServiceImpl implements RetainedMsgService {
     }
 
     @Override
-    public void saveRetainedMsg(String topic, RetainedMsg retainedMsg) {
+    public void saveRetainedMsg(ParsedTopic topic, RetainedMsg retainedMsg) {
         if (log.isTraceEnabled()) {
             log.trace("Executing saveRetainedMsg [{}] [{}]", topic, retainedMsg);
         }
@@ -46,7 +48,7 @@ public class RetainedMsgServiceImpl implements RetainedMsgService {
     }
 
     @Override
-    public void clearRetainedMsg(String topic) {
+    public void clearRetainedMsg(ParsedTopic topic) {
         if (log.isTraceEnabled()) {
             log.trace("Executing clearRetainedMsg [{}]", topic);
         }
@@ -61,6 +63,11 @@ public class RetainedMsgServiceImpl implements RetainedMsgService {
         return retainedMsg;
     }
 
+    @Override
+    public Iterator<RetainedMsg> iterateRetainedMessages(String topicFilter) {
+        return retainMsgTrie.iterate(topicFilter);
+    }
+
     @Override
     public void clearEmptyTopicNodes() throws RetainMsgTrieClearException {
         if (log.isTraceEnabled()) {
@@ -21,6 +21,7 @@ import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttVersion;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -113,6 +114,11 @@ public class RetransmissionServiceImpl implements RetransmissionService {
     }
 
     private void sendAndFlush(ClientSessionCtx sessionCtx, MqttMessage mqttMsg) {
+        if (!sessionCtx.getChannel().channel().isWritable()) {
+            // the client does not keep up with reading, the timer will retry later
+            ReferenceCountUtil.safeRelease(mqttMsg);
+            return;
+        }
         sessionCtx.getChannel().writeAndFlush(mqttMsg);
     }
 
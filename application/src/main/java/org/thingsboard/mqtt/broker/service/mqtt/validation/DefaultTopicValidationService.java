@@ -16,10 +16,10 @@
 package org.thingsboard.mqtt.broker.service.mqtt.validation;
 
 import lombok.Setter;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.dao.exception.DataValidationException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 
 import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.MULTI_LEVEL_WILDCARD;
 import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.SINGLE_LEVEL_WILDCARD;
@@ -36,17 +36,21 @@ public class DefaultTopicValidationService implements TopicValidationService {
 
     @Override
     public void validateTopic(String topic) {
+        validateTopic(ParsedTopic.parse(topic));
+    }
+
+    @Override
+    public void validateTopic(ParsedTopic topic) {
         validateTopicNameAndFilter(topic);
 
-        if (topic.contains(MULTI_LEVEL_WILDCARD)
-                || topic.contains(SINGLE_LEVEL_WILDCARD)) {
+        if (topic.containsWildcard()) {
             throw new DataValidationException("Topic cannot contain wildcard characters!");
         }
     }
 
     @Override
     public void validateTopicFilter(String topicFilter) {
-        validateTopicNameAndFilter(topicFilter);
+        validateTopicNameAndFilter(ParsedTopic.parse(topicFilter));
 
         validateMultiLevelWildcard(topicFilter);
         validateSingleLevelWildcard(topicFilter);
@@ -78,18 +82,18 @@ public class DefaultTopicValidationService implements TopicValidationService {
         }
     }
 
-    private void validateTopicNameAndFilter(String topic) {
+    private void validateTopicNameAndFilter(ParsedTopic topic) {
         if (topic.length() < 1) {
             throw new DataValidationException("Topic Names and Topic Filters must be at least one character long.");
         }
-        if (topic.contains("\u0000")) {
+        if (topic.containsNullChar()) {
             throw new DataValidationException("Topic Names and Topic Filters must not include the null character (Unicod U+0000).");
         }
         if (topic.length() > MAX_SIZE_BYTES) {
             throw new DataValidationException("Topic Names and Topic Filters must not encode to more than " + MAX_SIZE_BYTES + " bytes.");
         }
         if (maxSegmentsCount > 0) {
-            int segmentsCount = StringUtils.countMatches(topic, TOPIC_DELIMITER);
+            int segmentsCount = topic.getDelimitersCount();
             if (segmentsCount > maxSegmentsCount) {
                 throw new DataValidationException("Topic Names and Topic Filters must contain less than " + maxSegmentsCount + " segments.");
             }
@@ -15,8 +15,12 @@
  */
 package org.thingsboard.mqtt.broker.service.mqtt.validation;
 
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
+
 public interface TopicValidationService {
     void validateTopic(String topic);
 
+    void validateTopic(ParsedTopic topic);
+
     void validateTopicFilter(String topicFilter);
 }
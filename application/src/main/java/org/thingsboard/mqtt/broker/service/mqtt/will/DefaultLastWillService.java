@@ -16,11 +16,15 @@
 package org.thingsboard.mqtt.broker.service.mqtt.will;
 
 import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
@@ -33,13 +37,19 @@ import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
@@ -47,26 +57,64 @@ import java.util.concurrent.TimeUnit;
 public class DefaultLastWillService implements LastWillService {
 
     private final ConcurrentMap<UUID, MsgWithSessionInfo> lastWillMessages = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, ScheduledFuture<?>> delayedLastWillFuturesMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DelayedLastWill> delayedLastWills = new ConcurrentHashMap<>();
+    /*
+        Last-will msgs whose delay has passed. The timer thread only adds them here, so that thousands of wills
+        firing together do not hold up the timer and are published in batches by the dispatcher threads.
+     */
+    private final Queue<DelayedLastWill> dueLastWills = new ConcurrentLinkedQueue<>();
 
     private final MsgDispatcherService msgDispatcherService;
     private final RetainedMsgProcessor retainedMsgProcessor;
     private final StatsManager statsManager;
 
+    @Value("${mqtt.last-will.timer-tick-ms:100}")
+    private long timerTickMs;
+    @Value("${mqtt.last-will.dispatcher-threads:4}")
+    private int dispatcherThreads;
     @Setter
+    @Value("${mqtt.last-will.batch-size:500}")
+    private int batchSize;
+    @Setter
+    @Value("${mqtt.last-will.late-threshold-ms:1000}")
+    private long lateThresholdMs;
+
     private ScheduledExecutorService scheduler;
+    private HashedWheelTimer timer;
+    private ExecutorService dispatcher;
+
+    private AtomicLong scheduledCounter;
+    private AtomicLong cancelledCounter;
+    private AtomicLong lateCounter;
 
     @PostConstruct
     public void init() {
-        statsManager.registerLastWillStats(lastWillMessages);
+        init(new HashedWheelTimer(ThingsBoardThreadFactory.forName("last-will-timer"), timerTickMs, TimeUnit.MILLISECONDS),
+                Executors.newFixedThreadPool(dispatcherThreads, ThingsBoardThreadFactory.forName("last-will-dispatcher")));
         this.scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("last-will-scheduler"));
+        this.scheduler.scheduleWithFixedDelay(this::dispatchDueLastWills, timerTickMs, timerTickMs, TimeUnit.MILLISECONDS);
+    }
+
+    void init(HashedWheelTimer timer, ExecutorService dispatcher) {
+        statsManager.registerLastWillStats(lastWillMessages);
+        this.scheduledCounter = statsManager.createLastWillScheduledCounter();
+        this.cancelledCounter = statsManager.createLastWillCancelledCounter();
+        this.lateCounter = statsManager.createLastWillLateCounter();
+        this.timer = timer;
+        this.dispatcher = dispatcher;
     }
 
     @PreDestroy
     public void destroy() {
+        if (this.timer != null) {
+            this.timer.stop();
+        }
         if (this.scheduler != null) {
             this.scheduler.shutdownNow();
         }
+        if (this.dispatcher != null) {
+            this.dispatcher.shutdownNow();
+        }
     }
 
     @Override
@@ -109,15 +157,72 @@ public class DefaultLastWillService implements LastWillService {
 
     @Override
     public void cancelLastWillDelayIfScheduled(String clientId) {
-        ScheduledFuture<?> task = delayedLastWillFuturesMap.get(clientId);
-        if (task != null && !task.isCancelled()) {
-            task.cancel(true);
+        DelayedLastWill delayedLastWill = delayedLastWills.remove(clientId);
+        if (delayedLastWill != null && delayedLastWill.cancel()) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Cancelled delayed last will msg.", clientId);
+            }
+            cancelledCounter.incrementAndGet();
         }
     }
 
     void scheduleLastWill(MsgWithSessionInfo lastWillMsgWithSessionInfo, UUID sessionId, int willDelay) {
-        ScheduledFuture<?> futureTask = scheduler.schedule(() -> processLastWill(lastWillMsgWithSessionInfo, sessionId), willDelay, TimeUnit.SECONDS);
-        delayedLastWillFuturesMap.put(getClientId(lastWillMsgWithSessionInfo), futureTask);
+        long delayMs = TimeUnit.SECONDS.toMillis(willDelay);
+        DelayedLastWill delayedLastWill = new DelayedLastWill(lastWillMsgWithSessionInfo, sessionId, System.currentTimeMillis() + delayMs);
+        if (delayMs <= 0) {
+            dispatchBatch(List.of(delayedLastWill));
+            return;
+        }
+        delayedLastWills.put(getClientId(lastWillMsgWithSessionInfo), delayedLastWill);
+        delayedLastWill.setTimeout(timer.newTimeout(timeout -> dueLastWills.add(delayedLastWill), delayMs, TimeUnit.MILLISECONDS));
+        scheduledCounter.incrementAndGet();
+    }
+
+    void dispatchDueLastWills() {
+        List<DelayedLastWill> batch = new ArrayList<>();
+        DelayedLastWill delayedLastWill;
+        while ((delayedLastWill = dueLastWills.poll()) != null) {
+            batch.add(delayedLastWill);
+            if (batch.size() >= batchSize) {
+                dispatchBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            dispatchBatch(batch);
+        }
+    }
+
+    private void dispatchBatch(List<DelayedLastWill> batch) {
+        if (log.isDebugEnabled()) {
+            log.debug("Dispatching {} last will msgs.", batch.size());
+        }
+        dispatcher.execute(() -> {
+            for (DelayedLastWill delayedLastWill : batch) {
+                processDueLastWill(delayedLastWill);
+            }
+        });
+    }
+
+    private void processDueLastWill(DelayedLastWill delayedLastWill) {
+        // claims the will, so a reconnect cancelling it concurrently either wins or finds it already published
+        if (!delayedLastWill.claim()) {
+            return;
+        }
+        MsgWithSessionInfo lastWillMsgWithSessionInfo = delayedLastWill.getLastWillMsgWithSessionInfo();
+        delayedLastWills.remove(getClientId(lastWillMsgWithSessionInfo), delayedLastWill);
+        long lateMs = System.currentTimeMillis() - delayedLastWill.getDueTime();
+        if (lateMs > lateThresholdMs) {
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] Last will msg is published {} ms late.", delayedLastWill.getSessionId(), lateMs);
+            }
+            lateCounter.incrementAndGet();
+        }
+        try {
+            processLastWill(lastWillMsgWithSessionInfo, delayedLastWill.getSessionId());
+        } catch (Exception e) {
+            log.warn("[{}] Failed to process last will msg.", delayedLastWill.getSessionId(), e);
+        }
     }
 
     private int getWillDelay(MsgWithSessionInfo lastWillMsgWithSessionInfo, int sessionExpiryIntervalFromDisconnect) {
@@ -146,7 +251,6 @@ public class DefaultLastWillService implements LastWillService {
             publishMsg = retainedMsgProcessor.process(publishMsg);
         }
         persistPublishMsg(lastWillMsgWithSessionInfo.getSessionInfo(), publishMsg, sessionId);
-        delayedLastWillFuturesMap.remove(getClientId(lastWillMsgWithSessionInfo));
     }
 
     private String getClientId(MsgWithSessionInfo lastWillMsgWithSessionInfo) {
@@ -176,4 +280,30 @@ public class DefaultLastWillService implements LastWillService {
         private final PublishMsg publishMsg;
         private final SessionInfo sessionInfo;
     }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class DelayedLastWill {
+        private final MsgWithSessionInfo lastWillMsgWithSessionInfo;
+        private final UUID sessionId;
+        private final long dueTime;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        @Setter
+        private volatile Timeout timeout;
+
+        boolean claim() {
+            return completed.compareAndSet(false, true);
+        }
+
+        boolean cancel() {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
+            }
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+    }
 }
@@ -19,9 +19,12 @@ import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.session.PublishLanesCtx;
 
 public interface MsgDispatcherService {
     void persistPublishMsg(SessionInfo sessionInfo, PublishMsg publishMsg, TbQueueCallback callback);
 
+    void persistPublishMsg(SessionInfo sessionInfo, PublishMsg publishMsg, PublishLanesCtx publishLanesCtx, TbQueueCallback callback);
+
     void processPublishMsg(PublishMsgProto publishMsgProto, PublishMsgCallback callback);
 }
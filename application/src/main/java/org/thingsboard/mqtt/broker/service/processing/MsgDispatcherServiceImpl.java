@@ -51,6 +51,7 @@ import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptio
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategyFactory;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptions;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
+import org.thingsboard.mqtt.broker.session.PublishLanesCtx;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
 import javax.annotation.PostConstruct;
@@ -63,7 +64,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
 import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.INCOMING_MSGS;
@@ -85,24 +85,54 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
     private final TbMessageStatsReportClient tbMessageStatsReportClient;
 
     private MessagesStats producerStats;
+    private MessagesStats priorityProducerStats;
     private PublishMsgProcessingTimerStats publishMsgProcessingTimerStats;
 
     @Value("${mqtt.msg-subscriptions-parallel-processing:false}")
     private boolean processSubscriptionsInParallel;
+    @Value("${queue.msg-all.priority-lane.enabled:false}")
+    private boolean priorityLaneEnabled;
+    @Value("${queue.msg-all.priority-lane.max-topics-per-client:1000}")
+    private int priorityLaneMaxTopicsPerClient;
 
     @PostConstruct
     public void init() {
         this.producerStats = statsManager.createMsgDispatcherPublishStats();
+        if (priorityLaneEnabled) {
+            this.priorityProducerStats = statsManager.createMsgDispatcherPriorityPublishStats();
+        }
         this.publishMsgProcessingTimerStats = statsManager.getPublishMsgProcessingTimerStats();
     }
 
     @Override
     public void persistPublishMsg(SessionInfo sessionInfo, PublishMsg publishMsg, TbQueueCallback callback) {
+        persistPublishMsg(sessionInfo, publishMsg, null, callback);
+    }
+
+    @Override
+    public void persistPublishMsg(SessionInfo sessionInfo, PublishMsg publishMsg, PublishLanesCtx publishLanesCtx, TbQueueCallback callback) {
         PublishMsgProto publishMsgProto = ProtoConverter.convertToPublishProtoMessage(sessionInfo, publishMsg);
-        producerStats.incrementTotal();
         tbMessageStatsReportClient.reportStats(INCOMING_MSGS);
-        callback = statsManager.wrapTbQueueCallback(callback, producerStats);
-        publishMsgQueuePublisher.sendMsg(publishMsgProto, callback);
+        if (isPriorityLane(publishMsgProto, publishLanesCtx)) {
+            priorityProducerStats.incrementTotal();
+            callback = statsManager.wrapTbQueueCallback(callback, priorityProducerStats);
+            publishMsgQueuePublisher.sendPriorityMsg(publishMsgProto, callback);
+        } else {
+            producerStats.incrementTotal();
+            callback = statsManager.wrapTbQueueCallback(callback, producerStats);
+            publishMsgQueuePublisher.sendMsg(publishMsgProto, callback);
+        }
+    }
+
+    /**
+     * Both lanes are keyed by the topic name, so msgs of the same topic keep the publishing order within a lane. The msgs of
+     * the publisher to the same topic stay in the lane of its first msg, msgs without the publisher lanes use the default lane.
+     */
+    private boolean isPriorityLane(PublishMsgProto publishMsgProto, PublishLanesCtx publishLanesCtx) {
+        if (!priorityLaneEnabled || publishLanesCtx == null) {
+            return false;
+        }
+        return publishLanesCtx.isPriorityLane(publishMsgProto.getTopicName(), publishMsgProto.getQos(), priorityLaneMaxTopicsPerClient);
     }
 
     @Override
@@ -258,7 +288,7 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return new MsgSubscriptions(
                 collectCommonSubscriptions(commonClientSubscriptions, senderClientId),
                 sharedSubscriptions == null ? null : sharedSubscriptions.getApplicationSubscriptions(),
-                getTargetDeviceSharedSubscriptions(sharedSubscriptions, publishMsgProto.getQos())
+                getTargetDeviceSharedSubscriptions(sharedSubscriptions, publishMsgProto)
         );
     }
 
@@ -277,21 +307,17 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return topicSharedSubscriptions;
     }
 
-    private List<Subscription> getTargetDeviceSharedSubscriptions(SharedSubscriptions sharedSubscriptions, int qos) {
+    private List<Subscription> getTargetDeviceSharedSubscriptions(SharedSubscriptions sharedSubscriptions, PublishMsgProto publishMsgProto) {
         if (sharedSubscriptions == null || CollectionUtils.isEmpty(sharedSubscriptions.getDeviceSubscriptions())) {
             return null;
         }
-        List<SharedSubscription> sharedSubscriptionList = toSharedSubscriptionList(sharedSubscriptions.getDeviceSubscriptions());
-        return collectOneSubscriptionFromEveryDeviceSharedSubscription(sharedSubscriptionList, qos);
+        List<SharedSubscription> sharedSubscriptionList = sharedSubscriptions.getDeviceSharedSubscriptions() != null ?
+                sharedSubscriptions.getDeviceSharedSubscriptions() : toSharedSubscriptionList(sharedSubscriptions.getDeviceSubscriptions());
+        return collectOneSubscriptionFromEveryDeviceSharedSubscription(sharedSubscriptionList, publishMsgProto);
     }
 
     List<SharedSubscription> toSharedSubscriptionList(Set<Subscription> sharedSubscriptions) {
-        return sharedSubscriptions.stream()
-                .collect(Collectors.groupingBy(subscription ->
-                        new TopicSharedSubscription(subscription.getTopicFilter(), subscription.getShareName(), subscription.getQos())))
-                .entrySet().stream()
-                .map(entry -> new SharedSubscription(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+        return SharedSubscription.groupByTopicSharedSubscription(sharedSubscriptions);
     }
 
     private List<Subscription> collectCommonSubscriptions(
@@ -309,22 +335,24 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         return msgSubscriptions;
     }
 
-    private List<Subscription> collectOneSubscriptionFromEveryDeviceSharedSubscription(List<SharedSubscription> sharedSubscriptions, int qos) {
+    private List<Subscription> collectOneSubscriptionFromEveryDeviceSharedSubscription(List<SharedSubscription> sharedSubscriptions,
+                                                                                       PublishMsgProto publishMsgProto) {
         List<Subscription> result = new ArrayList<>(sharedSubscriptions.size());
         for (SharedSubscription sharedSubscription : sharedSubscriptions) {
-            result.add(getSubscription(sharedSubscription, qos));
+            result.add(getSubscription(sharedSubscription, publishMsgProto));
         }
         return result;
     }
 
-    private Subscription getSubscription(SharedSubscription sharedSubscription, int qos) {
+    private Subscription getSubscription(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto) {
         Subscription anyActive = findAnyConnectedSubscription(sharedSubscription.getSubscriptions());
         if (anyActive == null) {
             log.info("[{}] No active subscription found for shared subscription - all are persisted and disconnected", sharedSubscription.getTopicSharedSubscription());
-            return createDummySubscription(sharedSubscription, qos);
+            return createDummySubscription(sharedSubscription, publishMsgProto.getQos());
         } else {
-            SharedSubscriptionProcessingStrategy strategy = sharedSubscriptionProcessingStrategyFactory.newInstance();
-            return strategy.analyze(sharedSubscription);
+            SharedSubscriptionProcessingStrategy strategy =
+                    sharedSubscriptionProcessingStrategyFactory.getStrategy(sharedSubscription.getTopicSharedSubscription().getShareName());
+            return strategy.analyze(sharedSubscription, publishMsgProto);
         }
     }
 
@@ -332,11 +360,12 @@ public class MsgDispatcherServiceImpl implements MsgDispatcherService {
         if (CollectionUtils.isEmpty(subscriptions)) {
             return null;
         }
-        return subscriptions
-                .stream()
-                .filter(subscription -> subscription.getClientSessionInfo().isConnected())
-                .findAny()
-                .orElse(null);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.getClientSessionInfo().isConnected()) {
+                return subscription;
+            }
+        }
+        return null;
     }
 
     private Subscription createDummySubscription(SharedSubscription sharedSubscription, int qos) {
@@ -0,0 +1,33 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing;
+
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+public interface MsgSheddingService {
+
+    /**
+     * Drops stale QoS 0 msgs from the consumed pack while the consumer is overloaded, i.e. the partition lag or
+     * the age of the oldest msg in the pack is above the configured thresholds. QoS 1 and 2 msgs are always kept.
+     *
+     * @return the msgs that have to be processed, the same list if nothing was dropped
+     */
+    List<TbProtoQueueMsg<PublishMsgProto>> shedStaleMsgs(List<TbProtoQueueMsg<PublishMsgProto>> msgs, LongSupplier lagSupplier);
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing;
+
+import io.netty.handler.codec.mqtt.MqttQoS;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@Slf4j
+@Service
+public class MsgSheddingServiceImpl implements MsgSheddingService {
+
+    private final Map<SheddingReason, AtomicLong> shedMsgsCounters = new EnumMap<>(SheddingReason.class);
+
+    @Setter
+    @Value("${queue.msg-all.shedding.enabled:false}")
+    private boolean enabled;
+    @Setter
+    @Value("${queue.msg-all.shedding.lag-threshold:100000}")
+    private long lagThreshold;
+    @Setter
+    @Value("${queue.msg-all.shedding.msg-age-threshold-ms:5000}")
+    private long msgAgeThresholdMs;
+    @Setter
+    @Value("${queue.msg-all.shedding.max-qos0-msg-age-ms:1000}")
+    private long maxQos0MsgAgeMs;
+
+    @Setter(AccessLevel.PACKAGE)
+    private Clock clock = Clock.systemUTC();
+
+    public MsgSheddingServiceImpl(StatsManager statsManager) {
+        for (SheddingReason reason : SheddingReason.values()) {
+            shedMsgsCounters.put(reason, statsManager.createShedQos0MsgsCounter(reason.getPrintName()));
+        }
+    }
+
+    @Override
+    public List<TbProtoQueueMsg<PublishMsgProto>> shedStaleMsgs(List<TbProtoQueueMsg<PublishMsgProto>> msgs, LongSupplier lagSupplier) {
+        if (!enabled) {
+            return msgs;
+        }
+        long now = clock.millis();
+        SheddingReason reason = getSheddingReason(msgs, lagSupplier, now);
+        if (reason == null) {
+            return msgs;
+        }
+        List<TbProtoQueueMsg<PublishMsgProto>> result = new ArrayList<>(msgs.size());
+        for (TbProtoQueueMsg<PublishMsgProto> msg : msgs) {
+            if (!isStaleQos0Msg(msg.getValue(), now)) {
+                result.add(msg);
+            }
+        }
+        int shedMsgsCount = msgs.size() - result.size();
+        if (shedMsgsCount == 0) {
+            return msgs;
+        }
+        shedMsgsCounters.get(reason).addAndGet(shedMsgsCount);
+        if (log.isDebugEnabled()) {
+            log.debug("Consumer is overloaded ({}), dropped {} stale QoS 0 msgs out of {}.", reason.getPrintName(), shedMsgsCount, msgs.size());
+        }
+        return result;
+    }
+
+    private SheddingReason getSheddingReason(List<TbProtoQueueMsg<PublishMsgProto>> msgs, LongSupplier lagSupplier, long now) {
+        if (lagSupplier.getAsLong() > lagThreshold) {
+            return SheddingReason.PARTITION_LAG;
+        }
+        for (TbProtoQueueMsg<PublishMsgProto> msg : msgs) {
+            long createdTime = msg.getValue().getCreatedTime();
+            if (createdTime > 0 && now - createdTime > msgAgeThresholdMs) {
+                return SheddingReason.MSG_AGE;
+            }
+        }
+        return null;
+    }
+
+    private boolean isStaleQos0Msg(PublishMsgProto publishMsgProto, long now) {
+        return publishMsgProto.getQos() == MqttQoS.AT_MOST_ONCE.value()
+                && publishMsgProto.getCreatedTime() > 0
+                && now - publishMsgProto.getCreatedTime() > maxQos0MsgAgeMs;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    enum SheddingReason {
+
+        PARTITION_LAG("partitionLag"),
+        MSG_AGE("msgAge");
+
+        private final String printName;
+    }
+}
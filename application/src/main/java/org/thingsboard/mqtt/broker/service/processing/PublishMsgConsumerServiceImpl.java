@@ -25,12 +25,14 @@ import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.PublishMsgQueueFactory;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ConsumerAutoscaler;
+import org.thingsboard.mqtt.broker.service.processing.scaling.PackHandler;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ScalableConsumerGroup;
 import org.thingsboard.mqtt.broker.service.stats.PublishMsgConsumerStats;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,16 +49,20 @@ public class PublishMsgConsumerServiceImpl implements PublishMsgConsumerService
 
     public static final long MAX_VALUE = 1_000_000_000L;
 
-    private final List<TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>>> publishMsgConsumers = new ArrayList<>();
     private final MsgDispatcherService msgDispatcherService;
+    private final MsgSheddingService msgSheddingService;
     private final PublishMsgQueueFactory publishMsgQueueFactory;
     private final AckStrategyFactory ackStrategyFactory;
     private final SubmitStrategyFactory submitStrategyFactory;
     private final ServiceInfoProvider serviceInfoProvider;
     private final StatsManager statsManager;
+    private final ConsumerAutoscaler consumerAutoscaler;
 
     private volatile boolean stopped = false;
     private ExecutorService consumersExecutor;
+    private ExecutorService priorityConsumersExecutor;
+    private ScalableConsumerGroup<TbProtoQueueMsg<PublishMsgProto>> consumerGroup;
+    private ScalableConsumerGroup<TbProtoQueueMsg<PublishMsgProto>> priorityConsumerGroup;
 
     @Value("${queue.msg-all.threads-count}")
     private int threadsCount;
@@ -66,86 +72,116 @@ public class PublishMsgConsumerServiceImpl implements PublishMsgConsumerService
     private long pollDuration;
     @Value("${queue.msg-all.pack-processing-timeout}")
     private long packProcessingTimeout;
+    @Value("${queue.msg-all.autoscaling.min-consumers:1}")
+    private int minConsumers;
+    @Value("${queue.msg-all.autoscaling.max-consumers:8}")
+    private int maxConsumers;
+    @Value("${queue.msg-all.priority-lane.enabled:false}")
+    private boolean priorityLaneEnabled;
+    @Value("${queue.msg-all.priority-lane.threads-count:2}")
+    private int priorityThreadsCount;
+    @Value("${queue.msg-all.priority-lane.consumers-count:2}")
+    private int priorityConsumersCount;
 
     @PostConstruct
     public void init() {
-        consumersExecutor = ThingsBoardExecutors.initExecutorService(threadsCount, "msg-all-consumer");
+        // every consumer takes a thread, so there have to be enough of them for the max number of consumers
+        consumersExecutor = ThingsBoardExecutors.initExecutorService(Math.max(threadsCount, maxConsumers), "msg-all-consumer");
+        if (priorityLaneEnabled) {
+            priorityConsumersExecutor = ThingsBoardExecutors.initExecutorService(priorityThreadsCount, "msg-all-priority-consumer");
+        }
     }
 
     @Override
     public void startConsuming() {
-        for (int i = 0; i < consumersCount; i++) {
-            String consumerId = serviceInfoProvider.getServiceId() + "-" + i;
-            // TODO: think about the fact that all consumed messages can be processed multiple time (if kafka is disconnected while msgs are processing)
-            TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer = publishMsgQueueFactory.createConsumer(consumerId);
-            publishMsgConsumers.add(consumer);
-            consumer.subscribe();
-            launchConsumer(consumerId, consumer);
+        // TODO: think about the fact that all consumed messages can be processed multiple time (if kafka is disconnected while msgs are processing)
+        consumerGroup = ScalableConsumerGroup.<TbProtoQueueMsg<PublishMsgProto>>builder()
+                .name("msg-all")
+                .consumerIdPrefix(serviceInfoProvider.getServiceId() + "-")
+                .consumerFactory(publishMsgQueueFactory::createConsumer)
+                .packHandlerFactory(this::newPackHandler)
+                .executor(consumersExecutor)
+                .pollDuration(pollDuration)
+                .minConsumers(minConsumers)
+                .maxConsumers(maxConsumers)
+                .consumersCountGauge(statsManager.createConsumersCountGauge("msg-all"))
+                .removedConsumerHandler(statsManager::clearPublishMsgConsumerStats)
+                .build();
+        consumerGroup.start(consumersCount);
+        consumerAutoscaler.register(consumerGroup);
+
+        if (priorityLaneEnabled) {
+            priorityConsumerGroup = ScalableConsumerGroup.<TbProtoQueueMsg<PublishMsgProto>>builder()
+                    .name("msg-all-priority")
+                    .consumerIdPrefix(serviceInfoProvider.getServiceId() + "-priority-")
+                    .consumerFactory(publishMsgQueueFactory::createPriorityConsumer)
+                    .packHandlerFactory(this::newPackHandler)
+                    .executor(priorityConsumersExecutor)
+                    .pollDuration(pollDuration)
+                    .minConsumers(priorityConsumersCount)
+                    .maxConsumers(priorityConsumersCount)
+                    .consumersCountGauge(statsManager.createConsumersCountGauge("msg-all-priority"))
+                    .removedConsumerHandler(statsManager::clearPublishMsgConsumerStats)
+                    .build();
+            priorityConsumerGroup.start(priorityConsumersCount);
         }
     }
 
-    private void launchConsumer(String consumerId, TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer) {
+    private PackHandler<TbProtoQueueMsg<PublishMsgProto>> newPackHandler(String consumerId) {
         PublishMsgConsumerStats stats = statsManager.createPublishMsgConsumerStats(consumerId);
         final AtomicLong counter = new AtomicLong(0);
-        consumersExecutor.submit(() -> {
-            while (!stopped) {
-                try {
-                    List<TbProtoQueueMsg<PublishMsgProto>> msgs = consumer.poll(pollDuration);
-                    if (msgs.isEmpty()) {
-                        continue;
-                    }
-
-                    AckStrategy ackStrategy = ackStrategyFactory.newInstance(consumerId);
-                    SubmitStrategy submitStrategy = submitStrategyFactory.newInstance(consumerId);
-                    long packId = counter.incrementAndGet();
-                    if (packId == MAX_VALUE) {
-                        counter.set(0);
-                    }
-                    var pendingMsgMap = toPendingPubMsgWithIdMap(msgs, packId);
-                    submitStrategy.init(pendingMsgMap);
-
-                    long packProcessingStart = System.nanoTime();
-                    while (!stopped) {
-                        PackProcessingContext ctx = new PackProcessingContext(submitStrategy.getPendingMap());
-                        int totalMsgCount = ctx.getPendingMap().size();
-                        submitStrategy.process(msg -> {
-                            long msgProcessingStart = System.nanoTime();
-                            msgDispatcherService.processPublishMsg(msg.getPublishMsgProto(), new BasePublishMsgCallback(msg.getId(), ctx));
-                            stats.logMsgProcessingTime(System.nanoTime() - msgProcessingStart, TimeUnit.NANOSECONDS);
-                        });
-
-                        if (!stopped) {
-                            ctx.await(packProcessingTimeout, TimeUnit.MILLISECONDS);
-                        }
-                        PackProcessingResult result = new PackProcessingResult(ctx);
-                        ctx.cleanup();
-                        ProcessingDecision decision = ackStrategy.analyze(result);
-
-                        stats.log(totalMsgCount, result, decision.isCommit());
-
-                        if (decision.isCommit()) {
-                            consumer.commitSync();
-                            break;
-                        } else {
-                            submitStrategy.update(decision.getReprocessMap());
-                        }
-                    }
-                    stats.logPackProcessingTime(msgs.size(), System.nanoTime() - packProcessingStart, TimeUnit.NANOSECONDS);
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("[{}] Failed to process messages from queue.", consumerId, e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("[{}] Failed to wait until the server has capacity to handle new requests", consumerId, e2);
-                            }
-                        }
-                    }
+        return (consumer, msgs) -> processPack(consumerId, consumer, msgs, stats, counter);
+    }
+
+    private void processPack(String consumerId, TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer,
+                             List<TbProtoQueueMsg<PublishMsgProto>> msgs, PublishMsgConsumerStats stats, AtomicLong counter) throws InterruptedException {
+        stats.updateLag(consumer.getLag());
+        msgs = msgSheddingService.shedStaleMsgs(msgs, consumer::getLag);
+        if (msgs.isEmpty()) {
+            consumer.commitSync();
+            return;
+        }
+
+        AckStrategy ackStrategy = ackStrategyFactory.newInstance(consumerId);
+        SubmitStrategy submitStrategy = submitStrategyFactory.newInstance(consumerId);
+        long packId = counter.incrementAndGet();
+        if (packId == MAX_VALUE) {
+            counter.set(0);
+        }
+        var pendingMsgMap = toPendingPubMsgWithIdMap(msgs, packId);
+        submitStrategy.init(pendingMsgMap);
+
+        long packProcessingStart = System.nanoTime();
+        while (!stopped) {
+            PackProcessingContext ctx = new PackProcessingContext(submitStrategy.getPendingMap());
+            int totalMsgCount = ctx.getPendingMap().size();
+            submitStrategy.process(msg -> {
+                long createdTime = msg.getPublishMsgProto().getCreatedTime();
+                if (createdTime > 0) {
+                    stats.logMsgLatency(System.currentTimeMillis() - createdTime, TimeUnit.MILLISECONDS);
                 }
+                long msgProcessingStart = System.nanoTime();
+                msgDispatcherService.processPublishMsg(msg.getPublishMsgProto(), new BasePublishMsgCallback(msg.getId(), ctx));
+                stats.logMsgProcessingTime(System.nanoTime() - msgProcessingStart, TimeUnit.NANOSECONDS);
+            });
+
+            if (!stopped) {
+                ctx.await(packProcessingTimeout, TimeUnit.MILLISECONDS);
             }
-            log.info("[{}] Publish Msg Consumer stopped.", consumerId);
-        });
+            PackProcessingResult result = new PackProcessingResult(ctx);
+            ctx.cleanup();
+            ProcessingDecision decision = ackStrategy.analyze(result);
+
+            stats.log(totalMsgCount, result, decision.isCommit());
+
+            if (decision.isCommit()) {
+                consumer.commitSync();
+                break;
+            } else {
+                submitStrategy.update(decision.getReprocessMap());
+            }
+        }
+        stats.logPackProcessingTime(msgs.size(), System.nanoTime() - packProcessingStart, TimeUnit.NANOSECONDS);
     }
 
     private Map<UUID, PublishMsgWithId> toPendingPubMsgWithIdMap(List<TbProtoQueueMsg<PublishMsgProto>> msgs, long packId) {
@@ -162,9 +198,17 @@ public class PublishMsgConsumerServiceImpl implements PublishMsgConsumerService
     @PreDestroy
     public void destroy() {
         stopped = true;
-        publishMsgConsumers.forEach(TbQueueConsumer::unsubscribeAndClose);
+        if (consumerGroup != null) {
+            consumerGroup.stop();
+        }
+        if (priorityConsumerGroup != null) {
+            priorityConsumerGroup.stop();
+        }
         if (consumersExecutor != null) {
             consumersExecutor.shutdownNow();
         }
+        if (priorityConsumersExecutor != null) {
+            priorityConsumersExecutor.shutdownNow();
+        }
     }
 }
@@ -21,4 +21,9 @@ import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 public interface PublishMsgQueuePublisher {
     void sendMsg(QueueProtos.PublishMsgProto msgProto, TbQueueCallback callback);
 
+    /**
+     * Sends the msg to the priority lane topic, available only when the priority lane is enabled.
+     */
+    void sendPriorityMsg(QueueProtos.PublishMsgProto msgProto, TbQueueCallback callback);
+
 }
@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.service.processing;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
@@ -35,6 +36,10 @@ public class PublishMsgQueuePublisherImpl implements PublishMsgQueuePublisher {
     private final PublishMsgQueueFactory publishMsgQueueFactory;
 
     private TbPublishServiceImpl<QueueProtos.PublishMsgProto> publisher;
+    private TbPublishServiceImpl<QueueProtos.PublishMsgProto> priorityPublisher;
+
+    @Value("${queue.msg-all.priority-lane.enabled:false}")
+    private boolean priorityLaneEnabled;
 
     @PostConstruct
     public void init() {
@@ -43,6 +48,13 @@ public class PublishMsgQueuePublisherImpl implements PublishMsgQueuePublisher {
                 .producer(publishMsgQueueFactory.createProducer())
                 .build();
         this.publisher.init();
+        if (priorityLaneEnabled) {
+            this.priorityPublisher = TbPublishServiceImpl.<QueueProtos.PublishMsgProto>builder()
+                    .queueName("priorityPublishMsg")
+                    .producer(publishMsgQueueFactory.createPriorityProducer())
+                    .build();
+            this.priorityPublisher.init();
+        }
     }
 
     @Override
@@ -50,8 +62,16 @@ public class PublishMsgQueuePublisherImpl implements PublishMsgQueuePublisher {
         publisher.send(new TbProtoQueueMsg<>(msgProto.getTopicName(), msgProto), callback);
     }
 
+    @Override
+    public void sendPriorityMsg(QueueProtos.PublishMsgProto msgProto, TbQueueCallback callback) {
+        priorityPublisher.send(new TbProtoQueueMsg<>(msgProto.getTopicName(), msgProto), callback);
+    }
+
     @PreDestroy
     public void destroy() {
         publisher.destroy();
+        if (priorityPublisher != null) {
+            priorityPublisher.destroy();
+        }
     }
 }
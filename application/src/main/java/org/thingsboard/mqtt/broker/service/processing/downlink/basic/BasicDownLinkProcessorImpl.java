@@ -25,6 +25,7 @@ import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.session.DisconnectReason;
@@ -39,6 +40,7 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
     private final ClientMqttActorManager clientMqttActorManager;
     private final PublishMsgDeliveryService publishMsgDeliveryService;
     private final ClientLogger clientLogger;
+    private final MsgExpiryService msgExpiryService;
 
     @Override
     public void process(String clientId, QueueProtos.PublishMsgProto msg) {
@@ -49,6 +51,9 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
             }
             return;
         }
+        if (msgExpiryService.isExpired(clientId, msg.getCreatedTime(), ProtoConverter.getMsgExpiryInterval(msg))) {
+            return;
+        }
         try {
             PublishMsg publishMsg = getPublishMsg(clientSessionCtx, msg);
             publishMsgDeliveryService.sendPublishMsgToClient(clientSessionCtx, publishMsg);
@@ -75,7 +80,7 @@ public class BasicDownLinkProcessorImpl implements BasicDownLinkProcessor {
                 .qosLevel(msg.getQos())
                 .isRetained(msg.getRetain())
                 .isDup(false)
-                .properties(ProtoConverter.createMqttProperties(msg.getUserPropertiesList()))
+                .properties(ProtoConverter.createOutboundMqttProperties(msg))
                 .build();
     }
 
@@ -19,21 +19,20 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.util.ThingsBoardExecutors;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
-import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.DownLinkPersistentPublishMsgQueueFactory;
 import org.thingsboard.mqtt.broker.service.processing.downlink.DownLinkPublisherHelper;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ConsumerAutoscaler;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ScalableConsumerGroup;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 @Slf4j
@@ -41,13 +40,13 @@ import java.util.concurrent.ExecutorService;
 @RequiredArgsConstructor
 public class PersistentDownLinkConsumerImpl implements PersistentDownLinkConsumer {
 
-    private final List<TbQueueConsumer<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>>> consumers = new ArrayList<>();
-
     private final DownLinkPersistentPublishMsgQueueFactory downLinkPersistentPublishMsgQueueFactory;
     private final ServiceInfoProvider serviceInfoProvider;
     private final DownLinkPublisherHelper downLinkPublisherHelper;
     private final PersistentDownLinkProcessor processor;
     private final TbQueueAdmin queueAdmin;
+    private final StatsManager statsManager;
+    private final ConsumerAutoscaler consumerAutoscaler;
 
     // TODO: don't push msg to kafka if it's the same serviceId
     @Value("${queue.persisted-downlink-msg.consumers-count}")
@@ -56,61 +55,53 @@ public class PersistentDownLinkConsumerImpl implements PersistentDownLinkConsume
     private long pollDuration;
     @Value("${queue.persisted-downlink-msg.threads-count}")
     private int threadsCount;
+    @Value("${queue.persisted-downlink-msg.autoscaling.min-consumers:1}")
+    private int minConsumers;
+    @Value("${queue.persisted-downlink-msg.autoscaling.max-consumers:4}")
+    private int maxConsumers;
 
-    private volatile boolean stopped = false;
     private ExecutorService consumersExecutor;
+    private ScalableConsumerGroup<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>> consumerGroup;
+    private volatile String consumerGroupId;
 
     @PostConstruct
     public void init() {
-        this.consumersExecutor = ThingsBoardExecutors.initExecutorService(threadsCount, "persisted-downlink-msg-consumer");
+        this.consumersExecutor = ThingsBoardExecutors.initExecutorService(Math.max(threadsCount, maxConsumers), "persisted-downlink-msg-consumer");
     }
 
     @Override
     public void startConsuming() {
         String topic = downLinkPublisherHelper.getPersistentDownLinkServiceTopic(serviceInfoProvider.getServiceId());
         String uniqueGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
-        for (int i = 0; i < consumersCount; i++) {
-            String consumerId = serviceInfoProvider.getServiceId() + "-" + i;
-            TbQueueConsumer<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>> consumer = downLinkPersistentPublishMsgQueueFactory
-                    .createConsumer(topic, consumerId, uniqueGroupId);
-            consumers.add(consumer);
-            consumer.subscribe();
-            launchConsumer(consumerId, consumer);
-        }
-    }
-
-    private void launchConsumer(String consumerId, TbQueueConsumer<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>> consumer) {
-        consumersExecutor.submit(() -> {
-            while (!stopped) {
-                try {
-                    List<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>> msgs = consumer.poll(pollDuration);
-                    if (msgs.isEmpty()) {
-                        continue;
-                    }
-
+        consumerGroup = ScalableConsumerGroup.<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>>builder()
+                .name("persisted-downlink-msg")
+                .consumerIdPrefix(serviceInfoProvider.getServiceId() + "-")
+                .consumerFactory(consumerId -> {
+                    var consumer = downLinkPersistentPublishMsgQueueFactory.createConsumer(topic, consumerId, uniqueGroupId);
+                    consumerGroupId = consumer.getConsumerGroupId();
+                    return consumer;
+                })
+                .packHandlerFactory(consumerId -> (consumer, msgs) -> {
                     for (TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto> msg : msgs) {
                         processor.process(msg.getKey(), msg.getValue());
                     }
                     consumer.commitSync();
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("[{}] Failed to process messages from queue.", consumerId, e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            log.trace("[{}] Failed to wait until the server has capacity to handle new requests", consumerId, e2);
-                        }
-                    }
-                }
-            }
-            log.info("[{}] Publish Msg Consumer stopped.", consumerId);
-        });
+                })
+                .executor(consumersExecutor)
+                .pollDuration(pollDuration)
+                .minConsumers(minConsumers)
+                .maxConsumers(maxConsumers)
+                .consumersCountGauge(statsManager.createConsumersCountGauge("persisted-downlink-msg"))
+                .build();
+        consumerGroup.start(consumersCount);
+        consumerAutoscaler.register(consumerGroup);
     }
 
     @PreDestroy
     public void destroy() {
-        stopped = true;
-        consumers.forEach(TbQueueConsumer::unsubscribeAndClose);
+        if (consumerGroup != null) {
+            consumerGroup.stop();
+        }
         deleteUniqueConsumerGroup();
         if (consumersExecutor != null) {
             consumersExecutor.shutdownNow();
@@ -118,11 +109,9 @@ public class PersistentDownLinkConsumerImpl implements PersistentDownLinkConsume
     }
 
     private void deleteUniqueConsumerGroup() {
-        if (!CollectionUtils.isEmpty(consumers)) {
-            TbQueueConsumer<TbProtoQueueMsg<QueueProtos.DevicePublishMsgProto>> consumer = consumers.get(0);
-            if (consumer.getConsumerGroupId() != null) {
-                queueAdmin.deleteConsumerGroups(Collections.singleton(consumer.getConsumerGroupId()));
-            }
+        // all the consumers share the group, including the ones added by the autoscaler
+        if (consumerGroupId != null) {
+            queueAdmin.deleteConsumerGroups(Collections.singleton(consumerGroupId));
         }
     }
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.scaling;
+
+/**
+ * Group of in-process queue consumers of the same topic, sized at runtime by the {@link ConsumerAutoscaler}.
+ */
+public interface AutoscaledConsumerGroup {
+
+    String getName();
+
+    int getConsumersCount();
+
+    int getMinConsumers();
+
+    int getMaxConsumers();
+
+    /**
+     * @return total lag of the partitions assigned to the consumers of the group, as reported on their last poll
+     */
+    long getLag();
+
+    /**
+     * @return average pack processing time since the previous call, 0 if no packs were processed
+     */
+    double pollAvgPackProcessingTimeMs();
+
+    /**
+     * @return false if the group already has the max number of consumers
+     */
+    boolean addConsumer();
+
+    /**
+     * @return false if the group already has the min number of consumers
+     */
+    boolean removeConsumer();
+}
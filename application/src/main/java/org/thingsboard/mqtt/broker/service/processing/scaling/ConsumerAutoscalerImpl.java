@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.scaling;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically resizes the registered consumer groups: a consumer is added while the lag per consumer is high or
+ * the packs are processed slowly with a backlog, and removed after the group stays idle for several checks in a row.
+ * After every change the group is left alone for a few checks, so that the partitions rebalance settles.
+ */
+@Slf4j
+@Service
+public class ConsumerAutoscalerImpl implements ConsumerAutoscaler {
+
+    private final Map<String, GroupState> groups = new ConcurrentHashMap<>();
+
+    @Setter
+    @Value("${queue.autoscaler.enabled:false}")
+    private boolean enabled;
+    @Value("${queue.autoscaler.check-interval-ms:10000}")
+    private long checkIntervalMs;
+    @Setter
+    @Value("${queue.autoscaler.scale-up-lag-per-consumer:10000}")
+    private long scaleUpLagPerConsumer;
+    @Setter
+    @Value("${queue.autoscaler.scale-down-lag-per-consumer:100}")
+    private long scaleDownLagPerConsumer;
+    @Setter
+    @Value("${queue.autoscaler.max-pack-processing-time-ms:1000}")
+    private long maxPackProcessingTimeMs;
+    @Setter
+    @Value("${queue.autoscaler.scale-down-checks:6}")
+    private int scaleDownChecks;
+    @Setter
+    @Value("${queue.autoscaler.cooldown-checks:3}")
+    private int cooldownChecks;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("consumer-autoscaler"));
+            scheduler.scheduleWithFixedDelay(this::checkGroups, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void register(AutoscaledConsumerGroup group) {
+        if (!enabled) {
+            return;
+        }
+        log.info("[{}] Registering consumer group for autoscaling, min consumers - {}, max consumers - {}.",
+                group.getName(), group.getMinConsumers(), group.getMaxConsumers());
+        groups.put(group.getName(), new GroupState(group));
+    }
+
+    void checkGroups() {
+        for (GroupState groupState : groups.values()) {
+            try {
+                checkGroup(groupState);
+            } catch (Exception e) {
+                log.warn("[{}] Failed to check consumer group.", groupState.group.getName(), e);
+            }
+        }
+    }
+
+    private void checkGroup(GroupState groupState) {
+        AutoscaledConsumerGroup group = groupState.group;
+        int consumersCount = group.getConsumersCount();
+        long lagPerConsumer = group.getLag() / Math.max(1, consumersCount);
+        double avgPackProcessingTimeMs = group.pollAvgPackProcessingTimeMs();
+        if (log.isDebugEnabled()) {
+            log.debug("[{}] Consumers - {}, lag per consumer - {}, avg pack processing time - {} ms.",
+                    group.getName(), consumersCount, lagPerConsumer, avgPackProcessingTimeMs);
+        }
+        if (groupState.cooldownChecksLeft > 0) {
+            groupState.cooldownChecksLeft--;
+            return;
+        }
+        boolean slowProcessing = avgPackProcessingTimeMs > maxPackProcessingTimeMs;
+        if (lagPerConsumer > scaleUpLagPerConsumer || (slowProcessing && lagPerConsumer > scaleDownLagPerConsumer)) {
+            groupState.idleChecks = 0;
+            if (group.addConsumer()) {
+                log.info("[{}] Added consumer, consumers - {}, lag per consumer - {}, avg pack processing time - {} ms.",
+                        group.getName(), group.getConsumersCount(), lagPerConsumer, avgPackProcessingTimeMs);
+                groupState.cooldownChecksLeft = cooldownChecks;
+            }
+        } else if (lagPerConsumer <= scaleDownLagPerConsumer && !slowProcessing) {
+            if (++groupState.idleChecks >= scaleDownChecks) {
+                groupState.idleChecks = 0;
+                if (group.removeConsumer()) {
+                    log.info("[{}] Removed consumer, consumers - {}.", group.getName(), group.getConsumersCount());
+                    groupState.cooldownChecksLeft = cooldownChecks;
+                }
+            }
+        } else {
+            groupState.idleChecks = 0;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static class GroupState {
+
+        private final AutoscaledConsumerGroup group;
+        // only accessed from the scheduler thread
+        private int idleChecks;
+        private int cooldownChecksLeft;
+
+        GroupState(AutoscaledConsumerGroup group) {
+            this.group = group;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.scaling;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the poll loops of the consumers of one topic on the given executor and lets consumers be added or removed
+ * while the node is running. The executor has to have a thread for every consumer up to the max count.
+ */
+@Slf4j
+public class ScalableConsumerGroup<M extends TbQueueMsg> implements AutoscaledConsumerGroup {
+
+    @Getter
+    private final String name;
+    private final String consumerIdPrefix;
+    private final Function<String, TbQueueConsumer<M>> consumerFactory;
+    private final Function<String, PackHandler<M>> packHandlerFactory;
+    private final ExecutorService executor;
+    private final long pollDuration;
+    @Getter
+    private final int minConsumers;
+    @Getter
+    private final int maxConsumers;
+    private final AtomicInteger consumersCountGauge;
+    // called with the id of a removed consumer once it has left the consumer group, e.g. to clear its stats
+    private final Consumer<String> removedConsumerHandler;
+
+    // guarded by 'this'
+    private final List<ConsumerInstance<M>> instances = new ArrayList<>();
+    // ids are never reused, so that a removed consumer that is still finishing its pack does not share the id with a new one
+    private int nextConsumerIndex;
+
+    private final AtomicLong packProcessingNanos = new AtomicLong();
+    private final AtomicLong processedPacks = new AtomicLong();
+
+    private volatile boolean stopped = false;
+
+    @Builder
+    private ScalableConsumerGroup(String name, String consumerIdPrefix,
+                                  Function<String, TbQueueConsumer<M>> consumerFactory,
+                                  Function<String, PackHandler<M>> packHandlerFactory,
+                                  ExecutorService executor, long pollDuration,
+                                  int minConsumers, int maxConsumers, AtomicInteger consumersCountGauge,
+                                  Consumer<String> removedConsumerHandler) {
+        this.name = name;
+        this.consumerIdPrefix = consumerIdPrefix;
+        this.consumerFactory = consumerFactory;
+        this.packHandlerFactory = packHandlerFactory;
+        this.executor = executor;
+        this.pollDuration = pollDuration;
+        this.minConsumers = Math.max(1, minConsumers);
+        this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+        this.consumersCountGauge = consumersCountGauge != null ? consumersCountGauge : new AtomicInteger();
+        this.removedConsumerHandler = removedConsumerHandler != null ? removedConsumerHandler : consumerId -> {};
+    }
+
+    /**
+     * Launches the initially configured number of consumers, the min and max bounds apply only to later scaling.
+     */
+    public synchronized void start(int consumersCount) {
+        for (int i = 0; i < consumersCount; i++) {
+            launchConsumer();
+        }
+    }
+
+    @Override
+    public synchronized boolean addConsumer() {
+        if (stopped || instances.size() >= maxConsumers) {
+            return false;
+        }
+        launchConsumer();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeConsumer() {
+        if (stopped || instances.size() <= minConsumers) {
+            return false;
+        }
+        ConsumerInstance<M> instance = instances.remove(instances.size() - 1);
+        consumersCountGauge.set(instances.size());
+        // the consumer finishes and commits its current pack and leaves the consumer group from its own thread,
+        // so its partitions are rebalanced to the remaining consumers starting from the committed offsets
+        instance.removed = true;
+        log.info("[{}][{}] Removing consumer, consumers left - {}.", name, instance.consumerId, instances.size());
+        return true;
+    }
+
+    @Override
+    public synchronized int getConsumersCount() {
+        return instances.size();
+    }
+
+    @Override
+    public synchronized long getLag() {
+        long lag = 0;
+        for (ConsumerInstance<M> instance : instances) {
+            lag += instance.lag;
+        }
+        return lag;
+    }
+
+    @Override
+    public double pollAvgPackProcessingTimeMs() {
+        long packs = processedPacks.getAndSet(0);
+        long nanos = packProcessingNanos.getAndSet(0);
+        return packs > 0 ? (double) nanos / packs / 1_000_000 : 0;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        instances.forEach(instance -> instance.consumer.unsubscribeAndClose());
+    }
+
+    private void launchConsumer() {
+        String consumerId = consumerIdPrefix + nextConsumerIndex++;
+        TbQueueConsumer<M> consumer = consumerFactory.apply(consumerId);
+        consumer.subscribe();
+        ConsumerInstance<M> instance = new ConsumerInstance<>(consumerId, consumer);
+        instances.add(instance);
+        consumersCountGauge.set(instances.size());
+        PackHandler<M> packHandler = packHandlerFactory.apply(consumerId);
+        executor.submit(() -> runConsumer(instance, packHandler));
+    }
+
+    private void runConsumer(ConsumerInstance<M> instance, PackHandler<M> packHandler) {
+        TbQueueConsumer<M> consumer = instance.consumer;
+        while (!stopped && !instance.removed) {
+            try {
+                List<M> msgs = consumer.poll(pollDuration);
+                instance.lag = consumer.getLag();
+                if (msgs.isEmpty()) {
+                    continue;
+                }
+                long packProcessingStart = System.nanoTime();
+                packHandler.handle(consumer, msgs);
+                packProcessingNanos.addAndGet(System.nanoTime() - packProcessingStart);
+                processedPacks.incrementAndGet();
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.error("[{}] Failed to process messages from queue.", instance.consumerId, e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        if (log.isTraceEnabled()) {
+                            log.trace("[{}] Failed to wait until the server has capacity to handle new requests", instance.consumerId, e2);
+                        }
+                    }
+                }
+            }
+        }
+        if (instance.removed) {
+            // removed consumers are not in the list anymore, so stop() does not close them
+            consumer.unsubscribeAndClose();
+            removedConsumerHandler.accept(instance.consumerId);
+        }
+        log.info("[{}][{}] Consumer stopped.", name, instance.consumerId);
+    }
+
+    private static class ConsumerInstance<M extends TbQueueMsg> {
+
+        private final String consumerId;
+        private final TbQueueConsumer<M> consumer;
+        private volatile boolean removed;
+        private volatile long lag;
+
+        ConsumerInstance(String consumerId, TbQueueConsumer<M> consumer) {
+            this.consumerId = consumerId;
+            this.consumer = consumer;
+        }
+    }
+}
@@ -15,22 +15,84 @@
  */
 package org.thingsboard.mqtt.broker.service.security.authorization;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 
-@AllArgsConstructor
-@Getter
-@ToString
+@ToString(of = {"pubPatterns", "subPatterns"})
 public class AuthRulePatterns {
 
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+
+    @Getter
     private final List<Pattern> pubPatterns;
+    @Getter
     private final List<Pattern> subPatterns;
 
+    /*
+        All patterns of one kind merged into a single alternation, so a topic is checked with one matcher pass
+        instead of one pass per rule. Null when there are no patterns or they cannot be merged safely.
+     */
+    private final Pattern pubPattern;
+    private final Pattern subPattern;
+
+    public AuthRulePatterns(List<Pattern> pubPatterns, List<Pattern> subPatterns) {
+        this.pubPatterns = pubPatterns;
+        this.subPatterns = subPatterns;
+        this.pubPattern = combine(pubPatterns);
+        this.subPattern = combine(subPatterns);
+    }
+
     public static AuthRulePatterns newInstance(List<Pattern> patterns) {
         return new AuthRulePatterns(patterns, patterns);
     }
+
+    public boolean isPubAllowed(String topic) {
+        return matches(topic, pubPattern, pubPatterns);
+    }
+
+    public boolean isSubAllowed(String topic) {
+        return matches(topic, subPattern, subPatterns);
+    }
+
+    private static boolean matches(String topic, Pattern combined, List<Pattern> patterns) {
+        if (combined != null) {
+            return combined.matcher(topic).matches();
+        }
+        if (patterns == null) {
+            return false;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(topic).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern combine(List<Pattern> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return null;
+        }
+        if (patterns.size() == 1) {
+            return patterns.get(0);
+        }
+        for (Pattern pattern : patterns) {
+            // flags and back-references are bound to the original pattern and group numbering, keep those separate
+            if (pattern.flags() != 0 || BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+                return null;
+            }
+        }
+        try {
+            return Pattern.compile(patterns.stream()
+                    .map(pattern -> "(?:" + pattern.pattern() + ")")
+                    .collect(Collectors.joining("|")));
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
 }
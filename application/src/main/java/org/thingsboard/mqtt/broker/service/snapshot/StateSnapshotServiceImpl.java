@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.snapshot;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgConsumer;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgListenerService;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionCache;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionConsumer;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StateSnapshotServiceImpl implements StateSnapshotService {
+
+    private final StateSnapshotStorage snapshotStorage;
+    private final ClientSessionConsumer clientSessionConsumer;
+    private final ClientSubscriptionConsumer clientSubscriptionConsumer;
+    private final RetainedMsgConsumer retainedMsgConsumer;
+    private final ClientSessionCache clientSessionCache;
+    private final ClientSubscriptionCache clientSubscriptionCache;
+    private final RetainedMsgListenerService retainedMsgListenerService;
+
+    @Value("${state-snapshot.interval-sec:300}")
+    private long snapshotIntervalSec;
+
+    private ScheduledExecutorService scheduler;
+
+    /*
+        Client subscription changes from other nodes are applied asynchronously by client actors, so the state read at
+        some moment may not yet reflect the consumed offsets. Snapshots are tagged with the offsets captured during the
+        previous run instead: replaying extra messages is safe since every message holds the full state for its key.
+     */
+    private Map<Integer, Long> previousSessionOffsets;
+    private Map<Integer, Long> previousSubscriptionOffsets;
+    private Map<Integer, Long> previousRetainedMsgOffsets;
+    /*
+        Snapshots are dated by the time of their offsets, so that their age covers the whole replayed tail of the topics
+     */
+    private long previousOffsetsTime;
+
+    @Override
+    public void startSnapshotting() {
+        if (!snapshotStorage.isEnabled()) {
+            return;
+        }
+        log.info("Starting state snapshots with {} sec interval.", snapshotIntervalSec);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("state-snapshot-scheduler"));
+        this.scheduler.scheduleWithFixedDelay(this::makeSnapshots, 0, snapshotIntervalSec, TimeUnit.SECONDS);
+    }
+
+    private void makeSnapshots() {
+        long offsetsTime = System.currentTimeMillis();
+        Map<Integer, Long> sessionOffsets = clientSessionConsumer.getConsumedOffsets();
+        Map<Integer, Long> subscriptionOffsets = clientSubscriptionConsumer.getConsumedOffsets();
+        Map<Integer, Long> retainedMsgOffsets = retainedMsgConsumer.getConsumedOffsets();
+
+        if (previousSessionOffsets != null) {
+            long startTime = System.currentTimeMillis();
+            try {
+                saveClientSessions(previousOffsetsTime, previousSessionOffsets);
+                saveClientSubscriptions(previousOffsetsTime, previousSubscriptionOffsets);
+                saveRetainedMessages(previousOffsetsTime, previousRetainedMsgOffsets);
+                log.info("Saved state snapshots in {} ms.", System.currentTimeMillis() - startTime);
+            } catch (Exception e) {
+                log.warn("Failed to save state snapshots.", e);
+            }
+        }
+
+        previousSessionOffsets = sessionOffsets;
+        previousSubscriptionOffsets = subscriptionOffsets;
+        previousRetainedMsgOffsets = retainedMsgOffsets;
+        previousOffsetsTime = offsetsTime;
+    }
+
+    private void saveClientSessions(long offsetsTime, Map<Integer, Long> offsets) throws Exception {
+        Map<String, ClientSessionInfo> clientSessions = clientSessionCache.getAllClientSessions();
+        snapshotStorage.saveClientSessions(new StateSnapshot<>(offsetsTime, offsets, clientSessions));
+    }
+
+    private void saveClientSubscriptions(long offsetsTime, Map<Integer, Long> offsets) throws Exception {
+        Map<String, Set<TopicSubscription>> clientSubscriptions = clientSubscriptionCache.getAllClientSubscriptions();
+        snapshotStorage.saveClientSubscriptions(new StateSnapshot<>(offsetsTime, offsets, clientSubscriptions));
+    }
+
+    private void saveRetainedMessages(long offsetsTime, Map<Integer, Long> offsets) throws Exception {
+        Map<String, RetainedMsg> retainedMessages = retainedMsgListenerService.getRetainedMessages().stream()
+                .collect(Collectors.toMap(RetainedMsg::getTopic, Function.identity(), (first, second) -> second));
+        snapshotStorage.saveRetainedMessages(new StateSnapshot<>(offsetsTime, offsets, retainedMessages));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.snapshot;
+
+import com.google.common.collect.Maps;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores snapshots in the following format (all numbers are protobuf varints unless stated otherwise):
+ * magic (fixed32), format version, created time (fixed64), offsets count, [partition, offset]...,
+ * entries count, [key string, length-delimited value proto]..., end marker (fixed32).
+ */
+@Slf4j
+@Component
+public class StateSnapshotStorageImpl implements StateSnapshotStorage {
+
+    private static final int MAGIC = 0x54424D53;
+    private static final int END_MARKER = 0x454E4421;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    @Setter
+    @Value("${state-snapshot.enabled:false}")
+    private boolean enabled;
+    @Setter
+    @Value("${state-snapshot.dir:}")
+    private String snapshotDir;
+    @Setter
+    @Value("${state-snapshot.keep-count:2}")
+    private int keepCount;
+    @Setter
+    @Value("${state-snapshot.max-age-ms:43200000}")
+    private long maxAgeMs;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Optional<StateSnapshot<ClientSessionInfo>> loadClientSessions() {
+        return load(StateSnapshotType.CLIENT_SESSIONS, QueueProtos.ClientSessionInfoProto.parser(),
+                ProtoConverter::convertToClientSessionInfo);
+    }
+
+    @Override
+    public Optional<StateSnapshot<Set<TopicSubscription>>> loadClientSubscriptions() {
+        return load(StateSnapshotType.CLIENT_SUBSCRIPTIONS, QueueProtos.ClientSubscriptionsProto.parser(),
+                ProtoConverter::convertToClientSubscriptions);
+    }
+
+    @Override
+    public Optional<StateSnapshot<RetainedMsg>> loadRetainedMessages() {
+        return load(StateSnapshotType.RETAINED_MESSAGES, QueueProtos.RetainedMsgProto.parser(),
+                ProtoConverter::convertToRetainedMsg);
+    }
+
+    @Override
+    public void saveClientSessions(StateSnapshot<ClientSessionInfo> snapshot) throws IOException {
+        save(StateSnapshotType.CLIENT_SESSIONS, snapshot, ProtoConverter::convertToClientSessionInfoProto);
+    }
+
+    @Override
+    public void saveClientSubscriptions(StateSnapshot<Set<TopicSubscription>> snapshot) throws IOException {
+        save(StateSnapshotType.CLIENT_SUBSCRIPTIONS, snapshot, ProtoConverter::convertToClientSubscriptionsProto);
+    }
+
+    @Override
+    public void saveRetainedMessages(StateSnapshot<RetainedMsg> snapshot) throws IOException {
+        save(StateSnapshotType.RETAINED_MESSAGES, snapshot, ProtoConverter::convertToRetainedMsgProto);
+    }
+
+    private <V, P extends MessageLite> Optional<StateSnapshot<V>> load(StateSnapshotType type, Parser<P> parser, Function<P, V> decoder) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Path> snapshotFiles;
+        try {
+            snapshotFiles = listSnapshotFiles(type);
+        } catch (IOException e) {
+            log.warn("[{}] Failed to list snapshot files.", type, e);
+            return Optional.empty();
+        }
+        long minSnapshotTime = System.currentTimeMillis() - maxAgeMs;
+        for (Path snapshotFile : snapshotFiles) {
+            // tombstones written after the snapshot may be already compacted away, the topic is replayed from the beginning
+            if (getSnapshotTime(type, snapshotFile) < minSnapshotTime) {
+                log.warn("[{}] Snapshot {} is older than {} ms, ignoring it.", type, snapshotFile.getFileName(), maxAgeMs);
+                break;
+            }
+            long startTime = System.currentTimeMillis();
+            try {
+                StateSnapshot<V> snapshot = read(snapshotFile, parser, decoder);
+                log.info("[{}] Loaded {} entries from snapshot {} in {} ms.", type, snapshot.getState().size(),
+                        snapshotFile.getFileName(), System.currentTimeMillis() - startTime);
+                return Optional.of(snapshot);
+            } catch (Exception e) {
+                log.warn("[{}] Failed to read snapshot {}, falling back to an older one.", type, snapshotFile, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private <V, P extends MessageLite> StateSnapshot<V> read(Path snapshotFile, Parser<P> parser, Function<P, V> decoder) throws IOException {
+        if (Files.size(snapshotFile) > Integer.MAX_VALUE) {
+            try (InputStream inputStream = Files.newInputStream(snapshotFile)) {
+                return read(CodedInputStream.newInstance(inputStream, BUFFER_SIZE), parser, decoder);
+            }
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(CodedInputStream.newInstance(buffer), parser, decoder);
+    }
+
+    private <V, P extends MessageLite> StateSnapshot<V> read(CodedInputStream input, Parser<P> parser, Function<P, V> decoder) throws IOException {
+        if (input.readFixed32() != MAGIC) {
+            throw new IOException("File is not a state snapshot");
+        }
+        int formatVersion = input.readUInt32();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version " + formatVersion);
+        }
+        long createdTime = input.readFixed64();
+
+        int offsetsCount = input.readUInt32();
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (int i = 0; i < offsetsCount; i++) {
+            offsets.put(input.readUInt32(), input.readUInt64());
+        }
+
+        int entriesCount = input.readUInt32();
+        Map<String, V> state = Maps.newHashMapWithExpectedSize(entriesCount);
+        for (int i = 0; i < entriesCount; i++) {
+            String key = input.readString();
+            P value = input.readMessage(parser, ExtensionRegistryLite.getEmptyRegistry());
+            state.put(key, decoder.apply(value));
+            input.resetSizeCounter();
+        }
+
+        if (input.readFixed32() != END_MARKER) {
+            throw new IOException("State snapshot is truncated");
+        }
+        return new StateSnapshot<>(createdTime, offsets, state);
+    }
+
+    private <V, P extends MessageLite> void save(StateSnapshotType type, StateSnapshot<V> snapshot, Function<V, P> encoder) throws IOException {
+        Path dir = Paths.get(snapshotDir);
+        Files.createDirectories(dir);
+        Path tmpFile = dir.resolve(type.getFilePrefix() + TMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CodedOutputStream output = CodedOutputStream.newInstance(Channels.newOutputStream(channel), BUFFER_SIZE);
+            output.writeFixed32NoTag(MAGIC);
+            output.writeUInt32NoTag(FORMAT_VERSION);
+            output.writeFixed64NoTag(snapshot.getCreatedTime());
+
+            output.writeUInt32NoTag(snapshot.getOffsets().size());
+            for (Map.Entry<Integer, Long> offset : snapshot.getOffsets().entrySet()) {
+                output.writeUInt32NoTag(offset.getKey());
+                output.writeUInt64NoTag(offset.getValue());
+            }
+
+            output.writeUInt32NoTag(snapshot.getState().size());
+            for (Map.Entry<String, V> entry : snapshot.getState().entrySet()) {
+                output.writeStringNoTag(entry.getKey());
+                output.writeMessageNoTag(encoder.apply(entry.getValue()));
+            }
+
+            output.writeFixed32NoTag(END_MARKER);
+            output.flush();
+            channel.force(true);
+        }
+        Path snapshotFile = dir.resolve(type.getFilePrefix() + "-" + snapshot.getCreatedTime() + SNAPSHOT_SUFFIX);
+        Files.move(tmpFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+
+        removeOutdatedSnapshots(type);
+    }
+
+    private void removeOutdatedSnapshots(StateSnapshotType type) throws IOException {
+        List<Path> snapshotFiles = listSnapshotFiles(type);
+        for (int i = Math.max(keepCount, 1); i < snapshotFiles.size(); i++) {
+            Files.deleteIfExists(snapshotFiles.get(i));
+        }
+    }
+
+    private List<Path> listSnapshotFiles(StateSnapshotType type) throws IOException {
+        Path dir = Paths.get(snapshotDir);
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(file -> getSnapshotTime(type, file) > 0)
+                    .sorted(Comparator.comparingLong((Path file) -> getSnapshotTime(type, file)).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long getSnapshotTime(StateSnapshotType type, Path file) {
+        String fileName = file.getFileName().toString();
+        String prefix = type.getFilePrefix() + "-";
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(SNAPSHOT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - SNAPSHOT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
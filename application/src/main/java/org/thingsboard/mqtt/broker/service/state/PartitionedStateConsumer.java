@@ -0,0 +1,247 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
+import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Reads a compacted state topic with one consumer (and one thread) per partition. All messages of the same key
+ * go to the same partition, so partitions can be replayed and listened to independently.
+ */
+@Slf4j
+public class PartitionedStateConsumer<T extends TbQueueMsg> {
+
+    private final String name;
+    private final long pollDuration;
+    private final List<TbQueueControlledOffsetConsumer<T>> consumers = new ArrayList<>();
+    private final Map<Integer, Long> consumedOffsets = new ConcurrentHashMap<>();
+
+    private volatile ExecutorService consumersExecutor;
+    private volatile boolean stopped = false;
+
+    public PartitionedStateConsumer(String name, long pollDuration) {
+        this.name = name;
+        this.pollDuration = pollDuration;
+    }
+
+    /**
+     * Replays every partition from the snapshot offsets (or from the beginning) up to the end offsets observed on start.
+     *
+     * @param decoder converts a message to the state value, returns null if the message clears the key
+     */
+    public <V> Map<String, V> initLoad(TbQueueAdmin queueAdmin, IntFunction<TbQueueControlledOffsetConsumer<T>> consumerCreator,
+                                       Optional<StateSnapshot<V>> snapshot, Function<T, V> decoder) {
+        return initLoad(queueAdmin, consumerCreator, snapshot, (currentValue, msg) -> decoder.apply(msg));
+    }
+
+    /**
+     * Same as {@link #initLoad(TbQueueAdmin, IntFunction, Optional, Function)} for topics where a message may hold
+     * only a change of the value.
+     *
+     * @param reducer applies a message to the current value of its key (null if there is none),
+     *                returns null if the message clears the key
+     */
+    public <V> Map<String, V> initLoad(TbQueueAdmin queueAdmin, IntFunction<TbQueueControlledOffsetConsumer<T>> consumerCreator,
+                                       Optional<StateSnapshot<V>> snapshot, BiFunction<V, T, V> reducer) {
+        long startTime = System.currentTimeMillis();
+        int partitions = assignPartitions(queueAdmin, consumerCreator);
+        this.consumersExecutor = Executors.newFixedThreadPool(partitions, ThingsBoardThreadFactory.forName(name + "-consumer"));
+
+        Map<String, V> state = new HashMap<>();
+        Map<Integer, Long> startOffsets = Collections.emptyMap();
+        if (snapshot.isPresent() && isSnapshotValid(snapshot.get())) {
+            state = snapshot.get().getState();
+            startOffsets = snapshot.get().getOffsets();
+        }
+        int restoredEntries = state.size();
+        Map<String, V> initialState = state;
+
+        AtomicLong replayedMessages = new AtomicLong();
+        List<Future<Map<String, V>>> partitionFutures = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            TbQueueControlledOffsetConsumer<T> consumer = consumers.get(partition);
+            Long startOffset = startOffsets.get(partition);
+            int currentPartition = partition;
+            partitionFutures.add(consumersExecutor.submit(() ->
+                    replayPartition(consumer, currentPartition, startOffset, initialState, reducer, replayedMessages)));
+        }
+
+        for (Future<Map<String, V>> partitionFuture : partitionFutures) {
+            Map<String, V> partitionChanges = getPartitionChanges(partitionFuture);
+            for (Map.Entry<String, V> change : partitionChanges.entrySet()) {
+                if (change.getValue() == null) {
+                    state.remove(change.getKey());
+                } else {
+                    state.put(change.getKey(), change.getValue());
+                }
+            }
+        }
+
+        log.info("[{}] Loaded {} entries from {} partitions in {} ms: {} restored from snapshot, {} messages replayed from Kafka.",
+                name, state.size(), partitions, System.currentTimeMillis() - startTime, restoredEntries, replayedMessages.get());
+        return state;
+    }
+
+    public void listen(Consumer<List<T>> processor) {
+        for (TbQueueControlledOffsetConsumer<T> consumer : consumers) {
+            consumersExecutor.execute(() -> consumerLoop(consumer, processor));
+        }
+    }
+
+    public Map<Integer, Long> getConsumedOffsets() {
+        return new HashMap<>(consumedOffsets);
+    }
+
+    public void destroy(TbQueueAdmin queueAdmin) {
+        stopped = true;
+        String consumerGroupId = null;
+        for (TbQueueControlledOffsetConsumer<T> consumer : consumers) {
+            consumer.unsubscribeAndClose();
+            consumerGroupId = consumer.getConsumerGroupId();
+        }
+        if (consumerGroupId != null) {
+            queueAdmin.deleteConsumerGroups(Collections.singleton(consumerGroupId));
+        }
+        if (consumersExecutor != null) {
+            consumersExecutor.shutdownNow();
+        }
+    }
+
+    private int assignPartitions(TbQueueAdmin queueAdmin, IntFunction<TbQueueControlledOffsetConsumer<T>> consumerCreator) {
+        TbQueueControlledOffsetConsumer<T> firstConsumer = consumerCreator.apply(0);
+        // topic is created on the first assignment if it does not exist yet
+        firstConsumer.assignPartition(0);
+        consumers.add(firstConsumer);
+
+        int partitions = queueAdmin.getNumberOfPartitions(firstConsumer.getTopic());
+        for (int partition = 1; partition < partitions; partition++) {
+            TbQueueControlledOffsetConsumer<T> consumer = consumerCreator.apply(partition);
+            consumer.assignPartition(partition);
+            consumers.add(consumer);
+        }
+        return partitions;
+    }
+
+    private boolean isSnapshotValid(StateSnapshot<?> snapshot) {
+        for (Map.Entry<Integer, Long> offset : snapshot.getOffsets().entrySet()) {
+            int partition = offset.getKey();
+            if (partition >= consumers.size()) {
+                log.warn("[{}] Snapshot has offset for unknown partition {}. Ignoring snapshot.", name, partition);
+                return false;
+            }
+            TbQueueControlledOffsetConsumer<T> consumer = consumers.get(partition);
+            long endOffset = consumer.getEndOffset(consumer.getTopic(), partition);
+            if (offset.getValue() > endOffset) {
+                log.warn("[{}][{}] Snapshot offset {} is beyond the end offset {}, topic was probably recreated. Ignoring snapshot.",
+                        name, partition, offset.getValue(), endOffset);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keys of different partitions don't intersect, so the initial state is only read here and is shared by all partitions.
+     */
+    private <V> Map<String, V> replayPartition(TbQueueControlledOffsetConsumer<T> consumer, int partition, Long startOffset,
+                                               Map<String, V> initialState, BiFunction<V, T, V> reducer, AtomicLong replayedMessages) {
+        if (startOffset != null) {
+            consumer.seek(partition, startOffset);
+        } else {
+            consumer.seekToTheBeginning();
+        }
+        long endOffset = consumer.getEndOffset(consumer.getTopic(), partition);
+
+        // null values mark keys cleared during the replay
+        Map<String, V> partitionChanges = new HashMap<>();
+        // the position and not the offset of the last msg is checked, since the offsets right before the end offset
+        // may have no msgs (compacted msgs, transaction markers)
+        long nextOffset = consumer.getPosition(partition);
+        while (!stopped && nextOffset < endOffset) {
+            List<T> messages = consumer.poll(pollDuration);
+            for (T msg : messages) {
+                String key = msg.getKey();
+                V currentValue = partitionChanges.containsKey(key) ? partitionChanges.get(key) : initialState.get(key);
+                partitionChanges.put(key, reducer.apply(currentValue, msg));
+            }
+            replayedMessages.addAndGet(messages.size());
+            consumer.commitSync();
+            nextOffset = consumer.getPosition(partition);
+        }
+        consumedOffsets.put(partition, nextOffset);
+        return partitionChanges;
+    }
+
+    private <V> Map<String, V> getPartitionChanges(Future<Map<String, V>> partitionFuture) {
+        try {
+            return partitionFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading " + name, e);
+        } catch (ExecutionException e) {
+            log.error("[{}] Failed to load partition state.", name, e.getCause());
+            throw new RuntimeException("Failed to load " + name, e.getCause());
+        }
+    }
+
+    private void consumerLoop(TbQueueControlledOffsetConsumer<T> consumer, Consumer<List<T>> processor) {
+        while (!stopped) {
+            try {
+                List<T> messages = consumer.poll(pollDuration);
+                if (messages.isEmpty()) {
+                    continue;
+                }
+                processor.accept(messages);
+                T lastMsg = messages.get(messages.size() - 1);
+                consumedOffsets.put(lastMsg.getPartition(), lastMsg.getOffset() + 1);
+                consumer.commitSync();
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.error("[{}] Failed to process messages from queue.", name, e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        if (log.isTraceEnabled()) {
+                            log.trace("Failed to wait until the server has capacity to handle new requests", e2);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -41,6 +41,8 @@ public class DefaultDeviceProcessorStats implements DeviceProcessorStats {
     private final StatsCounter successIterationsCounter;
     private final StatsCounter failedIterationsCounter;
 
+    private volatile boolean active = true;
+
     public DefaultDeviceProcessorStats(String consumerId, StatsFactory statsFactory) {
         this.consumerId = consumerId;
         String statsKey = StatsType.DEVICE_PROCESSOR.getPrintName();
@@ -83,4 +85,14 @@ public class DefaultDeviceProcessorStats implements DeviceProcessorStats {
     public void reset() {
         counters.forEach(StatsCounter::clear);
     }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void disable() {
+        this.active = false;
+    }
 }
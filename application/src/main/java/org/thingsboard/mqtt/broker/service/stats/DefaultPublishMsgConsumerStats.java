@@ -55,9 +55,13 @@ public class DefaultPublishMsgConsumerStats implements PublishMsgConsumerStats {
 
     private final ResettableTimer msgProcessingTimer;
     private final ResettableTimer packProcessingTimer;
+    private final ResettableTimer msgLatencyTimer;
+    private final AtomicLong lag;
 
     private final AtomicLong totalPackSize = new AtomicLong();
 
+    private volatile boolean active = true;
+
     public DefaultPublishMsgConsumerStats(String consumerId, StatsFactory statsFactory) {
         this.consumerId = consumerId;
         String statsKey = StatsType.PUBLISH_MSG_CONSUMER.getPrintName();
@@ -75,6 +79,8 @@ public class DefaultPublishMsgConsumerStats implements PublishMsgConsumerStats {
 
         this.msgProcessingTimer = new ResettableTimer(statsFactory.createTimer(statsKey + ".processing.time", CONSUMER_ID_TAG, consumerId));
         this.packProcessingTimer = new ResettableTimer(statsFactory.createTimer(statsKey + ".pack.processing.time", CONSUMER_ID_TAG, consumerId));
+        this.msgLatencyTimer = new ResettableTimer(statsFactory.createTimer(statsKey + ".latency", CONSUMER_ID_TAG, consumerId));
+        this.lag = statsFactory.createGauge(statsKey + ".lag", new AtomicLong(0), CONSUMER_ID_TAG, consumerId);
     }
 
     @Override
@@ -115,6 +121,16 @@ public class DefaultPublishMsgConsumerStats implements PublishMsgConsumerStats {
         totalPackSize.addAndGet(packSize);
     }
 
+    @Override
+    public void logMsgLatency(long amount, TimeUnit unit) {
+        msgLatencyTimer.logTime(amount, unit);
+    }
+
+    @Override
+    public void updateLag(long lag) {
+        this.lag.set(lag);
+    }
+
     @Override
     public double getAvgPackProcessingTime() {
         return packProcessingTimer.getAvg();
@@ -125,6 +141,16 @@ public class DefaultPublishMsgConsumerStats implements PublishMsgConsumerStats {
         return Math.ceil((double) totalPackSize.get() / packProcessingTimer.getCount());
     }
 
+    @Override
+    public double getAvgMsgLatency() {
+        return msgLatencyTimer.getAvg();
+    }
+
+    @Override
+    public long getLag() {
+        return lag.get();
+    }
+
     @Override
     public List<StatsCounter> getStatsCounters() {
         return counters;
@@ -140,6 +166,17 @@ public class DefaultPublishMsgConsumerStats implements PublishMsgConsumerStats {
         counters.forEach(StatsCounter::clear);
         msgProcessingTimer.reset();
         packProcessingTimer.reset();
+        msgLatencyTimer.reset();
         totalPackSize.getAndSet(0);
     }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void disable() {
+        this.active = false;
+    }
 }
@@ -27,4 +27,8 @@ public interface DeviceProcessorStats {
     List<StatsCounter> getStatsCounters();
 
     void reset();
+
+    boolean isActive();
+
+    void disable();
 }
@@ -30,6 +30,13 @@ public interface PublishMsgConsumerStats {
 
     void logPackProcessingTime(int packSize, long amount, TimeUnit unit);
 
+    /**
+     * Time from the msg creation by the publishing client actor until the consumer starts processing it.
+     */
+    void logMsgLatency(long amount, TimeUnit unit);
+
+    void updateLag(long lag);
+
     List<StatsCounter> getStatsCounters();
 
     double getAvgMsgProcessingTime();
@@ -38,5 +45,13 @@ public interface PublishMsgConsumerStats {
 
     double getAvgPackSize();
 
+    double getAvgMsgLatency();
+
+    long getLag();
+
     void reset();
+
+    boolean isActive();
+
+    void disable();
 }
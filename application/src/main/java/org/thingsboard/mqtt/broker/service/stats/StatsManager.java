@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.service.stats;
 
 import org.thingsboard.mqtt.broker.common.stats.MessagesStats;
 import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgPayloadArena;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -32,6 +33,8 @@ public interface StatsManager {
 
     MessagesStats createMsgDispatcherPublishStats();
 
+    MessagesStats createMsgDispatcherPriorityPublishStats();
+
     ClientSessionEventConsumerStats createClientSessionEventConsumerStats(String consumerId);
 
     PublishMsgConsumerStats createPublishMsgConsumerStats(String consumerId);
@@ -46,6 +49,10 @@ public interface StatsManager {
 
     RetainedMsgConsumerStats getRetainedMsgConsumerStats();
 
+    void clearPublishMsgConsumerStats(String consumerId);
+
+    void clearDeviceProcessorStats(String consumerId);
+
     void clearApplicationProcessorStats(String clientId);
 
     void clearSharedApplicationProcessorStats(String clientId);
@@ -58,8 +65,40 @@ public interface StatsManager {
 
     AtomicLong createSubscriptionTrieNodesCounter();
 
+    AtomicLong createSubscriptionTrieMemoryCounter();
+
+    AtomicLong createSubscriptionTrieReclaimedNodesCounter();
+
     AtomicLong createRetainMsgTrieNodesCounter();
 
+    AtomicLong createRetainMsgTrieReclaimedNodesCounter();
+
+    AtomicLong createRetainedMsgTruncatedDeliveriesCounter();
+
+    AtomicLong createSlowConsumerDroppedMsgsCounter();
+
+    AtomicLong createSlowConsumerDeferredMsgsCounter();
+
+    AtomicLong createSlowConsumerDisconnectsCounter();
+
+    AtomicLong createExpiredMsgsCounter();
+
+    AtomicLong createReceiveMaxDelayedMsgsCounter();
+
+    AtomicLong createReceiveMaxDisconnectsCounter();
+
+    AtomicLong createLastWillScheduledCounter();
+
+    AtomicLong createLastWillCancelledCounter();
+
+    AtomicLong createLastWillLateCounter();
+
+    AtomicLong createIngressThrottledMsgsCounter(String limiterName);
+
+    AtomicLong createShedQos0MsgsCounter(String reason);
+
+    AtomicInteger createConsumersCountGauge(String consumerGroupName);
+
     void registerLastWillStats(Map<?, ?> lastWillMsgsMap);
 
     void registerActiveSessionsStats(Map<?, ?> sessionsMap);
@@ -68,7 +107,7 @@ public interface StatsManager {
 
     void registerClientSubscriptionsStats(Map<?, ?> clientSubscriptionsMap);
 
-    void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap);
+    void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap, RetainedMsgPayloadArena offHeapArena);
 
     void registerActiveApplicationProcessorsStats(Map<?, ?> processingFuturesMap);
 
@@ -36,6 +36,7 @@ import org.thingsboard.mqtt.broker.queue.TbQueueMsgMetadata;
 import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.Timer;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgPayloadArena;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -64,9 +65,9 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
     private final List<MessagesStats> managedStats = new CopyOnWriteArrayList<>();
     private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
 
-    private final List<PublishMsgConsumerStats> managedPublishMsgConsumerStats = new CopyOnWriteArrayList<>();
+    private final Map<String, PublishMsgConsumerStats> managedPublishMsgConsumerStats = new ConcurrentHashMap<>();
     private final List<ClientSessionEventConsumerStats> managedClientSessionEventConsumerStats = new CopyOnWriteArrayList<>();
-    private final List<DeviceProcessorStats> managedDeviceProcessorStats = new CopyOnWriteArrayList<>();
+    private final Map<String, DeviceProcessorStats> managedDeviceProcessorStats = new ConcurrentHashMap<>();
     private final Map<String, ApplicationProcessorStats> managedApplicationProcessorStats = new ConcurrentHashMap<>();
     private final Map<String, List<String>> sharedSubscriptionCompoundClientIds = new ConcurrentHashMap<>();
     private final Map<String, ResettableTimer> managedQueueProducers = new ConcurrentHashMap<>();
@@ -105,6 +106,16 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return stats;
     }
 
+    @Override
+    public MessagesStats createMsgDispatcherPriorityPublishStats() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating MsgDispatcherPriorityPublishStats.");
+        }
+        MessagesStats stats = statsFactory.createMessagesStats(StatsType.MSG_DISPATCHER_PRIORITY_PRODUCER.getPrintName());
+        managedStats.add(stats);
+        return stats;
+    }
+
     @Override
     public ClientSessionEventConsumerStats createClientSessionEventConsumerStats(String consumerId) {
         if (log.isTraceEnabled()) {
@@ -121,7 +132,7 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
             log.trace("Creating PublishMsgConsumerStats, consumerId - {}.", consumerId);
         }
         PublishMsgConsumerStats stats = new DefaultPublishMsgConsumerStats(consumerId, statsFactory);
-        managedPublishMsgConsumerStats.add(stats);
+        managedPublishMsgConsumerStats.put(consumerId, stats);
         return stats;
     }
 
@@ -131,7 +142,7 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
             log.trace("Creating DeviceProcessorStats, consumerId - {}.", consumerId);
         }
         DeviceProcessorStats stats = new DefaultDeviceProcessorStats(consumerId, statsFactory);
-        managedDeviceProcessorStats.add(stats);
+        managedDeviceProcessorStats.put(consumerId, stats);
         return stats;
     }
 
@@ -183,6 +194,28 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return retainedMsgConsumerStats;
     }
 
+    @Override
+    public void clearPublishMsgConsumerStats(String consumerId) {
+        if (log.isTraceEnabled()) {
+            log.trace("Clearing PublishMsgConsumerStats, consumerId - {}.", consumerId);
+        }
+        PublishMsgConsumerStats stats = managedPublishMsgConsumerStats.get(consumerId);
+        if (stats != null && stats.isActive()) {
+            stats.disable();
+        }
+    }
+
+    @Override
+    public void clearDeviceProcessorStats(String consumerId) {
+        if (log.isTraceEnabled()) {
+            log.trace("Clearing DeviceProcessorStats, consumerId - {}.", consumerId);
+        }
+        DeviceProcessorStats stats = managedDeviceProcessorStats.get(consumerId);
+        if (stats != null && stats.isActive()) {
+            stats.disable();
+        }
+    }
+
     @Override
     public void clearApplicationProcessorStats(String clientId) {
         if (log.isTraceEnabled()) {
@@ -288,12 +321,18 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
     }
 
     @Override
-    public void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap) {
+    public void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap, RetainedMsgPayloadArena offHeapArena) {
         if (log.isTraceEnabled()) {
             log.trace("Registering RetainedMsgStats.");
         }
         statsFactory.createGauge(StatsType.RETAINED_MESSAGES.getPrintName(), retainedMessagesMap, Map::size);
         gauges.add(new Gauge(StatsType.RETAINED_MESSAGES.getPrintName(), retainedMessagesMap::size));
+        if (offHeapArena != null) {
+            AtomicLong usedBytes = statsFactory.createGauge(StatsType.RETAINED_MESSAGES_OFF_HEAP_USED.getPrintName(), offHeapArena.getUsedBytes());
+            gauges.add(new Gauge(StatsType.RETAINED_MESSAGES_OFF_HEAP_USED.getPrintName(), usedBytes::get));
+            AtomicLong reservedBytes = statsFactory.createGauge(StatsType.RETAINED_MESSAGES_OFF_HEAP_RESERVED.getPrintName(), offHeapArena.getReservedBytes());
+            gauges.add(new Gauge(StatsType.RETAINED_MESSAGES_OFF_HEAP_RESERVED.getPrintName(), reservedBytes::get));
+        }
     }
 
     @Override
@@ -333,6 +372,26 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return sizeGauge;
     }
 
+    @Override
+    public AtomicLong createSubscriptionTrieMemoryCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SubscriptionTrieMemoryCounter.");
+        }
+        AtomicLong memoryGauge = statsFactory.createGauge(StatsType.SUBSCRIPTION_TRIE_MEMORY.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SUBSCRIPTION_TRIE_MEMORY.getPrintName(), memoryGauge::get));
+        return memoryGauge;
+    }
+
+    @Override
+    public AtomicLong createSubscriptionTrieReclaimedNodesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SubscriptionTrieReclaimedNodesCounter.");
+        }
+        AtomicLong reclaimedGauge = statsFactory.createGauge(StatsType.SUBSCRIPTION_TRIE_RECLAIMED_NODES.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SUBSCRIPTION_TRIE_RECLAIMED_NODES.getPrintName(), reclaimedGauge::get));
+        return reclaimedGauge;
+    }
+
     @Override
     public AtomicLong createRetainMsgTrieNodesCounter() {
         if (log.isTraceEnabled()) {
@@ -343,6 +402,149 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
         return sizeGauge;
     }
 
+    @Override
+    public AtomicLong createRetainMsgTrieReclaimedNodesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating RetainMsgTrieReclaimedNodesCounter.");
+        }
+        AtomicLong reclaimedGauge = statsFactory.createGauge(StatsType.RETAIN_MSG_TRIE_RECLAIMED_NODES.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.RETAIN_MSG_TRIE_RECLAIMED_NODES.getPrintName(), reclaimedGauge::get));
+        return reclaimedGauge;
+    }
+
+    @Override
+    public AtomicLong createRetainedMsgTruncatedDeliveriesCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating RetainedMsgTruncatedDeliveriesCounter.");
+        }
+        AtomicLong truncatedGauge = statsFactory.createGauge(StatsType.RETAINED_MSG_TRUNCATED_DELIVERIES.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.RETAINED_MSG_TRUNCATED_DELIVERIES.getPrintName(), truncatedGauge::get));
+        return truncatedGauge;
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDroppedMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SlowConsumerDroppedMsgsCounter.");
+        }
+        AtomicLong droppedGauge = statsFactory.createGauge(StatsType.SLOW_CONSUMER_DROPPED_MSGS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SLOW_CONSUMER_DROPPED_MSGS.getPrintName(), droppedGauge::get));
+        return droppedGauge;
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDeferredMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SlowConsumerDeferredMsgsCounter.");
+        }
+        AtomicLong deferredGauge = statsFactory.createGauge(StatsType.SLOW_CONSUMER_DEFERRED_MSGS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SLOW_CONSUMER_DEFERRED_MSGS.getPrintName(), deferredGauge::get));
+        return deferredGauge;
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDisconnectsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating SlowConsumerDisconnectsCounter.");
+        }
+        AtomicLong disconnectsGauge = statsFactory.createGauge(StatsType.SLOW_CONSUMER_DISCONNECTS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.SLOW_CONSUMER_DISCONNECTS.getPrintName(), disconnectsGauge::get));
+        return disconnectsGauge;
+    }
+
+    @Override
+    public AtomicLong createExpiredMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating ExpiredMsgsCounter.");
+        }
+        AtomicLong expiredGauge = statsFactory.createGauge(StatsType.EXPIRED_MSGS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.EXPIRED_MSGS.getPrintName(), expiredGauge::get));
+        return expiredGauge;
+    }
+
+    @Override
+    public AtomicLong createReceiveMaxDelayedMsgsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating ReceiveMaxDelayedMsgsCounter.");
+        }
+        AtomicLong delayedGauge = statsFactory.createGauge(StatsType.RECEIVE_MAX_DELAYED_MSGS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.RECEIVE_MAX_DELAYED_MSGS.getPrintName(), delayedGauge::get));
+        return delayedGauge;
+    }
+
+    @Override
+    public AtomicLong createReceiveMaxDisconnectsCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating ReceiveMaxDisconnectsCounter.");
+        }
+        AtomicLong disconnectsGauge = statsFactory.createGauge(StatsType.RECEIVE_MAX_DISCONNECTS.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.RECEIVE_MAX_DISCONNECTS.getPrintName(), disconnectsGauge::get));
+        return disconnectsGauge;
+    }
+
+    @Override
+    public AtomicLong createLastWillScheduledCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating LastWillScheduledCounter.");
+        }
+        AtomicLong scheduledGauge = statsFactory.createGauge(StatsType.LAST_WILL_SCHEDULED.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.LAST_WILL_SCHEDULED.getPrintName(), scheduledGauge::get));
+        return scheduledGauge;
+    }
+
+    @Override
+    public AtomicLong createLastWillCancelledCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating LastWillCancelledCounter.");
+        }
+        AtomicLong cancelledGauge = statsFactory.createGauge(StatsType.LAST_WILL_CANCELLED.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.LAST_WILL_CANCELLED.getPrintName(), cancelledGauge::get));
+        return cancelledGauge;
+    }
+
+    @Override
+    public AtomicLong createLastWillLateCounter() {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating LastWillLateCounter.");
+        }
+        AtomicLong lateGauge = statsFactory.createGauge(StatsType.LAST_WILL_LATE.getPrintName(), new AtomicLong(0));
+        gauges.add(new Gauge(StatsType.LAST_WILL_LATE.getPrintName(), lateGauge::get));
+        return lateGauge;
+    }
+
+    @Override
+    public AtomicLong createIngressThrottledMsgsCounter(String limiterName) {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating IngressThrottledMsgsCounter, limiterName - {}.", limiterName);
+        }
+        AtomicLong throttledGauge = statsFactory.createGauge(StatsType.INGRESS_THROTTLED_MSGS.getPrintName(), new AtomicLong(0),
+                "limiter", limiterName);
+        gauges.add(new Gauge(StatsType.INGRESS_THROTTLED_MSGS.getPrintName() + "." + limiterName, throttledGauge::get));
+        return throttledGauge;
+    }
+
+    @Override
+    public AtomicLong createShedQos0MsgsCounter(String reason) {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating ShedQos0MsgsCounter, reason - {}.", reason);
+        }
+        AtomicLong shedGauge = statsFactory.createGauge(StatsType.SHED_QOS0_MSGS.getPrintName(), new AtomicLong(0),
+                "reason", reason);
+        gauges.add(new Gauge(StatsType.SHED_QOS0_MSGS.getPrintName() + "." + reason, shedGauge::get));
+        return shedGauge;
+    }
+
+    @Override
+    public AtomicInteger createConsumersCountGauge(String consumerGroupName) {
+        if (log.isTraceEnabled()) {
+            log.trace("Creating ConsumersCountGauge, consumerGroupName - {}.", consumerGroupName);
+        }
+        AtomicInteger countGauge = statsFactory.createGauge(StatsType.CONSUMERS_COUNT.getPrintName(), new AtomicInteger(0),
+                "group", consumerGroupName);
+        gauges.add(new Gauge(StatsType.CONSUMERS_COUNT.getPrintName() + "." + consumerGroupName, countGauge::get));
+        return countGauge;
+    }
+
     @Override
     public MessagesStats createSqlQueueStats(String queueName, int queueIndex) {
         if (log.isTraceEnabled()) {
@@ -406,13 +608,22 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
             stats.reset();
         }
 
-        for (PublishMsgConsumerStats stats : managedPublishMsgConsumerStats) {
+        for (PublishMsgConsumerStats stats : new ArrayList<>(managedPublishMsgConsumerStats.values())) {
             String countersStats = stats.getStatsCounters().stream()
                     .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
                     .collect(Collectors.joining(" "));
-            log.info("[{}][{}] Average pack size - {}, pack processing time - {}, msg processing time - {} ms, counters stats: {}", StatsType.PUBLISH_MSG_CONSUMER.getPrintName(), stats.getConsumerId(),
-                    stats.getAvgPackSize(), stats.getAvgPackProcessingTime(), stats.getAvgMsgProcessingTime(), countersStats);
-            stats.reset();
+            log.info("[{}][{}] Average pack size - {}, pack processing time - {}, msg processing time - {} ms, msg latency - {} ms, lag - {}, counters stats: {}",
+                    StatsType.PUBLISH_MSG_CONSUMER.getPrintName(), stats.getConsumerId(), stats.getAvgPackSize(), stats.getAvgPackProcessingTime(),
+                    stats.getAvgMsgProcessingTime(), stats.getAvgMsgLatency(), stats.getLag(), countersStats);
+            if (!stats.isActive()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Clearing inactive PUBLISH_MSG_CONSUMER stats", stats.getConsumerId());
+                }
+                managedPublishMsgConsumerStats.computeIfPresent(stats.getConsumerId(), (consumerId, oldStats) -> oldStats.isActive() ? oldStats : null);
+                statsFactory.removeMeters(StatsType.PUBLISH_MSG_CONSUMER.getPrintName(), StatsConstantNames.CONSUMER_ID_TAG, stats.getConsumerId());
+            } else {
+                stats.reset();
+            }
         }
 
         for (ClientSessionEventConsumerStats stats : managedClientSessionEventConsumerStats) {
@@ -421,12 +632,20 @@ public class StatsManagerImpl implements StatsManager, ActorStatsManager, SqlQue
             stats.reset();
         }
 
-        for (DeviceProcessorStats stats : managedDeviceProcessorStats) {
+        for (DeviceProcessorStats stats : new ArrayList<>(managedDeviceProcessorStats.values())) {
             String statsStr = stats.getStatsCounters().stream()
                     .map(statsCounter -> statsCounter.getName() + " = [" + statsCounter.get() + "]")
                     .collect(Collectors.joining(" "));
             log.info("[{}][{}] Stats: {}", StatsType.DEVICE_PROCESSOR.getPrintName(), stats.getConsumerId(), statsStr);
-            stats.reset();
+            if (!stats.isActive()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Clearing inactive DEVICE_PROCESSOR stats", stats.getConsumerId());
+                }
+                managedDeviceProcessorStats.computeIfPresent(stats.getConsumerId(), (consumerId, oldStats) -> oldStats.isActive() ? oldStats : null);
+                statsFactory.removeMeters(StatsType.DEVICE_PROCESSOR.getPrintName(), StatsConstantNames.CONSUMER_ID_TAG, stats.getConsumerId());
+            } else {
+                stats.reset();
+            }
         }
 
         if (applicationProcessorStatsEnabled) {
@@ -25,6 +25,7 @@ import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
 import org.thingsboard.mqtt.broker.queue.stats.ConsumerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.ProducerStatsManager;
 import org.thingsboard.mqtt.broker.queue.stats.Timer;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgPayloadArena;
 import org.thingsboard.mqtt.broker.service.stats.timer.DeliveryTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.PublishMsgProcessingTimerStats;
 import org.thingsboard.mqtt.broker.service.stats.timer.RetainedMsgTimerStats;
@@ -52,6 +53,11 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return StubMessagesStats.STUB_MESSAGE_STATS;
     }
 
+    @Override
+    public MessagesStats createMsgDispatcherPriorityPublishStats() {
+        return StubMessagesStats.STUB_MESSAGE_STATS;
+    }
+
     @Override
     public ClientSessionEventConsumerStats createClientSessionEventConsumerStats(String consumerId) {
         return StubClientSessionEventConsumerStats.STUB_CLIENT_SESSION_EVENT_CONSUMER_STATS;
@@ -87,6 +93,14 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return StubRetainedMsgConsumerStats.STUB_RETAINED_MSG_CONSUMER_STATS;
     }
 
+    @Override
+    public void clearPublishMsgConsumerStats(String consumerId) {
+    }
+
+    @Override
+    public void clearDeviceProcessorStats(String consumerId) {
+    }
+
     @Override
     public void clearApplicationProcessorStats(String clientId) {
     }
@@ -124,7 +138,7 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
     }
 
     @Override
-    public void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap) {
+    public void registerRetainedMsgStats(Map<?, ?> retainedMessagesMap, RetainedMsgPayloadArena offHeapArena) {
 
     }
 
@@ -175,11 +189,91 @@ public class StatsManagerStub implements StatsManager, ActorStatsManager, Produc
         return new AtomicLong(0);
     }
 
+    @Override
+    public AtomicLong createSubscriptionTrieMemoryCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createSubscriptionTrieReclaimedNodesCounter() {
+        return new AtomicLong(0);
+    }
+
     @Override
     public AtomicLong createRetainMsgTrieNodesCounter() {
         return new AtomicLong(0);
     }
 
+    @Override
+    public AtomicLong createRetainMsgTrieReclaimedNodesCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createRetainedMsgTruncatedDeliveriesCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDroppedMsgsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDeferredMsgsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createSlowConsumerDisconnectsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createExpiredMsgsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createReceiveMaxDelayedMsgsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createReceiveMaxDisconnectsCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createLastWillScheduledCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createLastWillCancelledCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createLastWillLateCounter() {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createIngressThrottledMsgsCounter(String limiterName) {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicLong createShedQos0MsgsCounter(String reason) {
+        return new AtomicLong(0);
+    }
+
+    @Override
+    public AtomicInteger createConsumersCountGauge(String consumerGroupName) {
+        return new AtomicInteger(0);
+    }
+
     @Override
     public Timer createSendTimer(String clientId) {
         return (amount, unit) -> {
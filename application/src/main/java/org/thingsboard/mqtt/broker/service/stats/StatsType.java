@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.service.stats;
 
 public enum StatsType {
     MSG_DISPATCHER_PRODUCER("incomingPublishMsg.published"),
+    MSG_DISPATCHER_PRIORITY_PRODUCER("incomingPriorityPublishMsg.published"),
     CLIENT_SESSION_EVENT_CONSUMER("clientSessionEvent"),
     PUBLISH_MSG_CONSUMER("incomingPublishMsg.consumed"),
     SUBSCRIPTION_TOPIC_TRIE_SIZE("subscriptionTopicTrieSize"),
@@ -26,8 +27,26 @@ public enum StatsType {
     ALL_CLIENT_SESSIONS("allClientSessions"),
     CLIENT_SUBSCRIPTIONS("clientSubscriptions"),
     RETAINED_MESSAGES("retainedMessages"),
+    RETAINED_MESSAGES_OFF_HEAP_USED("retainedMessagesOffHeapUsedBytes"),
+    RETAINED_MESSAGES_OFF_HEAP_RESERVED("retainedMessagesOffHeapReservedBytes"),
     SUBSCRIPTION_TRIE_NODES("subscriptionTrieNodes"),
+    SUBSCRIPTION_TRIE_MEMORY("subscriptionTrieMemoryBytes"),
+    SUBSCRIPTION_TRIE_RECLAIMED_NODES("subscriptionTrieReclaimedNodes"),
     RETAIN_MSG_TRIE_NODES("retainMsgTrieNodes"),
+    RETAIN_MSG_TRIE_RECLAIMED_NODES("retainMsgTrieReclaimedNodes"),
+    RETAINED_MSG_TRUNCATED_DELIVERIES("retainedMsgTruncatedDeliveries"),
+    SLOW_CONSUMER_DROPPED_MSGS("slowConsumerDroppedMsgs"),
+    SLOW_CONSUMER_DEFERRED_MSGS("slowConsumerDeferredMsgs"),
+    SLOW_CONSUMER_DISCONNECTS("slowConsumerDisconnects"),
+    EXPIRED_MSGS("expiredMsgs"),
+    RECEIVE_MAX_DELAYED_MSGS("receiveMaxDelayedMsgs"),
+    RECEIVE_MAX_DISCONNECTS("receiveMaxDisconnects"),
+    LAST_WILL_SCHEDULED("lastWillScheduled"),
+    LAST_WILL_CANCELLED("lastWillCancelled"),
+    LAST_WILL_LATE("lastWillLate"),
+    INGRESS_THROTTLED_MSGS("ingressThrottledMsgs"),
+    SHED_QOS0_MSGS("shedQos0Msgs"),
+    CONSUMERS_COUNT("consumersCount"),
     ACTIVE_APP_PROCESSORS("activeAppProcessors"),
     ACTIVE_SHARED_APP_PROCESSORS("activeSharedAppProcessors"),
     APP_PROCESSOR("appProcessor"),
@@ -44,4 +44,14 @@ public class StubDeviceProcessorStats implements DeviceProcessorStats {
     public void reset() {
 
     }
+
+    @Override
+    public boolean isActive() {
+        return false;
+    }
+
+    @Override
+    public void disable() {
+
+    }
 }
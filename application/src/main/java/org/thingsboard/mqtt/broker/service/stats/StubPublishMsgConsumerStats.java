@@ -47,6 +47,14 @@ public class StubPublishMsgConsumerStats implements PublishMsgConsumerStats {
     public void logPackProcessingTime(int packSize, long amount, TimeUnit unit) {
     }
 
+    @Override
+    public void logMsgLatency(long amount, TimeUnit unit) {
+    }
+
+    @Override
+    public void updateLag(long lag) {
+    }
+
     @Override
     public List<StatsCounter> getStatsCounters() {
         return Collections.emptyList();
@@ -67,7 +75,26 @@ public class StubPublishMsgConsumerStats implements PublishMsgConsumerStats {
         return 0;
     }
 
+    @Override
+    public double getAvgMsgLatency() {
+        return 0;
+    }
+
+    @Override
+    public long getLag() {
+        return 0;
+    }
+
     @Override
     public void reset() {
     }
+
+    @Override
+    public boolean isActive() {
+        return false;
+    }
+
+    @Override
+    public void disable() {
+    }
 }
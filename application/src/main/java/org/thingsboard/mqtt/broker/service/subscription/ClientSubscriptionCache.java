@@ -15,10 +15,13 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription;
 
+import java.util.Map;
 import java.util.Set;
 
 public interface ClientSubscriptionCache {
 
     Set<TopicSubscription> getClientSubscriptions(String clientId);
 
+    Map<String, Set<TopicSubscription>> getAllClientSubscriptions();
+
 }
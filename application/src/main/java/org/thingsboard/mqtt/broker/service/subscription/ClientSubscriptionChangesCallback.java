@@ -15,11 +15,9 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription;
 
-import java.util.Set;
-
 @FunctionalInterface
 public interface ClientSubscriptionChangesCallback {
 
-    boolean accept(String clientId, String serviceId, Set<TopicSubscription> topicSubscriptions);
+    boolean accept(String clientId, String serviceId, ClientSubscriptionsChange change);
 
 }
@@ -24,6 +24,14 @@ public interface ClientSubscriptionConsumer {
 
     Map<String, Set<TopicSubscription>> initLoad() throws QueuePersistenceException;
 
+    /**
+     * @return clients whose latest change read by {@link #initLoad()} is a delta, i.e. their snapshot was not persisted
+     * after the last change (e.g. the serving node crashed)
+     */
+    Set<String> getClientsWithTrailingDeltas();
+
     void listen(ClientSubscriptionChangesCallback callback);
 
+    Map<Integer, Long> getConsumedOffsets();
+
 }
@@ -21,163 +21,146 @@ import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
-import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
-import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
 import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.ClientSubscriptionsQueueFactory;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshotStorage;
+import org.thingsboard.mqtt.broker.service.state.PartitionedStateConsumer;
 import org.thingsboard.mqtt.broker.service.stats.ClientSubscriptionConsumerStats;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
 
 @Slf4j
 @Component
 public class ClientSubscriptionConsumerImpl implements ClientSubscriptionConsumer {
-    private static final String DUMMY_TOPIC = "dummy_topic";
 
     private volatile boolean initializing = true;
-    private volatile boolean stopped = false;
-
-    private final ExecutorService consumerExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("client-subscriptions-listener"));
 
     @Value("${queue.client-subscriptions.poll-interval}")
     private long pollDuration;
 
-    private final SubscriptionPersistenceService persistenceService;
-    private final TbQueueControlledOffsetConsumer<TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto>> clientSubscriptionsConsumer;
+    private final ClientSubscriptionsQueueFactory clientSubscriptionsQueueFactory;
+    private final ServiceInfoProvider serviceInfoProvider;
     private final TbQueueAdmin queueAdmin;
     private final ClientSubscriptionConsumerStats stats;
+    private final StateSnapshotStorage snapshotStorage;
+
+    // partitions are replayed in parallel
+    private final Set<String> clientsWithTrailingDeltas = ConcurrentHashMap.newKeySet();
+
+    private PartitionedStateConsumer<TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto>> clientSubscriptionsConsumer;
 
     public ClientSubscriptionConsumerImpl(ClientSubscriptionsQueueFactory clientSubscriptionsQueueFactory, ServiceInfoProvider serviceInfoProvider,
-                                          SubscriptionPersistenceService persistenceService, TbQueueAdmin queueAdmin, StatsManager statsManager) {
-        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
-        this.clientSubscriptionsConsumer = clientSubscriptionsQueueFactory.createConsumer(serviceInfoProvider.getServiceId(), uniqueConsumerGroupId);
-        this.persistenceService = persistenceService;
+                                          TbQueueAdmin queueAdmin, StatsManager statsManager, StateSnapshotStorage snapshotStorage) {
+        this.clientSubscriptionsQueueFactory = clientSubscriptionsQueueFactory;
+        this.serviceInfoProvider = serviceInfoProvider;
         this.queueAdmin = queueAdmin;
         this.stats = statsManager.getClientSubscriptionConsumerStats();
+        this.snapshotStorage = snapshotStorage;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.clientSubscriptionsConsumer = new PartitionedStateConsumer<>("client-subscriptions", pollDuration);
     }
 
     @Override
     public Map<String, Set<TopicSubscription>> initLoad() throws QueuePersistenceException {
-        String dummyClientId = persistDummyClientSubscriptions();
-
-        clientSubscriptionsConsumer.subscribe();
-
-        List<TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto>> messages;
-        boolean encounteredDummyClient = false;
-        Map<String, Set<TopicSubscription>> allSubscriptions = new HashMap<>();
-        do {
-            try {
-                // TODO: think how to migrate data inside of the Kafka (in case of any changes to the protocol)
-                messages = clientSubscriptionsConsumer.poll(pollDuration);
-                for (TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto> msg : messages) {
-                    String clientId = msg.getKey();
-                    // TODO: replace with events (instead of storing the whole state) - but need to think about the logic when and how to make snapshots (so that we don't need to store all event log)
-                    //          also think about order of messages (sub A -> unsub A is different than unsub A -> sub A)
-                    Set<TopicSubscription> clientSubscriptions = ProtoConverter.convertToClientSubscriptions(msg.getValue());
-                    if (dummyClientId.equals(clientId)) {
-                        encounteredDummyClient = true;
-                    } else if (clientSubscriptions.isEmpty()) {
+        String uniqueConsumerGroupId = serviceInfoProvider.getServiceId() + "-" + System.currentTimeMillis();
+        // TODO: think how to migrate data inside of the Kafka (in case of any changes to the protocol)
+        Map<String, Set<TopicSubscription>> allSubscriptions = clientSubscriptionsConsumer.initLoad(queueAdmin,
+                partition -> clientSubscriptionsQueueFactory.createConsumer(serviceInfoProvider.getServiceId() + "-" + partition, uniqueConsumerGroupId),
+                snapshotStorage.loadClientSubscriptions(),
+                (currentSubscriptions, msg) -> {
+                    ClientSubscriptionsChange change = ProtoConverter.convertToClientSubscriptionsChange(msg.getValue());
+                    if (change.isDelta()) {
+                        clientsWithTrailingDeltas.add(msg.getKey());
+                        if (currentSubscriptions == null) {
+                            log.warn("[{}] Subscriptions delta with version {} has no snapshot before it, subscriptions may be incomplete.",
+                                    msg.getKey(), change.getVersion());
+                        }
+                    } else {
+                        clientsWithTrailingDeltas.remove(msg.getKey());
+                    }
+                    Set<TopicSubscription> clientSubscriptions = change.isDelta() ?
+                            applyDelta(currentSubscriptions, change) : change.getTopicSubscriptions();
+                    if (clientSubscriptions.isEmpty()) {
                         // this means Kafka log compaction service haven't cleared empty message yet
                         if (log.isDebugEnabled()) {
-                            log.debug("[{}] Encountered empty ClientSubscriptions.", clientId);
+                            log.debug("[{}] Encountered empty ClientSubscriptions.", msg.getKey());
                         }
-                        allSubscriptions.remove(clientId);
-                    } else {
-                        allSubscriptions.put(clientId, clientSubscriptions);
+                        return null;
                     }
-                }
-                clientSubscriptionsConsumer.commitSync();
-            } catch (Exception e) {
-                log.error("Failed to load client sessions.", e);
-                throw e;
-            }
-        } while (!stopped && !encounteredDummyClient);
-
-        clearDummyClientSubscriptions(dummyClientId);
+                    return clientSubscriptions;
+                });
 
         initializing = false;
 
         return allSubscriptions;
     }
 
+    /**
+     * The node serving the client re-writes the full snapshot of its subscriptions after a bounded number of deltas,
+     * periodically (more often than 'min.compaction.lag.ms' of the topic), on disconnect and on shutdown, and retries
+     * failed snapshots. A delta can only be left without a snapshot if the serving node crashed and did not come back
+     * before the compaction, clients with trailing deltas are re-snapshotted by their node after restart.
+     */
+    private Set<TopicSubscription> applyDelta(Set<TopicSubscription> currentSubscriptions, ClientSubscriptionsChange delta) {
+        Set<TopicSubscription> clientSubscriptions = currentSubscriptions != null ? currentSubscriptions : new HashSet<>();
+        clientSubscriptions.removeIf(topicSubscription -> delta.getRemovedTopicFilters().contains(topicSubscription.getTopicFilter()));
+        clientSubscriptions.removeAll(delta.getTopicSubscriptions());
+        clientSubscriptions.addAll(delta.getTopicSubscriptions());
+        return clientSubscriptions;
+    }
+
+    @Override
+    public Set<String> getClientsWithTrailingDeltas() {
+        return clientsWithTrailingDeltas;
+    }
+
     @Override
     public void listen(ClientSubscriptionChangesCallback callback) {
         if (initializing) {
             throw new RuntimeException("Cannot start listening before initialization is finished.");
         }
-        // TODO: add concurrent consumers for multiple partitions (in the same consumer-group as InitLoader)
-        consumerExecutor.execute(() -> {
-            while (!stopped) {
-                try {
-                    List<TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto>> messages = clientSubscriptionsConsumer.poll(pollDuration);
-                    if (messages.isEmpty()) {
-                        continue;
-                    }
-                    stats.logTotal(messages.size());
-                    int acceptedSubscriptions = 0;
-                    int ignoredSubscriptions = 0;
-                    for (TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto> msg : messages) {
-                        String clientId = msg.getKey();
-                        String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
-                        Set<TopicSubscription> clientSubscriptions = ProtoConverter.convertToClientSubscriptions(msg.getValue());
-                        boolean accepted = callback.accept(clientId, serviceId, clientSubscriptions);
-                        if (accepted) {
-                            acceptedSubscriptions++;
-                        } else {
-                            ignoredSubscriptions++;
-                        }
-                    }
-                    stats.log(acceptedSubscriptions, ignoredSubscriptions);
-                    clientSubscriptionsConsumer.commitSync();
-                } catch (Exception e) {
-                    if (!stopped) {
-                        log.error("Failed to process messages from queue.", e);
-                        try {
-                            Thread.sleep(pollDuration);
-                        } catch (InterruptedException e2) {
-                            if (log.isTraceEnabled()) {
-                                log.trace("Failed to wait until the server has capacity to handle new requests", e2);
-                            }
-                        }
-                    }
+        clientSubscriptionsConsumer.listen(messages -> {
+            stats.logTotal(messages.size());
+            int acceptedSubscriptions = 0;
+            int ignoredSubscriptions = 0;
+            for (TbProtoQueueMsg<QueueProtos.ClientSubscriptionsProto> msg : messages) {
+                String clientId = msg.getKey();
+                String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
+                ClientSubscriptionsChange change = ProtoConverter.convertToClientSubscriptionsChange(msg.getValue());
+                boolean accepted = callback.accept(clientId, serviceId, change);
+                if (accepted) {
+                    acceptedSubscriptions++;
+                } else {
+                    ignoredSubscriptions++;
                 }
             }
+            stats.log(acceptedSubscriptions, ignoredSubscriptions);
         });
     }
 
-    private String persistDummyClientSubscriptions() throws QueuePersistenceException {
-        String dummyClientId = UUID.randomUUID().toString();
-        persistenceService.persistClientSubscriptionsSync(dummyClientId, Collections.singleton(new TopicSubscription(DUMMY_TOPIC, 0)));
-        return dummyClientId;
-    }
-
-    private void clearDummyClientSubscriptions(String clientId) throws QueuePersistenceException {
-        persistenceService.persistClientSubscriptionsSync(clientId, Collections.emptySet());
+    @Override
+    public Map<Integer, Long> getConsumedOffsets() {
+        return clientSubscriptionsConsumer.getConsumedOffsets();
     }
 
     @PreDestroy
     public void destroy() {
-        stopped = true;
         if (clientSubscriptionsConsumer != null) {
-            clientSubscriptionsConsumer.unsubscribeAndClose();
-            if (this.clientSubscriptionsConsumer.getConsumerGroupId() != null) {
-                queueAdmin.deleteConsumerGroups(Collections.singleton(this.clientSubscriptionsConsumer.getConsumerGroupId()));
-            }
+            clientSubscriptionsConsumer.destroy(queueAdmin);
         }
-        consumerExecutor.shutdownNow();
     }
 }
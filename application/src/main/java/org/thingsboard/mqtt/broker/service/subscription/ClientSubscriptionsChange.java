@@ -0,0 +1,48 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Change of the client subscriptions persisted to the client subscriptions topic. Either a full snapshot
+ * of the subscriptions or a delta with added (or updated) subscriptions and removed topic filters.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ClientSubscriptionsChange {
+
+    private final long version;
+    private final boolean delta;
+    private final Set<TopicSubscription> topicSubscriptions;
+    private final Set<String> removedTopicFilters;
+
+    public static ClientSubscriptionsChange snapshot(long version, Set<TopicSubscription> topicSubscriptions) {
+        return new ClientSubscriptionsChange(version, false, topicSubscriptions, Collections.emptySet());
+    }
+
+    public static ClientSubscriptionsChange delta(long version, Set<TopicSubscription> addedTopicSubscriptions,
+                                                  Set<String> removedTopicFilters) {
+        return new ClientSubscriptionsChange(version, true, addedTopicSubscriptions, removedTopicFilters);
+    }
+}
@@ -0,0 +1,621 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import com.google.common.collect.Sets;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.arraySize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.mapSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.objectSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.setSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.stringSize;
+
+/**
+ * Memory-oriented subscription trie.
+ * <p>
+ * Runs of literal segments without branching are stored as a single edge, segment strings are shared through
+ * a ref-counted dictionary, and children/values are kept in small immutable arrays until they grow
+ * past a threshold, after which concurrent collections are used. Wildcard segments always get their own node.
+ * <p>
+ * Lookups are lock-free: every structural change builds new nodes/arrays and publishes them through volatile fields,
+ * so a reader always sees a consistent (possibly slightly stale) view. Writers are serialized by a single lock.
+ * Empty nodes are pruned and re-compressed on delete, so there is nothing left for {@link #clearEmptyNodes()} to do.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "mqtt.subscription-trie", value = "type", havingValue = "compact")
+public class CompactSubscriptionTrie<T> implements SubscriptionTrie<T> {
+
+    private static final String[] EMPTY_EDGE = new String[0];
+    private static final int SMALL_CHILDREN_MAX = 8;
+    private static final int SMALL_VALUES_MAX = 8;
+    private static final long NODE_SIZE = objectSize(3);
+    private static final long SEGMENT_SIZE = objectSize(2) + TrieMemoryEstimator.MAP_ENTRY;
+
+    private final AtomicInteger size;
+    private final AtomicLong nodesCount;
+    private final AtomicLong memoryUsage;
+    private final AtomicLong reclaimedNodes;
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final Lock writeLock = new ReentrantLock();
+    private final Node root = new Node(EMPTY_EDGE);
+
+    public CompactSubscriptionTrie(StatsManager statsManager) {
+        this.size = statsManager.createSubscriptionSizeCounter();
+        this.nodesCount = statsManager.createSubscriptionTrieNodesCounter();
+        this.memoryUsage = statsManager.createSubscriptionTrieMemoryCounter();
+        this.reclaimedNodes = statsManager.createSubscriptionTrieReclaimedNodesCounter();
+        this.memoryUsage.addAndGet(NODE_SIZE);
+    }
+
+    @Override
+    public List<ValueWithTopicFilter<T>> get(ParsedTopic topic) {
+        if (topic == null) {
+            throw new IllegalArgumentException("Topic cannot be null");
+        }
+        List<ValueWithTopicFilter<T>> result = new ArrayList<>();
+        Deque<TopicPosition> topicPositions = new ArrayDeque<>();
+        topicPositions.push(new TopicPosition(root, 0, null));
+        int segmentsCount = topic.getSegmentsCount();
+
+        while (!topicPositions.isEmpty()) {
+            TopicPosition topicPosition = topicPositions.pop();
+            if (topicPosition.level >= segmentsCount) {
+                addValues(result, topicPosition);
+                continue;
+            }
+            Object children = topicPosition.node.children;
+            if (children == null) {
+                continue;
+            }
+
+            if (notStartingWith$(topic, topicPosition)) {
+                Node multiLevelWildcardSubs = getChild(children, BrokerConstants.MULTI_LEVEL_WILDCARD);
+                if (multiLevelWildcardSubs != null) {
+                    addValues(result, new TopicPosition(multiLevelWildcardSubs, segmentsCount, topicPosition));
+                }
+                Node singleLevelWildcardSubs = getChild(children, BrokerConstants.SINGLE_LEVEL_WILDCARD);
+                if (singleLevelWildcardSubs != null) {
+                    topicPositions.push(new TopicPosition(singleLevelWildcardSubs, topicPosition.level + 1, topicPosition));
+                }
+            }
+
+            Node segmentNode = findChild(children, topic, topicPosition.level);
+            if (segmentNode != null) {
+                int nextLevel = matchEdgeTail(segmentNode.edge, topic, topicPosition.level + 1);
+                if (nextLevel != -1) {
+                    topicPositions.push(new TopicPosition(segmentNode, nextLevel, topicPosition));
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean notStartingWith$(ParsedTopic topic, TopicPosition topicPosition) {
+        return topicPosition.level != 0 || !topic.isSystemTopic();
+    }
+
+    /**
+     * Matches the rest of the compressed edge (the first segment was already matched by the child lookup).
+     *
+     * @return next topic level or -1 if the topic doesn't match the edge
+     */
+    private int matchEdgeTail(String[] edge, ParsedTopic topic, int level) {
+        for (int i = 1; i < edge.length; i++) {
+            if (level >= topic.getSegmentsCount() || !topic.segmentEquals(level, edge[i])) {
+                return -1;
+            }
+            level++;
+        }
+        return level;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addValues(List<ValueWithTopicFilter<T>> result, TopicPosition topicPosition) {
+        Object values = topicPosition.node.values;
+        if (values == null) {
+            return;
+        }
+        String topicFilter = buildTopicFilter(topicPosition);
+        if (values instanceof Object[]) {
+            for (Object value : (Object[]) values) {
+                result.add(new ValueWithTopicFilter<>((T) value, topicFilter));
+            }
+        } else {
+            for (T value : (Set<T>) values) {
+                result.add(new ValueWithTopicFilter<>(value, topicFilter));
+            }
+        }
+    }
+
+    private String buildTopicFilter(TopicPosition topicPosition) {
+        Deque<String[]> edges = new ArrayDeque<>();
+        for (TopicPosition position = topicPosition; position != null; position = position.parent) {
+            if (position.node.edge.length > 0) {
+                edges.push(position.node.edge);
+            }
+        }
+        StringBuilder topicFilter = new StringBuilder();
+        boolean first = true;
+        for (String[] edge : edges) {
+            for (String segment : edge) {
+                if (!first) {
+                    topicFilter.append(BrokerConstants.TOPIC_DELIMITER);
+                }
+                topicFilter.append(segment);
+                first = false;
+            }
+        }
+        return topicFilter.toString();
+    }
+
+    @Override
+    public void put(String topicFilter, T val) {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing put [{}] [{}]", topicFilter, val);
+        }
+        if (topicFilter == null || val == null) {
+            throw new IllegalArgumentException("Topic filter or value cannot be null");
+        }
+        String[] filterSegments = splitTopicFilter(topicFilter);
+        writeLock.lock();
+        try {
+            put(filterSegments, val);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void put(String[] filterSegments, T val) {
+        Node node = root;
+        int index = 0;
+        while (index < filterSegments.length) {
+            Node child = getChild(node.children, filterSegments[index]);
+            if (child == null) {
+                putChild(node, createBranch(filterSegments, index, val));
+                return;
+            }
+            int matched = commonPrefixLength(child.edge, filterSegments, index);
+            if (matched < child.edge.length) {
+                child = splitNode(node, child, matched);
+            }
+            node = child;
+            index += matched;
+        }
+        addOrReplace(node, val);
+    }
+
+    private Node createBranch(String[] filterSegments, int from, T val) {
+        Node first = null;
+        Node last = null;
+        int start = from;
+        while (start < filterSegments.length) {
+            int end = start + 1;
+            if (!isWildcard(filterSegments[start])) {
+                while (end < filterSegments.length && !isWildcard(filterSegments[end])) {
+                    end++;
+                }
+            }
+            Node node = newNode(Arrays.copyOfRange(filterSegments, start, end));
+            if (last == null) {
+                first = node;
+            } else {
+                putChild(last, node);
+            }
+            last = node;
+            start = end;
+        }
+        addOrReplace(last, val);
+        return first;
+    }
+
+    private Node splitNode(Node parent, Node child, int prefixLength) {
+        Node head = newNode(Arrays.copyOfRange(child.edge, 0, prefixLength));
+        Node tail = newNode(Arrays.copyOfRange(child.edge, prefixLength, child.edge.length));
+        tail.children = child.children;
+        tail.values = child.values;
+        putChild(head, tail);
+        putChild(parent, head);
+        discardNode(child);
+        return head;
+    }
+
+    private int commonPrefixLength(String[] edge, String[] filterSegments, int from) {
+        int matched = 0;
+        while (matched < edge.length && from + matched < filterSegments.length
+                && edge[matched].equals(filterSegments[from + matched])) {
+            matched++;
+        }
+        return matched;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addOrReplace(Node node, T val) {
+        Object values = node.values;
+        if (values == null) {
+            node.values = new Object[]{val};
+            memoryUsage.addAndGet(arraySize(1));
+            size.getAndIncrement();
+        } else if (values instanceof Object[]) {
+            Object[] array = (Object[]) values;
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].equals(val)) {
+                    Object[] copy = array.clone();
+                    copy[i] = val;
+                    node.values = copy;
+                    return;
+                }
+            }
+            if (array.length < SMALL_VALUES_MAX) {
+                Object[] copy = Arrays.copyOf(array, array.length + 1);
+                copy[array.length] = val;
+                node.values = copy;
+                memoryUsage.addAndGet(arraySize(copy.length) - arraySize(array.length));
+            } else {
+                Set<T> set = Sets.newConcurrentHashSet();
+                for (Object value : array) {
+                    set.add((T) value);
+                }
+                set.add(val);
+                node.values = set;
+                memoryUsage.addAndGet(setSize(set.size()) - arraySize(array.length));
+            }
+            size.getAndIncrement();
+        } else {
+            Set<T> set = (Set<T>) values;
+            if (!set.add(val)) {
+                set.remove(val);
+                set.add(val);
+            } else {
+                memoryUsage.addAndGet(TrieMemoryEstimator.MAP_ENTRY);
+                size.getAndIncrement();
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(String topicFilter, Predicate<T> deletionFilter) {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing delete [{}]", topicFilter);
+        }
+        if (topicFilter == null || deletionFilter == null) {
+            throw new IllegalArgumentException("Topic filter or deletionFilter cannot be null");
+        }
+        String[] filterSegments = splitTopicFilter(topicFilter);
+        writeLock.lock();
+        try {
+            return delete(filterSegments, deletionFilter);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean delete(String[] filterSegments, Predicate<T> deletionFilter) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int index = 0;
+        while (index < filterSegments.length) {
+            Node child = getChild(node.children, filterSegments[index]);
+            if (child == null || commonPrefixLength(child.edge, filterSegments, index) != child.edge.length) {
+                return false;
+            }
+            index += child.edge.length;
+            node = child;
+            path.add(node);
+        }
+        int deleted = removeValues(node, deletionFilter);
+        if (deleted == 0) {
+            return false;
+        }
+        if (deleted > 1) {
+            log.error("There are more than one value to delete!");
+        }
+        size.addAndGet(-deleted);
+        prune(path);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int removeValues(Node node, Predicate<T> deletionFilter) {
+        Object values = node.values;
+        if (values == null) {
+            return 0;
+        }
+        Collection<T> current = values instanceof Object[] ? (List<T>) (List<?>) Arrays.asList((Object[]) values) : (Set<T>) values;
+        List<Object> remaining = new ArrayList<>(current.size());
+        for (T value : current) {
+            if (!deletionFilter.test(value)) {
+                remaining.add(value);
+            }
+        }
+        int deleted = current.size() - remaining.size();
+        if (deleted == 0) {
+            return 0;
+        }
+        if (values instanceof Object[]) {
+            node.values = remaining.isEmpty() ? null : remaining.toArray();
+            memoryUsage.addAndGet(valuesSize(node.values) - arraySize(current.size()));
+        } else if (remaining.size() <= SMALL_VALUES_MAX / 2) {
+            node.values = remaining.isEmpty() ? null : remaining.toArray();
+            memoryUsage.addAndGet(valuesSize(node.values) - setSize(current.size()));
+        } else {
+            ((Set<T>) values).removeIf(deletionFilter);
+            memoryUsage.addAndGet(-deleted * TrieMemoryEstimator.MAP_ENTRY);
+        }
+        return deleted;
+    }
+
+    private void prune(List<Node> path) {
+        int i = path.size() - 1;
+        Node node = path.get(i);
+        while (i > 0 && node.values == null && node.children == null) {
+            Node parent = path.get(i - 1);
+            removeChild(parent, node.edge[0]);
+            discardNode(node);
+            reclaimedNodes.incrementAndGet();
+            node = parent;
+            i--;
+        }
+        if (i > 0) {
+            compress(path.get(i - 1), node);
+        }
+    }
+
+    private void compress(Node parent, Node node) {
+        if (node.values != null || !(node.children instanceof Object[]) || ((Object[]) node.children).length != 2) {
+            return;
+        }
+        Node child = (Node) ((Object[]) node.children)[1];
+        if (isWildcard(node.edge[0]) || isWildcard(child.edge[0])) {
+            return;
+        }
+        String[] edge = Arrays.copyOf(node.edge, node.edge.length + child.edge.length);
+        System.arraycopy(child.edge, 0, edge, node.edge.length, child.edge.length);
+        Node merged = newNode(edge);
+        merged.children = child.children;
+        merged.values = child.values;
+        putChild(parent, merged);
+        memoryUsage.addAndGet(-arraySize(2));
+        discardNode(node);
+        discardNode(child);
+    }
+
+    @Override
+    public void clearEmptyNodes() {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing clearEmptyNodes. Empty nodes are pruned on delete, nothing to clear.");
+        }
+    }
+
+    private Node newNode(String[] edge) {
+        for (int i = 0; i < edge.length; i++) {
+            edge[i] = acquireSegment(edge[i]);
+        }
+        nodesCount.incrementAndGet();
+        memoryUsage.addAndGet(NODE_SIZE + arraySize(edge.length));
+        return new Node(edge);
+    }
+
+    private void discardNode(Node node) {
+        for (String segment : node.edge) {
+            releaseSegment(segment);
+        }
+        nodesCount.decrementAndGet();
+        memoryUsage.addAndGet(-(NODE_SIZE + arraySize(node.edge.length)));
+    }
+
+    private String acquireSegment(String value) {
+        Segment segment = segments.get(value);
+        if (segment == null) {
+            segment = new Segment(value, 0);
+            segments.put(value, segment);
+            memoryUsage.addAndGet(SEGMENT_SIZE + stringSize(value));
+        }
+        segment.refs++;
+        return segment.value;
+    }
+
+    private void releaseSegment(String value) {
+        Segment segment = segments.get(value);
+        if (segment != null && --segment.refs == 0) {
+            segments.remove(value);
+            memoryUsage.addAndGet(-(SEGMENT_SIZE + stringSize(value)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putChild(Node node, Node child) {
+        String key = child.edge[0];
+        Object children = node.children;
+        if (children == null) {
+            node.children = new Object[]{key, child};
+            memoryUsage.addAndGet(arraySize(2));
+        } else if (children instanceof Object[]) {
+            Object[] array = (Object[]) children;
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key)) {
+                    Object[] copy = array.clone();
+                    copy[i + 1] = child;
+                    node.children = copy;
+                    return;
+                }
+            }
+            if (array.length / 2 < SMALL_CHILDREN_MAX) {
+                Object[] copy = Arrays.copyOf(array, array.length + 2);
+                copy[array.length] = key;
+                copy[array.length + 1] = child;
+                node.children = copy;
+                memoryUsage.addAndGet(arraySize(copy.length) - arraySize(array.length));
+            } else {
+                Map<String, Node> map = new ConcurrentHashMap<>();
+                for (int i = 0; i < array.length; i += 2) {
+                    map.put((String) array[i], (Node) array[i + 1]);
+                }
+                map.put(key, child);
+                node.children = map;
+                memoryUsage.addAndGet(mapSize(map.size()) - arraySize(array.length));
+            }
+        } else {
+            if (((Map<String, Node>) children).put(key, child) == null) {
+                memoryUsage.addAndGet(TrieMemoryEstimator.MAP_ENTRY);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeChild(Node node, String key) {
+        Object children = node.children;
+        if (children instanceof Object[]) {
+            Object[] array = (Object[]) children;
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key)) {
+                    Object[] copy = null;
+                    if (array.length > 2) {
+                        copy = new Object[array.length - 2];
+                        System.arraycopy(array, 0, copy, 0, i);
+                        System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+                    }
+                    node.children = copy;
+                    memoryUsage.addAndGet((copy == null ? 0 : arraySize(copy.length)) - arraySize(array.length));
+                    return;
+                }
+            }
+        } else if (children != null) {
+            Map<String, Node> map = (Map<String, Node>) children;
+            if (map.remove(key) == null) {
+                return;
+            }
+            memoryUsage.addAndGet(-TrieMemoryEstimator.MAP_ENTRY);
+            if (map.size() <= SMALL_CHILDREN_MAX / 2) {
+                Object[] array = map.isEmpty() ? null : new Object[map.size() * 2];
+                int i = 0;
+                for (Map.Entry<String, Node> entry : map.entrySet()) {
+                    array[i++] = entry.getKey();
+                    array[i++] = entry.getValue();
+                }
+                node.children = array;
+                memoryUsage.addAndGet((array == null ? 0 : arraySize(array.length)) - mapSize(map.size()));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node getChild(Object children, String key) {
+        if (children == null) {
+            return null;
+        }
+        if (children instanceof Object[]) {
+            Object[] array = (Object[]) children;
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i].equals(key)) {
+                    return (Node) array[i + 1];
+                }
+            }
+            return null;
+        }
+        return ((Map<String, Node>) children).get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node findChild(Object children, ParsedTopic topic, int level) {
+        if (children instanceof Object[]) {
+            Object[] array = (Object[]) children;
+            for (int i = 0; i < array.length; i += 2) {
+                if (topic.segmentEquals(level, (String) array[i])) {
+                    return (Node) array[i + 1];
+                }
+            }
+            return null;
+        }
+        return ((Map<String, Node>) children).get(topic.getSegment(level));
+    }
+
+    private long valuesSize(Object values) {
+        if (values == null) {
+            return 0;
+        }
+        return values instanceof Object[] ? arraySize(((Object[]) values).length) : setSize(((Set<?>) values).size());
+    }
+
+    private static int getSegmentEnd(String topic, int prevDelimiterIndex) {
+        int nextDelimiterIndex = topic.indexOf(BrokerConstants.TOPIC_DELIMITER, prevDelimiterIndex);
+        return nextDelimiterIndex == -1 ? topic.length() : nextDelimiterIndex;
+    }
+
+    private static String[] splitTopicFilter(String topicFilter) {
+        List<String> filterSegments = new ArrayList<>();
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < topicFilter.length()) {
+            int segmentEnd = getSegmentEnd(topicFilter, prevDelimiterIndex);
+            filterSegments.add(topicFilter.substring(prevDelimiterIndex, segmentEnd));
+            prevDelimiterIndex = segmentEnd + 1;
+        }
+        return filterSegments.toArray(EMPTY_EDGE);
+    }
+
+    private static boolean isWildcard(String segment) {
+        return BrokerConstants.SINGLE_LEVEL_WILDCARD.equals(segment) || BrokerConstants.MULTI_LEVEL_WILDCARD.equals(segment);
+    }
+
+    private static class Node {
+        private final String[] edge;
+        // null, Object[] {key0, node0, key1, node1, ...} or ConcurrentHashMap<String, Node>
+        private volatile Object children;
+        // null, Object[] or concurrent Set<T>
+        private volatile Object values;
+
+        Node(String[] edge) {
+            this.edge = edge;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Segment {
+        private final String value;
+        private int refs;
+    }
+
+    @AllArgsConstructor
+    private static class TopicPosition {
+        private final Node node;
+        private final int level;
+        private final TopicPosition parent;
+    }
+}
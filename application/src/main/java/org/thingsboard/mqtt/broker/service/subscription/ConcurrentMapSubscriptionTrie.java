@@ -20,9 +20,11 @@ import lombok.AllArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
 import java.util.ArrayList;
@@ -36,18 +38,30 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.MAP_ENTRY;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.mapSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.objectSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.setSize;
+import static org.thingsboard.mqtt.broker.service.subscription.TrieMemoryEstimator.stringSize;
+
 @Slf4j
 @Service
+@ConditionalOnProperty(prefix = "mqtt.subscription-trie", value = "type", havingValue = "concurrent-map", matchIfMissing = true)
 public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
 
+    private static final long NODE_SIZE = objectSize(3) + mapSize(0) + setSize(0);
+
     private final AtomicInteger size;
     private final AtomicLong nodesCount;
+    private final AtomicLong memoryUsage;
+    private final AtomicLong reclaimedNodes;
     private final Node<T> root = new Node<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -58,10 +72,13 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
     public ConcurrentMapSubscriptionTrie(StatsManager statsManager) {
         this.size = statsManager.createSubscriptionSizeCounter();
         this.nodesCount = statsManager.createSubscriptionTrieNodesCounter();
+        this.memoryUsage = statsManager.createSubscriptionTrieMemoryCounter();
+        this.reclaimedNodes = statsManager.createSubscriptionTrieReclaimedNodesCounter();
+        this.memoryUsage.addAndGet(NODE_SIZE);
     }
 
     @Override
-    public List<ValueWithTopicFilter<T>> get(String topic) {
+    public List<ValueWithTopicFilter<T>> get(ParsedTopic topic) {
         if (topic == null) {
             throw new IllegalArgumentException("Topic cannot be null");
         }
@@ -71,13 +88,14 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
 
         while (!topicPositions.isEmpty()) {
             TopicPosition<T> topicPosition = topicPositions.pop();
-            if (topicPosition.prevDelimiterIndex >= topic.length()) {
+            if (topicPosition.level >= topic.getSegmentsCount()) {
                 result.addAll(wrapValuesWithTopicFilter(topicPosition.prevTopicFilter, topicPosition.node.values));
                 continue;
             }
             ConcurrentMap<String, Node<T>> childNodes = topicPosition.node.children;
-            String segment = getSegment(topic, topicPosition.prevDelimiterIndex);
-            int nextDelimiterIndex = topicPosition.prevDelimiterIndex + segment.length() + 1;
+            // segment string is created once per topic level and shared by all branches reaching this level
+            String segment = topic.getSegment(topicPosition.level);
+            int nextLevel = topicPosition.level + 1;
 
             if (notStartingWith$(topic, topicPosition)) {
                 Node<T> multiLevelWildcardSubs = childNodes.get(BrokerConstants.MULTI_LEVEL_WILDCARD);
@@ -88,21 +106,21 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
                 Node<T> singleLevelWildcardSubs = childNodes.get(BrokerConstants.SINGLE_LEVEL_WILDCARD);
                 if (singleLevelWildcardSubs != null) {
                     String currentTopicFilter = appendSegment(topicPosition.prevTopicFilter, BrokerConstants.SINGLE_LEVEL_WILDCARD);
-                    topicPositions.add(new TopicPosition<>(currentTopicFilter, nextDelimiterIndex, singleLevelWildcardSubs));
+                    topicPositions.add(new TopicPosition<>(currentTopicFilter, nextLevel, singleLevelWildcardSubs));
                 }
             }
 
             Node<T> segmentNode = childNodes.get(segment);
             if (segmentNode != null) {
                 String currentTopicFilter = appendSegment(topicPosition.prevTopicFilter, segment);
-                topicPositions.add(new TopicPosition<>(currentTopicFilter, nextDelimiterIndex, segmentNode));
+                topicPositions.add(new TopicPosition<>(currentTopicFilter, nextLevel, segmentNode));
             }
         }
         return result;
     }
 
-    private boolean notStartingWith$(String topic, TopicPosition<T> topicPosition) {
-        return topicPosition.prevDelimiterIndex != 0 || topic.charAt(0) != '$';
+    private boolean notStartingWith$(ParsedTopic topic, TopicPosition<T> topicPosition) {
+        return topicPosition.level != 0 || !topic.isSystemTopic();
     }
 
     private List<ValueWithTopicFilter<T>> wrapValuesWithTopicFilter(String topicFilter, Collection<T> values) {
@@ -123,23 +141,49 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         }
         lock.readLock().lock();
         try {
-            put(root, topicFilter, val, 0);
+            while (!tryPut(topicFilter, val)) {
+                // one of the nodes on the path was pruned concurrently, retrying with the re-created path
+                Thread.onSpinWait();
+            }
         } finally {
             lock.readLock().unlock();
         }
     }
 
-    private void put(Node<T> x, String key, T val, int prevDelimiterIndex) {
-        if (prevDelimiterIndex >= key.length()) {
-            addOrReplace(x.values, val);
-        } else {
+    /**
+     * Walks the path hand-over-hand, pinning each node before modifying it, so that concurrent pruning
+     * can't unlink a node that is about to receive a child or a value.
+     *
+     * @return false if a node on the path was already pruned
+     */
+    private boolean tryPut(String key, T val) {
+        Node<T> x = root;
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < key.length()) {
             String segment = getSegment(key, prevDelimiterIndex);
             Node<T> nextNode = x.children.computeIfAbsent(segment, s -> {
                 nodesCount.incrementAndGet();
+                memoryUsage.addAndGet(childNodeSize(s));
                 return new Node<>();
             });
-            put(nextNode, key, val, prevDelimiterIndex + segment.length() + 1);
+            boolean pinned = nextNode.pin();
+            if (x != root) {
+                x.unpin();
+            }
+            if (!pinned) {
+                return false;
+            }
+            x = nextNode;
+            prevDelimiterIndex += segment.length() + 1;
         }
+        try {
+            addOrReplace(x.values, val);
+        } finally {
+            if (x != root) {
+                x.unpin();
+            }
+        }
+        return true;
     }
 
     private void addOrReplace(Set<T> values, T val) {
@@ -148,6 +192,7 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
             values.add(val);
         } else {
             size.getAndIncrement();
+            memoryUsage.addAndGet(MAP_ENTRY);
         }
     }
 
@@ -159,7 +204,9 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         if (topicFilter == null || deletionFilter == null) {
             throw new IllegalArgumentException("Topic filter or deletionFilter cannot be null");
         }
-        Node<T> x = getNode(root, topicFilter, 0);
+        List<Node<T>> path = new ArrayList<>();
+        List<String> segments = new ArrayList<>();
+        Node<T> x = getNode(topicFilter, path, segments);
         if (x != null) {
             Set<T> valuesToDelete = x.values.stream().filter(deletionFilter).collect(Collectors.toSet());
             if (valuesToDelete.isEmpty()) {
@@ -171,12 +218,42 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
             boolean deleted = x.values.removeAll(valuesToDelete);
             if (deleted) {
                 size.decrementAndGet();
+                memoryUsage.addAndGet(-MAP_ENTRY);
+                pruneEmptyNodes(path, segments);
             }
             return deleted;
         }
         return false;
     }
 
+    private void pruneEmptyNodes(List<Node<T>> path, List<String> segments) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            if (!tryUnlink(path.get(i - 1), segments.get(i - 1), path.get(i))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lock-free unlink of an empty node. The node is tombstoned first, which only succeeds if no writer has it pinned,
+     * and emptiness is re-checked afterwards since a writer could have filled the node and unpinned it in between.
+     */
+    private boolean tryUnlink(Node<T> parent, String segment, Node<T> node) {
+        if (!node.isEmpty() || !node.tryMarkRemoved()) {
+            return false;
+        }
+        if (!node.isEmpty()) {
+            node.unmarkRemoved();
+            return false;
+        }
+        if (parent.children.remove(segment, node)) {
+            nodesCount.decrementAndGet();
+            reclaimedNodes.incrementAndGet();
+            memoryUsage.addAndGet(-childNodeSize(segment));
+        }
+        return true;
+    }
+
     @Override
     public void clearEmptyNodes() throws SubscriptionTrieClearException {
         if (log.isTraceEnabled()) {
@@ -219,9 +296,11 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
             Node<T> value = entry.getValue();
             boolean isChildEmpty = clearEmptyChildren(value);
-            if (isChildEmpty) {
-                node.children.remove(entry.getKey());
-                nodesCount.decrementAndGet();
+            if (isChildEmpty && value.tryMarkRemoved()) {
+                if (node.children.remove(entry.getKey(), value)) {
+                    nodesCount.decrementAndGet();
+                    memoryUsage.addAndGet(-childNodeSize(entry.getKey()));
+                }
             } else {
                 isNodeEmpty = false;
             }
@@ -230,13 +309,25 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
         return isNodeEmpty;
     }
 
-    private Node<T> getNode(Node<T> x, String key, int prevDelimiterIndex) {
-        if (x == null) return null;
-        if (prevDelimiterIndex >= key.length()) {
-            return x;
+    private long childNodeSize(String segment) {
+        return NODE_SIZE + MAP_ENTRY + stringSize(segment);
+    }
+
+    private Node<T> getNode(String key, List<Node<T>> path, List<String> segments) {
+        Node<T> x = root;
+        path.add(x);
+        int prevDelimiterIndex = 0;
+        while (prevDelimiterIndex < key.length()) {
+            String segment = getSegment(key, prevDelimiterIndex);
+            x = x.children.get(segment);
+            if (x == null) {
+                return null;
+            }
+            path.add(x);
+            segments.add(segment);
+            prevDelimiterIndex += segment.length() + 1;
         }
-        String segment = getSegment(key, prevDelimiterIndex);
-        return getNode(x.children.get(segment), key, prevDelimiterIndex + segment.length() + 1);
+        return x;
     }
 
     private String getSegment(String key, int prevDelimiterIndex) {
@@ -252,12 +343,46 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
     }
 
     private static class Node<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> WRITERS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "writers");
+        private static final int REMOVED = -1;
+
         private final ConcurrentMap<String, Node<T>> children = new ConcurrentHashMap<>();
         private final Set<T> values = Sets.newConcurrentHashSet();
+        // number of writers currently modifying the node or REMOVED once the node is (being) unlinked from the trie
+        private volatile int writers;
 
         public Node() {
         }
 
+        boolean pin() {
+            while (true) {
+                int current = writers;
+                if (current == REMOVED) {
+                    return false;
+                }
+                if (WRITERS.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void unpin() {
+            WRITERS.decrementAndGet(this);
+        }
+
+        boolean tryMarkRemoved() {
+            return WRITERS.compareAndSet(this, 0, REMOVED);
+        }
+
+        void unmarkRemoved() {
+            writers = 0;
+        }
+
+        boolean isEmpty() {
+            return values.isEmpty() && children.isEmpty();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -276,7 +401,7 @@ public class ConcurrentMapSubscriptionTrie<T> implements SubscriptionTrie<T> {
     @AllArgsConstructor
     private static class TopicPosition<T> {
         private final String prevTopicFilter;
-        private final int prevDelimiterIndex;
+        private final int level;
         private final Node<T> node;
     }
 
@@ -32,6 +32,11 @@ public class Subscription {
     private final ClientSessionInfo clientSessionInfo;
     private final String shareName;
     private final SubscriptionOptions options;
+    private final int shareWeight;
+
+    public Subscription(String topicFilter, int qos, ClientSessionInfo clientSessionInfo, String shareName, SubscriptionOptions options) {
+        this(topicFilter, qos, clientSessionInfo, shareName, options, 0);
+    }
 
     public Subscription(String topicFilter, int qos, ClientSessionInfo clientSessionInfo) {
         this(topicFilter, qos, clientSessionInfo, null, SubscriptionOptions.newInstance());
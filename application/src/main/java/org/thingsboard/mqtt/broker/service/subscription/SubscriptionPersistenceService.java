@@ -23,5 +23,7 @@ import java.util.Set;
 public interface SubscriptionPersistenceService {
     void persistClientSubscriptionsAsync(String clientId, Set<TopicSubscription> clientSubscriptions, BasicCallback callback);
 
+    void persistClientSubscriptionsChangeAsync(String clientId, ClientSubscriptionsChange change, BasicCallback callback);
+
     void persistClientSubscriptionsSync(String clientId, Set<TopicSubscription> clientSubscriptions) throws QueuePersistenceException;
 }
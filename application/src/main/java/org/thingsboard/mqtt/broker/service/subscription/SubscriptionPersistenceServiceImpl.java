@@ -58,6 +58,18 @@ public class SubscriptionPersistenceServiceImpl implements SubscriptionPersisten
             log.trace("[{}] Persisting client subscriptions asynchronously - {}", clientId, clientSubscriptions);
         }
         QueueProtos.ClientSubscriptionsProto clientSubscriptionsProto = ProtoConverter.convertToClientSubscriptionsProto(clientSubscriptions);
+        sendAsync(clientId, clientSubscriptionsProto, callback);
+    }
+
+    @Override
+    public void persistClientSubscriptionsChangeAsync(String clientId, ClientSubscriptionsChange change, BasicCallback callback) {
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Persisting client subscriptions change asynchronously - {}", clientId, change);
+        }
+        sendAsync(clientId, ProtoConverter.convertToClientSubscriptionsProto(change), callback);
+    }
+
+    private void sendAsync(String clientId, QueueProtos.ClientSubscriptionsProto clientSubscriptionsProto, BasicCallback callback) {
         clientSubscriptionsProducer.send(generateRequest(clientId, clientSubscriptionsProto), new TbQueueCallback() {
             @Override
             public void onSuccess(TbQueueMsgMetadata metadata) {
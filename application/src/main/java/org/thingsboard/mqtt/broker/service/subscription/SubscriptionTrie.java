@@ -16,6 +16,7 @@
 package org.thingsboard.mqtt.broker.service.subscription;
 
 import org.thingsboard.mqtt.broker.exception.SubscriptionTrieClearException;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 
 import java.util.List;
 import java.util.function.Predicate;
@@ -25,7 +26,11 @@ public interface SubscriptionTrie<T> {
     /*
         ValueWithTopicFilter<T> is required for persistent DEVICE clients to save timestamps per topicFilter
      */
-    List<ValueWithTopicFilter<T>> get(String topic);
+    default List<ValueWithTopicFilter<T>> get(String topic) {
+        return get(ParsedTopic.parse(topic));
+    }
+
+    List<ValueWithTopicFilter<T>> get(ParsedTopic topic);
 
     void put(String topicFilter, T val);
 
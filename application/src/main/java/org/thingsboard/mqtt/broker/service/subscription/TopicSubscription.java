@@ -32,6 +32,14 @@ public class TopicSubscription {
     private final int qos;
     private final String shareName;
     private final SubscriptionOptions options;
+    /*
+        Weight of the member in a shared subscription group, taken from the SUBSCRIBE user property. 0 if not set
+     */
+    private final int shareWeight;
+
+    public TopicSubscription(String topicFilter, int qos, String shareName, SubscriptionOptions options) {
+        this(topicFilter, qos, shareName, options, 0);
+    }
 
     public TopicSubscription(String topicFilter, int qos) {
         this(topicFilter, qos, null, SubscriptionOptions.newInstance());
@@ -0,0 +1,61 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+/**
+ * Rough shallow-size estimates (64-bit JVM, compressed oops, compact strings) used to feed the trie memory gauges.
+ * Numbers are approximations meant for comparing trie implementations, not for exact heap accounting.
+ */
+public final class TrieMemoryEstimator {
+
+    public static final long OBJECT_HEADER = 12;
+    public static final long REFERENCE = 4;
+    public static final long ARRAY_HEADER = 16;
+
+    // ConcurrentHashMap.Node: header + hash + key + value + next
+    public static final long MAP_ENTRY = align(OBJECT_HEADER + 4 + 3 * REFERENCE) + REFERENCE;
+    // ConcurrentHashMap itself without the table
+    public static final long EMPTY_MAP = 64;
+    // Sets.newConcurrentHashSet() wraps a ConcurrentHashMap into a set view
+    public static final long EMPTY_SET = EMPTY_MAP + 24;
+
+    private TrieMemoryEstimator() {
+    }
+
+    public static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    public static long objectSize(int references) {
+        return align(OBJECT_HEADER + references * REFERENCE);
+    }
+
+    public static long arraySize(int length) {
+        return align(ARRAY_HEADER + length * REFERENCE);
+    }
+
+    public static long stringSize(String value) {
+        return align(OBJECT_HEADER + REFERENCE + 8) + align(ARRAY_HEADER + value.length());
+    }
+
+    public static long mapSize(int entries) {
+        return EMPTY_MAP + entries * MAP_ENTRY;
+    }
+
+    public static long setSize(int entries) {
+        return EMPTY_SET + entries * MAP_ENTRY;
+    }
+}
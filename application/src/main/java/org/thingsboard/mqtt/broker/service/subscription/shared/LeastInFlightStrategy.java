@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+    Picks the connected member with the fewest unacknowledged QoS 1/2 msgs, starting the scan at a random member
+    so that equally loaded members share the load. In-flight windows are known only for sessions connected
+    to this node, members connected to other nodes are treated as idle
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class LeastInFlightStrategy implements SharedSubscriptionProcessingStrategy {
+
+    private final ClientSessionCtxService clientSessionCtxService;
+
+    @Override
+    public Subscription analyze(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto) {
+        List<Subscription> subscriptions = sharedSubscription.getSubscriptions();
+        int size = subscriptions.size();
+        int start = size == 1 ? 0 : ThreadLocalRandom.current().nextInt(size);
+
+        Subscription result = null;
+        int minInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Subscription subscription = subscriptions.get((start + i) % size);
+            if (!subscription.getClientSessionInfo().isConnected()) {
+                continue;
+            }
+            int inFlight = getInFlightMsgs(subscription);
+            if (inFlight < minInFlight) {
+                minInFlight = inFlight;
+                result = subscription;
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int getInFlightMsgs(Subscription subscription) {
+        ClientSessionCtx clientSessionCtx = clientSessionCtxService.getClientSessionCtx(subscription.getClientSessionInfo().getClientId());
+        return clientSessionCtx == null ? 0 : clientSessionCtx.getInFlightOutboundMsgs();
+    }
+}
@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.service.subscription.shared;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
 @RequiredArgsConstructor
@@ -26,7 +27,7 @@ public class RoundRobinStrategy implements SharedSubscriptionProcessingStrategy
     private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
 
     @Override
-    public Subscription analyze(SharedSubscription sharedSubscription) {
+    public Subscription analyze(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto) {
         return sharedSubscriptionProcessor.processRoundRobin(sharedSubscription);
     }
 
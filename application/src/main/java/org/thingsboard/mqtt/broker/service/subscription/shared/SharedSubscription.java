@@ -21,7 +21,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Data
 @RequiredArgsConstructor
@@ -32,4 +34,13 @@ public class SharedSubscription {
     private final TopicSharedSubscription topicSharedSubscription;
     private final List<Subscription> subscriptions;
 
+    public static List<SharedSubscription> groupByTopicSharedSubscription(Collection<Subscription> subscriptions) {
+        return subscriptions.stream()
+                .collect(Collectors.groupingBy(subscription ->
+                        new TopicSharedSubscription(subscription.getTopicFilter(), subscription.getShareName(), subscription.getQos())))
+                .entrySet().stream()
+                .map(entry -> new SharedSubscription(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
 }
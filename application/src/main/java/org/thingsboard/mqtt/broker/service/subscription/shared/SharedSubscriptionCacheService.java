@@ -28,4 +28,6 @@ public interface SharedSubscriptionCacheService {
 
     SharedSubscriptions get(Set<TopicSharedSubscription> topicSharedSubscription);
 
+    void onSessionChanged(String clientId);
+
 }
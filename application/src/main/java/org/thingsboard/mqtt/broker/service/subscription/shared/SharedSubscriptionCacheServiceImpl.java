@@ -15,7 +15,6 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
-import com.google.common.collect.Sets;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,7 +28,9 @@ import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,6 +46,12 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
     private final ClientSessionCache clientSessionCache;
     @Getter
     private final ConcurrentMap<TopicSharedSubscription, SharedSubscriptions> sharedSubscriptionsMap = new ConcurrentHashMap<>();
+    /*
+        Immutable per-group views used on the publish path. Each one holds only members with an existing session
+        and is rebuilt on subscribe, unsubscribe or session change of any member, so 'get' does no lookups
+     */
+    private final ConcurrentMap<TopicSharedSubscription, SharedSubscriptions> sharedSubscriptionsSnapshotMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<TopicSharedSubscription>> clientSharedSubscriptionsMap = new ConcurrentHashMap<>();
 
     @Override
     public void put(String clientId, Collection<TopicSubscription> topicSubscriptions) {
@@ -67,12 +74,15 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
         for (TopicSubscription topicSubscription : sharedTopicSubscriptions) {
             Subscription subscription = newSubscription(topicSubscription, clientSessionInfo);
 
-            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.computeIfAbsent(getKey(topicSubscription), tss -> SharedSubscriptions.newInstance());
+            TopicSharedSubscription key = getKey(topicSubscription);
+            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.computeIfAbsent(key, tss -> SharedSubscriptions.newInstance());
             if (ClientType.APPLICATION == clientSessionInfo.getType()) {
                 updateSharedSubscriptions(sharedSubscriptions.getApplicationSubscriptions(), clientId, topicSubscription, subscription);
             } else {
                 updateSharedSubscriptions(sharedSubscriptions.getDeviceSubscriptions(), clientId, topicSubscription, subscription);
             }
+            clientSharedSubscriptionsMap.computeIfAbsent(clientId, id -> ConcurrentHashMap.newKeySet()).add(key);
+            rebuildSnapshot(key);
         }
     }
 
@@ -114,6 +124,11 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
         if (sharedSubscriptions.isEmpty()) {
             sharedSubscriptionsMap.remove(key);
         }
+        clientSharedSubscriptionsMap.computeIfPresent(clientId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+        rebuildSnapshot(key);
     }
 
     @Override
@@ -121,12 +136,68 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
         if (CollectionUtils.isEmpty(topicSharedSubscriptions)) {
             return null;
         }
-        SharedSubscriptions subscriptions = collectAllSubscriptions(topicSharedSubscriptions);
+        if (topicSharedSubscriptions.size() == 1) {
+            SharedSubscriptions snapshot = sharedSubscriptionsSnapshotMap.get(topicSharedSubscriptions.iterator().next());
+            return snapshot == null ? SharedSubscriptions.EMPTY : snapshot;
+        }
+        return mergeSnapshots(topicSharedSubscriptions);
+    }
 
-        Set<Subscription> applicationSubscriptions = Sets.newConcurrentHashSet(filterSubscriptions(subscriptions.getApplicationSubscriptions()));
-        Set<Subscription> deviceSubscriptions = Sets.newConcurrentHashSet(filterSubscriptions(subscriptions.getDeviceSubscriptions()));
+    @Override
+    public void onSessionChanged(String clientId) {
+        Set<TopicSharedSubscription> keys = clientSharedSubscriptionsMap.get(clientId);
+        if (keys == null) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("[{}] Rebuilding {} shared subscription snapshots on session change.", clientId, keys.size());
+        }
+        for (TopicSharedSubscription key : keys) {
+            rebuildSnapshot(key);
+        }
+    }
 
-        return new SharedSubscriptions(applicationSubscriptions, deviceSubscriptions);
+    /*
+        Computing under the map's per-key lock keeps rebuilds of one group ordered, so the last rebuild
+        always reads the latest members and sessions
+     */
+    private void rebuildSnapshot(TopicSharedSubscription key) {
+        sharedSubscriptionsSnapshotMap.compute(key, (k, prevSnapshot) -> newSnapshot(k));
+    }
+
+    private SharedSubscriptions newSnapshot(TopicSharedSubscription key) {
+        SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(key);
+        if (sharedSubscriptions == null) {
+            return null;
+        }
+        Set<Subscription> applicationSubscriptions = Set.copyOf(filterSubscriptions(sharedSubscriptions.getApplicationSubscriptions()));
+        Set<Subscription> deviceSubscriptions = Set.copyOf(filterSubscriptions(sharedSubscriptions.getDeviceSubscriptions()));
+        if (applicationSubscriptions.isEmpty() && deviceSubscriptions.isEmpty()) {
+            return null;
+        }
+        return new SharedSubscriptions(applicationSubscriptions, deviceSubscriptions,
+                List.copyOf(SharedSubscription.groupByTopicSharedSubscription(deviceSubscriptions)));
+    }
+
+    private SharedSubscriptions mergeSnapshots(Set<TopicSharedSubscription> topicSharedSubscriptions) {
+        Map<String, Subscription> applicationSubscriptions = new HashMap<>();
+        Map<String, Subscription> deviceSubscriptions = new HashMap<>();
+
+        for (TopicSharedSubscription topicSharedSubscription : topicSharedSubscriptions) {
+            SharedSubscriptions snapshot = sharedSubscriptionsSnapshotMap.get(topicSharedSubscription);
+            if (snapshot == null) {
+                continue;
+            }
+            mergeSubscriptions(applicationSubscriptions, snapshot.getApplicationSubscriptions());
+            mergeSubscriptions(deviceSubscriptions, snapshot.getDeviceSubscriptions());
+        }
+        return new SharedSubscriptions(Set.copyOf(applicationSubscriptions.values()), Set.copyOf(deviceSubscriptions.values()));
+    }
+
+    private void mergeSubscriptions(Map<String, Subscription> result, Set<Subscription> subscriptions) {
+        for (Subscription subscription : subscriptions) {
+            result.merge(subscription.getClientSessionInfo().getClientId(), subscription, this::getSubscriptionWithHigherQos);
+        }
     }
 
     private Collection<Subscription> filterSubscriptions(Set<Subscription> subscriptions) {
@@ -149,20 +220,6 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
                 .values();
     }
 
-    private SharedSubscriptions collectAllSubscriptions(Set<TopicSharedSubscription> topicSharedSubscriptions) {
-        SharedSubscriptions result = SharedSubscriptions.newInstance();
-
-        for (TopicSharedSubscription topicSharedSubscription : topicSharedSubscriptions) {
-            SharedSubscriptions sharedSubscriptions = sharedSubscriptionsMap.get(topicSharedSubscription);
-            if (sharedSubscriptions == null) {
-                continue;
-            }
-            result.getApplicationSubscriptions().addAll(sharedSubscriptions.getApplicationSubscriptions());
-            result.getDeviceSubscriptions().addAll(sharedSubscriptions.getDeviceSubscriptions());
-        }
-        return result;
-    }
-
     private Subscription getSubscriptionWithHigherQos(Subscription first, Subscription second) {
         return first.getQos() > second.getQos() ? first : second;
     }
@@ -177,7 +234,8 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
                 topicSubscription.getQos(),
                 clientSessionInfo,
                 topicSubscription.getShareName(),
-                topicSubscription.getOptions()
+                topicSubscription.getOptions(),
+                topicSubscription.getShareWeight()
         );
     }
 
@@ -187,7 +245,8 @@ public class SharedSubscriptionCacheServiceImpl implements SharedSubscriptionCac
                 subscription.getQos(),
                 clientSessionInfo,
                 subscription.getShareName(),
-                subscription.getOptions()
+                subscription.getOptions(),
+                subscription.getShareWeight()
         );
     }
 
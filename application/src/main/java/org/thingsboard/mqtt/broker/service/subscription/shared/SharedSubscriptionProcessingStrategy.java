@@ -15,10 +15,15 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
 public interface SharedSubscriptionProcessingStrategy {
 
-    Subscription analyze(SharedSubscription sharedSubscription);
+    /*
+        Picks one connected subscription of the group to deliver the msg to.
+        The group is expected to have at least one connected subscription
+     */
+    Subscription analyze(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto);
 
 }
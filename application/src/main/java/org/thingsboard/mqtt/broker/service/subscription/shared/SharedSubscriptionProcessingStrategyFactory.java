@@ -19,6 +19,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.common.data.StringUtils;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 
 @Slf4j
 @Component
@@ -27,14 +34,77 @@ public class SharedSubscriptionProcessingStrategyFactory {
 
     @Value("${mqtt.shared-subscriptions.processing-type:ROUND_ROBIN}")
     private SharedSubscriptionProcessingType type;
+    @Value("${mqtt.shared-subscriptions.share-name-processing-types:}")
+    private String shareNameProcessingTypes;
+    @Value("${mqtt.shared-subscriptions.sticky-hash.user-property:}")
+    private String stickyHashUserProperty;
+    @Value("${mqtt.shared-subscriptions.sticky-hash.topic-level:-1}")
+    private int stickyHashTopicLevel;
 
     private final SharedSubscriptionProcessor sharedSubscriptionProcessor;
+    private final ClientSessionCtxService clientSessionCtxService;
+
+    private final Map<SharedSubscriptionProcessingType, SharedSubscriptionProcessingStrategy> strategies = new EnumMap<>(SharedSubscriptionProcessingType.class);
+    private final Map<String, SharedSubscriptionProcessingStrategy> shareNameStrategies = new HashMap<>();
+    private SharedSubscriptionProcessingStrategy defaultStrategy;
+
+    @PostConstruct
+    public void init() {
+        for (SharedSubscriptionProcessingType processingType : SharedSubscriptionProcessingType.values()) {
+            strategies.put(processingType, newInstance(processingType));
+        }
+        defaultStrategy = strategies.get(type);
+        parseShareNameProcessingTypes().forEach((shareName, processingType) ->
+                shareNameStrategies.put(shareName, strategies.get(processingType)));
+        log.info("Shared subscriptions processing type: {}, overridden for share names: {}", type, shareNameStrategies.keySet());
+    }
+
+    public SharedSubscriptionProcessingStrategy getStrategy(String shareName) {
+        if (shareNameStrategies.isEmpty()) {
+            return defaultStrategy;
+        }
+        return shareNameStrategies.getOrDefault(shareName, defaultStrategy);
+    }
+
+    SharedSubscriptionProcessingStrategy newInstance(SharedSubscriptionProcessingType processingType) {
+        switch (processingType) {
+            case ROUND_ROBIN:
+                return new RoundRobinStrategy(sharedSubscriptionProcessor);
+            case LEAST_IN_FLIGHT:
+                return new LeastInFlightStrategy(clientSessionCtxService);
+            case STICKY_HASH:
+                return new StickyHashStrategy(stickyHashUserProperty, stickyHashTopicLevel);
+            case WEIGHTED:
+                return new WeightedStrategy();
+        }
+        throw new RuntimeException("SharedSubscriptionProcessingType " + processingType + " is not supported!");
+    }
 
-    public SharedSubscriptionProcessingStrategy newInstance() {
-        if (SharedSubscriptionProcessingType.ROUND_ROBIN == type) {
-            return new RoundRobinStrategy(sharedSubscriptionProcessor);
+    /*
+        Format: '<shareName>:<processingType>' pairs separated by commas, e.g. 'orders:STICKY_HASH,workers:LEAST_IN_FLIGHT'
+     */
+    private Map<String, SharedSubscriptionProcessingType> parseShareNameProcessingTypes() {
+        Map<String, SharedSubscriptionProcessingType> result = new HashMap<>();
+        if (StringUtils.isEmpty(shareNameProcessingTypes)) {
+            return result;
+        }
+        for (String entry : shareNameProcessingTypes.split(",")) {
+            if (StringUtils.isBlank(entry)) {
+                continue;
+            }
+            int idx = entry.lastIndexOf(':');
+            if (idx <= 0 || idx == entry.length() - 1) {
+                throw new RuntimeException("Failed to parse shared subscriptions processing type entry: " + entry);
+            }
+            String shareName = entry.substring(0, idx).trim();
+            String processingType = entry.substring(idx + 1).trim();
+            try {
+                result.put(shareName, SharedSubscriptionProcessingType.valueOf(processingType));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("SharedSubscriptionProcessingType " + processingType + " is not supported!", e);
+            }
         }
-        throw new RuntimeException("SharedSubscriptionProcessingType " + type + " is not supported!");
+        return result;
     }
 
 }
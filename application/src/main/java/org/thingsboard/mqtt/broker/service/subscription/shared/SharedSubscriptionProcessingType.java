@@ -17,6 +17,9 @@ package org.thingsboard.mqtt.broker.service.subscription.shared;
 
 public enum SharedSubscriptionProcessingType {
 
-    ROUND_ROBIN
+    ROUND_ROBIN,
+    LEAST_IN_FLIGHT,
+    STICKY_HASH,
+    WEIGHTED
 
 }
@@ -15,22 +15,33 @@
  */
 package org.thingsboard.mqtt.broker.service.subscription.shared;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import org.springframework.util.CollectionUtils;
 import org.thingsboard.mqtt.broker.service.subscription.Subscription;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Data
-@RequiredArgsConstructor
-@EqualsAndHashCode
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = "deviceSharedSubscriptions")
 public class SharedSubscriptions {
 
+    public static final SharedSubscriptions EMPTY = new SharedSubscriptions(Set.of(), Set.of(), List.of());
+
     private final Set<Subscription> applicationSubscriptions;
     private final Set<Subscription> deviceSubscriptions;
+    /*
+        Device subscriptions grouped by shared subscription. Precomputed for cached snapshots, null otherwise
+     */
+    private final List<SharedSubscription> deviceSharedSubscriptions;
+
+    public SharedSubscriptions(Set<Subscription> applicationSubscriptions, Set<Subscription> deviceSubscriptions) {
+        this(applicationSubscriptions, deviceSubscriptions, null);
+    }
 
     public static SharedSubscriptions newInstance() {
         return new SharedSubscriptions(ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet());
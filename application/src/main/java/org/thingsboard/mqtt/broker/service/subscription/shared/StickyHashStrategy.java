@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.common.data.StringUtils;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.UserPropertyProto;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+
+import java.util.List;
+
+/*
+    Routes all msgs with the same key to the same connected member using rendezvous hashing, so msgs of one key
+    keep their order as long as that member stays connected. When a member leaves, only its keys move;
+    when it comes back, they return to it. The key is the value of the configured user property of the msg,
+    else the configured topic level, else the whole topic name
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class StickyHashStrategy implements SharedSubscriptionProcessingStrategy {
+
+    private final String userPropertyKey;
+    private final int topicLevel;
+
+    @Override
+    public Subscription analyze(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto) {
+        long keyHash = hash(getStickyKey(publishMsgProto));
+
+        Subscription result = null;
+        long maxScore = Long.MIN_VALUE;
+        List<Subscription> subscriptions = sharedSubscription.getSubscriptions();
+        for (int i = 0; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+            if (!subscription.getClientSessionInfo().isConnected()) {
+                continue;
+            }
+            long score = mix(keyHash ^ hash(subscription.getClientSessionInfo().getClientId()));
+            if (result == null || score > maxScore) {
+                maxScore = score;
+                result = subscription;
+            }
+        }
+        return result;
+    }
+
+    String getStickyKey(PublishMsgProto publishMsgProto) {
+        if (StringUtils.isNotEmpty(userPropertyKey)) {
+            for (UserPropertyProto userProperty : publishMsgProto.getUserPropertiesList()) {
+                if (userPropertyKey.equals(userProperty.getKey())) {
+                    return userProperty.getValue();
+                }
+            }
+        }
+        String topicName = publishMsgProto.getTopicName();
+        if (topicLevel >= 0) {
+            String topicLevelValue = getTopicLevel(topicName, topicLevel);
+            if (topicLevelValue != null) {
+                return topicLevelValue;
+            }
+        }
+        return topicName;
+    }
+
+    private static String getTopicLevel(String topicName, int level) {
+        int start = 0;
+        for (int i = 0; i < level; i++) {
+            int idx = topicName.indexOf(BrokerConstants.TOPIC_DELIMITER, start);
+            if (idx == -1) {
+                return null;
+            }
+            start = idx + 1;
+        }
+        int end = topicName.indexOf(BrokerConstants.TOPIC_DELIMITER, start);
+        return topicName.substring(start, end == -1 ? topicName.length() : end);
+    }
+
+    /*
+        String.hashCode is stable across JVMs, so every broker node picks the same member for a key
+     */
+    private static long hash(String value) {
+        return mix(value == null ? 0 : value.hashCode());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
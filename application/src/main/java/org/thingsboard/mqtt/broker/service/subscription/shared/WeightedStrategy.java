@@ -0,0 +1,67 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+    Picks a connected member with probability proportional to its weight, set by the client with
+    the 'shareWeight' user property of the SUBSCRIBE packet. Members without the property have weight 1
+ */
+@Slf4j
+public class WeightedStrategy implements SharedSubscriptionProcessingStrategy {
+
+    static final int DEFAULT_WEIGHT = 1;
+
+    @Override
+    public Subscription analyze(SharedSubscription sharedSubscription, PublishMsgProto publishMsgProto) {
+        List<Subscription> subscriptions = sharedSubscription.getSubscriptions();
+        long totalWeight = 0;
+        for (int i = 0; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+            if (subscription.getClientSessionInfo().isConnected()) {
+                totalWeight += getWeight(subscription);
+            }
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+
+        long point = ThreadLocalRandom.current().nextLong(totalWeight);
+        Subscription result = null;
+        for (int i = 0; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+            if (!subscription.getClientSessionInfo().isConnected()) {
+                continue;
+            }
+            result = subscription;
+            point -= getWeight(subscription);
+            if (point < 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    static int getWeight(Subscription subscription) {
+        return subscription.getShareWeight() > 0 ? subscription.getShareWeight() : DEFAULT_WEIGHT;
+    }
+}
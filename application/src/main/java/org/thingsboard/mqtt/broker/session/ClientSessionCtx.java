@@ -24,6 +24,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.mqtt.broker.actors.client.state.PubResponseProcessingCtx;
 import org.thingsboard.mqtt.broker.common.data.ClientType;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.MqttPendingPublish;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 
@@ -32,6 +33,8 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 public class ClientSessionCtx implements SessionContext {
@@ -48,6 +51,23 @@ public class ClientSessionCtx implements SessionContext {
     private final AwaitingPubRelPacketsCtx awaitingPubRelPacketsCtx = new AwaitingPubRelPacketsCtx();
     @Getter
     private final ConcurrentMap<Integer, MqttPendingPublish> pendingPublishes = new ConcurrentHashMap<>();
+    /*
+        QoS 1 and 2 PUBLISH packets sent to the client that are not acknowledged with PUBACK or PUBCOMP yet
+     */
+    private final AtomicInteger inFlightOutboundMsgs = new AtomicInteger();
+    @Getter
+    private final DeferredPublishesCtx deferredPublishesCtx = new DeferredPublishesCtx();
+    /*
+        QoS 1 and 2 PUBLISH packets held back while the client's Receive Maximum is reached
+     */
+    @Getter
+    private final DeferredPublishesCtx receiveMaxPendingPublishesCtx = new DeferredPublishesCtx();
+    /*
+        Task waiting for the client's Receive Maximum to free up, e.g. the retained msgs delivery of a subscription
+     */
+    private final AtomicReference<Runnable> outboundQuotaWaiter = new AtomicReference<>();
+    @Getter
+    private final PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
 
     @Getter
     @Setter
@@ -64,6 +84,9 @@ public class ClientSessionCtx implements SessionContext {
     @Getter
     @Setter
     private volatile InetSocketAddress address;
+    @Getter
+    @Setter
+    private volatile int receiveMaximum = BrokerConstants.DEFAULT_RECEIVE_MAXIMUM;
 
     @Getter
     private ChannelHandlerContext channel;
@@ -78,6 +101,32 @@ public class ClientSessionCtx implements SessionContext {
         this.channel = channel;
     }
 
+    public int getInFlightOutboundMsgs() {
+        return inFlightOutboundMsgs.get();
+    }
+
+    public void onOutboundMsgSent() {
+        inFlightOutboundMsgs.incrementAndGet();
+    }
+
+    public void onOutboundMsgAcknowledged() {
+        inFlightOutboundMsgs.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    }
+
+    public void awaitOutboundQuota(Runnable waiter) {
+        outboundQuotaWaiter.set(waiter);
+    }
+
+    /**
+     * Resumes the task waiting for the Receive Maximum on the channel's executor, if there is one.
+     */
+    public void notifyOutboundQuotaWaiter() {
+        Runnable waiter = outboundQuotaWaiter.getAndSet(null);
+        if (waiter != null && channel != null) {
+            channel.executor().execute(waiter);
+        }
+    }
+
     public String getClientId() {
         return (sessionInfo != null && sessionInfo.getClientInfo() != null) ?
                 sessionInfo.getClientInfo().getClientId() : null;
@@ -90,5 +139,12 @@ public class ClientSessionCtx implements SessionContext {
         this.channel.close();
         pendingPublishes.forEach((id, mqttPendingPublish) -> mqttPendingPublish.onChannelClosed());
         pendingPublishes.clear();
+        outboundQuotaWaiter.set(null);
+        synchronized (receiveMaxPendingPublishesCtx) {
+            receiveMaxPendingPublishesCtx.release();
+        }
+        synchronized (deferredPublishesCtx) {
+            deferredPublishesCtx.release();
+        }
     }
 }
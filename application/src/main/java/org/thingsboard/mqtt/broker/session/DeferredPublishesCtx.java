@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.session;
+
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.util.ReferenceCountUtil;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/*
+    QoS 1 and 2 PUBLISH packets held back from the client (e.g. while the client channel is not writable),
+    in the order they were sent.
+    Callers synchronize on the instance so that deferring and draining do not reorder packets.
+ */
+public class DeferredPublishesCtx {
+
+    private final Queue<DeferredPublish> deferredPublishes = new ArrayDeque<>();
+    @Getter
+    private long deferredBytes;
+
+    public boolean isEmpty() {
+        return deferredPublishes.isEmpty();
+    }
+
+    public int size() {
+        return deferredPublishes.size();
+    }
+
+    public long defer(MqttPublishMessage mqttPubMsg, Consumer<MqttPublishMessage> sender) {
+        DeferredPublish deferredPublish = new DeferredPublish(mqttPubMsg, sender, estimateSize(mqttPubMsg));
+        deferredPublishes.add(deferredPublish);
+        deferredBytes += deferredPublish.getSize();
+        return deferredBytes;
+    }
+
+    public DeferredPublish poll() {
+        DeferredPublish deferredPublish = deferredPublishes.poll();
+        if (deferredPublish != null) {
+            deferredBytes -= deferredPublish.getSize();
+        }
+        return deferredPublish;
+    }
+
+    public int release() {
+        int released = deferredPublishes.size();
+        DeferredPublish deferredPublish;
+        while ((deferredPublish = deferredPublishes.poll()) != null) {
+            ReferenceCountUtil.safeRelease(deferredPublish.getMqttPubMsg());
+        }
+        deferredBytes = 0;
+        return released;
+    }
+
+    private static int estimateSize(MqttPublishMessage mqttPubMsg) {
+        return mqttPubMsg.payload().readableBytes() + mqttPubMsg.variableHeader().topicName().length();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class DeferredPublish {
+        private final MqttPublishMessage mqttPubMsg;
+        private final Consumer<MqttPublishMessage> sender;
+        private final int size;
+
+        public void send() {
+            sender.accept(mqttPubMsg);
+        }
+    }
+}
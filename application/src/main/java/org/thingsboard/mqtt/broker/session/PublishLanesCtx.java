@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.session;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Lanes of the msg-all topics the msgs of the client were published to, per topic name.
+    Both lanes are keyed by the topic name, so the msgs of the client to the same topic keep their order only while they
+    stay in one lane: the topic is pinned to the lane of its first msg for the lifetime of the session.
+    Accessed by the client actor only.
+ */
+public class PublishLanesCtx {
+
+    private final Map<String, Boolean> priorityLaneByTopic = new HashMap<>();
+
+    public boolean isPriorityLane(String topic, int qos, int maxTopics) {
+        Boolean priorityLane = priorityLaneByTopic.get(topic);
+        if (priorityLane != null) {
+            return priorityLane;
+        }
+        if (priorityLaneByTopic.size() >= maxTopics) {
+            // topics that are not pinned never got a msg to the priority lane
+            return false;
+        }
+        priorityLane = qos > 0;
+        priorityLaneByTopic.put(topic, priorityLane);
+        return priorityLane;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.util;
+
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.PageData;
+import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Secondary sorted indexes over an id-keyed in-memory collection.
+ * <p>
+ * Every index keeps the ids ordered by one property (ties are broken by id), so a page is read by walking the index
+ * from its start or from a cursor instead of copying and sorting the whole collection.
+ * Only the sort keys are kept here: values are resolved through the lookup passed to the page methods,
+ * and ids whose value is gone by then are skipped. Reads are weakly consistent with concurrent updates.
+ * <p>
+ * All indexes must be added before the first update.
+ */
+public class SortedIndexes<V> {
+
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+    private static final String NULL_KEY = "n";
+    private static final String VALUE_KEY_PREFIX = "v";
+
+    private final Map<String, SortedIndex<V>> indexesByProperty = new HashMap<>();
+    private final List<SortedIndex<V>> indexes = new ArrayList<>();
+    private final ConcurrentMap<String, IndexKey[]> keysById = new ConcurrentHashMap<>();
+
+    public SortedIndexes<V> addIndex(String property, Function<V, ? extends Comparable<?>> keyExtractor,
+                                     Function<String, ? extends Comparable<?>> keyParser) {
+        SortedIndex<V> index = new SortedIndex<>(indexes.size(), keyExtractor, keyParser);
+        indexes.add(index);
+        indexesByProperty.put(property, index);
+        return this;
+    }
+
+    public boolean isIndexed(String property) {
+        return indexesByProperty.containsKey(property);
+    }
+
+    public void put(String id, V value) {
+        keysById.compute(id, (key, prevKeys) -> {
+            IndexKey[] keys = new IndexKey[indexes.size()];
+            for (SortedIndex<V> index : indexes) {
+                IndexKey indexKey = new IndexKey(index.keyExtractor.apply(value), id);
+                IndexKey prevIndexKey = prevKeys != null ? prevKeys[index.position] : null;
+                if (prevIndexKey != null && prevIndexKey.compareTo(indexKey) == 0) {
+                    keys[index.position] = prevIndexKey;
+                    continue;
+                }
+                if (prevIndexKey != null) {
+                    index.keys.remove(prevIndexKey);
+                }
+                index.keys.add(indexKey);
+                keys[index.position] = indexKey;
+            }
+            return keys;
+        });
+    }
+
+    public void putAll(Map<String, V> values) {
+        values.forEach(this::put);
+    }
+
+    public void remove(String id) {
+        keysById.computeIfPresent(id, (key, prevKeys) -> {
+            for (SortedIndex<V> index : indexes) {
+                index.keys.remove(prevKeys[index.position]);
+            }
+            return null;
+        });
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+    /**
+     * Reads the page that starts right after the cursor. The page costs O(log n) to position plus the number of
+     * visited ids, which is the page size when no filter is set.
+     */
+    public CursorPageData<V> findPage(String property, SortOrder.Direction direction, String cursor, int pageSize,
+                                      Predicate<V> filter, Function<String, V> lookup) {
+        SortedIndex<V> index = getIndex(property);
+        NavigableSet<IndexKey> view = direction == SortOrder.Direction.DESC ? index.keys.descendingSet() : index.keys;
+        if (cursor != null) {
+            view = view.tailSet(index.decodeCursor(cursor), false);
+        }
+
+        List<V> data = new ArrayList<>(pageSize);
+        IndexKey lastKey = null;
+        boolean hasNext = false;
+        for (IndexKey indexKey : view) {
+            V value = lookup.apply(indexKey.id);
+            if (value == null || (filter != null && !filter.test(value))) {
+                continue;
+            }
+            if (data.size() == pageSize) {
+                hasNext = true;
+                break;
+            }
+            data.add(value);
+            lastKey = indexKey;
+        }
+        return new CursorPageData<>(data, hasNext ? encodeCursor(lastKey) : null, hasNext);
+    }
+
+    /**
+     * Reads the page at the given offset. Without a filter the page costs O(offset + page size); with a filter
+     * the remaining ids are still visited to count the total, but nothing is copied or sorted.
+     */
+    public PageData<V> findPage(String property, SortOrder.Direction direction, int page, int pageSize,
+                                Predicate<V> filter, Function<String, V> lookup) {
+        SortedIndex<V> index = getIndex(property);
+        NavigableSet<IndexKey> view = direction == SortOrder.Direction.DESC ? index.keys.descendingSet() : index.keys;
+
+        long offset = (long) page * pageSize;
+        List<V> data = new ArrayList<>(pageSize);
+        long matched = 0;
+        for (IndexKey indexKey : view) {
+            if (filter == null) {
+                if (data.size() == pageSize) {
+                    break;
+                }
+                if (matched < offset) {
+                    matched++;
+                    continue;
+                }
+            }
+            V value = lookup.apply(indexKey.id);
+            if (value == null || (filter != null && !filter.test(value))) {
+                continue;
+            }
+            if (matched >= offset && data.size() < pageSize) {
+                data.add(value);
+            }
+            matched++;
+        }
+
+        long totalElements = filter == null ? Math.max(size(), matched) : matched;
+        return new PageData<>(data,
+                (int) (totalElements / pageSize),
+                totalElements,
+                offset + pageSize < totalElements);
+    }
+
+    /**
+     * Resolves all values matching the filter, for sorting by properties that have no index.
+     */
+    public List<V> findAll(Predicate<V> filter, Function<String, V> lookup) {
+        List<V> values = new ArrayList<>(size());
+        for (String id : keysById.keySet()) {
+            V value = lookup.apply(id);
+            if (value != null && (filter == null || filter.test(value))) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private SortedIndex<V> getIndex(String property) {
+        SortedIndex<V> index = indexesByProperty.get(property);
+        if (index == null) {
+            throw new IllegalArgumentException("Sorting by '" + property + "' is not supported for this page request!");
+        }
+        return index;
+    }
+
+    private static String encodeCursor(IndexKey indexKey) {
+        String key = indexKey.key == null ? NULL_KEY : VALUE_KEY_PREFIX + encode(indexKey.key.toString());
+        return key + "." + encode(indexKey.id);
+    }
+
+    private static String encode(String value) {
+        return CURSOR_ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(CURSOR_DECODER.decode(value), StandardCharsets.UTF_8);
+    }
+
+    private static class SortedIndex<V> {
+
+        private final int position;
+        private final Function<V, ? extends Comparable<?>> keyExtractor;
+        private final Function<String, ? extends Comparable<?>> keyParser;
+        private final ConcurrentSkipListSet<IndexKey> keys = new ConcurrentSkipListSet<>();
+
+        SortedIndex(int position, Function<V, ? extends Comparable<?>> keyExtractor,
+                    Function<String, ? extends Comparable<?>> keyParser) {
+            this.position = position;
+            this.keyExtractor = keyExtractor;
+            this.keyParser = keyParser;
+        }
+
+        IndexKey decodeCursor(String cursor) {
+            try {
+                int separatorIdx = cursor.indexOf('.');
+                String key = cursor.substring(0, separatorIdx);
+                String id = decode(cursor.substring(separatorIdx + 1));
+                if (NULL_KEY.equals(key)) {
+                    return new IndexKey(null, id);
+                }
+                if (!key.startsWith(VALUE_KEY_PREFIX)) {
+                    throw new IllegalArgumentException("Unknown cursor key type");
+                }
+                return new IndexKey(keyParser.apply(decode(key.substring(VALUE_KEY_PREFIX.length()))), id);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid page cursor '" + cursor + "'!", e);
+            }
+        }
+    }
+
+    private static class IndexKey implements Comparable<IndexKey> {
+
+        private final Comparable<Object> key;
+        private final String id;
+
+        @SuppressWarnings("unchecked")
+        IndexKey(Comparable<?> key, String id) {
+            this.key = (Comparable<Object>) key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int result;
+            if (key == null) {
+                result = other.key == null ? 0 : -1;
+            } else {
+                result = other.key == null ? 1 : key.compareTo(other.key);
+            }
+            return result != 0 ? result : id.compareTo(other.id);
+        }
+    }
+}
@@ -31,17 +31,23 @@ import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.exception.QueuePersistenceException;
+import org.thingsboard.mqtt.broker.service.mqtt.client.cleanup.ClientSessionExpiryService;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsConsumer;
+import org.thingsboard.mqtt.broker.service.auth.credentials.ClientCredentialsIndexService;
 import org.thingsboard.mqtt.broker.service.mqtt.client.disconnect.DisconnectClientCommandConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventService;
 import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionConsumer;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionPageInfos;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.device.queue.DeviceMsgQueueConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgConsumer;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgListenerService;
 import org.thingsboard.mqtt.broker.service.processing.PublishMsgConsumerService;
 import org.thingsboard.mqtt.broker.service.processing.downlink.basic.BasicDownLinkConsumer;
 import org.thingsboard.mqtt.broker.service.processing.downlink.persistent.PersistentDownLinkConsumer;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshotService;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionConsumer;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
 import org.thingsboard.mqtt.broker.util.ClientSessionInfoFactory;
 
 import java.util.HashMap;
@@ -61,12 +67,18 @@ public class BrokerInitializerTest {
     @MockBean
     RetainedMsgConsumer retainedMsgConsumer;
     @MockBean
+    ClientCredentialsConsumer clientCredentialsConsumer;
+    @MockBean
     ClientSubscriptionService clientSubscriptionService;
     @MockBean
     ClientSessionService clientSessionService;
     @MockBean
+    ClientSessionPageInfos clientSessionPageInfos;
+    @MockBean
     RetainedMsgListenerService retainedMsgListenerService;
     @MockBean
+    ClientCredentialsIndexService clientCredentialsIndexService;
+    @MockBean
     ActorSystemContext actorSystemContext;
     @MockBean
     TbActorSystem actorSystem;
@@ -86,6 +98,12 @@ public class BrokerInitializerTest {
     BasicDownLinkConsumer basicDownLinkConsumer;
     @MockBean
     PersistentDownLinkConsumer persistentDownLinkConsumer;
+    @MockBean
+    StateSnapshotService stateSnapshotService;
+    @MockBean
+    SharedSubscriptionCacheService sharedSubscriptionCacheService;
+    @MockBean
+    ClientSessionExpiryService clientSessionExpiryService;
 
     @SpyBean
     BrokerInitializer brokerInitializer;
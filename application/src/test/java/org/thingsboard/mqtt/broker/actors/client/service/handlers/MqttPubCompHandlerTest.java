@@ -20,6 +20,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.service.limits.FlowControlService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
 import org.thingsboard.mqtt.broker.service.mqtt.retransmission.RetransmissionService;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
@@ -36,13 +37,15 @@ public class MqttPubCompHandlerTest {
 
     MsgPersistenceManager msgPersistenceManager;
     RetransmissionService retransmissionService;
+    FlowControlService flowControlService;
     MqttPubCompHandler mqttPubCompHandler;
 
     @Before
     public void setUp() {
         msgPersistenceManager = mock(MsgPersistenceManager.class);
         retransmissionService = mock(RetransmissionService.class);
-        mqttPubCompHandler = spy(new MqttPubCompHandler(msgPersistenceManager, retransmissionService));
+        flowControlService = mock(FlowControlService.class);
+        mqttPubCompHandler = spy(new MqttPubCompHandler(msgPersistenceManager, retransmissionService, flowControlService));
     }
 
     @Test
@@ -52,6 +55,7 @@ public class MqttPubCompHandlerTest {
         mqttPubCompHandler.process(ctx, 1);
         verify(msgPersistenceManager, times(1)).processPubComp(ctx, 1);
         verify(retransmissionService, times(1)).onPubCompReceived(ctx, 1);
+        verify(flowControlService, times(1)).onOutboundMsgAcknowledged(ctx);
     }
 
     @Test
@@ -60,5 +64,6 @@ public class MqttPubCompHandlerTest {
         ctx.setSessionInfo(SessionInfo.builder().cleanStart(true).sessionExpiryInterval(0).build());
         mqttPubCompHandler.process(ctx, 1);
         verify(retransmissionService, times(1)).onPubCompReceived(ctx, 1);
+        verify(flowControlService, times(1)).onOutboundMsgAcknowledged(ctx);
     }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import org.thingsboard.mqtt.broker.exception.MqttException;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgProcessor;
 import org.thingsboard.mqtt.broker.service.mqtt.validation.TopicValidationService;
@@ -89,13 +90,13 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testValidateClientAccess() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
         mqttPublishHandler.validateClientAccess(ctx, "topic/1");
     }
 
     @Test(expected = MqttException.class)
     public void testValidateClientAccessFail() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(false);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(false);
         when(ctx.getAuthRulePatterns()).thenReturn(List.of(AuthRulePatterns.newInstance(Collections.emptyList())));
         mqttPublishHandler.validateClientAccess(ctx, "topic/1");
     }
@@ -120,7 +121,7 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testProcess() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
 
         PublishMsg publishMsg = getPublishMsg(1, 2);
 
@@ -136,7 +137,7 @@ public class MqttPublishHandlerTest {
 
     @Test
     public void testProcessRetainMsg() {
-        when(authorizationRuleService.isPubAuthorized(any(), any(), any())).thenReturn(true);
+        when(authorizationRuleService.isPubAuthorized(any(), any())).thenReturn(true);
 
         PublishMsg publishMsg = getPublishMsg(1, 2, true);
 
@@ -144,7 +145,7 @@ public class MqttPublishHandlerTest {
         verify(mqttPublishHandler, times(1)).processExactlyOnceAndCheckIfAlreadyPublished(ctx, actorRef, 1);
 
         verify(mqttPublishHandler, times(1)).persistPubMsg(eq(ctx), any(), eq(actorRef));
-        verify(retainedMsgProcessor, times(1)).process(eq(publishMsg));
+        verify(retainedMsgProcessor, times(1)).process(eq(publishMsg), eq(ParsedTopic.parse(publishMsg.getTopicName())));
     }
 
     private MqttPublishMsg createMqttPubMsg(PublishMsg publishMsg) {
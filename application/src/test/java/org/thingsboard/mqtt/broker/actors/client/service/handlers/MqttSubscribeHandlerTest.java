@@ -32,10 +32,8 @@ import org.thingsboard.mqtt.broker.dao.client.application.ApplicationSharedSubsc
 import org.thingsboard.mqtt.broker.dao.exception.DataValidationException;
 import org.thingsboard.mqtt.broker.service.auth.AuthorizationRuleService;
 import org.thingsboard.mqtt.broker.service.mqtt.MqttMessageGenerator;
-import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
-import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsg;
-import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgService;
+import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgDeliveryService;
 import org.thingsboard.mqtt.broker.service.mqtt.validation.TopicValidationService;
 import org.thingsboard.mqtt.broker.service.security.authorization.AuthRulePatterns;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
@@ -45,11 +43,11 @@ import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
 import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
 import org.thingsboard.mqtt.broker.util.MqttReasonCode;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -73,9 +71,7 @@ public class MqttSubscribeHandlerTest {
     @MockBean
     AuthorizationRuleService authorizationRuleService;
     @MockBean
-    RetainedMsgService retainedMsgService;
-    @MockBean
-    PublishMsgDeliveryService publishMsgDeliveryService;
+    RetainedMsgDeliveryService retainedMsgDeliveryService;
     @MockBean
     ClientMqttActorManager clientMqttActorManager;
     @MockBean
@@ -148,56 +144,23 @@ public class MqttSubscribeHandlerTest {
     }
 
     @Test
-    public void testGetRetainedMsgsForTopics() {
-        long ts = System.currentTimeMillis();
-        when(retainedMsgService.getRetainedMessages(eq("one"))).thenReturn(List.of(
-                newRetainedMsg("payload1", 1, ts), newRetainedMsg("payload2", 1, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("two"))).thenReturn(List.of(
-                newRetainedMsg("payload3", 0, ts), newRetainedMsg("payload4", 0, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("three"))).thenReturn(List.of(
-                newRetainedMsg("payload5", 2, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("four"))).thenReturn(List.of(
-                newRetainedMsg("payload6", 1, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("five"))).thenReturn(List.of(
-                newRetainedMsg("payload7", 2, ts)
-        ));
-
-        Set<RetainedMsg> retainedMsgSet = mqttSubscribeHandler.getRetainedMessagesForTopicSubscriptions(
+    public void testGetTopicSubscriptionsToSendRetainedMsgs() {
+        List<TopicSubscription> topicSubscriptions = mqttSubscribeHandler.getTopicSubscriptionsToSendRetainedMsgs(
                 List.of(
                         getTopicSubscription("one", 1),
                         getTopicSubscription("two", 2),
                         getTopicSubscription("three", 1),
                         getTopicSubscription("four", 1),
-                        getTopicSubscription("five", 0)
+                        getTopicSubscription("five", 0),
+                        getTopicSubscription("six", 1, "g1")
                 ), Collections.emptySet()
         );
-        assertEquals(7, retainedMsgSet.size());
+        assertEquals(List.of("one", "two", "three", "four", "five"), getTopicFilters(topicSubscriptions));
     }
 
     @Test
-    public void testGetRetainedMsgsForTopicsWithOptions() {
-        long ts = System.currentTimeMillis();
-        when(retainedMsgService.getRetainedMessages(eq("one"))).thenReturn(List.of(
-                newRetainedMsg("payload1", 1, ts), newRetainedMsg("payload2", 1, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("two"))).thenReturn(List.of(
-                newRetainedMsg("payload3", 0, ts), newRetainedMsg("payload4", 0, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("three"))).thenReturn(List.of(
-                newRetainedMsg("payload5", 2, ts), newRetainedMsg("payload5", 2, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("four"))).thenReturn(List.of(
-                newRetainedMsg("payload6", 1, ts), newRetainedMsg("payload1", 1, ts)
-        ));
-        when(retainedMsgService.getRetainedMessages(eq("five"))).thenReturn(List.of(
-                newRetainedMsg("payload6", 2, ts), newRetainedMsg("payload4", 1, ts)
-        ));
-
-        Set<RetainedMsg> retainedMsgSet = mqttSubscribeHandler.getRetainedMessagesForTopicSubscriptions(
+    public void testGetTopicSubscriptionsToSendRetainedMsgsWithOptions() {
+        List<TopicSubscription> topicSubscriptions = mqttSubscribeHandler.getTopicSubscriptionsToSendRetainedMsgs(
                 List.of(
                         getTopicSubscription("one", 1, getOptions(SubscriptionOptions.RetainHandlingPolicy.SEND_AT_SUBSCRIBE)),
                         getTopicSubscription("two", 2, getOptions(SubscriptionOptions.RetainHandlingPolicy.SEND_AT_SUBSCRIBE_IF_NOT_YET_EXISTS)),
@@ -207,7 +170,11 @@ public class MqttSubscribeHandlerTest {
                 ),
                 Set.of(getTopicSubscription("two", 1))
         );
-        assertEquals(3, retainedMsgSet.size());
+        assertEquals(List.of("one", "three"), getTopicFilters(topicSubscriptions));
+    }
+
+    private List<String> getTopicFilters(List<TopicSubscription> topicSubscriptions) {
+        return topicSubscriptions.stream().map(TopicSubscription::getTopicFilter).collect(Collectors.toList());
     }
 
     private static SubscriptionOptions getOptions(SubscriptionOptions.RetainHandlingPolicy retainHandlingPolicy) {
@@ -250,8 +217,4 @@ public class MqttSubscribeHandlerTest {
     private TopicSubscription getTopicSubscription(String topic, int qos, SubscriptionOptions options) {
         return new TopicSubscription(topic, qos, options);
     }
-
-    private RetainedMsg newRetainedMsg(String payload, int qos, long ts) {
-        return new RetainedMsg("#", payload.getBytes(StandardCharsets.UTF_8), qos, MqttProperties.NO_PROPERTIES, ts);
-    }
 }
@@ -251,6 +251,18 @@ public class SessionClusterManagerImplTest {
         verify(clientSessionService, times(1)).clearClientSession(any(), any());
         verify(clientSubscriptionService, times(1)).clearSubscriptionsAndPersist(any(), any());
         verify(msgPersistenceManager, times(1)).clearPersistedMessages(any());
+        verify(clientSubscriptionService, never()).persistPendingSnapshot(any());
+    }
+
+    @Test
+    public void givenPresentSession_whenUpdateClientSessionWithoutCleanStart_thenPendingSnapshotIsPersisted() {
+        SessionInfo sessionInfoNew = getSessionInfo("clientId", ClientType.DEVICE, false);
+
+        sessionClusterManager.updateClientSession(sessionInfoNew, getConnectionRequestInfo(),
+                new SessionClusterManagerImpl.PreviousSessionInfo(ClientType.DEVICE));
+
+        verify(clientSubscriptionService, never()).clearSubscriptionsAndPersist(any(), any());
+        verify(clientSubscriptionService, times(1)).persistPendingSnapshot("clientId");
     }
 
     private SessionInfo getSessionInfo(String clientId) {
@@ -20,23 +20,30 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.actors.client.messages.SubscriptionChangedEventMsg;
+import org.thingsboard.mqtt.broker.common.data.BasicCallback;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.SubscriptionPersistenceService;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
 import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessor;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -65,6 +72,7 @@ public class ClientSubscriptionServiceImplTest {
                 sharedSubscriptionProcessor,
                 sharedSubscriptionCacheService,
                 statsManager));
+        clientSubscriptionService.setTrailingDeltaSnapshotDelayMs(180000);
 
         clientSubscriptionService.init(getClientTopicSubscriptions());
     }
@@ -95,28 +103,197 @@ public class ClientSubscriptionServiceImplTest {
 
         Set<TopicSubscription> clientSubscriptions = getAndVerifyClientSubscriptionsForClient("clientId1", 1);
         assertTrue(clientSubscriptions.contains(getTopicSubscription("topic1")));
-        verify(subscriptionPersistenceService, times(2)).persistClientSubscriptionsAsync(any(), any(), any());
+        verify(subscriptionPersistenceService, times(2)).persistClientSubscriptionsChangeAsync(any(), any(), any());
     }
 
     @Test
-    public void givenClientTopicSubscriptions_whenSubscribeAndPersist_thenOk() {
+    public void givenClientTopicSubscriptions_whenSubscribeAndPersist_thenOnlyAddedSubscriptionIsPersisted() {
         clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
 
-        Set<TopicSubscription> clientSubscriptions = getAndVerifyClientSubscriptionsForClient("clientId1", 2);
+        getAndVerifyClientSubscriptionsForClient("clientId1", 2);
 
-        verify(subscriptionPersistenceService, times(1)).persistClientSubscriptionsAsync(
-                eq("clientId1"), eq(clientSubscriptions), any());
+        ClientSubscriptionsChange change = captureChange("clientId1");
+        assertTrue(change.isDelta());
+        assertEquals(1, change.getVersion());
+        assertEquals(Set.of(getTopicSubscription("topic11")), change.getTopicSubscriptions());
+        assertTrue(change.getRemovedTopicFilters().isEmpty());
     }
 
     @Test
-    public void givenClientTopicSubscriptions_whenSubscribeInternallyAndUnsubscribeAndPersist_thenOk() {
+    public void givenClientTopicSubscriptions_whenSubscribeInternallyAndUnsubscribeAndPersist_thenOnlyRemovedTopicIsPersisted() {
         clientSubscriptionService.subscribeInternally("clientId1", Set.of(getTopicSubscription("topic11")));
         clientSubscriptionService.unsubscribeAndPersist("clientId1", Set.of("topic1"));
 
-        Set<TopicSubscription> clientSubscriptions = getAndVerifyClientSubscriptionsForClient("clientId1", 1);
+        getAndVerifyClientSubscriptionsForClient("clientId1", 1);
+
+        ClientSubscriptionsChange change = captureChange("clientId1");
+        assertTrue(change.isDelta());
+        assertTrue(change.getTopicSubscriptions().isEmpty());
+        assertEquals(Set.of("topic1"), change.getRemovedTopicFilters());
+    }
+
+    @Test
+    public void givenMaxDeltasPersisted_whenSubscribeAndPersist_thenSnapshotIsPersisted() {
+        clientSubscriptionService.setMaxDeltasBeforeSnapshot(2);
 
-        verify(subscriptionPersistenceService, times(1)).persistClientSubscriptionsAsync(
-                eq("clientId1"), eq(clientSubscriptions), any());
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic12")));
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic13")));
+
+        ArgumentCaptor<ClientSubscriptionsChange> changeCaptor = ArgumentCaptor.forClass(ClientSubscriptionsChange.class);
+        verify(subscriptionPersistenceService, times(3)).persistClientSubscriptionsChangeAsync(eq("clientId1"), changeCaptor.capture(), any());
+        ClientSubscriptionsChange snapshot = changeCaptor.getAllValues().get(2);
+        assertFalse(snapshot.isDelta());
+        assertEquals(3, snapshot.getVersion());
+        assertEquals(4, snapshot.getTopicSubscriptions().size());
+    }
+
+    @Test
+    public void givenPendingDeltas_whenPersistPendingSnapshots_thenSnapshotIsPersistedOnce() {
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+
+        clientSubscriptionService.persistPendingSnapshots();
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ArgumentCaptor<ClientSubscriptionsChange> changeCaptor = ArgumentCaptor.forClass(ClientSubscriptionsChange.class);
+        verify(subscriptionPersistenceService, times(2)).persistClientSubscriptionsChangeAsync(eq("clientId1"), changeCaptor.capture(), any());
+        ClientSubscriptionsChange snapshot = changeCaptor.getAllValues().get(1);
+        assertFalse(snapshot.isDelta());
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(Set.of(getTopicSubscription("topic1"), getTopicSubscription("topic11")), snapshot.getTopicSubscriptions());
+    }
+
+    @Test
+    public void givenFailedSnapshot_whenPersistPendingSnapshots_thenSnapshotIsPersistedAgain() {
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ArgumentCaptor<BasicCallback> callbackCaptor = ArgumentCaptor.forClass(BasicCallback.class);
+        verify(subscriptionPersistenceService, times(2)).persistClientSubscriptionsChangeAsync(eq("clientId1"), any(), callbackCaptor.capture());
+        callbackCaptor.getAllValues().get(1).onFailure(new RuntimeException("Failed to persist"));
+
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ArgumentCaptor<ClientSubscriptionsChange> changeCaptor = ArgumentCaptor.forClass(ClientSubscriptionsChange.class);
+        verify(subscriptionPersistenceService, times(3)).persistClientSubscriptionsChangeAsync(eq("clientId1"), changeCaptor.capture(), any());
+        ClientSubscriptionsChange snapshot = changeCaptor.getAllValues().get(2);
+        assertFalse(snapshot.isDelta());
+        assertEquals(3, snapshot.getVersion());
+    }
+
+    @Test
+    public void givenFailedSnapshotFollowedByNewerSnapshot_whenPersistPendingSnapshots_thenNothingIsPersisted() {
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+        clientSubscriptionService.persistPendingSnapshots();
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic12")));
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ArgumentCaptor<BasicCallback> callbackCaptor = ArgumentCaptor.forClass(BasicCallback.class);
+        verify(subscriptionPersistenceService, times(4)).persistClientSubscriptionsChangeAsync(eq("clientId1"), any(), callbackCaptor.capture());
+        callbackCaptor.getAllValues().get(1).onFailure(new RuntimeException("Failed to persist"));
+
+        clientSubscriptionService.persistPendingSnapshots();
+
+        verify(subscriptionPersistenceService, times(4)).persistClientSubscriptionsChangeAsync(eq("clientId1"), any(), any());
+    }
+
+    @Test
+    public void givenPendingDeltas_whenPersistPendingSnapshotOfClient_thenSnapshotIsPersisted() {
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+        clientSubscriptionService.subscribeAndPersist("clientId2", Set.of(getTopicSubscription("topic22")));
+
+        clientSubscriptionService.persistPendingSnapshot("clientId1");
+
+        ArgumentCaptor<ClientSubscriptionsChange> changeCaptor = ArgumentCaptor.forClass(ClientSubscriptionsChange.class);
+        verify(subscriptionPersistenceService, times(2)).persistClientSubscriptionsChangeAsync(eq("clientId1"), changeCaptor.capture(), any());
+        assertFalse(changeCaptor.getAllValues().get(1).isDelta());
+        verify(subscriptionPersistenceService, times(1)).persistClientSubscriptionsChangeAsync(eq("clientId2"), any(), any());
+    }
+
+    @Test
+    public void givenClientsMarkedPending_whenPersistPendingSnapshots_thenSnapshotsArePersisted() {
+        clientSubscriptionService.markSnapshotsPending(List.of("clientId2"));
+
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ClientSubscriptionsChange snapshot = captureChange("clientId2");
+        assertFalse(snapshot.isDelta());
+        assertEquals(Set.of(getTopicSubscription("topic2")), snapshot.getTopicSubscriptions());
+        verify(subscriptionPersistenceService, never()).persistClientSubscriptionsChangeAsync(eq("clientId1"), any(), any());
+    }
+
+    @Test
+    public void givenRemoteVersion_whenSubscribeAndPersist_thenVersionIsContinued() {
+        clientSubscriptionService.setSubscriptionsVersion("clientId1", 5, false);
+
+        clientSubscriptionService.subscribeAndPersist("clientId1", Set.of(getTopicSubscription("topic11")));
+
+        assertEquals(6, captureChange("clientId1").getVersion());
+        assertEquals(6, clientSubscriptionService.getSubscriptionsVersion("clientId1"));
+    }
+
+    @Test
+    public void givenRemoteVersion_whenPersistPendingSnapshots_thenNothingIsPersisted() {
+        clientSubscriptionService.setSubscriptionsVersion("clientId1", 5, false);
+
+        clientSubscriptionService.persistPendingSnapshots();
+
+        verify(subscriptionPersistenceService, never()).persistClientSubscriptionsChangeAsync(any(), any(), any());
+    }
+
+    @Test
+    public void givenDeltaFromOtherNode_whenClientReconnects_thenSnapshotIsPersisted() {
+        SubscriptionChangesManager subscriptionChangesManager = new SubscriptionChangesManagerImpl(clientSubscriptionService);
+        subscriptionChangesManager.processSubscriptionChangedEvent("clientId1", new SubscriptionChangedEventMsg(
+                ClientSubscriptionsChange.delta(1, Set.of(getTopicSubscription("topic11")), Set.of())));
+
+        // the node that persisted the delta writes the periodic snapshot
+        clientSubscriptionService.persistPendingSnapshots();
+        verify(subscriptionPersistenceService, never()).persistClientSubscriptionsChangeAsync(any(), any(), any());
+
+        clientSubscriptionService.persistPendingSnapshot("clientId1");
+
+        ClientSubscriptionsChange snapshot = captureChange("clientId1");
+        assertFalse(snapshot.isDelta());
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(Set.of(getTopicSubscription("topic1"), getTopicSubscription("topic11")), snapshot.getTopicSubscriptions());
+    }
+
+    @Test
+    public void givenDeltaFromOtherNodeFollowedBySnapshot_whenClientReconnects_thenNothingIsPersisted() {
+        clientSubscriptionService.setSubscriptionsVersion("clientId1", 1, true);
+        clientSubscriptionService.setSubscriptionsVersion("clientId1", 2, false);
+
+        clientSubscriptionService.persistPendingSnapshot("clientId1");
+
+        verify(subscriptionPersistenceService, never()).persistClientSubscriptionsChangeAsync(any(), any(), any());
+    }
+
+    @Test
+    public void givenStaleDeltaFromOtherNode_whenPersistPendingSnapshots_thenSnapshotIsPersisted() {
+        clientSubscriptionService.setTrailingDeltaSnapshotDelayMs(0);
+        clientSubscriptionService.setSubscriptionsVersion("clientId1", 3, true);
+
+        clientSubscriptionService.persistPendingSnapshots();
+        clientSubscriptionService.persistPendingSnapshots();
+
+        ClientSubscriptionsChange snapshot = captureChange("clientId1");
+        assertFalse(snapshot.isDelta());
+        assertEquals(4, snapshot.getVersion());
+    }
+
+    @Test
+    public void givenClientsMarkedWithTrailingDeltas_whenPersistPendingSnapshots_thenOnlyStaleOnesArePersisted() {
+        clientSubscriptionService.markTrailingDeltas(List.of("clientId1", "clientId2"));
+
+        clientSubscriptionService.persistPendingSnapshots();
+        verify(subscriptionPersistenceService, never()).persistClientSubscriptionsChangeAsync(any(), any(), any());
+
+        clientSubscriptionService.setTrailingDeltaSnapshotDelayMs(0);
+        clientSubscriptionService.persistPendingSnapshots();
+
+        assertFalse(captureChange("clientId1").isDelta());
+        assertFalse(captureChange("clientId2").isDelta());
     }
 
     @Test
@@ -146,6 +323,12 @@ public class ClientSubscriptionServiceImplTest {
         assertThat(clientSubscriptionsCount).isEqualTo(7);
     }
 
+    private ClientSubscriptionsChange captureChange(String clientId) {
+        ArgumentCaptor<ClientSubscriptionsChange> changeCaptor = ArgumentCaptor.forClass(ClientSubscriptionsChange.class);
+        verify(subscriptionPersistenceService, times(1)).persistClientSubscriptionsChangeAsync(eq(clientId), changeCaptor.capture(), any());
+        return changeCaptor.getValue();
+    }
+
     private Set<TopicSubscription> getAndVerifyClientSubscriptionsForClient(String clientId, int expected) {
         Set<TopicSubscription> clientSubscriptions = clientSubscriptionService.getClientSubscriptions(clientId);
         assertEquals(expected, clientSubscriptions.size());
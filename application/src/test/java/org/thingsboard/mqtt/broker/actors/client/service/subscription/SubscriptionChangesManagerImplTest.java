@@ -21,6 +21,7 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.mqtt.broker.actors.client.messages.SubscriptionChangedEventMsg;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.Collection;
@@ -55,10 +56,10 @@ public class SubscriptionChangesManagerImplTest {
                 getTopic("topic3", 2));
         doReturn(currentTopicSubscriptions).when(clientSubscriptionService).getClientSubscriptions("clientId");
 
-        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(Set.of(
+        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(ClientSubscriptionsChange.snapshot(1, Set.of(
                 getTopic("topic2", 2),
                 getTopic("topic3", 2),
-                getTopic("topic4", 1)));
+                getTopic("topic4", 1))));
         subscriptionChangesManager.processSubscriptionChangedEvent("clientId", msg);
 
         verify(clientSubscriptionService, never()).clearSubscriptionsInternally(any());
@@ -76,6 +77,7 @@ public class SubscriptionChangesManagerImplTest {
                         new TopicSubscription("topic2", 2),
                         new TopicSubscription("topic4", 1)),
                 subscribeTopics);
+        verify(clientSubscriptionService, times(1)).setSubscriptionsVersion("clientId", 1, false);
     }
 
     @Test
@@ -83,7 +85,7 @@ public class SubscriptionChangesManagerImplTest {
         Set<TopicSubscription> currentTopicSubscriptions = Set.of(getTopic("topic1", 0));
         doReturn(currentTopicSubscriptions).when(clientSubscriptionService).getClientSubscriptions("clientId");
 
-        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(Set.of());
+        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(ClientSubscriptionsChange.snapshot(0, Set.of()));
         subscriptionChangesManager.processSubscriptionChangedEvent("clientId", msg);
 
         verify(clientSubscriptionService, times(1)).clearSubscriptionsInternally("clientId");
@@ -91,6 +93,32 @@ public class SubscriptionChangesManagerImplTest {
         verify(clientSubscriptionService, never()).subscribeInternally(any(), any());
     }
 
+    @Test
+    public void givenDelta_whenProcessSubscriptionChangedEvent_thenOnlyChangedTopicsAreUpdated() {
+        doReturn(3L).when(clientSubscriptionService).getSubscriptionsVersion("clientId");
+
+        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(ClientSubscriptionsChange.delta(4,
+                Set.of(getTopic("topic4", 1)),
+                Set.of("topic1")));
+        subscriptionChangesManager.processSubscriptionChangedEvent("clientId", msg);
+
+        verify(clientSubscriptionService, never()).getClientSubscriptions(any());
+        verify(clientSubscriptionService, times(1)).unsubscribeInternally("clientId", Set.of("topic1"));
+        verify(clientSubscriptionService, times(1)).subscribeInternally("clientId", Set.of(getTopic("topic4", 1)));
+        verify(clientSubscriptionService, times(1)).setSubscriptionsVersion("clientId", 4, true);
+    }
+
+    @Test
+    public void givenDeltaWithAddedTopicsOnly_whenProcessSubscriptionChangedEvent_thenNothingIsUnsubscribed() {
+        SubscriptionChangedEventMsg msg = new SubscriptionChangedEventMsg(ClientSubscriptionsChange.delta(1,
+                Set.of(getTopic("topic1", 0)),
+                Set.of()));
+        subscriptionChangesManager.processSubscriptionChangedEvent("clientId", msg);
+
+        verify(clientSubscriptionService, never()).unsubscribeInternally(any(), any());
+        verify(clientSubscriptionService, times(1)).subscribeInternally("clientId", Set.of(getTopic("topic1", 0)));
+    }
+
     private TopicSubscription getTopic(String topic, int qos) {
         return new TopicSubscription(topic, qos);
     }
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.actors.device;
+
+import com.google.common.util.concurrent.Futures;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.actors.ActorSystemContext;
+import org.thingsboard.mqtt.broker.actors.device.messages.DeviceConnectedEventMsg;
+import org.thingsboard.mqtt.broker.actors.device.messages.IncomingPublishMsg;
+import org.thingsboard.mqtt.broker.common.data.DevicePublishMsg;
+import org.thingsboard.mqtt.broker.common.data.PersistedPacketType;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
+import org.thingsboard.mqtt.broker.dao.client.device.DevicePacketIdAndSerialNumberService;
+import org.thingsboard.mqtt.broker.dao.client.device.DeviceSessionCtxService;
+import org.thingsboard.mqtt.broker.dao.messages.DeviceMsgService;
+import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PersistedDeviceActorMessageProcessorTest {
+
+    private static final String CLIENT_ID = "device";
+    private static final long EXPIRED_MSG_TIME = 1000L;
+
+    @Mock
+    ActorSystemContext systemContext;
+    @Mock
+    DeviceMsgService deviceMsgService;
+    @Mock
+    DeviceSessionCtxService deviceSessionCtxService;
+    @Mock
+    DevicePacketIdAndSerialNumberService serialNumberService;
+    @Mock
+    PublishMsgDeliveryService publishMsgDeliveryService;
+    @Mock
+    MsgExpiryService msgExpiryService;
+    @Mock
+    ClientMqttActorManager clientMqttActorManager;
+    @Mock
+    ClientLogger clientLogger;
+    @Mock
+    DeviceActorConfiguration deviceActorConfiguration;
+    @Mock
+    ClientSessionCtx sessionCtx;
+
+    PersistedDeviceActorMessageProcessor processor;
+
+    @Before
+    public void setUp() {
+        when(systemContext.getDeviceMsgService()).thenReturn(deviceMsgService);
+        when(systemContext.getDeviceSessionCtxService()).thenReturn(deviceSessionCtxService);
+        when(systemContext.getSerialNumberService()).thenReturn(serialNumberService);
+        when(systemContext.getPublishMsgDeliveryService()).thenReturn(publishMsgDeliveryService);
+        when(systemContext.getMsgExpiryService()).thenReturn(msgExpiryService);
+        when(systemContext.getClientMqttActorManager()).thenReturn(clientMqttActorManager);
+        when(systemContext.getClientLogger()).thenReturn(clientLogger);
+        when(systemContext.getDeviceActorConfiguration()).thenReturn(deviceActorConfiguration);
+        processor = new PersistedDeviceActorMessageProcessor(systemContext, CLIENT_ID);
+    }
+
+    @Test
+    public void givenExpiredPersistedMsg_whenDeviceConnects_thenExpiredMsgRemovedAndOnlyValidMsgDelivered() {
+        long now = System.currentTimeMillis();
+        DevicePublishMsg expiredMsg = newDevicePublishMsg("test/expired", 1, 0L, EXPIRED_MSG_TIME);
+        DevicePublishMsg validMsg = newDevicePublishMsg("test/valid", 2, 1L, now);
+        when(deviceMsgService.findPersistedMessages(CLIENT_ID)).thenReturn(List.of(expiredMsg, validMsg));
+        when(msgExpiryService.isExpired(CLIENT_ID, EXPIRED_MSG_TIME, 10)).thenReturn(true);
+        when(msgExpiryService.isExpired(CLIENT_ID, now, 10)).thenReturn(false);
+        when(deviceMsgService.tryRemovePersistedMessage(CLIENT_ID, 1)).thenReturn(Futures.immediateFuture(null));
+
+        processor.processDeviceConnect(new DeviceConnectedEventMsg(sessionCtx));
+
+        ArgumentCaptor<PublishMsg> publishMsgCaptor = ArgumentCaptor.forClass(PublishMsg.class);
+        verify(publishMsgDeliveryService, times(1)).sendPublishMsgToClient(eq(sessionCtx), publishMsgCaptor.capture());
+        assertEquals("test/valid", publishMsgCaptor.getValue().getTopicName());
+        verify(deviceMsgService, times(1)).tryRemovePersistedMessage(CLIENT_ID, 1);
+        verify(deviceMsgService, never()).tryRemovePersistedMessage(CLIENT_ID, 2);
+    }
+
+    @Test
+    public void givenExpiredPersistedMsg_whenDeviceConnects_thenLaterIncomingCopyIgnored() {
+        DevicePublishMsg expiredMsg = newDevicePublishMsg("test/expired", 1, 0L, EXPIRED_MSG_TIME);
+        when(deviceMsgService.findPersistedMessages(CLIENT_ID)).thenReturn(List.of(expiredMsg));
+        when(msgExpiryService.isExpired(CLIENT_ID, EXPIRED_MSG_TIME, 10)).thenReturn(true);
+        when(deviceMsgService.tryRemovePersistedMessage(CLIENT_ID, 1)).thenReturn(Futures.immediateFuture(null));
+
+        processor.processDeviceConnect(new DeviceConnectedEventMsg(sessionCtx));
+        processor.process(new IncomingPublishMsg(expiredMsg));
+
+        verify(msgExpiryService, times(1)).isExpired(any(), anyLong(), any());
+        verify(publishMsgDeliveryService, never()).sendPublishMsgToClient(any(), any());
+    }
+
+    @Test
+    public void givenExpiredIncomingMsg_whenProcess_thenMsgRemovedAndNotDelivered() {
+        DevicePublishMsg expiredMsg = newDevicePublishMsg("test/expired", 1, 0L, EXPIRED_MSG_TIME);
+        when(msgExpiryService.isExpired(CLIENT_ID, EXPIRED_MSG_TIME, 10)).thenReturn(true);
+        when(deviceMsgService.tryRemovePersistedMessage(CLIENT_ID, 1)).thenReturn(Futures.immediateFuture(null));
+
+        processor.process(new IncomingPublishMsg(expiredMsg));
+
+        verify(publishMsgDeliveryService, never()).sendPublishMsgToClient(any(), any());
+        verify(deviceMsgService, times(1)).tryRemovePersistedMessage(CLIENT_ID, 1);
+    }
+
+    @Test
+    public void givenMsgInFlight_whenRedeliveredAfterExpiry_thenMsgDeliveredAsDup() {
+        DevicePublishMsg msg = newDevicePublishMsg("test/in-flight", 1, 0L, EXPIRED_MSG_TIME);
+        when(msgExpiryService.isExpired(CLIENT_ID, EXPIRED_MSG_TIME, 10)).thenReturn(false);
+        when(deviceMsgService.findPersistedMessages(CLIENT_ID)).thenReturn(List.of(msg));
+
+        processor.process(new IncomingPublishMsg(msg));
+        processor.processDeviceConnect(new DeviceConnectedEventMsg(sessionCtx));
+
+        ArgumentCaptor<PublishMsg> publishMsgCaptor = ArgumentCaptor.forClass(PublishMsg.class);
+        verify(publishMsgDeliveryService, times(2)).sendPublishMsgToClient(any(), publishMsgCaptor.capture());
+        PublishMsg redeliveredMsg = publishMsgCaptor.getAllValues().get(1);
+        assertTrue(redeliveredMsg.isDup());
+        assertEquals(Integer.valueOf(0), MqttPropertiesUtil.getMsgExpiryInterval(redeliveredMsg.getProperties()));
+        verify(msgExpiryService, times(1)).isExpired(any(), anyLong(), any());
+        verify(deviceMsgService, never()).tryRemovePersistedMessage(any(), anyInt());
+    }
+
+    private DevicePublishMsg newDevicePublishMsg(String topic, int packetId, long serialNumber, long time) {
+        MqttProperties properties = new MqttProperties();
+        MqttPropertiesUtil.setMsgExpiryInterval(properties, 10);
+        return DevicePublishMsg.builder()
+                .clientId(CLIENT_ID)
+                .topic(topic)
+                .serialNumber(serialNumber)
+                .time(time)
+                .qos(1)
+                .packetId(packetId)
+                .packetType(PersistedPacketType.PUBLISH)
+                .payload(topic.getBytes(StandardCharsets.UTF_8))
+                .properties(properties)
+                .build();
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.mqtt.broker.adaptor;
 
+import io.netty.handler.codec.mqtt.MqttProperties;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -62,4 +63,21 @@ public class NettyMqttConverterTest {
         String topicName = NettyMqttConverter.getTopicName(SHARED_SUBSCRIBER_GROUP_TOPIC_NAME_SUFFIX);
         Assert.assertEquals(SHARED_SUBSCRIBER_GROUP_TOPIC_NAME_SUFFIX, topicName);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetShareWeight() {
+        Assert.assertEquals(0, NettyMqttConverter.getShareWeight(MqttProperties.NO_PROPERTIES));
+        Assert.assertEquals(3, NettyMqttConverter.getShareWeight(newUserProperties(BrokerConstants.SHARE_WEIGHT_USER_PROPERTY, "3")));
+        Assert.assertEquals(0, NettyMqttConverter.getShareWeight(newUserProperties(BrokerConstants.SHARE_WEIGHT_USER_PROPERTY, "abc")));
+        Assert.assertEquals(0, NettyMqttConverter.getShareWeight(newUserProperties(BrokerConstants.SHARE_WEIGHT_USER_PROPERTY, "-2")));
+        Assert.assertEquals(0, NettyMqttConverter.getShareWeight(newUserProperties("other", "3")));
+    }
+
+    private MqttProperties newUserProperties(String key, String value) {
+        MqttProperties.UserProperties userProperties = new MqttProperties.UserProperties();
+        userProperties.add(key, value);
+        MqttProperties properties = new MqttProperties();
+        properties.add(userProperties);
+        return properties;
+    }
+}
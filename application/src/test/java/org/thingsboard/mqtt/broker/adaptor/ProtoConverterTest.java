@@ -25,6 +25,7 @@ import org.thingsboard.mqtt.broker.common.data.ConnectionInfo;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionsChange;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
 import java.util.Set;
@@ -134,4 +135,31 @@ public class ProtoConverterTest {
 
         assertEquals(input, output);
     }
+
+    @Test
+    public void givenSubscriptionsDelta_whenConvertToProtoAndBack_thenOk() {
+        ClientSubscriptionsChange input = ClientSubscriptionsChange.delta(7,
+                Set.of(new TopicSubscription("topic1", 1)),
+                Set.of("topic2", "topic3"));
+
+        ClientSubscriptionsChange output = ProtoConverter.convertToClientSubscriptionsChange(
+                ProtoConverter.convertToClientSubscriptionsProto(input));
+
+        Assert.assertTrue(output.isDelta());
+        assertEquals(7, output.getVersion());
+        assertEquals(input.getTopicSubscriptions(), output.getTopicSubscriptions());
+        assertEquals(input.getRemovedTopicFilters(), output.getRemovedTopicFilters());
+    }
+
+    @Test
+    public void givenSubscriptionsWithoutVersion_whenConvertToChange_thenSnapshot() {
+        Set<TopicSubscription> input = Set.of(new TopicSubscription("topic1", 1));
+
+        ClientSubscriptionsChange output = ProtoConverter.convertToClientSubscriptionsChange(
+                ProtoConverter.convertToClientSubscriptionsProto(input));
+
+        Assert.assertFalse(output.isDelta());
+        assertEquals(0, output.getVersion());
+        assertEquals(input, output.getTopicSubscriptions());
+    }
 }
@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttConnectMessage;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.handler.codec.mqtt.MqttVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MqttTopicAliasHandlerTest {
+
+    private static final String TOPIC_1 = "tenant/site/building/floor/device-0000001/telemetry/v2";
+    private static final String TOPIC_2 = "tenant/site/building/floor/device-0000002/telemetry/v2";
+    private static final String TOPIC_3 = "tenant/site/building/floor/device-0000003/telemetry/v2";
+
+    EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new MqttTopicAliasHandler(2));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void givenNoTopicAliasMaximum_whenWritePublish_thenTopicSentInFull() {
+        connect(null);
+
+        MqttPublishMessage msg = writePublish(TOPIC_1);
+
+        assertEquals(TOPIC_1, msg.variableHeader().topicName());
+        assertNull(getTopicAlias(msg));
+        msg.release();
+    }
+
+    @Test
+    public void givenTopicAliasMaximum_whenWriteSameTopicTwice_thenSecondPublishCarriesAliasOnly() {
+        connect(10);
+
+        MqttPublishMessage first = writePublish(TOPIC_1);
+        MqttPublishMessage second = writePublish(TOPIC_1);
+
+        assertEquals(TOPIC_1, first.variableHeader().topicName());
+        assertEquals(Integer.valueOf(1), getTopicAlias(first));
+        assertEquals("", second.variableHeader().topicName());
+        assertEquals(Integer.valueOf(1), getTopicAlias(second));
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void givenAllAliasesTaken_whenWriteNewTopic_thenLeastRecentlyUsedAliasReassigned() {
+        connect(10);
+
+        writePublish(TOPIC_1).release();
+        writePublish(TOPIC_2).release();
+        writePublish(TOPIC_1).release();
+
+        // capped by the broker limit of 2, TOPIC_2 is the least recently used one
+        MqttPublishMessage third = writePublish(TOPIC_3);
+        assertEquals(TOPIC_3, third.variableHeader().topicName());
+        assertEquals(Integer.valueOf(2), getTopicAlias(third));
+        third.release();
+
+        MqttPublishMessage first = writePublish(TOPIC_1);
+        assertEquals("", first.variableHeader().topicName());
+        assertEquals(Integer.valueOf(1), getTopicAlias(first));
+        first.release();
+
+        MqttPublishMessage second = writePublish(TOPIC_2);
+        assertEquals(TOPIC_2, second.variableHeader().topicName());
+        assertEquals(Integer.valueOf(2), getTopicAlias(second));
+        second.release();
+    }
+
+    @Test
+    public void givenPublisherTopicAlias_whenWritePublish_thenPublisherAliasNotForwarded() {
+        connect(null);
+
+        MqttProperties properties = new MqttProperties();
+        properties.add(new MqttProperties.IntegerProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value(), 5));
+        MqttPublishMessage msg = writePublish(TOPIC_1, properties);
+
+        assertEquals(TOPIC_1, msg.variableHeader().topicName());
+        assertNull(getTopicAlias(msg));
+        msg.release();
+    }
+
+    private void connect(Integer topicAliasMaximum) {
+        MqttProperties properties = new MqttProperties();
+        if (topicAliasMaximum != null) {
+            properties.add(new MqttProperties.IntegerProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS_MAXIMUM.value(), topicAliasMaximum));
+        }
+        MqttConnectMessage connectMessage = MqttMessageBuilders.connect()
+                .clientId("test")
+                .protocolVersion(MqttVersion.MQTT_5)
+                .properties(properties)
+                .build();
+        channel.writeInbound(connectMessage);
+        assertEquals(connectMessage, channel.readInbound());
+    }
+
+    private MqttPublishMessage writePublish(String topic) {
+        return writePublish(topic, MqttProperties.NO_PROPERTIES);
+    }
+
+    private MqttPublishMessage writePublish(String topic, MqttProperties properties) {
+        MqttPublishMessage msg = MqttMessageBuilders.publish()
+                .topicName(topic)
+                .qos(MqttQoS.AT_MOST_ONCE)
+                .properties(properties)
+                .payload(Unpooled.wrappedBuffer(new byte[]{1, 2, 3}))
+                .build();
+        channel.writeOutbound(msg);
+        return channel.readOutbound();
+    }
+
+    private Integer getTopicAlias(MqttPublishMessage msg) {
+        MqttProperties.MqttProperty<?> property = msg.variableHeader().properties()
+                .getProperty(MqttProperties.MqttPropertyType.TOPIC_ALIAS.value());
+        return property == null ? null : (Integer) property.value();
+    }
+}
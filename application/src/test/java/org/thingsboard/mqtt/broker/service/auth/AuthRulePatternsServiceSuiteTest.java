@@ -38,13 +38,11 @@ import java.util.stream.Collectors;
 @RunWith(MockitoJUnitRunner.class)
 public class AuthRulePatternsServiceSuiteTest {
 
-    private static final String CLIENT_ID = "clientId";
-
     private DefaultAuthorizationRuleService authorizationRuleService;
 
     @Before
     public void init() {
-        this.authorizationRuleService = new DefaultAuthorizationRuleService();
+        this.authorizationRuleService = new DefaultAuthorizationRuleService(100, 1000);
     }
 
     /*
@@ -150,12 +148,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("2/.*")))
         );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -164,12 +162,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -178,11 +176,11 @@ public class AuthRulePatternsServiceSuiteTest {
                 AuthRulePatterns.newInstance(Collections.emptyList()),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -191,12 +189,12 @@ public class AuthRulePatternsServiceSuiteTest {
                 new AuthRulePatterns(List.of(Pattern.compile("2/.*")), List.of(Pattern.compile("1/.*"))),
                 AuthRulePatterns.newInstance(Collections.emptyList())
         );
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("1/", authRulePatterns));
         Assert.assertTrue(authorizationRuleService.isSubAuthorized("1/123", authRulePatterns));
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "2/", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("2/", authRulePatterns));
         Assert.assertFalse(authorizationRuleService.isSubAuthorized("2/123", authRulePatterns));
 
-        Assert.assertFalse(authorizationRuleService.isPubAuthorized(CLIENT_ID, "3/123", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("3/123", authRulePatterns));
     }
 
     @Test
@@ -215,17 +213,66 @@ public class AuthRulePatternsServiceSuiteTest {
     }
 
     @Test
-    public void testPubAuthAndEvict() {
-        List<AuthRulePatterns> authRulePatterns = List.of(
-                AuthRulePatterns.newInstance(List.of(Pattern.compile(".*")))
-        );
-        Assert.assertTrue(authorizationRuleService.isPubAuthorized(CLIENT_ID, "1/", authRulePatterns));
+    public void testCombinedPatternsMatchEachRule() {
+        AuthRulePatterns authRulePatterns = new AuthRulePatterns(
+                List.of(Pattern.compile("1/.*"), Pattern.compile("2/[a-z]+"), Pattern.compile("(a|b)/c")),
+                List.of(Pattern.compile("(x)/\\1"), Pattern.compile("y/.*")));
 
-        Assert.assertEquals(1, authorizationRuleService.getPublishAuthMap().size());
-        Assert.assertTrue(authorizationRuleService.getPublishAuthMap().get(CLIENT_ID).get("1/"));
+        Assert.assertTrue(authRulePatterns.isPubAllowed("1/123"));
+        Assert.assertTrue(authRulePatterns.isPubAllowed("2/abc"));
+        Assert.assertTrue(authRulePatterns.isPubAllowed("b/c"));
+        Assert.assertFalse(authRulePatterns.isPubAllowed("2/123"));
+        Assert.assertFalse(authRulePatterns.isPubAllowed("a/c/1/"));
+
+        Assert.assertTrue(authRulePatterns.isSubAllowed("x/x"));
+        Assert.assertTrue(authRulePatterns.isSubAllowed("y/1"));
+        Assert.assertFalse(authRulePatterns.isSubAllowed("x/y"));
+    }
 
-        authorizationRuleService.evict(CLIENT_ID);
+    @Test
+    public void testCompiledRulesSharedBetweenClientsWithSameCredentials() throws AuthenticationException {
+        AuthRulePatterns first = authorizationRuleService.parseBasicAuthorizationRule(
+                BasicMqttCredentials.newInstance("client1", "test", null, List.of("test/.*")));
+        AuthRulePatterns second = authorizationRuleService.parseBasicAuthorizationRule(
+                BasicMqttCredentials.newInstance("client2", "test", null, List.of("test/.*")));
+        Assert.assertSame(first, second);
+
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("test/1", List.of(first)));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("test/1", List.of(second)));
+        Assert.assertTrue(authorizationRuleService.isSubAuthorized("test/1", List.of(second)));
+        Assert.assertEquals(2, authorizationRuleService.getAuthDecisionCache().asMap().size());
+
+        AuthRulePatterns other = authorizationRuleService.parseBasicAuthorizationRule(
+                BasicMqttCredentials.newInstance("client3", "test", null, List.of("other/.*")));
+        Assert.assertNotSame(first, other);
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("test/1", List.of(other)));
+        Assert.assertEquals(3, authorizationRuleService.getAuthDecisionCache().asMap().size());
+    }
 
-        Assert.assertEquals(0, authorizationRuleService.getPublishAuthMap().size());
+    @Test
+    public void testMultipleSslRulesMergedIntoOnePattern() throws AuthenticationException {
+        SslMqttCredentials sslMqttCredentials = new SslMqttCredentials("parent.com", Map.of(
+                ".*abc.*", new PubSubAuthorizationRules(List.of("1/.*"), List.of("2/.*")),
+                ".*123.*", new PubSubAuthorizationRules(List.of("3/.*"), null)
+        ));
+        List<AuthRulePatterns> authRulePatterns = authorizationRuleService.parseSslAuthorizationRule(sslMqttCredentials, "abc-123");
+        Assert.assertEquals(1, authRulePatterns.size());
+
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("1/a", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isPubAuthorized("3/a", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isPubAuthorized("2/a", authRulePatterns));
+        Assert.assertTrue(authorizationRuleService.isSubAuthorized("2/a", authRulePatterns));
+        Assert.assertFalse(authorizationRuleService.isSubAuthorized("3/a", authRulePatterns));
+    }
+
+    @Test
+    public void testDecisionCacheIsBounded() {
+        DefaultAuthorizationRuleService service = new DefaultAuthorizationRuleService(10, 10);
+        List<AuthRulePatterns> authRulePatterns = List.of(AuthRulePatterns.newInstance(List.of(Pattern.compile(".*"))));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(service.isPubAuthorized("topic/" + i, authRulePatterns));
+        }
+        service.getAuthDecisionCache().cleanUp();
+        Assert.assertTrue(service.getAuthDecisionCache().estimatedSize() <= 10);
     }
 }
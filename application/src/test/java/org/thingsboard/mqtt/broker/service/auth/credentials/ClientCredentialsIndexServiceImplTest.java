@@ -0,0 +1,245 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.auth.credentials;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.common.data.page.PageData;
+import org.thingsboard.mqtt.broker.common.data.security.ClientCredentialsType;
+import org.thingsboard.mqtt.broker.common.data.security.MqttClientCredentials;
+import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
+import org.thingsboard.mqtt.broker.dao.client.MqttClientCredentialsService;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.queue.TbQueueProducer;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.provider.ClientCredentialsQueueFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.mqtt.broker.util.BytesUtil.bytesToString;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClientCredentialsIndexServiceImplTest {
+
+    private static final String CREDENTIALS_ID = "basic|client";
+    private static final long RETRY_DELAY_MS = 20;
+
+    // all messages published to the client credentials topic, in order
+    private final List<TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto>> topic = Collections.synchronizedList(new ArrayList<>());
+
+    private MqttClientCredentials storedCredentials;
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @Before
+    public void setUp() throws Exception {
+        storedCredentials = newCredentials(UUID.randomUUID(), CREDENTIALS_ID, "v1");
+        nodeA = new Node("node-a", true);
+        nodeB = new Node("node-b", true);
+    }
+
+    @Test
+    public void givenUpdateOnOneNode_whenDelivered_thenOtherNodeServesNewCredentialsWithoutDb() {
+        Assert.assertEquals("v1", nodeB.findValue(CREDENTIALS_ID));
+
+        MqttClientCredentials updated = newCredentials(storedCredentials.getId(), CREDENTIALS_ID, "v2");
+        nodeA.service.onCredentialsSaved(updated);
+
+        Assert.assertEquals("v2", nodeA.findValue(CREDENTIALS_ID));
+        Assert.assertEquals("v1", nodeB.findValue(CREDENTIALS_ID));
+
+        deliverTopic();
+
+        Assert.assertEquals("v2", nodeB.findValue(CREDENTIALS_ID));
+        verify(nodeA.clientCredentialsService, never()).findMatchingCredentials(any());
+        verify(nodeB.clientCredentialsService, never()).findMatchingCredentials(any());
+    }
+
+    @Test
+    public void givenCredentialsIdChangeAndDelete_whenDelivered_thenOtherNodeDropsOldKeys() {
+        MqttClientCredentials renamed = newCredentials(storedCredentials.getId(), "basic|renamed", "v1");
+        nodeA.service.onCredentialsSaved(renamed);
+        deliverTopic();
+
+        Assert.assertNull(nodeB.findValue(CREDENTIALS_ID));
+        Assert.assertEquals("v1", nodeB.findValue("basic|renamed"));
+
+        nodeA.service.onCredentialsDeleted(renamed);
+        deliverTopic();
+
+        Assert.assertNull(nodeA.findValue("basic|renamed"));
+        Assert.assertNull(nodeB.findValue("basic|renamed"));
+    }
+
+    @Test
+    public void givenCredentialsUnknownToDeletingNode_whenDeleted_thenTombstoneIsStillPublished() {
+        MqttClientCredentials created = newCredentials(UUID.randomUUID(), "basic|remote", "v1");
+        nodeA.service.onCredentialsSaved(created);
+        // the creation is not delivered to node B, so its index has no mapping for the deleted credentials
+        topic.clear();
+
+        nodeB.service.onCredentialsDeleted(created);
+        deliverTopic();
+
+        Assert.assertNull(nodeA.findValue("basic|remote"));
+        Assert.assertNull(nodeB.findValue("basic|remote"));
+    }
+
+    @Test
+    public void givenFailedDeletePublish_whenRetried_thenOtherNodeDropsRevokedCredentials() {
+        nodeA.producer.failuresLeft.set(2);
+
+        nodeA.service.onCredentialsDeleted(storedCredentials);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> topic.size() == 1);
+        deliverTopic();
+        Assert.assertNull(nodeA.findValue(CREDENTIALS_ID));
+        Assert.assertNull(nodeB.findValue(CREDENTIALS_ID));
+    }
+
+    @Test
+    public void givenFailedPublishAndNewerChange_whenRetryIsDue_thenStaleChangeIsNotPublished() {
+        nodeA.producer.failuresLeft.set(1);
+        nodeA.service.onCredentialsDeleted(storedCredentials);
+
+        MqttClientCredentials recreated = newCredentials(storedCredentials.getId(), CREDENTIALS_ID, "v2");
+        nodeA.service.onCredentialsSaved(recreated);
+
+        await().pollDelay(RETRY_DELAY_MS * 4, TimeUnit.MILLISECONDS).atMost(5, TimeUnit.SECONDS)
+                .untilAsserted(() -> Assert.assertEquals(1, topic.size()));
+        deliverTopic();
+        Assert.assertEquals("v2", nodeB.findValue(CREDENTIALS_ID));
+    }
+
+    @Test
+    public void givenNewCredentialsOnOneNode_whenDelivered_thenOtherNodeAuthenticatesThem() {
+        MqttClientCredentials created = newCredentials(UUID.randomUUID(), "basic|new", "v1");
+        nodeB.service.onCredentialsSaved(created);
+        Assert.assertNull(nodeA.findValue("basic|new"));
+
+        deliverTopic();
+
+        Assert.assertEquals("v1", nodeA.findValue("basic|new"));
+        Assert.assertEquals("v1", nodeA.findValue(CREDENTIALS_ID));
+    }
+
+    @Test
+    public void givenIndexDisabled_whenFindMatchingCredentials_thenDbIsUsed() throws Exception {
+        Node node = new Node("node-c", false);
+        when(node.clientCredentialsService.findMatchingCredentials(any())).thenReturn(List.of(storedCredentials));
+
+        Assert.assertEquals(List.of(storedCredentials), node.service.findMatchingCredentials(List.of(CREDENTIALS_ID)));
+        verify(node.clientCredentialsService).findMatchingCredentials(List.of(CREDENTIALS_ID));
+        verify(node.queueFactory, never()).createProducer();
+    }
+
+    private void deliverTopic() {
+        List<TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto>> messages = new ArrayList<>(topic);
+        topic.clear();
+        for (TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto> msg : messages) {
+            String serviceId = bytesToString(msg.getHeaders().get(BrokerConstants.SERVICE_ID_HEADER));
+            MqttClientCredentials credentials = msg.getValue().getCredentialsId().isEmpty() ? null :
+                    ProtoConverter.convertToMqttClientCredentials(msg.getValue());
+            nodeA.service.processCredentialsUpdate(msg.getKey(), serviceId, credentials);
+            nodeB.service.processCredentialsUpdate(msg.getKey(), serviceId, credentials);
+        }
+    }
+
+    private MqttClientCredentials newCredentials(UUID id, String credentialsId, String value) {
+        MqttClientCredentials credentials = new MqttClientCredentials(id);
+        credentials.setCreatedTime(1L);
+        credentials.setCredentialsId(credentialsId);
+        credentials.setName("test");
+        credentials.setClientType(ClientType.DEVICE);
+        credentials.setCredentialsType(ClientCredentialsType.MQTT_BASIC);
+        credentials.setCredentialsValue(value);
+        return credentials;
+    }
+
+    private class Node {
+        private final MqttClientCredentialsService clientCredentialsService = mock(MqttClientCredentialsService.class);
+        private final ClientCredentialsQueueFactory queueFactory = mock(ClientCredentialsQueueFactory.class);
+        private final TopicProducer producer = new TopicProducer();
+        private final ClientCredentialsIndexServiceImpl service;
+
+        Node(String serviceId, boolean enabled) throws Exception {
+            ServiceInfoProvider serviceInfoProvider = mock(ServiceInfoProvider.class);
+            ClientCredentialsConsumer consumer = mock(ClientCredentialsConsumer.class);
+            if (enabled) {
+                when(queueFactory.createProducer()).thenReturn(producer);
+                when(serviceInfoProvider.getServiceId()).thenReturn(serviceId);
+                when(clientCredentialsService.getFullCredentials(any()))
+                        .thenReturn(new PageData<>(List.of(storedCredentials), 1, 1, false));
+                when(consumer.initLoad()).thenReturn(Collections.emptyMap());
+            }
+            service = new ClientCredentialsIndexServiceImpl(clientCredentialsService, queueFactory, serviceInfoProvider, enabled, RETRY_DELAY_MS);
+            service.init(consumer);
+        }
+
+        String findValue(String credentialsId) {
+            List<MqttClientCredentials> credentials = service.findMatchingCredentials(List.of(credentialsId));
+            return credentials.isEmpty() ? null : credentials.get(0).getCredentialsValue();
+        }
+    }
+
+    private class TopicProducer implements TbQueueProducer<TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto>> {
+
+        private final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public String getDefaultTopic() {
+            return "tbmq.client.credentials";
+        }
+
+        @Override
+        public void send(TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto> msg, TbQueueCallback callback) {
+            if (failuresLeft.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+                callback.onFailure(new RuntimeException("Failed to send"));
+                return;
+            }
+            topic.add(msg);
+            callback.onSuccess(null);
+        }
+
+        @Override
+        public void send(String topicName, Integer partition, TbProtoQueueMsg<QueueProtos.MqttClientCredentialsProto> msg, TbQueueCallback callback) {
+            send(msg, callback);
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
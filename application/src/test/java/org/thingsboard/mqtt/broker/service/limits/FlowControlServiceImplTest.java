@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlowControlServiceImplTest {
+
+    @Mock
+    ClientMqttActorManager clientMqttActorManager;
+    @Mock
+    StatsManager statsManager;
+    @Mock
+    TbMessageStatsReportClient tbMessageStatsReportClient;
+
+    AtomicLong delayedMsgsCounter;
+    AtomicLong disconnectsCounter;
+    FlowControlServiceImpl flowControlService;
+
+    EmbeddedChannel channel;
+    ClientSessionCtx sessionCtx;
+    List<MqttPublishMessage> sentMsgs;
+
+    @Before
+    public void setUp() {
+        delayedMsgsCounter = new AtomicLong();
+        disconnectsCounter = new AtomicLong();
+        when(statsManager.createReceiveMaxDelayedMsgsCounter()).thenReturn(delayedMsgsCounter);
+        when(statsManager.createReceiveMaxDisconnectsCounter()).thenReturn(disconnectsCounter);
+        flowControlService = new FlowControlServiceImpl(clientMqttActorManager, statsManager, tbMessageStatsReportClient);
+        flowControlService.setEnabled(true);
+        flowControlService.setMaxPendingMsgs(10);
+
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        sessionCtx = new ClientSessionCtx(UUID.randomUUID(), null, 100);
+        sessionCtx.setChannel(channel.pipeline().firstContext());
+        sessionCtx.setReceiveMaximum(2);
+        sentMsgs = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        sentMsgs.forEach(MqttPublishMessage::release);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void givenQuotaAvailable_whenSendPublish_thenMsgSentRightAway() {
+        flowControlService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.AT_LEAST_ONCE), sentMsgs::add);
+        flowControlService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.EXACTLY_ONCE), sentMsgs::add);
+
+        assertEquals(2, sentMsgs.size());
+        assertEquals(2, sessionCtx.getInFlightOutboundMsgs());
+        assertEquals(0, delayedMsgsCounter.get());
+    }
+
+    @Test
+    public void givenReceiveMaximumReached_whenSendQoS0Publish_thenMsgSentRightAway() {
+        sendUntilQuotaReached();
+
+        flowControlService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.AT_MOST_ONCE), sentMsgs::add);
+
+        assertEquals(3, sentMsgs.size());
+        assertEquals(2, sessionCtx.getInFlightOutboundMsgs());
+        assertEquals(0, delayedMsgsCounter.get());
+    }
+
+    @Test
+    public void givenReceiveMaximumReached_whenMsgsAcknowledged_thenPendingMsgsSentInOrder() {
+        sendUntilQuotaReached();
+
+        MqttPublishMessage first = newPublishMsg(MqttQoS.AT_LEAST_ONCE);
+        MqttPublishMessage second = newPublishMsg(MqttQoS.EXACTLY_ONCE);
+        MqttPublishMessage third = newPublishMsg(MqttQoS.AT_LEAST_ONCE);
+        flowControlService.sendPublish(sessionCtx, first, sentMsgs::add);
+        flowControlService.sendPublish(sessionCtx, second, sentMsgs::add);
+        flowControlService.sendPublish(sessionCtx, third, sentMsgs::add);
+
+        assertEquals(2, sentMsgs.size());
+        assertEquals(3, delayedMsgsCounter.get());
+        assertEquals(3, sessionCtx.getReceiveMaxPendingPublishesCtx().size());
+
+        flowControlService.onOutboundMsgAcknowledged(sessionCtx);
+        assertEquals(List.of(first), sentMsgs.subList(2, sentMsgs.size()));
+        assertEquals(2, sessionCtx.getInFlightOutboundMsgs());
+
+        flowControlService.onOutboundMsgAcknowledged(sessionCtx);
+        flowControlService.onOutboundMsgAcknowledged(sessionCtx);
+        assertEquals(List.of(first, second, third), sentMsgs.subList(2, sentMsgs.size()));
+        assertTrue(sessionCtx.getReceiveMaxPendingPublishesCtx().isEmpty());
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+    }
+
+    @Test
+    public void givenPendingMsgsExceedLimit_whenSendPublish_thenClientDisconnected() {
+        flowControlService.setMaxPendingMsgs(2);
+        sendUntilQuotaReached();
+
+        List<MqttPublishMessage> msgs = List.of(
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE),
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE),
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE));
+        // the msgs can not be accessed once released, so their payloads are kept to check the ref counts
+        List<ByteBuf> payloads = msgs.stream().map(MqttPublishMessage::payload).collect(Collectors.toList());
+        msgs.forEach(msg -> flowControlService.sendPublish(sessionCtx, msg, sentMsgs::add));
+
+        assertEquals(2, sentMsgs.size());
+        payloads.forEach(payload -> assertEquals(0, payload.refCnt()));
+        assertTrue(sessionCtx.getReceiveMaxPendingPublishesCtx().isEmpty());
+        assertEquals(1, disconnectsCounter.get());
+        verify(tbMessageStatsReportClient, times(3)).reportStats(DROPPED_MSGS);
+
+        ArgumentCaptor<MqttDisconnectMsg> disconnectMsgCaptor = ArgumentCaptor.forClass(MqttDisconnectMsg.class);
+        verify(clientMqttActorManager).disconnect(eq(null), disconnectMsgCaptor.capture());
+        assertEquals(sessionCtx.getSessionId(), disconnectMsgCaptor.getValue().getSessionId());
+        assertEquals(DisconnectReasonType.ON_QUOTA_EXCEEDED, disconnectMsgCaptor.getValue().getReason().getType());
+    }
+
+    private void sendUntilQuotaReached() {
+        for (int i = 0; i < sessionCtx.getReceiveMaximum(); i++) {
+            flowControlService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.AT_LEAST_ONCE), sentMsgs::add);
+        }
+        assertEquals(sessionCtx.getReceiveMaximum(), sessionCtx.getInFlightOutboundMsgs());
+    }
+
+    private MqttPublishMessage newPublishMsg(MqttQoS qos) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, false, 0),
+                new MqttPublishVariableHeader("test/topic", 1),
+                Unpooled.wrappedBuffer(new byte[10]));
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.config.IngressRateLimitsConfiguration;
+import org.thingsboard.mqtt.broker.config.IngressRateLimitsConfiguration.TopicFilterLimit;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IngressRateLimitServiceImplTest {
+
+    // long refill periods keep the buckets from refilling while the test runs
+    private static final String ONE_MSG_PER_HOUR = "1:3600";
+
+    @Mock
+    StatsManager statsManager;
+    @Mock
+    ChannelHandlerContext channelCtx;
+    @Mock
+    EventExecutor executor;
+
+    IngressRateLimitsConfiguration config;
+    Map<String, AtomicLong> throttledCounters;
+    EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        config = new IngressRateLimitsConfiguration();
+        config.setEnabled(true);
+        config.setMaxPauseMs(500);
+        throttledCounters = new HashMap<>();
+        channel = new EmbeddedChannel();
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void givenDisabledLimits_whenCheckLimits_thenMsgAcceptedAndChannelNotPaused() {
+        config.setEnabled(false);
+        IngressRateLimitServiceImpl service = new IngressRateLimitServiceImpl(config, statsManager);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        }
+
+        verifyNoInteractions(channelCtx, executor);
+    }
+
+    @Test
+    public void givenNodeMsgsLimitExceeded_whenCheckLimits_thenChannelPausedUntilScheduledResume() {
+        mockChannelCtx();
+        config.setNodeMsgsConfig("2:3600");
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertTrue(channel.config().isAutoRead());
+
+        assertFalse(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, throttledCounters.get(IngressRateLimitServiceImpl.NODE_MSGS_LIMITER).get());
+
+        ArgumentCaptor<Runnable> resumeCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(resumeCaptor.capture(), eq(TimeUnit.MILLISECONDS.toNanos(500)), eq(TimeUnit.NANOSECONDS));
+
+        resumeCaptor.getValue().run();
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void givenChannelAlreadyPaused_whenLimitExceededAgain_thenResumeNotScheduledTwice() {
+        mockChannelCtx();
+        config.setNodeMsgsConfig(ONE_MSG_PER_HOUR);
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertFalse(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertFalse(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+
+        assertEquals(2, throttledCounters.get(IngressRateLimitServiceImpl.NODE_MSGS_LIMITER).get());
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void givenChannelClosedDuringPause_whenResume_thenReadingNotResumed() {
+        mockChannelCtx();
+        config.setNodeMsgsConfig(ONE_MSG_PER_HOUR);
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+        assertFalse(service.checkLimits(channelCtx, publishMsg("test/topic", 10)));
+
+        ArgumentCaptor<Runnable> resumeCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(resumeCaptor.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+
+        channel.close();
+        resumeCaptor.getValue().run();
+        assertFalse(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void givenNodeBytesLimitExceeded_whenCheckLimits_thenChannelPaused() {
+        mockChannelCtx();
+        config.setNodeBytesConfig("100:3600");
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("test/topic", 60)));
+        assertFalse(service.checkLimits(channelCtx, publishMsg("test/topic", 60)));
+
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, throttledCounters.get(IngressRateLimitServiceImpl.NODE_BYTES_LIMITER).get());
+    }
+
+    @Test
+    public void givenTopicFilterLimit_whenCheckLimits_thenOnlyMatchingTopicsThrottled() {
+        mockChannelCtx();
+        config.setTopicFilters(List.of(topicFilterLimit("sensors/+/telemetry")));
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("sensors/1/telemetry", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("sensors/1/attributes", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("sensors/1/telemetry/raw", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("sensors/telemetry", 10)));
+        assertTrue(channel.config().isAutoRead());
+
+        assertFalse(service.checkLimits(channelCtx, publishMsg("sensors/2/telemetry", 10)));
+        assertFalse(channel.config().isAutoRead());
+        assertEquals(1, throttledCounters.get(IngressRateLimitServiceImpl.TOPIC_FILTER_LIMITER_PREFIX + "sensors/+/telemetry").get());
+    }
+
+    @Test
+    public void givenMultiLevelWildcardTopicFilterLimit_whenCheckLimits_thenParentLevelAlsoMatched() {
+        mockChannelCtx();
+        config.setTopicFilters(List.of(topicFilterLimit("sensors/#")));
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("sensors", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("devices/sensors", 10)));
+        assertFalse(service.checkLimits(channelCtx, publishMsg("sensors/1/telemetry", 10)));
+    }
+
+    @Test
+    public void givenWildcardTopicFilterLimit_whenPublishToSystemTopic_thenNotMatched() {
+        config.setTopicFilters(List.of(topicFilterLimit("#")));
+        IngressRateLimitServiceImpl service = createService();
+
+        assertTrue(service.checkLimits(channelCtx, publishMsg("$SYS/stats", 10)));
+        assertTrue(service.checkLimits(channelCtx, publishMsg("$SYS/stats", 10)));
+
+        verifyNoInteractions(channelCtx, executor);
+    }
+
+    private IngressRateLimitServiceImpl createService() {
+        when(statsManager.createIngressThrottledMsgsCounter(anyString())).thenAnswer(invocation ->
+                throttledCounters.computeIfAbsent(invocation.getArgument(0), name -> new AtomicLong()));
+        return new IngressRateLimitServiceImpl(config, statsManager);
+    }
+
+    private void mockChannelCtx() {
+        when(channelCtx.channel()).thenReturn(channel);
+        when(channelCtx.executor()).thenReturn(executor);
+    }
+
+    private TopicFilterLimit topicFilterLimit(String filter) {
+        TopicFilterLimit topicFilterLimit = new TopicFilterLimit();
+        topicFilterLimit.setFilter(filter);
+        topicFilterLimit.setConfig(ONE_MSG_PER_HOUR);
+        return topicFilterLimit;
+    }
+
+    private MqttPublishMessage publishMsg(String topic, int payloadSize) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttPublishVariableHeader(topic, -1),
+                Unpooled.wrappedBuffer(new byte[payloadSize]));
+    }
+}
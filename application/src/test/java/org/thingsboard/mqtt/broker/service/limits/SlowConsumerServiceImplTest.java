@@ -0,0 +1,206 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.limits;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.actors.client.messages.mqtt.MqttDisconnectMsg;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.DisconnectReasonType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.mqtt.broker.common.util.BrokerConstants.DROPPED_MSGS;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SlowConsumerServiceImplTest {
+
+    private static final int LOW_WATER_MARK = 64;
+    private static final int HIGH_WATER_MARK = 128;
+
+    @Mock
+    ClientMqttActorManager clientMqttActorManager;
+    @Mock
+    StatsManager statsManager;
+    @Mock
+    TbMessageStatsReportClient tbMessageStatsReportClient;
+
+    AtomicLong droppedMsgsCounter;
+    AtomicLong deferredMsgsCounter;
+    AtomicLong disconnectsCounter;
+    SlowConsumerServiceImpl slowConsumerService;
+
+    EmbeddedChannel channel;
+    ClientSessionCtx sessionCtx;
+    List<MqttPublishMessage> sentMsgs;
+
+    @Before
+    public void setUp() {
+        droppedMsgsCounter = new AtomicLong();
+        deferredMsgsCounter = new AtomicLong();
+        disconnectsCounter = new AtomicLong();
+        when(statsManager.createSlowConsumerDroppedMsgsCounter()).thenReturn(droppedMsgsCounter);
+        when(statsManager.createSlowConsumerDeferredMsgsCounter()).thenReturn(deferredMsgsCounter);
+        when(statsManager.createSlowConsumerDisconnectsCounter()).thenReturn(disconnectsCounter);
+        slowConsumerService = new SlowConsumerServiceImpl(clientMqttActorManager, statsManager, tbMessageStatsReportClient);
+        slowConsumerService.setEnabled(true);
+        slowConsumerService.setMaxDeferredBytes(1024);
+
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(LOW_WATER_MARK, HIGH_WATER_MARK));
+        sessionCtx = new ClientSessionCtx(UUID.randomUUID(), null, 100);
+        sessionCtx.setChannel(channel.pipeline().firstContext());
+        sentMsgs = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        sentMsgs.forEach(MqttPublishMessage::release);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void givenWritableChannel_whenSendPublish_thenMsgSentRightAway() {
+        slowConsumerService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.AT_MOST_ONCE, 10), sentMsgs::add);
+        slowConsumerService.sendPublish(sessionCtx, newPublishMsg(MqttQoS.AT_LEAST_ONCE, 10), sentMsgs::add);
+
+        assertEquals(2, sentMsgs.size());
+        assertEquals(0, droppedMsgsCounter.get());
+        assertEquals(0, deferredMsgsCounter.get());
+    }
+
+    @Test
+    public void givenStalledReader_whenSendQoS0Publish_thenMsgDropped() {
+        stallReader();
+
+        MqttPublishMessage msg = newPublishMsg(MqttQoS.AT_MOST_ONCE, 10);
+        ByteBuf payload = msg.payload();
+        slowConsumerService.sendPublish(sessionCtx, msg, sentMsgs::add);
+
+        assertTrue(sentMsgs.isEmpty());
+        assertEquals(0, payload.refCnt());
+        assertEquals(1, droppedMsgsCounter.get());
+        verify(tbMessageStatsReportClient).reportStats(DROPPED_MSGS);
+    }
+
+    @Test
+    public void givenStalledReader_whenSendQoS1Publish_thenMsgDeferredUntilChannelWritable() {
+        stallReader();
+
+        MqttPublishMessage first = newPublishMsg(MqttQoS.AT_LEAST_ONCE, 10);
+        MqttPublishMessage second = newPublishMsg(MqttQoS.EXACTLY_ONCE, 10);
+        slowConsumerService.sendPublish(sessionCtx, first, sentMsgs::add);
+        slowConsumerService.sendPublish(sessionCtx, second, sentMsgs::add);
+
+        assertTrue(sentMsgs.isEmpty());
+        assertEquals(2, deferredMsgsCounter.get());
+        assertEquals(2, sessionCtx.getDeferredPublishesCtx().size());
+
+        channel.flush();
+        assertTrue(channel.isWritable());
+        slowConsumerService.onChannelWritable(sessionCtx);
+
+        assertEquals(List.of(first, second), sentMsgs);
+        assertTrue(sessionCtx.getDeferredPublishesCtx().isEmpty());
+        assertEquals(0, droppedMsgsCounter.get());
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+    }
+
+    @Test
+    public void givenDeferredMsgs_whenChannelWritable_thenNewMsgQueuedBehindDeferred() {
+        stallReader();
+        MqttPublishMessage first = newPublishMsg(MqttQoS.AT_LEAST_ONCE, 10);
+        slowConsumerService.sendPublish(sessionCtx, first, sentMsgs::add);
+
+        channel.flush();
+        MqttPublishMessage second = newPublishMsg(MqttQoS.AT_LEAST_ONCE, 10);
+        slowConsumerService.sendPublish(sessionCtx, second, sentMsgs::add);
+        assertTrue(sentMsgs.isEmpty());
+
+        slowConsumerService.onChannelWritable(sessionCtx);
+        assertEquals(List.of(first, second), sentMsgs);
+    }
+
+    @Test
+    public void givenStalledReader_whenDeferredBytesExceedLimit_thenClientDisconnected() {
+        slowConsumerService.setMaxDeferredBytes(100);
+        stallReader();
+
+        List<MqttPublishMessage> msgs = List.of(
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE, 40),
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE, 40),
+                newPublishMsg(MqttQoS.AT_LEAST_ONCE, 40));
+        // the msgs can not be accessed once released, so their payloads are kept to check the ref counts
+        List<ByteBuf> payloads = msgs.stream().map(MqttPublishMessage::payload).collect(Collectors.toList());
+        msgs.forEach(msg -> slowConsumerService.sendPublish(sessionCtx, msg, sentMsgs::add));
+
+        assertTrue(sentMsgs.isEmpty());
+        payloads.forEach(payload -> assertEquals(0, payload.refCnt()));
+        assertTrue(sessionCtx.getDeferredPublishesCtx().isEmpty());
+        assertEquals(3, droppedMsgsCounter.get());
+        assertEquals(1, disconnectsCounter.get());
+        verify(tbMessageStatsReportClient, times(3)).reportStats(DROPPED_MSGS);
+
+        ArgumentCaptor<MqttDisconnectMsg> disconnectMsgCaptor = ArgumentCaptor.forClass(MqttDisconnectMsg.class);
+        verify(clientMqttActorManager).disconnect(eq(null), disconnectMsgCaptor.capture());
+        assertEquals(sessionCtx.getSessionId(), disconnectMsgCaptor.getValue().getSessionId());
+        assertEquals(DisconnectReasonType.ON_QUOTA_EXCEEDED, disconnectMsgCaptor.getValue().getReason().getType());
+    }
+
+    private void stallReader() {
+        // the peer does not read, so written bytes stay in the outbound buffer until flushed
+        channel.write(Unpooled.wrappedBuffer(new byte[HIGH_WATER_MARK + 1]));
+        assertFalse(channel.isWritable());
+    }
+
+    private MqttPublishMessage newPublishMsg(MqttQoS qos, int payloadSize) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, false, 0),
+                new MqttPublishVariableHeader("test/topic", 1),
+                Unpooled.wrappedBuffer(new byte[payloadSize]));
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParsedTopicTest {
+
+    @Test
+    public void testSegments() {
+        ParsedTopic topic = ParsedTopic.parse("a/bb//ccc");
+
+        Assert.assertEquals(4, topic.getSegmentsCount());
+        Assert.assertEquals(3, topic.getDelimitersCount());
+        Assert.assertEquals("a", topic.getSegment(0));
+        Assert.assertEquals("bb", topic.getSegment(1));
+        Assert.assertEquals("", topic.getSegment(2));
+        Assert.assertEquals("ccc", topic.getSegment(3));
+        Assert.assertSame(topic.getSegment(3), topic.getSegment(3));
+        Assert.assertEquals(2, topic.getSegmentStart(1));
+        Assert.assertEquals(4, topic.getSegmentEnd(1));
+        Assert.assertTrue(topic.segmentEquals(1, "bb"));
+        Assert.assertFalse(topic.segmentEquals(1, "b"));
+        Assert.assertFalse(topic.containsWildcard());
+        Assert.assertFalse(topic.isSystemTopic());
+    }
+
+    @Test
+    public void testLeadingAndTrailingDelimiters() {
+        ParsedTopic leading = ParsedTopic.parse("/a");
+        Assert.assertEquals(2, leading.getSegmentsCount());
+        Assert.assertEquals("", leading.getSegment(0));
+        Assert.assertEquals("a", leading.getSegment(1));
+
+        ParsedTopic trailing = ParsedTopic.parse("a/");
+        Assert.assertEquals(1, trailing.getSegmentsCount());
+        Assert.assertEquals(1, trailing.getDelimitersCount());
+        Assert.assertEquals("a", trailing.getSegment(0));
+
+        Assert.assertEquals(0, ParsedTopic.parse("").getSegmentsCount());
+    }
+
+    @Test
+    public void testManySegments() {
+        StringBuilder sb = new StringBuilder("0");
+        for (int i = 1; i < 100; i++) {
+            sb.append('/').append(i);
+        }
+        ParsedTopic topic = ParsedTopic.parse(sb.toString());
+
+        Assert.assertEquals(100, topic.getSegmentsCount());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(String.valueOf(i), topic.getSegment(i));
+        }
+    }
+
+    @Test
+    public void testFlags() {
+        Assert.assertTrue(ParsedTopic.parse("a/+/b").containsWildcard());
+        Assert.assertTrue(ParsedTopic.parse("a/#").containsWildcard());
+        Assert.assertTrue(ParsedTopic.parse("a\u0000b").containsNullChar());
+        Assert.assertTrue(ParsedTopic.parse("$SYS/a").isSystemTopic());
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        ParsedTopic topic = ParsedTopic.parse("a/b");
+
+        Assert.assertEquals(ParsedTopic.parse("a/b"), topic);
+        Assert.assertEquals("a/b".hashCode(), topic.hashCode());
+        Assert.assertNotEquals(ParsedTopic.parse("a/c"), topic);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullTopic() {
+        ParsedTopic.parse(null);
+    }
+}
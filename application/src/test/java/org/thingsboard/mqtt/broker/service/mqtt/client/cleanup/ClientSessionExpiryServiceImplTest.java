@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.client.cleanup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.service.mqtt.client.event.ClientSessionEventService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClientSessionExpiryServiceImplTest {
+
+    private static final String SERVICE_ID = "tb-broker";
+    private static final long START_TS = 1_000_000L;
+
+    @Mock
+    ClientSessionCache clientSessionCache;
+    @Mock
+    ClientSessionEventService clientSessionEventService;
+    @Mock
+    ServiceInfoProvider serviceInfoProvider;
+
+    ClientSessionExpiryServiceImpl clientSessionExpiryService;
+    Map<String, ClientSessionInfo> clientSessions;
+    long now;
+
+    @Before
+    public void setUp() {
+        when(serviceInfoProvider.getServiceId()).thenReturn(SERVICE_ID);
+        clientSessionExpiryService = new ClientSessionExpiryServiceImpl(clientSessionCache, clientSessionEventService, serviceInfoProvider);
+        clientSessionExpiryService.setTtl(0);
+        clientSessions = new HashMap<>();
+        when(clientSessionCache.getClientSessionInfo(any())).thenAnswer(invocation -> clientSessions.get(invocation.<String>getArgument(0)));
+        setTime(START_TS);
+    }
+
+    @Test
+    public void givenDisconnectedSession_whenExpiryIntervalPasses_thenSessionCleanedUpExactlyOnExpiry() {
+        onSessionChanged(newClientSessionInfo("client", false, START_TS, 10));
+
+        advanceTime(TimeUnit.SECONDS.toMillis(10) - 1);
+        clientSessionExpiryService.processExpiredSessions();
+        verify(clientSessionEventService, never()).requestSessionCleanup(any());
+
+        advanceTime(1);
+        clientSessionExpiryService.processExpiredSessions();
+        ArgumentCaptor<SessionInfo> sessionInfoCaptor = ArgumentCaptor.forClass(SessionInfo.class);
+        verify(clientSessionEventService).requestSessionCleanup(sessionInfoCaptor.capture());
+        assertEquals("client", sessionInfoCaptor.getValue().getClientInfo().getClientId());
+        assertEquals(0, clientSessionExpiryService.getScheduledExpiriesCount());
+    }
+
+    @Test
+    public void givenDisconnectedSession_whenClientReconnects_thenExpiryCancelled() {
+        ClientSessionInfo disconnected = newClientSessionInfo("client", false, START_TS, 10);
+        onSessionChanged(disconnected);
+        onSessionChanged(newClientSessionInfo("otherClient", false, START_TS, 10));
+        onSessionChanged(disconnected.toBuilder().connected(true).build());
+
+        advanceTime(TimeUnit.SECONDS.toMillis(20));
+        clientSessionExpiryService.processExpiredSessions();
+
+        ArgumentCaptor<SessionInfo> sessionInfoCaptor = ArgumentCaptor.forClass(SessionInfo.class);
+        verify(clientSessionEventService).requestSessionCleanup(sessionInfoCaptor.capture());
+        assertEquals("otherClient", sessionInfoCaptor.getValue().getClientInfo().getClientId());
+        assertEquals(0, clientSessionExpiryService.getScheduledExpiriesCount());
+    }
+
+    @Test
+    public void givenSessionsWithDifferentExpiry_whenTimeAdvances_thenEachCleanedUpAtItsExpiry() {
+        onSessionChanged(newClientSessionInfo("client1", false, START_TS, 5));
+        onSessionChanged(newClientSessionInfo("client2", false, START_TS, 30));
+        onSessionChanged(newClientSessionInfo("otherNodeClient", false, START_TS, 5).toBuilder().serviceId("other").build());
+        onSessionChanged(newClientSessionInfo("notCleanClient", false, START_TS, 0).toBuilder().cleanStart(false).build());
+        assertEquals(2, clientSessionExpiryService.getScheduledExpiriesCount());
+
+        advanceTime(TimeUnit.SECONDS.toMillis(5));
+        clientSessionExpiryService.processExpiredSessions();
+        verify(clientSessionEventService, times(1)).requestSessionCleanup(any());
+        assertEquals(1, clientSessionExpiryService.getScheduledExpiriesCount());
+
+        advanceTime(TimeUnit.SECONDS.toMillis(25));
+        clientSessionExpiryService.processExpiredSessions();
+        verify(clientSessionEventService, times(2)).requestSessionCleanup(any());
+        assertEquals(0, clientSessionExpiryService.getScheduledExpiriesCount());
+    }
+
+    @Test
+    public void givenSessionReconnectedAndDisconnectedAgain_whenOldExpiryPasses_thenSessionNotCleanedUpYet() {
+        onSessionChanged(newClientSessionInfo("client", false, START_TS, 10));
+
+        advanceTime(TimeUnit.SECONDS.toMillis(8));
+        onSessionChanged(newClientSessionInfo("client", false, START_TS + TimeUnit.SECONDS.toMillis(8), 10));
+
+        advanceTime(TimeUnit.SECONDS.toMillis(2));
+        clientSessionExpiryService.processExpiredSessions();
+        verify(clientSessionEventService, never()).requestSessionCleanup(any());
+
+        advanceTime(TimeUnit.SECONDS.toMillis(8));
+        clientSessionExpiryService.processExpiredSessions();
+        verify(clientSessionEventService, times(1)).requestSessionCleanup(any());
+    }
+
+    private void onSessionChanged(ClientSessionInfo clientSessionInfo) {
+        clientSessions.put(clientSessionInfo.getClientId(), clientSessionInfo);
+        clientSessionExpiryService.onSessionChanged(clientSessionInfo.getClientId(), clientSessionInfo);
+    }
+
+    private void setTime(long ts) {
+        now = ts;
+        clientSessionExpiryService.setClock(Clock.fixed(Instant.ofEpochMilli(ts), ZoneOffset.UTC));
+    }
+
+    private void advanceTime(long ms) {
+        setTime(now + ms);
+    }
+
+    private ClientSessionInfo newClientSessionInfo(String clientId, boolean connected, long disconnectedAt, int sessionExpiryInterval) {
+        return ClientSessionInfo.builder()
+                .clientId(clientId)
+                .sessionId(UUID.randomUUID())
+                .connected(connected)
+                .disconnectedAt(disconnectedAt)
+                .cleanStart(true)
+                .sessionExpiryInterval(sessionExpiryInterval)
+                .serviceId(SERVICE_ID)
+                .build();
+    }
+}
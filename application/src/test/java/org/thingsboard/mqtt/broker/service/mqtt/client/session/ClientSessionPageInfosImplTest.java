@@ -21,6 +21,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
@@ -28,15 +30,21 @@ import org.thingsboard.mqtt.broker.dto.ShortClientSessionInfoDto;
 import org.thingsboard.mqtt.broker.service.subscription.ClientSubscriptionCache;
 import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.Mockito.doReturn;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
@@ -48,6 +56,7 @@ public class ClientSessionPageInfosImplTest {
     ClientSessionCache clientSessionCache;
     ClientSubscriptionCache clientSubscriptionCache;
     ClientSessionPageInfosImpl clientSessionPageInfos;
+    Map<String, ClientSessionInfo> clientSessionInfoMap;
 
     @Before
     public void setUp() {
@@ -55,8 +64,9 @@ public class ClientSessionPageInfosImplTest {
         clientSubscriptionCache = mock(ClientSubscriptionCache.class);
         clientSessionPageInfos = spy(new ClientSessionPageInfosImpl(clientSessionCache, clientSubscriptionCache));
 
-        Map<String, ClientSessionInfo> clientSessionInfoMap = getClientSessionInfoMap();
-        doReturn(clientSessionInfoMap).when(clientSessionCache).getAllClientSessions();
+        clientSessionInfoMap = new HashMap<>(getClientSessionInfoMap());
+        clientSessionPageInfos.init(clientSessionInfoMap);
+        when(clientSessionCache.getClientSessionInfo(anyString())).thenAnswer(invocation -> clientSessionInfoMap.get(invocation.<String>getArgument(0)));
     }
 
     private Map<String, ClientSessionInfo> getClientSessionInfoMap() {
@@ -142,6 +152,70 @@ public class ClientSessionPageInfosImplTest {
         assertEquals("clientId5", data.get(4).getClientId());
     }
 
+    @Test
+    public void testGetClientSessionInfosByCursorReturnsAllSessionsInOrder() {
+        List<String> clientIds = new ArrayList<>();
+        CursorPageLink pageLink = new CursorPageLink(3, null, null, new SortOrder("clientId"));
+        CursorPageData<ShortClientSessionInfoDto> page;
+        do {
+            page = clientSessionPageInfos.getClientSessionInfos(pageLink);
+            page.getData().forEach(dto -> clientIds.add(dto.getClientId()));
+            pageLink = pageLink.nextPageLink(page.getNextCursor());
+        } while (page.hasNext());
+
+        assertEquals(List.of("clientId1", "clientId2", "clientId3", "clientId4", "clientId5",
+                "test1", "test2", "test3", "test4", "test5"), clientIds);
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testGetClientSessionInfosByCursorWithTextSearchAndDescOrder() {
+        CursorPageData<ShortClientSessionInfoDto> page = clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(2, null, "test", new SortOrder("id", SortOrder.Direction.DESC)));
+
+        assertEquals(List.of("test5", "test4"), toClientIds(page));
+        assertTrue(page.hasNext());
+
+        page = clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(2, page.getNextCursor(), "test", new SortOrder("id", SortOrder.Direction.DESC)));
+        assertEquals(List.of("test3", "test2"), toClientIds(page));
+    }
+
+    @Test
+    public void testGetClientSessionInfosByConnectedAtFollowsSessionChanges() {
+        ClientSessionInfo reconnected = getClientSessionInfo("clientId3").toBuilder().connectedAt(Long.MAX_VALUE).build();
+        clientSessionInfoMap.put("clientId3", reconnected);
+        clientSessionPageInfos.onSessionChanged("clientId3", reconnected);
+
+        CursorPageData<ShortClientSessionInfoDto> page = clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(1, null, null, new SortOrder("connectedAt", SortOrder.Direction.DESC)));
+        assertEquals(List.of("clientId3"), toClientIds(page));
+
+        clientSessionInfoMap.remove("clientId3");
+        clientSessionPageInfos.onSessionChanged("clientId3", null);
+
+        page = clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(1, null, null, new SortOrder("connectedAt", SortOrder.Direction.DESC)));
+        assertNotEquals(List.of("clientId3"), toClientIds(page));
+        assertEquals(9, clientSessionPageInfos.getClientSessionInfos(new PageLink(100, 0)).getTotalElements());
+    }
+
+    @Test
+    public void testGetClientSessionInfosByCursorWithNotIndexedProperty() {
+        assertThrows(IllegalArgumentException.class, () -> clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(10, null, null, new SortOrder("subscriptionsCount"))));
+    }
+
+    @Test
+    public void testGetClientSessionInfosByInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> clientSessionPageInfos.getClientSessionInfos(
+                new CursorPageLink(10, "not-a-cursor")));
+    }
+
+    private List<String> toClientIds(CursorPageData<ShortClientSessionInfoDto> page) {
+        return page.getData().stream().map(ShortClientSessionInfoDto::getClientId).collect(Collectors.toList());
+    }
+
     private TopicSubscription getTopicSubscription() {
         return new TopicSubscription(RandomStringUtils.randomAlphabetic(10), 1);
     }
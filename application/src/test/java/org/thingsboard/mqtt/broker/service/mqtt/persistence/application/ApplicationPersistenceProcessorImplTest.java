@@ -27,25 +27,43 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
+import org.thingsboard.mqtt.broker.queue.common.DefaultTbQueueMsgHeaders;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
 import org.thingsboard.mqtt.broker.queue.provider.ApplicationPersistenceMsgQueueFactory;
 import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.data.ApplicationSharedSubscriptionJob;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationMsgAcknowledgeStrategyFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPersistedMsgCtx;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationPersistedMsgCtxService;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.ApplicationSubmitStrategyFactory;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.processing.PersistedPublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.persistence.application.topic.ApplicationTopicService;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 import org.thingsboard.mqtt.broker.service.subscription.shared.TopicSharedSubscription;
 import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.MsgIdSequence;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 @RunWith(SpringRunner.class)
 @ContextConfiguration(classes = ApplicationPersistenceProcessorImpl.class)
 @TestPropertySource(properties = {
@@ -78,6 +96,8 @@ public class ApplicationPersistenceProcessorImplTest {
     ClientLogger clientLogger;
     @MockBean
     ApplicationTopicService applicationTopicService;
+    @MockBean
+    MsgExpiryService msgExpiryService;
 
     @SpyBean
     ApplicationPersistenceProcessorImpl applicationPersistenceProcessor;
@@ -121,6 +141,58 @@ public class ApplicationPersistenceProcessorImplTest {
         Assert.assertEquals(2, jobs.size());
     }
 
+    @Test
+    public void givenExpiredMsg_whenToPublishMessagesToDeliver_thenMsgSkippedWithoutTakingPacketId() {
+        ClientSessionCtx clientSessionCtx = mockClientSessionCtx();
+        PublishMsgProto expiredMsg = newPublishMsgProto("test/expired", 1000L, 10);
+        PublishMsgProto validMsg = newPublishMsgProto("test/valid", System.currentTimeMillis(), 60);
+        when(msgExpiryService.isExpired(eq("client"), eq(1000L), eq(10))).thenReturn(true);
+        when(msgExpiryService.isExpired(eq("client"), eq(validMsg.getCreatedTime()), eq(60))).thenReturn(false);
+
+        List<PersistedPublishMsg> result = applicationPersistenceProcessor.toPublishMessagesToDeliver(clientSessionCtx,
+                new ApplicationPersistedMsgCtx(), List.of(newQueueMsg(expiredMsg, 1), newQueueMsg(validMsg, 2)), null);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(2, result.get(0).getPacketOffset());
+        Assert.assertEquals("test/valid", result.get(0).getPublishMsg().getTopicName());
+        Assert.assertEquals(1, result.get(0).getPacketId());
+    }
+
+    @Test
+    public void givenExpiredMsgAlreadyInFlight_whenToPublishMessagesToDeliver_thenMsgRedelivered() {
+        ClientSessionCtx clientSessionCtx = mockClientSessionCtx();
+        PublishMsgProto expiredMsg = newPublishMsgProto("test/expired", 1000L, 10);
+        Map<Long, Integer> publishMsgIds = new HashMap<>(Map.of(1L, 5));
+
+        List<PersistedPublishMsg> result = applicationPersistenceProcessor.toPublishMessagesToDeliver(clientSessionCtx,
+                new ApplicationPersistedMsgCtx(publishMsgIds, new HashMap<>()), List.of(newQueueMsg(expiredMsg, 1)), null);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(5, result.get(0).getPacketId());
+        Assert.assertTrue(result.get(0).getPublishMsg().isDup());
+        verify(msgExpiryService, never()).isExpired(any(), anyLong(), any());
+    }
+
+    private ClientSessionCtx mockClientSessionCtx() {
+        ClientSessionCtx clientSessionCtx = mock(ClientSessionCtx.class);
+        when(clientSessionCtx.getClientId()).thenReturn("client");
+        when(clientSessionCtx.getMsgIdSeq()).thenReturn(new MsgIdSequence());
+        return clientSessionCtx;
+    }
+
+    private PublishMsgProto newPublishMsgProto(String topic, long createdTime, int msgExpiryInterval) {
+        return PublishMsgProto.newBuilder()
+                .setTopicName(topic)
+                .setQos(1)
+                .setCreatedTime(createdTime)
+                .setMsgExpiryInterval(msgExpiryInterval)
+                .build();
+    }
+
+    private TbProtoQueueMsg<PublishMsgProto> newQueueMsg(PublishMsgProto msg, long offset) {
+        return new TbProtoQueueMsg<>(null, msg, new DefaultTbQueueMsgHeaders(), 0, offset);
+    }
+
     private ApplicationSharedSubscriptionJob newApplicationSharedSubscriptionJob(String topicFilter) {
         return new ApplicationSharedSubscriptionJob(newSharedSubscriptionTopicFilter(topicFilter), Futures.immediateFuture(null), false);
     }
@@ -29,6 +29,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -39,14 +43,17 @@ public class ConcurrentMapRetainMsgTrieTest {
     private ConcurrentMapRetainMsgTrie<String> retainMsgTrie;
     private AtomicInteger retainedMsgCounter;
     private AtomicLong nodesCounter;
+    private AtomicLong reclaimedNodesCounter;
 
     @Before
     public void before() {
         this.retainedMsgCounter = new AtomicInteger(0);
         this.nodesCounter = new AtomicLong(0);
+        this.reclaimedNodesCounter = new AtomicLong(0);
         StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
         Mockito.when(statsManagerMock.createRetainMsgSizeCounter()).thenReturn(retainedMsgCounter);
         Mockito.when(statsManagerMock.createRetainMsgTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createRetainMsgTrieReclaimedNodesCounter()).thenReturn(reclaimedNodesCounter);
         this.retainMsgTrie = new ConcurrentMapRetainMsgTrie<>(statsManagerMock);
     }
 
@@ -172,7 +179,9 @@ public class ConcurrentMapRetainMsgTrieTest {
             retainMsgTrie.delete(Integer.toString(i));
             retainMsgTrie.delete(Integer.toString(i));
         }
-        Assert.assertEquals(10, nodesCounter.get());
+        // empty nodes are pruned on delete
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(10, reclaimedNodesCounter.get());
     }
 
     @Test
@@ -199,9 +208,12 @@ public class ConcurrentMapRetainMsgTrieTest {
         retainMsgTrie.delete("0/2");
         retainMsgTrie.delete("1/0");
 
+        // 0/0, 0/1, 0/2, 0 and 1/0 nodes are pruned on delete
+        Assert.assertEquals(40 - 5, nodesCounter.get());
+        Assert.assertEquals(5, reclaimedNodesCounter.get());
+
         retainMsgTrie.setWaitForClearLockMs(100);
         retainMsgTrie.clearEmptyNodes();
-        // should clear 0/0, 0/1, 0/2, 0 and 1/0 nodes
         Assert.assertEquals(40 - 5, nodesCounter.get());
     }
 
@@ -213,11 +225,39 @@ public class ConcurrentMapRetainMsgTrieTest {
                 retainMsgTrie.delete(i + "/" + j);
             }
         }
-        Assert.assertEquals(40, nodesCounter.get());
+        Assert.assertEquals(0, nodesCounter.get());
 
         retainMsgTrie.setWaitForClearLockMs(100);
         retainMsgTrie.clearEmptyNodes();
 
         Assert.assertEquals(0, nodesCounter.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentPutAndDelete() throws InterruptedException {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String topic = "a/b/" + t;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < 10_000; i++) {
+                        retainMsgTrie.put(topic, "val");
+                        retainMsgTrie.delete(topic);
+                    }
+                    retainMsgTrie.put(topic, "val");
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdownNow();
+
+        Assert.assertEquals(threads, retainMsgTrie.get("a/b/+").size());
+        Assert.assertEquals(threads, retainedMsgCounter.get());
+        // "a" + "a/b" + one node per thread
+        Assert.assertEquals(2 + threads, nodesCounter.get());
+    }
+}
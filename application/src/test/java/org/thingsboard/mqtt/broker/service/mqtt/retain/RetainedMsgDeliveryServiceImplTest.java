@@ -0,0 +1,232 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.limits.FlowControlServiceImpl;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.DeferredPublishesCtx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetainedMsgDeliveryServiceImplTest {
+
+    @Mock
+    RetainedMsgService retainedMsgService;
+    @Mock
+    PublishMsgDeliveryService publishMsgDeliveryService;
+    @Mock
+    MsgExpiryService msgExpiryService;
+    @Mock
+    StatsManager statsManager;
+    @Mock
+    ClientSessionCtx ctx;
+    @Mock
+    ChannelHandlerContext channelHandlerContext;
+    @Mock
+    Channel channel;
+    @Mock
+    EventExecutor executor;
+
+    AtomicLong truncatedDeliveriesCounter;
+    RetainedMsgDeliveryServiceImpl retainedMsgDeliveryService;
+
+    @Before
+    public void setUp() {
+        truncatedDeliveriesCounter = new AtomicLong();
+        when(statsManager.createRetainedMsgTruncatedDeliveriesCounter()).thenReturn(truncatedDeliveriesCounter);
+        retainedMsgDeliveryService = new RetainedMsgDeliveryServiceImpl(retainedMsgService, publishMsgDeliveryService, msgExpiryService, statsManager);
+        retainedMsgDeliveryService.setBatchSize(100);
+        retainedMsgDeliveryService.setResumeDelayMs(10);
+        retainedMsgDeliveryService.setMaxInFlightMsgs(1000);
+
+        when(ctx.getChannel()).thenReturn(channelHandlerContext);
+        when(channelHandlerContext.channel()).thenReturn(channel);
+        when(channel.isActive()).thenReturn(true);
+        when(ctx.getReceiveMaximum()).thenReturn(65535);
+        when(ctx.getReceiveMaxPendingPublishesCtx()).thenReturn(new DeferredPublishesCtx());
+    }
+
+    @Test
+    public void givenMsgsOverCountLimit_whenDeliverRetainedMessages_thenDeliveryTruncated() {
+        retainedMsgDeliveryService.setMaxMsgsPerSubscribe(2);
+        when(channel.isWritable()).thenReturn(true);
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(List.of(
+                newRetainedMsg("a/1", 1), newRetainedMsg("a/2", 1), newRetainedMsg("a/3", 1)).iterator());
+
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx, List.of(new TopicSubscription("a/#", 1)));
+
+        verify(publishMsgDeliveryService, times(2)).sendPublishRetainedMsgToClient(eq(ctx), any());
+        assertEquals(1, truncatedDeliveriesCounter.get());
+    }
+
+    @Test
+    public void givenMsgsOverBytesLimit_whenDeliverRetainedMessages_thenDeliveryTruncated() {
+        retainedMsgDeliveryService.setMaxBytesPerSubscribe(10);
+        when(channel.isWritable()).thenReturn(true);
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(List.of(
+                newRetainedMsg("a/1", 1), newRetainedMsg("a/2", 1), newRetainedMsg("a/3", 1)).iterator());
+
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx, List.of(new TopicSubscription("a/#", 1)));
+
+        verify(publishMsgDeliveryService, times(1)).sendPublishRetainedMsgToClient(eq(ctx), any());
+        assertEquals(1, truncatedDeliveriesCounter.get());
+    }
+
+    @Test
+    public void givenNotWritableChannel_whenDeliverRetainedMessages_thenDeliveryResumedLater() {
+        when(channelHandlerContext.executor()).thenReturn(executor);
+        when(channel.isWritable()).thenReturn(false, true);
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(List.of(
+                newRetainedMsg("a/1", 1), newRetainedMsg("a/2", 1)).iterator());
+
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx, List.of(new TopicSubscription("a/#", 1)));
+
+        verify(publishMsgDeliveryService, never()).sendPublishRetainedMsgToClient(any(), any());
+        ArgumentCaptor<Runnable> resumeCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(resumeCaptor.capture(), eq(10L), eq(TimeUnit.MILLISECONDS));
+
+        resumeCaptor.getValue().run();
+
+        verify(publishMsgDeliveryService, times(2)).sendPublishRetainedMsgToClient(eq(ctx), any());
+        assertEquals(0, truncatedDeliveriesCounter.get());
+    }
+
+    @Test
+    public void givenOverlappingSubscriptions_whenDeliverRetainedMessages_thenEachTopicDeliveredOnceWithMinQos() {
+        when(channel.isWritable()).thenReturn(true);
+        RetainedMsg retainedMsg = newRetainedMsg("a/1", 2);
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(List.of(retainedMsg).iterator());
+        when(retainedMsgService.iterateRetainedMessages("a/1")).thenReturn(List.of(retainedMsg).iterator());
+
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx,
+                List.of(new TopicSubscription("a/#", 1), new TopicSubscription("a/1", 2)));
+
+        verify(publishMsgDeliveryService, times(1)).sendPublishRetainedMsgToClient(eq(ctx), eq(retainedMsg.withQosLevel(1)));
+    }
+
+    @Test
+    public void givenExpiredMsg_whenDeliverRetainedMessages_thenExpiredMsgSkipped() {
+        when(channel.isWritable()).thenReturn(true);
+        RetainedMsg expiredMsg = new RetainedMsg("a/1", "payload".getBytes(StandardCharsets.UTF_8), 1,
+                MqttProperties.NO_PROPERTIES, 1000L, 10);
+        RetainedMsg validMsg = newRetainedMsg("a/2", 1);
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(List.of(expiredMsg, validMsg).iterator());
+        when(msgExpiryService.isExpired(any(), anyLong(), any())).thenReturn(true, false);
+
+        retainedMsgDeliveryService.deliverRetainedMessages(ctx, List.of(new TopicSubscription("a/#", 1)));
+
+        verify(publishMsgDeliveryService, times(1)).sendPublishRetainedMsgToClient(eq(ctx), eq(validMsg));
+        verify(publishMsgDeliveryService, never()).sendPublishRetainedMsgToClient(any(), eq(expiredMsg));
+    }
+
+    @Test
+    public void givenSmallReceiveMaximum_whenDeliverManyRetainedMessages_thenDeliveryFollowsAcknowledgements() {
+        ClientMqttActorManager clientMqttActorManager = mock(ClientMqttActorManager.class);
+        when(statsManager.createReceiveMaxDelayedMsgsCounter()).thenReturn(new AtomicLong());
+        when(statsManager.createReceiveMaxDisconnectsCounter()).thenReturn(new AtomicLong());
+        FlowControlServiceImpl flowControlService = new FlowControlServiceImpl(clientMqttActorManager, statsManager,
+                mock(TbMessageStatsReportClient.class));
+        flowControlService.setEnabled(true);
+        flowControlService.setMaxPendingMsgs(1000);
+
+        EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ClientSessionCtx sessionCtx = new ClientSessionCtx(UUID.randomUUID(), null, 1000);
+        sessionCtx.setChannel(embeddedChannel.pipeline().firstContext());
+        sessionCtx.setReceiveMaximum(10);
+
+        List<RetainedMsg> retainedMsgs = IntStream.range(0, 1500)
+                .mapToObj(i -> newRetainedMsg("a/" + i, 1))
+                .collect(Collectors.toList());
+        when(retainedMsgService.iterateRetainedMessages("a/#")).thenReturn(retainedMsgs.iterator());
+        List<MqttPublishMessage> sentMsgs = new ArrayList<>();
+        doAnswer(invocation -> {
+            flowControlService.sendPublish(sessionCtx, newMqttPublishMsg(), sentMsgs::add);
+            return null;
+        }).when(publishMsgDeliveryService).sendPublishRetainedMsgToClient(eq(sessionCtx), any());
+
+        retainedMsgDeliveryService.deliverRetainedMessages(sessionCtx, List.of(new TopicSubscription("a/#", 1)));
+
+        assertEquals(10, sentMsgs.size());
+        while (sentMsgs.size() < retainedMsgs.size()) {
+            assertTrue(sessionCtx.getReceiveMaxPendingPublishesCtx().isEmpty());
+            int sentBeforeAcks = sentMsgs.size();
+            for (int i = 0; i < 10; i++) {
+                flowControlService.onOutboundMsgAcknowledged(sessionCtx);
+            }
+            embeddedChannel.runPendingTasks();
+            assertEquals(sentBeforeAcks + 10, sentMsgs.size());
+        }
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+
+        sentMsgs.forEach(MqttPublishMessage::release);
+        embeddedChannel.finishAndReleaseAll();
+    }
+
+    private MqttPublishMessage newMqttPublishMsg() {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttPublishVariableHeader("a/1", 1),
+                Unpooled.wrappedBuffer(new byte[10]));
+    }
+
+    private RetainedMsg newRetainedMsg(String topic, int qos) {
+        return new RetainedMsg(topic, "payload".getBytes(StandardCharsets.UTF_8), qos);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.mqtt.retain;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.thingsboard.mqtt.broker.adaptor.ProtoConverter;
+import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
+
+import java.nio.charset.StandardCharsets;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = RetainedMsgOffHeapStorage.class)
+@TestPropertySource(properties = {
+        "mqtt.retain-msg-off-heap.enabled=true",
+        "mqtt.retain-msg-off-heap.slab-size=4096",
+        "mqtt.retain-msg-off-heap.max-record-size=1024"
+})
+public class RetainedMsgOffHeapStorageTest {
+
+    @Autowired
+    RetainedMsgOffHeapStorage retainedMsgOffHeapStorage;
+
+    @Test
+    public void givenRetainedMsg_whenStoreOffHeap_thenPayloadAndPropertiesAreRestored() {
+        MqttProperties properties = new MqttProperties();
+        MqttProperties.UserProperties userProperties = new MqttProperties.UserProperties();
+        userProperties.add("key", "value");
+        properties.add(userProperties);
+        RetainedMsg retainedMsg = new RetainedMsg("topic/1", "payload".getBytes(StandardCharsets.UTF_8), 1, properties);
+
+        RetainedMsg stored = retainedMsgOffHeapStorage.store(retainedMsg);
+
+        Assert.assertTrue(stored instanceof OffHeapRetainedMsg);
+        Assert.assertArrayEquals(retainedMsg.getPayload(), stored.getPayload());
+        Assert.assertEquals(retainedMsg.getProperties().getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value()),
+                stored.getProperties().getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value()));
+        RetainedMsg heapMsg = retainedMsgOffHeapStorage.toHeapMsg(stored);
+        Assert.assertEquals(retainedMsg.getTopic(), heapMsg.getTopic());
+        Assert.assertArrayEquals(retainedMsg.getPayload(), heapMsg.getPayload());
+        Assert.assertEquals(retainedMsg.getQosLevel(), heapMsg.getQosLevel());
+        Assert.assertEquals(retainedMsg.getProperties().getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value()),
+                heapMsg.getProperties().getProperty(MqttProperties.MqttPropertyType.USER_PROPERTY.value()));
+        Assert.assertEquals("payload", RetainedMsgDto.newInstance(stored).getPayload());
+        Assert.assertEquals("payload", ProtoConverter.convertToRetainedMsgProto(stored).getPayload().toStringUtf8());
+
+        ByteBuf byteBuf = Unpooled.buffer();
+        Assert.assertTrue(((OffHeapRetainedMsg) stored).writePayloadTo(byteBuf));
+        Assert.assertEquals("payload", byteBuf.toString(StandardCharsets.UTF_8));
+        byteBuf.release();
+
+        retainedMsgOffHeapStorage.release(stored);
+    }
+
+    @Test
+    public void givenReleasedRetainedMsg_whenRead_thenNothingIsReturned() {
+        RetainedMsg stored = retainedMsgOffHeapStorage.store(new RetainedMsg("topic/2", new byte[100], 0));
+        RetainedMsg storedWithQos = stored.withQosLevel(1);
+
+        retainedMsgOffHeapStorage.release(stored);
+
+        Assert.assertNull(storedWithQos.getPayload());
+        Assert.assertNull(retainedMsgOffHeapStorage.toHeapMsg(storedWithQos));
+        Assert.assertNull(RetainedMsgDto.newInstance(storedWithQos));
+        Assert.assertNull(ProtoConverter.convertToRetainedMsgProto(storedWithQos));
+        Assert.assertFalse(((OffHeapRetainedMsg) storedWithQos).writePayloadTo(Unpooled.buffer()));
+    }
+
+    @Test
+    public void givenBigRetainedMsg_whenStore_thenMsgStaysOnHeap() {
+        RetainedMsg retainedMsg = new RetainedMsg("topic/3", new byte[2048], 0);
+
+        Assert.assertSame(retainedMsg, retainedMsgOffHeapStorage.store(retainedMsg));
+    }
+
+    @Test
+    public void givenReleasedSlots_whenStoreAgain_thenSlotsAreReused() {
+        RetainedMsgPayloadArena arena = retainedMsgOffHeapStorage.getArena();
+        long usedBefore = arena.getUsedBytes().get();
+        RetainedMsg first = retainedMsgOffHeapStorage.store(new RetainedMsg("topic/4", new byte[200], 0));
+        long reserved = arena.getReservedBytes().get();
+        Assert.assertEquals(usedBefore + 256, arena.getUsedBytes().get());
+
+        retainedMsgOffHeapStorage.release(first);
+        Assert.assertEquals(usedBefore, arena.getUsedBytes().get());
+
+        RetainedMsg second = retainedMsgOffHeapStorage.store(new RetainedMsg("topic/4", new byte[200], 0));
+        Assert.assertEquals(reserved, arena.getReservedBytes().get());
+        Assert.assertEquals(usedBefore + 256, arena.getUsedBytes().get());
+        // same slot, but the handle of the new record has the next generation
+        Assert.assertNotEquals(((OffHeapRetainedMsg) first).getHandle(), ((OffHeapRetainedMsg) second).getHandle());
+        retainedMsgOffHeapStorage.release(second);
+    }
+
+    @Test
+    public void givenSlotReusedByAnotherMsg_whenUseStaleHandle_thenItIsRejected() {
+        RetainedMsgPayloadArena arena = retainedMsgOffHeapStorage.getArena();
+        RetainedMsg stale = retainedMsgOffHeapStorage.store(new RetainedMsg("topic/5", new byte[]{1, 2, 3}, 0));
+        long staleHandle = ((OffHeapRetainedMsg) stale).getHandle();
+        retainedMsgOffHeapStorage.release(stale);
+
+        byte[] otherPayload = new byte[40];
+        otherPayload[0] = 42;
+        RetainedMsg other = retainedMsgOffHeapStorage.store(new RetainedMsg("topic/6", otherPayload, 0));
+        long usedBytes = arena.getUsedBytes().get();
+
+        Assert.assertFalse(arena.retain(staleHandle));
+        Assert.assertNull(arena.read(staleHandle, 0, 3));
+        Assert.assertNull(stale.getPayload());
+        Assert.assertFalse(((OffHeapRetainedMsg) stale).writePayloadTo(Unpooled.buffer()));
+
+        arena.release(staleHandle);
+        Assert.assertEquals(usedBytes, arena.getUsedBytes().get());
+        Assert.assertArrayEquals(otherPayload, other.getPayload());
+
+        retainedMsgOffHeapStorage.release(other);
+    }
+}
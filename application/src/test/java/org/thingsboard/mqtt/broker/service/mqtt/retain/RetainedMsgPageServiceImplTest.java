@@ -19,20 +19,30 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageData;
+import org.thingsboard.mqtt.broker.common.data.page.CursorPageLink;
 import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
 import org.thingsboard.mqtt.broker.common.data.page.SortOrder;
 import org.thingsboard.mqtt.broker.dto.RetainedMsgDto;
+import org.thingsboard.mqtt.broker.util.SortedIndexes;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class RetainedMsgPageServiceImplTest {
@@ -45,8 +55,16 @@ public class RetainedMsgPageServiceImplTest {
         retainedMsgListenerService = mock(RetainedMsgListenerService.class);
         retainedMsgPageService = spy(new RetainedMsgPageServiceImpl(retainedMsgListenerService));
 
-        List<RetainedMsg> retainedMsgs = getAllRetainedMessages();
-        doReturn(retainedMsgs).when(retainedMsgListenerService).getRetainedMessages();
+        Map<String, RetainedMsg> retainedMsgs = getAllRetainedMessages().stream()
+                .collect(Collectors.toMap(RetainedMsg::getTopic, Function.identity()));
+        SortedIndexes<RetainedMsg> retainedMsgIndexes = new SortedIndexes<RetainedMsg>()
+                .addIndex("topic", RetainedMsg::getTopic, Function.identity())
+                .addIndex("createdTime", RetainedMsg::getCreatedTime, Long::valueOf)
+                .addIndex("qos", RetainedMsg::getQosLevel, Integer::valueOf);
+        retainedMsgIndexes.putAll(retainedMsgs);
+        doReturn(retainedMsgIndexes).when(retainedMsgListenerService).getRetainedMsgIndexes();
+        when(retainedMsgListenerService.getCachedRetainedMsg(anyString())).thenAnswer(invocation -> retainedMsgs.get(invocation.<String>getArgument(0)));
+        when(retainedMsgListenerService.getRetainedMsg(anyString())).thenAnswer(invocation -> retainedMsgs.get(invocation.<String>getArgument(0)));
     }
 
     private List<RetainedMsg> getAllRetainedMessages() {
@@ -55,7 +73,7 @@ public class RetainedMsgPageServiceImplTest {
                 getRetainedMsg("topic/test2"),
                 getRetainedMsg("topic/test3"),
                 getRetainedMsg("my/topic"),
-                getRetainedMsg("home/temp")
+                new RetainedMsg("home/temp", "payload".getBytes(StandardCharsets.UTF_8), 0)
         );
     }
 
@@ -95,6 +113,56 @@ public class RetainedMsgPageServiceImplTest {
         assertEquals("topic/test3", data.get(4).getTopic());
     }
 
+    @Test
+    public void testGetRetainedMessagesWithPageLinkAndSortingByQos() {
+        PageData<RetainedMsgDto> retainedMessages = retainedMsgPageService.getRetainedMessages(
+                new PageLink(2, 0, null, new SortOrder("qos", SortOrder.Direction.ASC)));
+        List<RetainedMsgDto> data = retainedMessages.getData();
+
+        assertEquals(2, data.size());
+        assertEquals(5, retainedMessages.getTotalElements());
+        assertEquals("home/temp", data.get(0).getTopic());
+    }
+
+    @Test
+    public void testGetRetainedMessagesWithPageLinkAndTextSearchCopiesOnlyPageMessages() {
+        PageData<RetainedMsgDto> retainedMessages = retainedMsgPageService.getRetainedMessages(
+                new PageLink(2, 1, "topic"));
+
+        assertEquals(2, retainedMessages.getData().size());
+        assertEquals(4, retainedMessages.getTotalElements());
+        verify(retainedMsgListenerService, times(2)).getRetainedMsg(anyString());
+    }
+
+    @Test
+    public void testGetRetainedMessagesWithPageLinkWhenMessageIsClearedMeanwhile() {
+        doReturn(null).when(retainedMsgListenerService).getRetainedMsg("home/temp");
+
+        PageData<RetainedMsgDto> retainedMessages = retainedMsgPageService.getRetainedMessages(
+                new PageLink(2, 0, null, new SortOrder("topic", SortOrder.Direction.ASC)));
+
+        assertEquals(List.of("my/topic"), retainedMessages.getData().stream().map(RetainedMsgDto::getTopic).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testGetRetainedMessagesByCursor() {
+        CursorPageData<RetainedMsgDto> retainedMessages = retainedMsgPageService.getRetainedMessages(
+                new CursorPageLink(2, null, "topic", new SortOrder("topic", SortOrder.Direction.DESC)));
+
+        assertEquals(List.of("topic/test3", "topic/test2"), toTopics(retainedMessages));
+        assertTrue(retainedMessages.hasNext());
+
+        retainedMessages = retainedMsgPageService.getRetainedMessages(
+                new CursorPageLink(2, retainedMessages.getNextCursor(), "topic", new SortOrder("topic", SortOrder.Direction.DESC)));
+
+        assertEquals(List.of("topic/test1", "my/topic"), toTopics(retainedMessages));
+        assertFalse(retainedMessages.hasNext());
+    }
+
+    private List<String> toTopics(CursorPageData<RetainedMsgDto> retainedMessages) {
+        return retainedMessages.getData().stream().map(RetainedMsgDto::getTopic).collect(Collectors.toList());
+    }
+
     private static RetainedMsg getRetainedMsg(String topic) {
         return new RetainedMsg(topic, "payload".getBytes(StandardCharsets.UTF_8), 1);
     }
@@ -20,6 +20,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.mqtt.ParsedTopic;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -48,7 +49,7 @@ public class RetainedMsgProcessorImplTest {
 
         retainedMsgProcessor.process(publishMsg);
 
-        verify(retainedMsgListenerService, times(1)).cacheRetainedMsgAndPersist(eq("test"), any());
+        verify(retainedMsgListenerService, times(1)).cacheRetainedMsgAndPersist(eq(ParsedTopic.parse("test")), any());
     }
 
     @Test
@@ -57,7 +58,7 @@ public class RetainedMsgProcessorImplTest {
 
         retainedMsgProcessor.process(publishMsg);
 
-        verify(retainedMsgListenerService, times(1)).clearRetainedMsgAndPersist(eq("test"));
+        verify(retainedMsgListenerService, times(1)).clearRetainedMsgAndPersist(eq(ParsedTopic.parse("test")));
     }
 
     private PublishMsg emptyPublishMsg() {
@@ -16,22 +16,36 @@
 package org.thingsboard.mqtt.broker.service.mqtt.will;
 
 import io.netty.handler.codec.mqtt.MqttProperties;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.verification.VerificationMode;
+import org.thingsboard.mqtt.broker.common.data.ClientInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
 import org.thingsboard.mqtt.broker.common.data.SessionInfo;
 import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
 import org.thingsboard.mqtt.broker.service.mqtt.retain.RetainedMsgProcessor;
 import org.thingsboard.mqtt.broker.service.processing.MsgDispatcherService;
 import org.thingsboard.mqtt.broker.service.stats.StatsManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -46,8 +60,16 @@ public class DefaultLastWillServiceTest {
     MsgDispatcherService msgDispatcherService;
     RetainedMsgProcessor retainedMsgProcessor;
     StatsManager statsManager;
+    HashedWheelTimer timer;
+    Timeout timeout;
+    DirectExecutorService dispatcher;
     DefaultLastWillService lastWillService;
 
+    AtomicLong scheduledCounter;
+    AtomicLong cancelledCounter;
+    AtomicLong lateCounter;
+    List<TimerTask> timerTasks;
+
     SessionInfo sessionInfo;
     UUID savedSessionId;
 
@@ -57,14 +79,28 @@ public class DefaultLastWillServiceTest {
         retainedMsgProcessor = mock(RetainedMsgProcessor.class);
         statsManager = mock(StatsManager.class);
         lastWillService = spy(new DefaultLastWillService(msgDispatcherService, retainedMsgProcessor, statsManager));
+        lastWillService.setBatchSize(2);
+        lastWillService.setLateThresholdMs(1000);
+
+        scheduledCounter = new AtomicLong();
+        cancelledCounter = new AtomicLong();
+        lateCounter = new AtomicLong();
+        when(statsManager.createLastWillScheduledCounter()).thenReturn(scheduledCounter);
+        when(statsManager.createLastWillCancelledCounter()).thenReturn(cancelledCounter);
+        when(statsManager.createLastWillLateCounter()).thenReturn(lateCounter);
+
+        timerTasks = new ArrayList<>();
+        timer = mock(HashedWheelTimer.class);
+        timeout = mock(Timeout.class);
+        when(timer.newTimeout(any(), anyLong(), any())).thenAnswer(invocation -> {
+            timerTasks.add(invocation.getArgument(0));
+            return timeout;
+        });
+        dispatcher = new DirectExecutorService();
+        lastWillService.init(timer, dispatcher);
 
         sessionInfo = mock(SessionInfo.class);
         savedSessionId = UUID.randomUUID();
-        when(sessionInfo.getSessionId()).thenReturn(savedSessionId);
-
-        ScheduledExecutorService scheduledExecutorService = mock(ScheduledExecutorService.class);
-        lastWillService.setScheduler(scheduledExecutorService);
-        doNothing().when(lastWillService).scheduleLastWill(any(), any(), anyInt());
     }
 
     @Test
@@ -94,11 +130,110 @@ public class DefaultLastWillServiceTest {
         verifyPersistPublishMsg(never());
     }
 
+    @Test
+    public void givenZeroWillDelay_whenScheduleLastWill_thenPublishedWithoutWaitingForTimer() {
+        lastWillService.scheduleLastWill(newLastWill("client"), UUID.randomUUID(), 0);
+
+        verify(timer, never()).newTimeout(any(), anyLong(), any());
+        verify(msgDispatcherService, times(1)).persistPublishMsg(any(), any(), any());
+        assertEquals(0, scheduledCounter.get());
+    }
+
+    @Test
+    public void givenWillDelay_whenScheduleLastWill_thenPublishedOnlyAfterTimerFires() throws Exception {
+        lastWillService.scheduleLastWill(newLastWill("client"), UUID.randomUUID(), 5);
+
+        verify(timer, times(1)).newTimeout(any(), eq(TimeUnit.SECONDS.toMillis(5)), eq(TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduledCounter.get());
+        lastWillService.dispatchDueLastWills();
+        verify(msgDispatcherService, never()).persistPublishMsg(any(), any(), any());
+
+        fireTimerTasks();
+        lastWillService.dispatchDueLastWills();
+
+        verify(msgDispatcherService, times(1)).persistPublishMsg(any(), any(), any());
+        assertEquals(0, lateCounter.get());
+    }
+
+    @Test
+    public void givenManyDueWills_whenDispatchDueLastWills_thenPublishedInBatches() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            lastWillService.scheduleLastWill(newLastWill("client-" + i), UUID.randomUUID(), 5);
+        }
+        fireTimerTasks();
+
+        lastWillService.dispatchDueLastWills();
+
+        assertEquals(3, dispatcher.getExecutedTasks());
+        verify(msgDispatcherService, times(5)).persistPublishMsg(any(), any(), any());
+    }
+
+    @Test
+    public void givenScheduledWill_whenCancelled_thenNotPublishedEvenIfTimerAlreadyFired() throws Exception {
+        lastWillService.scheduleLastWill(newLastWill("client"), UUID.randomUUID(), 5);
+        fireTimerTasks();
+
+        lastWillService.cancelLastWillDelayIfScheduled("client");
+        lastWillService.dispatchDueLastWills();
+
+        verify(timeout, times(1)).cancel();
+        assertEquals(1, cancelledCounter.get());
+        verify(msgDispatcherService, never()).persistPublishMsg(any(), any(), any());
+    }
+
+    @Test
+    public void givenPublishedWill_whenCancelled_thenNotCountedAsCancelled() throws Exception {
+        lastWillService.scheduleLastWill(newLastWill("client"), UUID.randomUUID(), 5);
+        fireTimerTasks();
+        lastWillService.dispatchDueLastWills();
+
+        lastWillService.cancelLastWillDelayIfScheduled("client");
+
+        verify(msgDispatcherService, times(1)).persistPublishMsg(any(), any(), any());
+        verify(timeout, never()).cancel();
+        assertEquals(0, cancelledCounter.get());
+    }
+
+    @Test
+    public void givenWillPublishedAfterLateThreshold_whenDispatchDueLastWills_thenCountedAsLate() throws Exception {
+        lastWillService.setLateThresholdMs(100);
+        lastWillService.scheduleLastWill(newLastWill("client"), UUID.randomUUID(), 1);
+        fireTimerTasks();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(1) + 200);
+        lastWillService.dispatchDueLastWills();
+
+        verify(msgDispatcherService, times(1)).persistPublishMsg(any(), any(), any());
+        assertEquals(1, lateCounter.get());
+    }
+
+    private void fireTimerTasks() throws Exception {
+        for (TimerTask timerTask : timerTasks) {
+            timerTask.run(timeout);
+        }
+        timerTasks.clear();
+    }
+
+    private DefaultLastWillService.MsgWithSessionInfo newLastWill(String clientId) {
+        SessionInfo willSessionInfo = SessionInfo.builder()
+                .sessionId(UUID.randomUUID())
+                .cleanStart(true)
+                .clientInfo(new ClientInfo(clientId, ClientType.DEVICE))
+                .build();
+        PublishMsg publishMsg = PublishMsg.builder()
+                .topicName("will/" + clientId)
+                .properties(MqttProperties.NO_PROPERTIES)
+                .build();
+        return new DefaultLastWillService.MsgWithSessionInfo(publishMsg, willSessionInfo);
+    }
+
     private void verifyPersistPublishMsg(VerificationMode mode) {
         verify(lastWillService, mode).scheduleLastWill(any(), any(), anyInt());
     }
 
     private void saveLastWillMsg() {
+        when(sessionInfo.getSessionId()).thenReturn(savedSessionId);
+        doNothing().when(lastWillService).scheduleLastWill(any(), any(), anyInt());
         lastWillService.saveLastWillMsg(sessionInfo, getPublishMsg());
     }
 
@@ -115,4 +250,43 @@ public class DefaultLastWillServiceTest {
     private void removeAndExecuteLastWillIfNeeded(UUID sessionId, boolean newSessionCleanStart) {
         lastWillService.removeAndExecuteLastWillIfNeeded(sessionId, true, newSessionCleanStart, -1);
     }
+
+    private static class DirectExecutorService extends AbstractExecutorService {
+
+        private final AtomicInteger executedTasks = new AtomicInteger();
+
+        int getExecutedTasks() {
+            return executedTasks.get();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executedTasks.incrementAndGet();
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
 }
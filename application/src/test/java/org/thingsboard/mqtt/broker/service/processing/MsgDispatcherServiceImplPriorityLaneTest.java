@@ -0,0 +1,184 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.thingsboard.mqtt.broker.actors.client.service.subscription.SubscriptionService;
+import org.thingsboard.mqtt.broker.common.data.ClientInfo;
+import org.thingsboard.mqtt.broker.common.data.ClientType;
+import org.thingsboard.mqtt.broker.common.data.SessionInfo;
+import org.thingsboard.mqtt.broker.queue.TbQueueCallback;
+import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.historical.stats.TbMessageStatsReportClient;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCache;
+import org.thingsboard.mqtt.broker.service.mqtt.persistence.MsgPersistenceManager;
+import org.thingsboard.mqtt.broker.service.processing.downlink.DownLinkProxy;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionCacheService;
+import org.thingsboard.mqtt.broker.service.subscription.shared.SharedSubscriptionProcessingStrategyFactory;
+import org.thingsboard.mqtt.broker.session.PublishLanesCtx;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {MsgDispatcherServiceImpl.class, StatsManagerStub.class})
+@TestPropertySource(properties = {
+        "queue.msg-all.priority-lane.enabled=true",
+        "queue.msg-all.priority-lane.max-topics-per-client=2"
+})
+public class MsgDispatcherServiceImplPriorityLaneTest {
+
+    @MockBean
+    SubscriptionService subscriptionService;
+    @MockBean
+    MsgPersistenceManager msgPersistenceManager;
+    @MockBean
+    ClientSessionCache clientSessionCache;
+    @MockBean
+    DownLinkProxy downLinkProxy;
+    @MockBean
+    ClientLogger clientLogger;
+    @MockBean
+    PublishMsgQueuePublisher publishMsgQueuePublisher;
+    @MockBean
+    SharedSubscriptionProcessingStrategyFactory sharedSubscriptionProcessingStrategyFactory;
+    @MockBean
+    SharedSubscriptionCacheService sharedSubscriptionCacheService;
+    @MockBean
+    TbMessageStatsReportClient tbMessageStatsReportClient;
+    @Autowired
+    MsgDispatcherServiceImpl msgDispatcherService;
+
+    @Test
+    public void givenQos0Msg_whenPersistPublishMsg_thenMsgSentToDefaultLane() {
+        TbQueueCallback callback = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 0), new PublishLanesCtx(), callback);
+
+        verify(publishMsgQueuePublisher).sendMsg(argThat(msgProto -> msgProto.getQos() == 0), eq(callback));
+        verify(publishMsgQueuePublisher, never()).sendPriorityMsg(any(), any());
+    }
+
+    @Test
+    public void givenQos1And2Msgs_whenPersistPublishMsg_thenMsgsSentToPriorityLane() {
+        PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
+        TbQueueCallback callback1 = mock(TbQueueCallback.class);
+        TbQueueCallback callback2 = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 1), publishLanesCtx, callback1);
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 2), publishLanesCtx, callback2);
+
+        verify(publishMsgQueuePublisher).sendPriorityMsg(argThat(msgProto -> msgProto.getQos() == 1), eq(callback1));
+        verify(publishMsgQueuePublisher).sendPriorityMsg(argThat(msgProto -> msgProto.getQos() == 2), eq(callback2));
+        verify(publishMsgQueuePublisher, never()).sendMsg(any(), any());
+    }
+
+    @Test
+    public void givenQos0MsgFollowedByQos1MsgToSameTopic_whenPersistPublishMsg_thenMsgsSentToDefaultLaneInOrder() {
+        PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
+        TbQueueCallback callback0 = mock(TbQueueCallback.class);
+        TbQueueCallback callback1 = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 0), publishLanesCtx, callback0);
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 1), publishLanesCtx, callback1);
+
+        InOrder inOrder = inOrder(publishMsgQueuePublisher);
+        inOrder.verify(publishMsgQueuePublisher).sendMsg(argThat(msgProto -> msgProto.getQos() == 0), eq(callback0));
+        inOrder.verify(publishMsgQueuePublisher).sendMsg(argThat(msgProto -> msgProto.getQos() == 1), eq(callback1));
+        verify(publishMsgQueuePublisher, never()).sendPriorityMsg(any(), any());
+    }
+
+    @Test
+    public void givenQos1MsgFollowedByQos0MsgToSameTopic_whenPersistPublishMsg_thenMsgsSentToPriorityLaneInOrder() {
+        PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
+        TbQueueCallback callback1 = mock(TbQueueCallback.class);
+        TbQueueCallback callback0 = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 1), publishLanesCtx, callback1);
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 0), publishLanesCtx, callback0);
+
+        InOrder inOrder = inOrder(publishMsgQueuePublisher);
+        inOrder.verify(publishMsgQueuePublisher).sendPriorityMsg(argThat(msgProto -> msgProto.getQos() == 1), eq(callback1));
+        inOrder.verify(publishMsgQueuePublisher).sendPriorityMsg(argThat(msgProto -> msgProto.getQos() == 0), eq(callback0));
+        verify(publishMsgQueuePublisher, never()).sendMsg(any(), any());
+    }
+
+    @Test
+    public void givenQos0MsgToOtherTopic_whenPersistQos1PublishMsg_thenMsgSentToPriorityLane() {
+        PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
+        TbQueueCallback callback0 = mock(TbQueueCallback.class);
+        TbQueueCallback callback1 = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic0", 0), publishLanesCtx, callback0);
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic1", 1), publishLanesCtx, callback1);
+
+        verify(publishMsgQueuePublisher).sendMsg(any(), eq(callback0));
+        verify(publishMsgQueuePublisher).sendPriorityMsg(any(), eq(callback1));
+    }
+
+    @Test
+    public void givenMaxTopicsPinned_whenPersistQos1PublishMsgToNewTopic_thenMsgSentToDefaultLane() {
+        PublishLanesCtx publishLanesCtx = new PublishLanesCtx();
+        TbQueueCallback callback = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic1", 1), publishLanesCtx, mock(TbQueueCallback.class));
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic2", 1), publishLanesCtx, mock(TbQueueCallback.class));
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic3", 1), publishLanesCtx, callback);
+
+        verify(publishMsgQueuePublisher).sendMsg(argThat(msgProto -> msgProto.getTopicName().equals("test/topic3")), eq(callback));
+    }
+
+    @Test
+    public void givenMsgWithoutPublishLanes_whenPersistPublishMsg_thenMsgSentToDefaultLane() {
+        TbQueueCallback callback = mock(TbQueueCallback.class);
+
+        msgDispatcherService.persistPublishMsg(newSessionInfo(), newPublishMsg("test/topic", 1), callback);
+
+        verify(publishMsgQueuePublisher).sendMsg(argThat(msgProto -> msgProto.getQos() == 1), eq(callback));
+        verify(publishMsgQueuePublisher, never()).sendPriorityMsg(any(), any());
+    }
+
+    private SessionInfo newSessionInfo() {
+        return SessionInfo.builder()
+                .serviceId("serviceId")
+                .sessionId(UUID.randomUUID())
+                .clientInfo(ClientInfo.builder()
+                        .clientId("clientId")
+                        .type(ClientType.DEVICE)
+                        .build())
+                .build();
+    }
+
+    private PublishMsg newPublishMsg(String topic, int qos) {
+        return new PublishMsg(1, topic, "data".getBytes(), qos, false, false);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.service.processing.MsgSheddingServiceImpl.SheddingReason;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MsgSheddingServiceImplTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final int BACKLOG_SIZE = 1000;
+
+    @Mock
+    StatsManager statsManager;
+
+    Map<String, AtomicLong> shedMsgsCounters;
+    MsgSheddingServiceImpl msgSheddingService;
+
+    @Before
+    public void setUp() {
+        shedMsgsCounters = new HashMap<>();
+        when(statsManager.createShedQos0MsgsCounter(anyString())).thenAnswer(invocation ->
+                shedMsgsCounters.computeIfAbsent(invocation.getArgument(0), reason -> new AtomicLong()));
+        msgSheddingService = new MsgSheddingServiceImpl(statsManager);
+        msgSheddingService.setEnabled(true);
+        msgSheddingService.setLagThreshold(10_000);
+        msgSheddingService.setMsgAgeThresholdMs(5000);
+        msgSheddingService.setMaxQos0MsgAgeMs(1000);
+        msgSheddingService.setClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void givenSheddingDisabled_whenShedStaleMsgs_thenAllMsgsKept() {
+        msgSheddingService.setEnabled(false);
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = syntheticBacklog(10_000);
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> {
+            fail("Lag must not be requested while shedding is disabled");
+            return 0;
+        });
+
+        assertSame(msgs, result);
+    }
+
+    @Test
+    public void givenConsumerNotOverloaded_whenShedStaleMsgs_thenStaleQos0MsgsKept() {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = syntheticBacklog(3000);
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> 100);
+
+        assertSame(msgs, result);
+        assertTotalShedMsgs(0);
+    }
+
+    @Test
+    public void givenPartitionLagAboveThreshold_whenShedStaleMsgs_thenOnlyStaleQos0MsgsDropped() {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = syntheticBacklog(3000);
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> 50_000);
+
+        assertKeptMsgs(msgs, result);
+        assertEquals(countStaleQos0Msgs(msgs), shedMsgsCounters.get(SheddingReason.PARTITION_LAG.getPrintName()).get());
+        assertEquals(0, shedMsgsCounters.get(SheddingReason.MSG_AGE.getPrintName()).get());
+    }
+
+    @Test
+    public void givenOldestMsgAgeAboveThreshold_whenShedStaleMsgs_thenOnlyStaleQos0MsgsDropped() {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = syntheticBacklog(10_000);
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> 100);
+
+        assertKeptMsgs(msgs, result);
+        assertEquals(countStaleQos0Msgs(msgs), shedMsgsCounters.get(SheddingReason.MSG_AGE.getPrintName()).get());
+        assertEquals(0, shedMsgsCounters.get(SheddingReason.PARTITION_LAG.getPrintName()).get());
+    }
+
+    @Test
+    public void givenOnlyStaleQos0Msgs_whenConsumerOverloaded_thenAllMsgsDropped() {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = List.of(
+                newMsg(0, NOW - 6000),
+                newMsg(0, NOW - 2000));
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> 0);
+
+        assertTrue(result.isEmpty());
+        assertTotalShedMsgs(2);
+    }
+
+    @Test
+    public void givenMsgsWithoutCreatedTime_whenConsumerOverloaded_thenMsgsKept() {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = List.of(newMsg(0, 0), newMsg(0, 0));
+
+        List<TbProtoQueueMsg<PublishMsgProto>> result = msgSheddingService.shedStaleMsgs(msgs, () -> 50_000);
+
+        assertSame(msgs, result);
+        assertTotalShedMsgs(0);
+    }
+
+    private void assertKeptMsgs(List<TbProtoQueueMsg<PublishMsgProto>> msgs, List<TbProtoQueueMsg<PublishMsgProto>> result) {
+        List<TbProtoQueueMsg<PublishMsgProto>> expected = new ArrayList<>();
+        for (TbProtoQueueMsg<PublishMsgProto> msg : msgs) {
+            if (!isStaleQos0Msg(msg)) {
+                expected.add(msg);
+            }
+        }
+        assertTrue(expected.size() < msgs.size());
+        assertEquals(expected, result);
+        assertEquals(countQos12Msgs(msgs), result.stream().filter(msg -> msg.getValue().getQos() > 0).count());
+    }
+
+    private void assertTotalShedMsgs(long expected) {
+        assertEquals(expected, shedMsgsCounters.values().stream().mapToLong(AtomicLong::get).sum());
+    }
+
+    private long countStaleQos0Msgs(List<TbProtoQueueMsg<PublishMsgProto>> msgs) {
+        return msgs.stream().filter(this::isStaleQos0Msg).count();
+    }
+
+    private long countQos12Msgs(List<TbProtoQueueMsg<PublishMsgProto>> msgs) {
+        return msgs.stream().filter(msg -> msg.getValue().getQos() > 0).count();
+    }
+
+    private boolean isStaleQos0Msg(TbProtoQueueMsg<PublishMsgProto> msg) {
+        return msg.getValue().getQos() == 0 && NOW - msg.getValue().getCreatedTime() > 1000;
+    }
+
+    /**
+     * Msgs with QoS 0, 1, 2 in turn, created evenly over the given period before now, the oldest first.
+     */
+    private List<TbProtoQueueMsg<PublishMsgProto>> syntheticBacklog(long periodMs) {
+        List<TbProtoQueueMsg<PublishMsgProto>> msgs = new ArrayList<>(BACKLOG_SIZE);
+        for (int i = 0; i < BACKLOG_SIZE; i++) {
+            long createdTime = NOW - periodMs + periodMs * i / BACKLOG_SIZE;
+            msgs.add(newMsg(i % 3, createdTime));
+        }
+        return msgs;
+    }
+
+    private TbProtoQueueMsg<PublishMsgProto> newMsg(int qos, long createdTime) {
+        return new TbProtoQueueMsg<>("test", PublishMsgProto.newBuilder()
+                .setClientId("test")
+                .setTopicName("test/topic")
+                .setQos(qos)
+                .setCreatedTime(createdTime)
+                .build());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.thingsboard.mqtt.broker.cluster.ServiceInfoProvider;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
+import org.thingsboard.mqtt.broker.queue.common.TbProtoQueueMsg;
+import org.thingsboard.mqtt.broker.queue.provider.PublishMsgQueueFactory;
+import org.thingsboard.mqtt.broker.service.processing.scaling.ConsumerAutoscaler;
+import org.thingsboard.mqtt.broker.service.stats.StatsManagerStub;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {PublishMsgConsumerServiceImpl.class, SubmitStrategyFactory.class, StatsManagerStub.class})
+@TestPropertySource(properties = {
+        "queue.msg-all.threads-count=1",
+        "queue.msg-all.consumers-count=1",
+        "queue.msg-all.poll-interval=10",
+        "queue.msg-all.pack-processing-timeout=1000",
+        "queue.msg-all.autoscaling.max-consumers=1",
+        "queue.msg-all.priority-lane.enabled=true",
+        "queue.msg-all.priority-lane.consumers-count=1",
+        "queue.msg-all.priority-lane.threads-count=1"
+})
+public class PublishMsgConsumerServiceImplPriorityLaneTest {
+
+    @MockBean
+    MsgDispatcherService msgDispatcherService;
+    @MockBean
+    MsgSheddingService msgSheddingService;
+    @MockBean
+    PublishMsgQueueFactory publishMsgQueueFactory;
+    @MockBean
+    AckStrategyFactory ackStrategyFactory;
+    @MockBean
+    ServiceInfoProvider serviceInfoProvider;
+    @MockBean
+    ConsumerAutoscaler consumerAutoscaler;
+    @Autowired
+    PublishMsgConsumerServiceImpl publishMsgConsumerService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenQos1MsgInPriorityTopic_whenConsuming_thenMsgProcessedAndCommittedByPriorityConsumer() {
+        PublishMsgProto publishMsgProto = PublishMsgProto.newBuilder().setTopicName("test/topic").setQos(1).build();
+        TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>> consumer = mock(TbQueueConsumer.class);
+        TbQueueConsumer<TbProtoQueueMsg<PublishMsgProto>> priorityConsumer = mock(TbQueueConsumer.class);
+        when(consumer.poll(anyLong())).thenReturn(Collections.emptyList());
+        when(priorityConsumer.poll(anyLong()))
+                .thenReturn(List.of(new TbProtoQueueMsg<>("test/topic", publishMsgProto)))
+                .thenReturn(Collections.emptyList());
+
+        when(serviceInfoProvider.getServiceId()).thenReturn("serviceId");
+        when(publishMsgQueueFactory.createConsumer(any())).thenReturn(consumer);
+        when(publishMsgQueueFactory.createPriorityConsumer(any())).thenReturn(priorityConsumer);
+        when(msgSheddingService.shedStaleMsgs(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ackStrategyFactory.newInstance(any())).thenReturn(result -> new ProcessingDecision(true, Collections.emptyMap()));
+        doAnswer(invocation -> {
+            PublishMsgCallback callback = invocation.getArgument(1);
+            callback.onSuccess();
+            return null;
+        }).when(msgDispatcherService).processPublishMsg(any(), any());
+
+        publishMsgConsumerService.startConsuming();
+
+        verify(publishMsgQueueFactory).createPriorityConsumer("serviceId-priority-0");
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            verify(msgDispatcherService).processPublishMsg(eq(publishMsgProto), any());
+            verify(priorityConsumer).commitSync();
+        });
+        verify(priorityConsumer, atLeastOnce()).subscribe();
+        verify(consumer, never()).commitSync();
+    }
+}
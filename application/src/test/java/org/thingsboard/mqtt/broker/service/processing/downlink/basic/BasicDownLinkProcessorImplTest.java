@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.downlink.basic;
+
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.data.util.MqttPropertiesUtil;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos;
+import org.thingsboard.mqtt.broker.service.analysis.ClientLogger;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsg;
+import org.thingsboard.mqtt.broker.service.mqtt.PublishMsgDeliveryService;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+import org.thingsboard.mqtt.broker.service.mqtt.expiry.MsgExpiryService;
+import org.thingsboard.mqtt.broker.session.ClientMqttActorManager;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+import org.thingsboard.mqtt.broker.session.MsgIdSequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BasicDownLinkProcessorImplTest {
+
+    private static final String CLIENT_ID = "client";
+
+    @Mock
+    ClientSessionCtxService clientSessionCtxService;
+    @Mock
+    ClientMqttActorManager clientMqttActorManager;
+    @Mock
+    PublishMsgDeliveryService publishMsgDeliveryService;
+    @Mock
+    ClientLogger clientLogger;
+    @Mock
+    MsgExpiryService msgExpiryService;
+    @Mock
+    ClientSessionCtx clientSessionCtx;
+
+    BasicDownLinkProcessorImpl basicDownLinkProcessor;
+
+    @Before
+    public void setUp() {
+        basicDownLinkProcessor = new BasicDownLinkProcessorImpl(clientSessionCtxService, clientMqttActorManager,
+                publishMsgDeliveryService, clientLogger, msgExpiryService);
+        when(clientSessionCtxService.getClientSessionCtx(CLIENT_ID)).thenReturn(clientSessionCtx);
+    }
+
+    @Test
+    public void givenExpiredMsg_whenProcess_thenMsgNotDelivered() {
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(1000L, 10);
+        when(msgExpiryService.isExpired(CLIENT_ID, 1000L, 10)).thenReturn(true);
+
+        basicDownLinkProcessor.process(CLIENT_ID, msg);
+
+        verify(publishMsgDeliveryService, never()).sendPublishMsgToClient(any(), any());
+        verify(clientMqttActorManager, never()).disconnect(any(), any());
+    }
+
+    @Test
+    public void givenNotExpiredMsg_whenProcess_thenMsgDeliveredWithRemainingExpiryInterval() {
+        long createdTime = System.currentTimeMillis() - 5_000;
+        QueueProtos.PublishMsgProto msg = newPublishMsgProto(createdTime, 60);
+        when(msgExpiryService.isExpired(CLIENT_ID, createdTime, 60)).thenReturn(false);
+        when(clientSessionCtx.getMsgIdSeq()).thenReturn(new MsgIdSequence());
+
+        basicDownLinkProcessor.process(CLIENT_ID, msg);
+
+        ArgumentCaptor<PublishMsg> publishMsgCaptor = ArgumentCaptor.forClass(PublishMsg.class);
+        verify(publishMsgDeliveryService).sendPublishMsgToClient(eq(clientSessionCtx), publishMsgCaptor.capture());
+        PublishMsg publishMsg = publishMsgCaptor.getValue();
+        assertEquals("test/topic", publishMsg.getTopicName());
+        Integer remainingMsgExpiryInterval = MqttPropertiesUtil.getMsgExpiryInterval(publishMsg.getProperties());
+        assertTrue(remainingMsgExpiryInterval != null && remainingMsgExpiryInterval <= 55 && remainingMsgExpiryInterval > 0);
+    }
+
+    @Test
+    public void givenNoClientSession_whenProcess_thenExpiryNotChecked() {
+        when(clientSessionCtxService.getClientSessionCtx(CLIENT_ID)).thenReturn(null);
+
+        basicDownLinkProcessor.process(CLIENT_ID, newPublishMsgProto(1000L, 10));
+
+        verify(msgExpiryService, never()).isExpired(any(), eq(1000L), any());
+        verify(publishMsgDeliveryService, never()).sendPublishMsgToClient(any(), any());
+    }
+
+    private QueueProtos.PublishMsgProto newPublishMsgProto(long createdTime, int msgExpiryInterval) {
+        return QueueProtos.PublishMsgProto.newBuilder()
+                .setTopicName("test/topic")
+                .setQos(1)
+                .setPayload(ByteString.copyFromUtf8("payload"))
+                .setCreatedTime(createdTime)
+                .setMsgExpiryInterval(msgExpiryInterval)
+                .build();
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.scaling;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsumerAutoscalerImplTest {
+
+    TestConsumerGroup group;
+    ConsumerAutoscalerImpl autoscaler;
+
+    @Before
+    public void setUp() {
+        autoscaler = new ConsumerAutoscalerImpl();
+        autoscaler.setEnabled(true);
+        autoscaler.setScaleUpLagPerConsumer(10_000);
+        autoscaler.setScaleDownLagPerConsumer(100);
+        autoscaler.setMaxPackProcessingTimeMs(1000);
+        autoscaler.setScaleDownChecks(3);
+        autoscaler.setCooldownChecks(2);
+
+        group = new TestConsumerGroup(2, 1, 4);
+        autoscaler.register(group);
+    }
+
+    @Test
+    public void givenHighLagPerConsumer_whenCheckGroups_thenConsumerAdded() {
+        group.lag = 2 * 20_000;
+
+        autoscaler.checkGroups();
+
+        assertEquals(3, group.consumersCount);
+    }
+
+    @Test
+    public void givenSlowProcessingWithBacklog_whenCheckGroups_thenConsumerAdded() {
+        group.lag = 2 * 500;
+        group.avgPackProcessingTimeMs = 5000;
+
+        autoscaler.checkGroups();
+
+        assertEquals(3, group.consumersCount);
+    }
+
+    @Test
+    public void givenSlowProcessingWithoutBacklog_whenCheckGroups_thenConsumersNotChanged() {
+        group.lag = 0;
+        group.avgPackProcessingTimeMs = 5000;
+
+        for (int i = 0; i < 10; i++) {
+            autoscaler.checkGroups();
+        }
+
+        assertEquals(2, group.consumersCount);
+    }
+
+    @Test
+    public void givenScaledUp_whenCheckGroupsDuringCooldown_thenConsumersNotChanged() {
+        group.lag = 2 * 20_000;
+
+        autoscaler.checkGroups();
+        autoscaler.checkGroups();
+        autoscaler.checkGroups();
+        assertEquals(3, group.consumersCount);
+
+        autoscaler.checkGroups();
+        assertEquals(4, group.consumersCount);
+    }
+
+    @Test
+    public void givenHighLag_whenCheckGroupsRepeatedly_thenMaxConsumersRespected() {
+        group.lag = 1_000_000;
+
+        for (int i = 0; i < 20; i++) {
+            autoscaler.checkGroups();
+        }
+
+        assertEquals(4, group.consumersCount);
+    }
+
+    @Test
+    public void givenIdleGroup_whenCheckGroups_thenConsumerRemovedOnlyAfterScaleDownChecks() {
+        group.lag = 10;
+
+        autoscaler.checkGroups();
+        autoscaler.checkGroups();
+        assertEquals(2, group.consumersCount);
+
+        autoscaler.checkGroups();
+        assertEquals(1, group.consumersCount);
+    }
+
+    @Test
+    public void givenIdleGroupInterruptedByLoad_whenCheckGroups_thenIdleChecksRestarted() {
+        group.lag = 10;
+        autoscaler.checkGroups();
+        autoscaler.checkGroups();
+
+        group.lag = 2 * 5000;
+        autoscaler.checkGroups();
+
+        group.lag = 10;
+        autoscaler.checkGroups();
+        autoscaler.checkGroups();
+        assertEquals(2, group.consumersCount);
+
+        autoscaler.checkGroups();
+        assertEquals(1, group.consumersCount);
+    }
+
+    @Test
+    public void givenIdleGroup_whenCheckGroupsRepeatedly_thenMinConsumersRespected() {
+        group.lag = 0;
+
+        for (int i = 0; i < 50; i++) {
+            autoscaler.checkGroups();
+        }
+
+        assertEquals(1, group.consumersCount);
+    }
+
+    @Test
+    public void givenAutoscalerDisabled_whenRegister_thenGroupNotChecked() {
+        ConsumerAutoscalerImpl disabledAutoscaler = new ConsumerAutoscalerImpl();
+        disabledAutoscaler.setEnabled(false);
+        TestConsumerGroup otherGroup = new TestConsumerGroup(2, 1, 4);
+        otherGroup.lag = 1_000_000;
+        disabledAutoscaler.register(otherGroup);
+
+        disabledAutoscaler.checkGroups();
+
+        assertEquals(2, otherGroup.consumersCount);
+    }
+
+    private static class TestConsumerGroup implements AutoscaledConsumerGroup {
+
+        private final int minConsumers;
+        private final int maxConsumers;
+        private int consumersCount;
+        private long lag;
+        private double avgPackProcessingTimeMs;
+
+        TestConsumerGroup(int consumersCount, int minConsumers, int maxConsumers) {
+            this.consumersCount = consumersCount;
+            this.minConsumers = minConsumers;
+            this.maxConsumers = maxConsumers;
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public int getConsumersCount() {
+            return consumersCount;
+        }
+
+        @Override
+        public int getMinConsumers() {
+            return minConsumers;
+        }
+
+        @Override
+        public int getMaxConsumers() {
+            return maxConsumers;
+        }
+
+        @Override
+        public long getLag() {
+            return lag;
+        }
+
+        @Override
+        public double pollAvgPackProcessingTimeMs() {
+            return avgPackProcessingTimeMs;
+        }
+
+        @Override
+        public boolean addConsumer() {
+            if (consumersCount >= maxConsumers) {
+                return false;
+            }
+            consumersCount++;
+            return true;
+        }
+
+        @Override
+        public boolean removeConsumer() {
+            if (consumersCount <= minConsumers) {
+                return false;
+            }
+            consumersCount--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.processing.scaling;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.mqtt.broker.queue.TbQueueConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScalableConsumerGroupTest {
+
+    ExecutorService executor;
+    Map<String, TbQueueConsumer<TbQueueMsg>> consumers;
+    Set<String> consumersWithMsgs;
+    Set<String> removedConsumerIds;
+    AtomicInteger consumersCountGauge;
+    ScalableConsumerGroup<TbQueueMsg> group;
+
+    CountDownLatch packHandlingStarted;
+    CountDownLatch packHandlingReleased;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+        consumers = new ConcurrentHashMap<>();
+        consumersWithMsgs = ConcurrentHashMap.newKeySet();
+        removedConsumerIds = ConcurrentHashMap.newKeySet();
+        consumersCountGauge = new AtomicInteger();
+        packHandlingStarted = new CountDownLatch(1);
+        packHandlingReleased = new CountDownLatch(1);
+        group = ScalableConsumerGroup.<TbQueueMsg>builder()
+                .name("test")
+                .consumerIdPrefix("consumer-")
+                .consumerFactory(this::newConsumer)
+                .packHandlerFactory(consumerId -> (consumer, msgs) -> {
+                    packHandlingStarted.countDown();
+                    packHandlingReleased.await();
+                    consumer.commitSync();
+                })
+                .executor(executor)
+                .pollDuration(10)
+                .minConsumers(1)
+                .maxConsumers(3)
+                .consumersCountGauge(consumersCountGauge)
+                .removedConsumerHandler(removedConsumerIds::add)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        packHandlingReleased.countDown();
+        group.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenGroupStarted_whenAddConsumer_thenMaxConsumersRespected() {
+        group.start(2);
+        assertEquals(2, consumersCountGauge.get());
+
+        assertTrue(group.addConsumer());
+        assertFalse(group.addConsumer());
+
+        assertEquals(3, group.getConsumersCount());
+        assertEquals(3, consumersCountGauge.get());
+        assertEquals(3, consumers.size());
+    }
+
+    @Test
+    public void givenGroupStarted_whenRemoveConsumer_thenMinConsumersRespected() {
+        group.start(2);
+
+        assertTrue(group.removeConsumer());
+        assertFalse(group.removeConsumer());
+
+        assertEquals(1, group.getConsumersCount());
+        assertEquals(1, consumersCountGauge.get());
+    }
+
+    @Test
+    public void givenConsumerProcessingPack_whenRemoveConsumer_thenClosedOnlyAfterPackCommitted() throws Exception {
+        group.start(2);
+        TbQueueConsumer<TbQueueMsg> removedConsumer = consumers.get("consumer-1");
+        consumersWithMsgs.add("consumer-1");
+        assertTrue(packHandlingStarted.await(5, TimeUnit.SECONDS));
+
+        assertTrue(group.removeConsumer());
+        verify(removedConsumer, never()).unsubscribeAndClose();
+
+        packHandlingReleased.countDown();
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(removedConsumer).unsubscribeAndClose());
+        verify(removedConsumer).commitSync();
+        verify(consumers.get("consumer-0"), never()).unsubscribeAndClose();
+    }
+
+    @Test
+    public void givenConsumerRemoved_whenConsumerStopped_thenRemovedConsumerHandlerCalled() {
+        group.start(2);
+
+        assertTrue(group.removeConsumer());
+
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(Set.of("consumer-1"), removedConsumerIds));
+        group.stop();
+        assertEquals(Set.of("consumer-1"), removedConsumerIds);
+    }
+
+    @Test
+    public void givenConsumerRemoved_whenAddConsumer_thenNewConsumerIdUsed() {
+        group.start(2);
+
+        assertTrue(group.removeConsumer());
+        assertTrue(group.addConsumer());
+
+        assertEquals(3, consumers.size());
+        assertTrue(consumers.containsKey("consumer-2"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private TbQueueConsumer<TbQueueMsg> newConsumer(String consumerId) {
+        TbQueueConsumer<TbQueueMsg> consumer = mock(TbQueueConsumer.class);
+        List<TbQueueMsg> msgs = List.of(mock(TbQueueMsg.class));
+        when(consumer.poll(anyLong())).thenAnswer(invocation ->
+                consumersWithMsgs.contains(consumerId) ? msgs : Collections.emptyList());
+        consumers.put(consumerId, consumer);
+        return consumer;
+    }
+}
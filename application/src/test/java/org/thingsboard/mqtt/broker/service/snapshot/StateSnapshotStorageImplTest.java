@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.snapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thingsboard.mqtt.broker.service.subscription.TopicSubscription;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StateSnapshotStorageImplTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    StateSnapshotStorageImpl snapshotStorage;
+    Path snapshotDir;
+
+    @Before
+    public void setUp() {
+        snapshotDir = tmpFolder.getRoot().toPath();
+        snapshotStorage = new StateSnapshotStorageImpl();
+        snapshotStorage.setEnabled(true);
+        snapshotStorage.setSnapshotDir(snapshotDir.toString());
+        snapshotStorage.setKeepCount(2);
+        snapshotStorage.setMaxAgeMs(TimeUnit.HOURS.toMillis(12));
+    }
+
+    @Test
+    public void givenSavedSnapshot_whenLoad_thenSameStateAndOffsetsAreLoaded() throws IOException {
+        StateSnapshot<Set<TopicSubscription>> snapshot = newSnapshot(System.currentTimeMillis(), 10L);
+        snapshotStorage.saveClientSubscriptions(snapshot);
+
+        Optional<StateSnapshot<Set<TopicSubscription>>> loaded = snapshotStorage.loadClientSubscriptions();
+
+        assertTrue(loaded.isPresent());
+        assertEquals(snapshot.getCreatedTime(), loaded.get().getCreatedTime());
+        assertEquals(snapshot.getOffsets(), loaded.get().getOffsets());
+        assertEquals(snapshot.getState(), loaded.get().getState());
+    }
+
+    @Test
+    public void givenCorruptNewestSnapshot_whenLoad_thenOlderSnapshotIsLoaded() throws IOException {
+        long now = System.currentTimeMillis();
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now - 1000, 10L));
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now, 20L));
+        truncate(snapshotDir.resolve("client-subscriptions-" + now + ".snapshot"));
+
+        Optional<StateSnapshot<Set<TopicSubscription>>> loaded = snapshotStorage.loadClientSubscriptions();
+
+        assertTrue(loaded.isPresent());
+        assertEquals(now - 1000, loaded.get().getCreatedTime());
+        assertEquals(Map.of(0, 10L, 1, 10L), loaded.get().getOffsets());
+    }
+
+    @Test
+    public void givenOnlyCorruptSnapshot_whenLoad_thenNothingIsLoaded() throws IOException {
+        long now = System.currentTimeMillis();
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now, 10L));
+        truncate(snapshotDir.resolve("client-subscriptions-" + now + ".snapshot"));
+
+        assertFalse(snapshotStorage.loadClientSubscriptions().isPresent());
+    }
+
+    @Test
+    public void givenSnapshotOlderThanMaxAge_whenLoad_thenNothingIsLoaded() throws IOException {
+        snapshotStorage.saveClientSubscriptions(newSnapshot(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(13), 10L));
+
+        assertFalse(snapshotStorage.loadClientSubscriptions().isPresent());
+    }
+
+    @Test
+    public void givenStaleAndFreshSnapshots_whenLoad_thenFreshSnapshotIsLoaded() throws IOException {
+        long now = System.currentTimeMillis();
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now - TimeUnit.HOURS.toMillis(13), 10L));
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now, 20L));
+
+        Optional<StateSnapshot<Set<TopicSubscription>>> loaded = snapshotStorage.loadClientSubscriptions();
+
+        assertTrue(loaded.isPresent());
+        assertEquals(now, loaded.get().getCreatedTime());
+    }
+
+    @Test
+    public void givenMoreSnapshotsThanKeepCount_whenSave_thenOldestSnapshotsAreRemoved() throws IOException {
+        long now = System.currentTimeMillis();
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now - 2000, 10L));
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now - 1000, 20L));
+        snapshotStorage.saveClientSubscriptions(newSnapshot(now, 30L));
+
+        assertFalse(Files.exists(snapshotDir.resolve("client-subscriptions-" + (now - 2000) + ".snapshot")));
+        assertTrue(Files.exists(snapshotDir.resolve("client-subscriptions-" + (now - 1000) + ".snapshot")));
+        assertTrue(Files.exists(snapshotDir.resolve("client-subscriptions-" + now + ".snapshot")));
+    }
+
+    private StateSnapshot<Set<TopicSubscription>> newSnapshot(long createdTime, long offset) {
+        return new StateSnapshot<>(createdTime, Map.of(0, offset, 1, offset), Map.of(
+                "clientId1", Set.of(new TopicSubscription("topic/1", 0), new TopicSubscription("topic/+", 1)),
+                "clientId2", Set.of(new TopicSubscription("topic/2", 2))));
+    }
+
+    private void truncate(Path snapshotFile) throws IOException {
+        byte[] content = Files.readAllBytes(snapshotFile);
+        Files.write(snapshotFile, Arrays.copyOf(content, content.length / 2));
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.state;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
+import org.thingsboard.mqtt.broker.queue.TbQueueControlledOffsetConsumer;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsg;
+import org.thingsboard.mqtt.broker.queue.TbQueueMsgHeaders;
+import org.thingsboard.mqtt.broker.service.snapshot.StateSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class PartitionedStateConsumerTest {
+
+    private static final String TOPIC = "test.state";
+    private static final int PARTITIONS = 3;
+
+    TbQueueAdmin queueAdmin;
+    List<PartitionLog> partitionLogs;
+    PartitionedStateConsumer<TestMsg> stateConsumer;
+
+    @Before
+    public void setUp() {
+        queueAdmin = mock(TbQueueAdmin.class);
+        doReturn(PARTITIONS).when(queueAdmin).getNumberOfPartitions(any());
+        partitionLogs = new ArrayList<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            partitionLogs.add(new PartitionLog(partition));
+        }
+        stateConsumer = new PartitionedStateConsumer<>("test-state", 10);
+    }
+
+    @After
+    public void tearDown() {
+        stateConsumer.destroy(queueAdmin);
+    }
+
+    @Test
+    public void givenSeveralPartitions_whenInitLoad_thenAllPartitionsAreReplayed() {
+        partitionLogs.get(0).append("key1", "value1");
+        partitionLogs.get(0).append("key1", "value11");
+        partitionLogs.get(0).append("key4", "value4");
+        partitionLogs.get(1).append("key2", "value2");
+        partitionLogs.get(1).append("key5", "value5");
+        partitionLogs.get(1).append("key5", null);
+        partitionLogs.get(2).append("key3", "value3");
+
+        Map<String, String> state = initLoad(Optional.empty());
+
+        assertEquals(Map.of("key1", "value11", "key2", "value2", "key3", "value3", "key4", "value4"), state);
+        assertEquals(Map.of(0, 3L, 1, 3L, 2, 1L), stateConsumer.getConsumedOffsets());
+    }
+
+    @Test
+    public void givenCompactedPartitions_whenInitLoad_thenReplayFinishesAtEndOffsets() {
+        partitionLogs.get(0).append("key1", "value1");
+        partitionLogs.get(0).skip(5);
+        partitionLogs.get(1).skip(2);
+        partitionLogs.get(1).append("key2", "value2");
+        partitionLogs.get(2).skip(3);
+
+        Map<String, String> state = initLoad(Optional.empty());
+
+        assertEquals(Map.of("key1", "value1", "key2", "value2"), state);
+        assertEquals(Map.of(0, 6L, 1, 3L, 2, 3L), stateConsumer.getConsumedOffsets());
+    }
+
+    @Test
+    public void givenSnapshot_whenInitLoad_thenPartitionsAreReplayedFromSnapshotOffsets() {
+        partitionLogs.get(0).append("key1", "value1");
+        partitionLogs.get(0).append("key1", "value11");
+        partitionLogs.get(0).append("key4", "value4");
+        partitionLogs.get(1).append("key2", "value2");
+        partitionLogs.get(1).append("key2", null);
+        partitionLogs.get(2).append("key3", "value3");
+        StateSnapshot<String> snapshot = new StateSnapshot<>(System.currentTimeMillis(), Map.of(0, 2L, 1, 1L, 2, 1L),
+                new HashMap<>(Map.of("key1", "snapshotValue1", "key2", "value2", "key3", "snapshotValue3")));
+
+        Map<String, String> state = initLoad(Optional.of(snapshot));
+
+        assertEquals(Map.of("key1", "snapshotValue1", "key3", "snapshotValue3", "key4", "value4"), state);
+        assertEquals(Map.of(0, 3L, 1, 2L, 2, 1L), stateConsumer.getConsumedOffsets());
+    }
+
+    @Test
+    public void givenSnapshotWithUnknownPartition_whenInitLoad_thenPartitionsAreReplayedFromBeginning() {
+        partitionLogs.get(0).append("key1", "value1");
+        StateSnapshot<String> snapshot = new StateSnapshot<>(System.currentTimeMillis(), Map.of(0, 1L, 5, 1L),
+                new HashMap<>(Map.of("key1", "snapshotValue1", "key6", "value6")));
+
+        Map<String, String> state = initLoad(Optional.of(snapshot));
+
+        assertEquals(Map.of("key1", "value1"), state);
+    }
+
+    @Test
+    public void givenLoadedState_whenListen_thenOnlyNewMsgsOfAllPartitionsAreConsumed() {
+        partitionLogs.get(0).append("key1", "value1");
+        partitionLogs.get(1).append("key2", "value2");
+        initLoad(Optional.empty());
+
+        List<TestMsg> consumedMsgs = new CopyOnWriteArrayList<>();
+        stateConsumer.listen(consumedMsgs::addAll);
+        partitionLogs.get(0).append("key1", "value11");
+        partitionLogs.get(2).append("key3", "value3");
+        partitionLogs.get(2).append("key3", "value33");
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumedMsgs.size() == 3);
+        assertEquals(List.of("value11", "value3", "value33"),
+                consumedMsgs.stream().map(TestMsg::getValue).sorted().collect(Collectors.toList()));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> stateConsumer.getConsumedOffsets().equals(Map.of(0, 2L, 1, 1L, 2, 2L)));
+    }
+
+    private Map<String, String> initLoad(Optional<StateSnapshot<String>> snapshot) {
+        return stateConsumer.initLoad(queueAdmin, partition -> new TestConsumer(), snapshot, TestMsg::getValue);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class TestMsg implements TbQueueMsg {
+        private final String key;
+        private final String value;
+        private final int partition;
+        private final long offset;
+
+        @Override
+        public TbQueueMsgHeaders getHeaders() {
+            return null;
+        }
+
+        @Override
+        public byte[] getData() {
+            return null;
+        }
+    }
+
+    /**
+     * Msgs of a partition, offsets of compacted msgs have no msg.
+     */
+    @RequiredArgsConstructor
+    private static class PartitionLog {
+        private final int partition;
+        private final List<TestMsg> msgs = new CopyOnWriteArrayList<>();
+        private volatile long endOffset;
+
+        synchronized void append(String key, String value) {
+            msgs.add(new TestMsg(key, value, partition, endOffset));
+            endOffset++;
+        }
+
+        synchronized void skip(int offsets) {
+            endOffset += offsets;
+        }
+    }
+
+    private class TestConsumer implements TbQueueControlledOffsetConsumer<TestMsg> {
+
+        private static final int MAX_POLL_RECORDS = 2;
+
+        private PartitionLog partitionLog;
+        private volatile long position;
+
+        @Override
+        public void assignPartition(int partition) {
+            this.partitionLog = partitionLogs.get(partition);
+        }
+
+        @Override
+        public void seekToTheBeginning() {
+            position = 0;
+        }
+
+        @Override
+        public void seek(int partition, long offset) {
+            position = offset;
+        }
+
+        @Override
+        public long getEndOffset(String topic, int partition) {
+            return partitionLog.endOffset;
+        }
+
+        @Override
+        public long getPosition(int partition) {
+            return position;
+        }
+
+        @Override
+        public List<TestMsg> poll(long durationInMillis) {
+            long endOffset = partitionLog.endOffset;
+            List<TestMsg> polled = partitionLog.msgs.stream()
+                    .filter(msg -> msg.getOffset() >= position)
+                    .limit(MAX_POLL_RECORDS)
+                    .collect(Collectors.toList());
+            if (polled.isEmpty()) {
+                position = Math.max(position, endOffset);
+                try {
+                    Thread.sleep(durationInMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                position = polled.get(polled.size() - 1).getOffset() + 1;
+            }
+            return polled;
+        }
+
+        @Override
+        public String getTopic() {
+            return TOPIC;
+        }
+
+        @Override
+        public String getConsumerGroupId() {
+            return "test-group";
+        }
+
+        @Override
+        public void commitSync() {
+        }
+
+        @Override
+        public void commit(int partition, long offset) {
+        }
+
+        @Override
+        public void assignAllPartitions() {
+        }
+
+        @Override
+        public Optional<Long> getCommittedOffset(String topic, int partition) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void subscribe() {
+        }
+
+        @Override
+        public void unsubscribeAndClose() {
+        }
+
+        @Override
+        public long getLag() {
+            return 0;
+        }
+    }
+}
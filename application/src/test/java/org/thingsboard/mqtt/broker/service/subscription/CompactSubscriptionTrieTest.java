@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.service.stats.StatsManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CompactSubscriptionTrieTest {
+
+    private CompactSubscriptionTrie<String> subscriptionTrie;
+    private AtomicInteger subscriptionCounter;
+    private AtomicLong nodesCounter;
+    private AtomicLong memoryCounter;
+
+    @Before
+    public void before() {
+        this.subscriptionCounter = new AtomicInteger(0);
+        this.nodesCounter = new AtomicLong(0);
+        this.memoryCounter = new AtomicLong(0);
+        this.subscriptionTrie = new CompactSubscriptionTrie<>(mockStatsManager(subscriptionCounter, nodesCounter, memoryCounter));
+    }
+
+    @Test
+    public void testSaveSameSession() {
+        subscriptionTrie.put("1/2", "test");
+        subscriptionTrie.put("1/2", "test");
+        Assert.assertEquals(1, subscriptionTrie.get("1/2").size());
+        Assert.assertEquals(1, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testGet() {
+        subscriptionTrie.put("1/22/3", "test1");
+        subscriptionTrie.put("1/+/3", "test2");
+        subscriptionTrie.put("1/#", "test3");
+        subscriptionTrie.put("1/22/#", "test4");
+        subscriptionTrie.put("1/+/4", "test5");
+        subscriptionTrie.put("1/22/4", "test6");
+        subscriptionTrie.put("#", "test7");
+        subscriptionTrie.put("+/22/3", "test8");
+        subscriptionTrie.put("+/22/+", "test9");
+        subscriptionTrie.put("1/+/#", "test10");
+        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("1/22/3");
+        Assert.assertEquals(Set.of(
+                        new ValueWithTopicFilter<>("test1", "1/22/3"),
+                        new ValueWithTopicFilter<>("test2", "1/+/3"),
+                        new ValueWithTopicFilter<>("test3", "1/#"),
+                        new ValueWithTopicFilter<>("test4", "1/22/#"),
+                        new ValueWithTopicFilter<>("test7", "#"),
+                        new ValueWithTopicFilter<>("test8", "+/22/3"),
+                        new ValueWithTopicFilter<>("test9", "+/22/+"),
+                        new ValueWithTopicFilter<>("test10", "1/+/#")
+                ),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void testTopicsWith$() {
+        subscriptionTrie.put("#", "test1");
+        subscriptionTrie.put("+/monitor/Clients", "test2");
+        subscriptionTrie.put("$SYS/#", "test3");
+        subscriptionTrie.put("$SYS/monitor/+", "test4");
+        List<ValueWithTopicFilter<String>> result = subscriptionTrie.get("$SYS/monitor/Clients");
+        Assert.assertEquals(Set.of(new ValueWithTopicFilter<>("test3", "$SYS/#"),
+                        new ValueWithTopicFilter<>("test4", "$SYS/monitor/+")
+                ),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void testSingleChildChainIsCompressed() {
+        subscriptionTrie.put("tenant/site/device-1/cmd/+", "client1");
+        // "tenant/site/device-1/cmd" edge + "+" node
+        Assert.assertEquals(2, nodesCounter.get());
+        Assert.assertEquals(1, subscriptionTrie.get("tenant/site/device-1/cmd/reboot").size());
+        Assert.assertEquals(0, subscriptionTrie.get("tenant/site/device-1").size());
+        Assert.assertEquals(0, subscriptionTrie.get("tenant/site/device-1/cmd/reboot/now").size());
+    }
+
+    @Test
+    public void testEdgeIsSplitAndMergedBack() {
+        subscriptionTrie.put("tenant/site/device-1/cmd", "client1");
+        subscriptionTrie.put("tenant/site/device-2/cmd", "client2");
+        // "tenant/site" + "device-1/cmd" + "device-2/cmd"
+        Assert.assertEquals(3, nodesCounter.get());
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("client1", "tenant/site/device-1/cmd")),
+                subscriptionTrie.get("tenant/site/device-1/cmd"));
+        Assert.assertEquals(List.of(new ValueWithTopicFilter<>("client2", "tenant/site/device-2/cmd")),
+                subscriptionTrie.get("tenant/site/device-2/cmd"));
+
+        Assert.assertTrue(subscriptionTrie.delete("tenant/site/device-2/cmd", "client2"::equals));
+        Assert.assertEquals(1, nodesCounter.get());
+        Assert.assertEquals(1, subscriptionTrie.get("tenant/site/device-1/cmd").size());
+    }
+
+    @Test
+    public void testDeletePrunesAllNodes() {
+        long emptyTrieMemory = memoryCounter.get();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                subscriptionTrie.put(i + "/" + j + "/+", "val");
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assert.assertTrue(subscriptionTrie.delete(i + "/" + j + "/+", s -> true));
+            }
+        }
+        Assert.assertEquals(0, subscriptionCounter.get());
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(emptyTrieMemory, memoryCounter.get());
+        Assert.assertEquals(Collections.emptyList(), subscriptionTrie.get("0/0/1"));
+    }
+
+    @Test
+    public void testManyValuesAndChildren() {
+        for (int i = 0; i < 100; i++) {
+            subscriptionTrie.put("a/" + i, "client" + i);
+            subscriptionTrie.put("a/+", "client" + i);
+        }
+        Assert.assertEquals(101, subscriptionTrie.get("a/5").size());
+        Assert.assertEquals(100, subscriptionTrie.get("a/unknown").size());
+        for (int i = 0; i < 100; i++) {
+            subscriptionTrie.delete("a/+", ("client" + i)::equals);
+        }
+        Assert.assertEquals(1, subscriptionTrie.get("a/5").size());
+        Assert.assertEquals(100, subscriptionCounter.get());
+    }
+
+    @Test
+    public void testUsesLessMemoryThanConcurrentMapTrie() {
+        AtomicLong concurrentMapMemory = new AtomicLong();
+        ConcurrentMapSubscriptionTrie<String> concurrentMapTrie = new ConcurrentMapSubscriptionTrie<>(
+                mockStatsManager(new AtomicInteger(), new AtomicLong(), concurrentMapMemory));
+        for (int i = 0; i < 1000; i++) {
+            String topicFilter = "tenant/site-" + i % 10 + "/device-" + i + "/cmd/+";
+            subscriptionTrie.put(topicFilter, "client" + i);
+            concurrentMapTrie.put(topicFilter, "client" + i);
+        }
+        Assert.assertTrue(memoryCounter.get() * 2 < concurrentMapMemory.get());
+    }
+
+    private StatsManager mockStatsManager(AtomicInteger sizeCounter, AtomicLong nodesCounter, AtomicLong memoryCounter) {
+        StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
+        Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(sizeCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieMemoryCounter()).thenReturn(memoryCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(new AtomicLong());
+        return statsManagerMock;
+    }
+}
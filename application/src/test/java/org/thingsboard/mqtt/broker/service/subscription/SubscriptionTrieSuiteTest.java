@@ -29,6 +29,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -39,14 +43,18 @@ public class SubscriptionTrieSuiteTest {
     private ConcurrentMapSubscriptionTrie<String> subscriptionTrie;
     private AtomicInteger subscriptionCounter;
     private AtomicLong nodesCounter;
+    private AtomicLong reclaimedNodesCounter;
 
     @Before
     public void before() {
         this.subscriptionCounter = new AtomicInteger(0);
         this.nodesCounter = new AtomicLong(0);
+        this.reclaimedNodesCounter = new AtomicLong(0);
         StatsManager statsManagerMock = Mockito.mock(StatsManager.class);
         Mockito.when(statsManagerMock.createSubscriptionSizeCounter()).thenReturn(subscriptionCounter);
         Mockito.when(statsManagerMock.createSubscriptionTrieNodesCounter()).thenReturn(nodesCounter);
+        Mockito.when(statsManagerMock.createSubscriptionTrieMemoryCounter()).thenReturn(new AtomicLong());
+        Mockito.when(statsManagerMock.createSubscriptionTrieReclaimedNodesCounter()).thenReturn(reclaimedNodesCounter);
         this.subscriptionTrie = new ConcurrentMapSubscriptionTrie<>(statsManagerMock);
     }
 
@@ -142,7 +150,9 @@ public class SubscriptionTrieSuiteTest {
             subscriptionTrie.delete(Integer.toString(i), "val1"::equals);
             subscriptionTrie.delete(Integer.toString(i), "val2"::equals);
         }
-        Assert.assertEquals(10, nodesCounter.get());
+        // empty nodes are pruned on delete
+        Assert.assertEquals(0, nodesCounter.get());
+        Assert.assertEquals(10, reclaimedNodesCounter.get());
     }
 
     @Test
@@ -169,9 +179,12 @@ public class SubscriptionTrieSuiteTest {
         subscriptionTrie.delete("0/2", s -> true);
         subscriptionTrie.delete("1/0", s -> true);
 
+        // 0/0, 0/1, 0/2, 0 and 1/0 nodes are pruned on delete
+        Assert.assertEquals(40 - 5, nodesCounter.get());
+        Assert.assertEquals(5, reclaimedNodesCounter.get());
+
         subscriptionTrie.setWaitForClearLockMs(100);
         subscriptionTrie.clearEmptyNodes();
-        // should clear 0/0, 0/1, 0/2, 0 and 1/0 nodes
         Assert.assertEquals(40 - 5, nodesCounter.get());
     }
 
@@ -183,11 +196,42 @@ public class SubscriptionTrieSuiteTest {
                 subscriptionTrie.delete(i + "/" + j, s -> true);
             }
         }
-        Assert.assertEquals(40, nodesCounter.get());
+        Assert.assertEquals(0, nodesCounter.get());
 
         subscriptionTrie.setWaitForClearLockMs(100);
         subscriptionTrie.clearEmptyNodes();
 
         Assert.assertEquals(0, nodesCounter.get());
     }
+
+    @Test
+    public void testConcurrentPutAndDelete() throws InterruptedException {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String topicFilter = "a/b/" + t;
+            String value = "val" + t;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < 10_000; i++) {
+                        subscriptionTrie.put(topicFilter, value);
+                        subscriptionTrie.delete(topicFilter, value::equals);
+                    }
+                    subscriptionTrie.put(topicFilter, value);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdownNow();
+
+        for (int t = 0; t < threads; t++) {
+            Assert.assertEquals(List.of(new ValueWithTopicFilter<>("val" + t, "a/b/" + t)), subscriptionTrie.get("a/b/" + t));
+        }
+        Assert.assertEquals(threads, subscriptionCounter.get());
+        // "a" + "a/b" + one node per thread
+        Assert.assertEquals(2 + threads, nodesCounter.get());
+    }
 }
@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
+import org.thingsboard.mqtt.broker.session.ClientSessionCtx;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LeastInFlightStrategyTest {
+
+    private static final PublishMsgProto PUBLISH_MSG = PublishMsgProto.newBuilder().setTopicName("test/topic").setQos(1).build();
+
+    ClientSessionCtxService clientSessionCtxService;
+    LeastInFlightStrategy strategy;
+    Map<String, ClientSessionCtx> sessions;
+
+    @Before
+    public void setUp() {
+        sessions = new HashMap<>();
+        clientSessionCtxService = mock(ClientSessionCtxService.class);
+        when(clientSessionCtxService.getClientSessionCtx(anyString())).thenAnswer(invocation -> sessions.get(invocation.getArgument(0, String.class)));
+        strategy = new LeastInFlightStrategy(clientSessionCtxService);
+    }
+
+    @Test
+    public void testPicksMemberWithSmallestInFlightWindow() {
+        addSession("c1", 5);
+        addSession("c2", 1);
+        addSession("c3", 3);
+
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true), newSubscription("c3", true));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("c2", analyze(sharedSubscription));
+        }
+    }
+
+    @Test
+    public void testEquallyLoadedMembersShareTheLoad() {
+        addSession("c1", 0);
+        addSession("c2", 0);
+        addSession("c3", 0);
+
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true), newSubscription("c3", true));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            counts.merge(analyze(sharedSubscription), 1, Integer::sum);
+        }
+        for (String clientId : List.of("c1", "c2", "c3")) {
+            int count = counts.getOrDefault(clientId, 0);
+            assertTrue(clientId + " got " + count, count > 9_000 && count < 11_000);
+        }
+    }
+
+    @Test
+    public void testSlowMemberGetsLessUnderChurn() {
+        addSession("fast", 0);
+        addSession("slow", 0);
+        addSession("flapping", 0);
+
+        Subscription fast = newSubscription("fast", true);
+        Subscription slow = newSubscription("slow", true);
+        Subscription flappingConnected = newSubscription("flapping", true);
+        Subscription flappingDisconnected = newSubscription("flapping", false);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int round = 0; round < 1_000; round++) {
+            boolean flappingIsConnected = (round / 100) % 2 == 0;
+            SharedSubscription sharedSubscription = newSharedSubscription(
+                    fast, slow, flappingIsConnected ? flappingConnected : flappingDisconnected);
+
+            for (int i = 0; i < 10; i++) {
+                String clientId = analyze(sharedSubscription);
+                if (!flappingIsConnected) {
+                    assertNotEquals("flapping", clientId);
+                }
+                counts.merge(clientId, 1, Integer::sum);
+                sessions.get(clientId).onOutboundMsgSent();
+            }
+            // fast member acknowledges everything every round, slow one - every tenth round
+            ackAll("fast");
+            ackAll("flapping");
+            if (round % 10 == 0) {
+                ackAll("slow");
+            }
+        }
+        assertTrue(counts.get("fast") > 4 * counts.get("slow"));
+        assertTrue(counts.get("flapping") > 0);
+    }
+
+    @Test
+    public void testMemberOnOtherNodeIsTreatedAsIdle() {
+        addSession("local", 2);
+
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("local", true), newSubscription("remote", true));
+
+        assertEquals("remote", analyze(sharedSubscription));
+    }
+
+    private String analyze(SharedSubscription sharedSubscription) {
+        return strategy.analyze(sharedSubscription, PUBLISH_MSG).getClientSessionInfo().getClientId();
+    }
+
+    private void ackAll(String clientId) {
+        ClientSessionCtx ctx = sessions.get(clientId);
+        while (ctx.getInFlightOutboundMsgs() > 0) {
+            ctx.onOutboundMsgAcknowledged();
+        }
+    }
+
+    private void addSession(String clientId, int inFlight) {
+        ClientSessionCtx ctx = new ClientSessionCtx(UUID.randomUUID(), null, 100);
+        for (int i = 0; i < inFlight; i++) {
+            ctx.onOutboundMsgSent();
+        }
+        sessions.put(clientId, ctx);
+    }
+
+    private SharedSubscription newSharedSubscription(Subscription... subscriptions) {
+        return new SharedSubscription(new TopicSharedSubscription("test/topic", "g1"), List.of(subscriptions));
+    }
+
+    private Subscription newSubscription(String clientId, boolean connected) {
+        ClientSessionInfo clientSessionInfo = ClientSessionInfo.builder().clientId(clientId).connected(connected).build();
+        return new Subscription("test/topic", 1, clientSessionInfo, "g1", SubscriptionOptions.newInstance());
+    }
+}
@@ -30,7 +30,9 @@ import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -212,4 +214,72 @@ public class SharedSubscriptionCacheServiceImplTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetReturnsPrecomputedSnapshot() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(
+                new TopicSubscription("/test/topic/1", 1, "g1")
+        ));
+
+        Set<TopicSharedSubscription> keys = Set.of(new TopicSharedSubscription("/test/topic/1", "g1"));
+        SharedSubscriptions sharedSubscriptions = sharedSubscriptionCache.get(keys);
+
+        assertSame(sharedSubscriptions, sharedSubscriptionCache.get(keys));
+        assertEquals(1, sharedSubscriptions.getDeviceSubscriptions().size());
+        assertEquals(1, sharedSubscriptions.getDeviceSharedSubscriptions().size());
+        assertEquals(1, sharedSubscriptions.getDeviceSharedSubscriptions().get(0).getSubscriptions().size());
+
+        sharedSubscriptions = sharedSubscriptionCache.get(Set.of(new TopicSharedSubscription("/test/topic/2", "g1")));
+        assertTrue(sharedSubscriptions.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotRebuiltOnSessionChange() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.DEVICE);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+        when(clientSessionInfo1.isConnected()).thenReturn(false);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(
+                new TopicSubscription("/test/topic/1", 1, "g1")
+        ));
+
+        Set<TopicSharedSubscription> keys = Set.of(new TopicSharedSubscription("/test/topic/1", "g1"));
+        SharedSubscriptions sharedSubscriptions = sharedSubscriptionCache.get(keys);
+        assertFalse(sharedSubscriptions.getDeviceSubscriptions().iterator().next().getClientSessionInfo().isConnected());
+
+        ClientSessionInfo connectedClientSessionInfo = mock(ClientSessionInfo.class);
+        when(connectedClientSessionInfo.isConnected()).thenReturn(true);
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(connectedClientSessionInfo);
+
+        sharedSubscriptionCache.onSessionChanged(CLIENT_ID_1);
+
+        SharedSubscriptions rebuilt = sharedSubscriptionCache.get(keys);
+        assertTrue(rebuilt.getDeviceSubscriptions().iterator().next().getClientSessionInfo().isConnected());
+
+        when(clientSessionCache.getClientSessionInfo(CLIENT_ID_1)).thenReturn(null);
+
+        sharedSubscriptionCache.onSessionChanged(CLIENT_ID_1);
+
+        assertTrue(sharedSubscriptionCache.get(keys).isEmpty());
+    }
+
+    @Test
+    public void testSnapshotRemovedOnUnsubscribe() {
+        when(clientSessionInfo1.getType()).thenReturn(ClientType.APPLICATION);
+        when(clientSessionInfo1.getClientId()).thenReturn(CLIENT_ID_1);
+
+        sharedSubscriptionCache.put(CLIENT_ID_1, List.of(
+                new TopicSubscription("/test/topic/1", 1, "g1")
+        ));
+
+        Set<TopicSharedSubscription> keys = Set.of(new TopicSharedSubscription("/test/topic/1", "g1"));
+        assertEquals(1, sharedSubscriptionCache.get(keys).getApplicationSubscriptions().size());
+
+        sharedSubscriptionCache.remove(CLIENT_ID_1, new TopicSubscription("/test/topic/1", 1, "g1"));
+
+        assertTrue(sharedSubscriptionCache.get(keys).isEmpty());
+    }
+}
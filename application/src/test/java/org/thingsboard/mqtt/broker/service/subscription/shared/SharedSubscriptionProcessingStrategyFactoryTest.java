@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.thingsboard.mqtt.broker.service.mqtt.client.session.ClientSessionCtxService;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = SharedSubscriptionProcessingStrategyFactory.class)
+@TestPropertySource(properties = {
+        "mqtt.shared-subscriptions.processing-type=LEAST_IN_FLIGHT",
+        "mqtt.shared-subscriptions.share-name-processing-types=orders:STICKY_HASH, weighted:WEIGHTED,rr:ROUND_ROBIN"
+})
+public class SharedSubscriptionProcessingStrategyFactoryTest {
+
+    @MockBean
+    SharedSubscriptionProcessor sharedSubscriptionProcessor;
+    @MockBean
+    ClientSessionCtxService clientSessionCtxService;
+
+    @Autowired
+    SharedSubscriptionProcessingStrategyFactory factory;
+
+    @Test
+    public void testGetStrategyPerShareName() {
+        Assert.assertTrue(factory.getStrategy("orders") instanceof StickyHashStrategy);
+        Assert.assertTrue(factory.getStrategy("weighted") instanceof WeightedStrategy);
+        Assert.assertTrue(factory.getStrategy("rr") instanceof RoundRobinStrategy);
+        Assert.assertTrue(factory.getStrategy("other") instanceof LeastInFlightStrategy);
+        Assert.assertTrue(factory.getStrategy(null) instanceof LeastInFlightStrategy);
+    }
+
+    @Test
+    public void testStrategiesAreReused() {
+        Assert.assertSame(factory.getStrategy("orders"), factory.getStrategy("orders"));
+        Assert.assertSame(factory.getStrategy("other"), factory.getStrategy("another"));
+    }
+}
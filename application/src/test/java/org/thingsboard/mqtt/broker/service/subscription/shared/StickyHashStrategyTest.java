@@ -0,0 +1,147 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.UserPropertyProto;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StickyHashStrategyTest {
+
+    private static final int KEYS = 10_000;
+
+    StickyHashStrategy strategy = new StickyHashStrategy("deviceId", 1);
+
+    @Test
+    public void testGetStickyKey() {
+        assertEquals("d1", strategy.getStickyKey(newPublishMsg("devices/d2/telemetry", "d1")));
+        assertEquals("d2", strategy.getStickyKey(newPublishMsg("devices/d2/telemetry", null)));
+        assertEquals("d2", strategy.getStickyKey(newPublishMsg("devices/d2", null)));
+        assertEquals("devices", strategy.getStickyKey(newPublishMsg("devices", null)));
+        assertEquals("devices/d2", new StickyHashStrategy("", -1).getStickyKey(newPublishMsg("devices/d2", "d1")));
+    }
+
+    @Test
+    public void testSameKeyAlwaysGoesToSameMember() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true), newSubscription("c3", true));
+
+        Map<String, String> assignment = assign(sharedSubscription);
+        for (int round = 0; round < 3; round++) {
+            assertEquals(assignment, assign(sharedSubscription));
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true),
+                newSubscription("c3", true), newSubscription("c4", true));
+
+        Map<String, Integer> counts = new HashMap<>();
+        assign(sharedSubscription).values().forEach(clientId -> counts.merge(clientId, 1, Integer::sum));
+
+        assertEquals(4, counts.size());
+        counts.forEach((clientId, count) -> assertTrue(clientId + " got " + count, count > KEYS / 4 * 0.8 && count < KEYS / 4 * 1.2));
+    }
+
+    @Test
+    public void testOnlyKeysOfLeftMemberMoveUnderChurn() {
+        SharedSubscription allConnected = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true), newSubscription("c3", true));
+        SharedSubscription c2Disconnected = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", false), newSubscription("c3", true));
+
+        Map<String, String> before = assign(allConnected);
+        Map<String, String> during = assign(c2Disconnected);
+        Map<String, String> after = assign(allConnected);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String key = entry.getKey();
+            if ("c2".equals(entry.getValue())) {
+                assertNotEquals("c2", during.get(key));
+                moved++;
+            } else {
+                assertEquals(entry.getValue(), during.get(key));
+            }
+        }
+        assertTrue(moved > 0);
+        assertEquals(before, after);
+    }
+
+    @Test
+    public void testJoiningMemberTakesOnlyItsShare() {
+        SharedSubscription twoMembers = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true));
+        SharedSubscription threeMembers = newSharedSubscription(
+                newSubscription("c1", true), newSubscription("c2", true), newSubscription("c3", true));
+
+        Map<String, String> before = assign(twoMembers);
+        Map<String, String> after = assign(threeMembers);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String newClientId = after.get(entry.getKey());
+            if (!entry.getValue().equals(newClientId)) {
+                assertEquals("c3", newClientId);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS / 3 * 0.8 && moved < KEYS / 3 * 1.2);
+    }
+
+    private Map<String, String> assign(SharedSubscription sharedSubscription) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "device-" + i;
+            Subscription subscription = strategy.analyze(sharedSubscription, newPublishMsg("devices/" + key + "/telemetry", null));
+            result.put(key, subscription.getClientSessionInfo().getClientId());
+        }
+        return result;
+    }
+
+    private PublishMsgProto newPublishMsg(String topic, String deviceId) {
+        PublishMsgProto.Builder builder = PublishMsgProto.newBuilder().setTopicName(topic).setQos(1);
+        if (deviceId != null) {
+            builder.addUserProperties(UserPropertyProto.newBuilder().setKey("deviceId").setValue(deviceId).build());
+        }
+        return builder.build();
+    }
+
+    private SharedSubscription newSharedSubscription(Subscription... subscriptions) {
+        return new SharedSubscription(new TopicSharedSubscription("devices/+/telemetry", "g1"), List.of(subscriptions));
+    }
+
+    private Subscription newSubscription(String clientId, boolean connected) {
+        ClientSessionInfo clientSessionInfo = ClientSessionInfo.builder().clientId(clientId).connected(connected).build();
+        return new Subscription("devices/+/telemetry", 1, clientSessionInfo, "g1", SubscriptionOptions.newInstance());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.service.subscription.shared;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.mqtt.broker.common.data.ClientSessionInfo;
+import org.thingsboard.mqtt.broker.gen.queue.QueueProtos.PublishMsgProto;
+import org.thingsboard.mqtt.broker.service.subscription.Subscription;
+import org.thingsboard.mqtt.broker.service.subscription.SubscriptionOptions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WeightedStrategyTest {
+
+    private static final PublishMsgProto PUBLISH_MSG = PublishMsgProto.newBuilder().setTopicName("test/topic").setQos(1).build();
+    private static final int MSGS = 100_000;
+
+    WeightedStrategy strategy = new WeightedStrategy();
+
+    @Test
+    public void testDistributionFollowsWeights() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", 1, true), newSubscription("c2", 3, true), newSubscription("c3", 6, true));
+
+        Map<String, Integer> counts = distribute(sharedSubscription);
+
+        assertShare(counts, "c1", 0.1);
+        assertShare(counts, "c2", 0.3);
+        assertShare(counts, "c3", 0.6);
+    }
+
+    @Test
+    public void testMemberWithoutWeightHasDefaultWeight() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", 0, true), newSubscription("c2", 1, true));
+
+        Map<String, Integer> counts = distribute(sharedSubscription);
+
+        assertShare(counts, "c1", 0.5);
+        assertShare(counts, "c2", 0.5);
+    }
+
+    @Test
+    public void testDisconnectedMemberShareIsRedistributed() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", 1, true), newSubscription("c2", 5, false), newSubscription("c3", 3, true));
+
+        Map<String, Integer> counts = distribute(sharedSubscription);
+
+        assertFalse(counts.containsKey("c2"));
+        assertShare(counts, "c1", 0.25);
+        assertShare(counts, "c3", 0.75);
+    }
+
+    @Test
+    public void testNoConnectedMembers() {
+        SharedSubscription sharedSubscription = newSharedSubscription(
+                newSubscription("c1", 1, false), newSubscription("c2", 2, false));
+
+        assertNull(strategy.analyze(sharedSubscription, PUBLISH_MSG));
+    }
+
+    private Map<String, Integer> distribute(SharedSubscription sharedSubscription) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < MSGS; i++) {
+            Subscription subscription = strategy.analyze(sharedSubscription, PUBLISH_MSG);
+            counts.merge(subscription.getClientSessionInfo().getClientId(), 1, Integer::sum);
+        }
+        assertEquals(MSGS, counts.values().stream().mapToInt(Integer::intValue).sum());
+        return counts;
+    }
+
+    private void assertShare(Map<String, Integer> counts, String clientId, double expectedShare) {
+        double share = (double) counts.getOrDefault(clientId, 0) / MSGS;
+        assertTrue(clientId + " got share " + share, Math.abs(share - expectedShare) < 0.02);
+    }
+
+    private SharedSubscription newSharedSubscription(Subscription... subscriptions) {
+        return new SharedSubscription(new TopicSharedSubscription("test/topic", "g1"), List.of(subscriptions));
+    }
+
+    private Subscription newSubscription(String clientId, int weight, boolean connected) {
+        ClientSessionInfo clientSessionInfo = ClientSessionInfo.builder().clientId(clientId).connected(connected).build();
+        return new Subscription("test/topic", 1, clientSessionInfo, "g1", SubscriptionOptions.newInstance(), weight);
+    }
+}
@@ -35,6 +35,8 @@ public interface MqttClientCredentialsService {
 
     PageData<ShortMqttClientCredentials> getCredentials(PageLink pageLink);
 
+    PageData<MqttClientCredentials> getFullCredentials(PageLink pageLink);
+
     Optional<MqttClientCredentials> getCredentialsById(UUID id);
 
     ClientCredentialsInfoDto getClientCredentialsInfo();
@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.common.data.page;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class CursorPageData<T> {
+
+    private final List<T> data;
+    private final String nextCursor;
+    private final boolean hasNext;
+
+    public CursorPageData() {
+        this(Collections.emptyList(), null, false);
+    }
+
+    @JsonCreator
+    public CursorPageData(@JsonProperty("data") List<T> data,
+                          @JsonProperty("nextCursor") String nextCursor,
+                          @JsonProperty("hasNext") boolean hasNext) {
+        this.data = data;
+        this.nextCursor = nextCursor;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getData() {
+        return data;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @JsonProperty("hasNext")
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public <D> CursorPageData<D> mapData(Function<T, D> mapper) {
+        return new CursorPageData<>(data.stream().map(mapper).collect(Collectors.toList()), nextCursor, hasNext);
+    }
+
+}
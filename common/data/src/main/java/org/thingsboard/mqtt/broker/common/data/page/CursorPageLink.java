@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.common.data.page;
+
+import lombok.Data;
+
+@Data
+public class CursorPageLink {
+
+    private final int pageSize;
+    private final String cursor;
+    private final String textSearch;
+    private final SortOrder sortOrder;
+
+    public CursorPageLink(int pageSize) {
+        this(pageSize, null);
+    }
+
+    public CursorPageLink(int pageSize, String cursor) {
+        this(pageSize, cursor, null, null);
+    }
+
+    public CursorPageLink(int pageSize, String cursor, String textSearch, SortOrder sortOrder) {
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+        this.textSearch = textSearch;
+        this.sortOrder = sortOrder;
+    }
+
+    public CursorPageLink nextPageLink(String nextCursor) {
+        return new CursorPageLink(this.pageSize, nextCursor, this.textSearch, this.sortOrder);
+    }
+
+}
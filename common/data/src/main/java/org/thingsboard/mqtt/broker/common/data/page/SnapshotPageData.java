@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.common.data.page;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Page of data served from a periodically refreshed snapshot. snapshotTime is the time the snapshot was taken at.
+ */
+public class SnapshotPageData<T> extends PageData<T> {
+
+    private final long snapshotTime;
+
+    @JsonCreator
+    public SnapshotPageData(@JsonProperty("data") List<T> data,
+                            @JsonProperty("totalPages") int totalPages,
+                            @JsonProperty("totalElements") long totalElements,
+                            @JsonProperty("hasNext") boolean hasNext,
+                            @JsonProperty("snapshotTime") long snapshotTime) {
+        super(data, totalPages, totalElements, hasNext);
+        this.snapshotTime = snapshotTime;
+    }
+
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.common.data.util;
+
+import io.netty.handler.codec.mqtt.MqttProperties;
+
+import java.util.concurrent.TimeUnit;
+
+public class MqttPropertiesUtil {
+
+    private static final int MSG_EXPIRY_INTERVAL_PROPERTY_ID = MqttProperties.MqttPropertyType.PUBLICATION_EXPIRY_INTERVAL.value();
+
+    /**
+     * @return Message Expiry Interval in seconds or null if the msg never expires
+     */
+    public static Integer getMsgExpiryInterval(MqttProperties properties) {
+        if (properties == null) {
+            return null;
+        }
+        MqttProperties.MqttProperty<?> property = properties.getProperty(MSG_EXPIRY_INTERVAL_PROPERTY_ID);
+        return property == null ? null : (Integer) property.value();
+    }
+
+    public static void setMsgExpiryInterval(MqttProperties properties, int msgExpiryInterval) {
+        properties.add(new MqttProperties.IntegerProperty(MSG_EXPIRY_INTERVAL_PROPERTY_ID, msgExpiryInterval));
+    }
+
+    /**
+     * Sets the Message Expiry Interval of an outbound msg to the received value minus the time
+     * the msg has been waiting in the broker, as required by the MQTT 5 spec.
+     */
+    public static void setRemainingMsgExpiryInterval(MqttProperties properties, long createdTime, Integer msgExpiryInterval, long now) {
+        if (msgExpiryInterval != null) {
+            setMsgExpiryInterval(properties, getRemainingMsgExpiryInterval(createdTime, msgExpiryInterval, now));
+        }
+    }
+
+    public static boolean isExpired(long createdTime, Integer msgExpiryInterval, long now) {
+        if (msgExpiryInterval == null || createdTime <= 0) {
+            return false;
+        }
+        return now - createdTime >= TimeUnit.SECONDS.toMillis(Integer.toUnsignedLong(msgExpiryInterval));
+    }
+
+    static int getRemainingMsgExpiryInterval(long createdTime, int msgExpiryInterval, long now) {
+        long waitedSeconds = createdTime > 0 ? TimeUnit.MILLISECONDS.toSeconds(Math.max(0, now - createdTime)) : 0;
+        return (int) Math.max(0, Integer.toUnsignedLong(msgExpiryInterval) - waitedSeconds);
+    }
+}
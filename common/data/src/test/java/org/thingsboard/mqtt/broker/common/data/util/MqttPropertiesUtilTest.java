@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.common.data.util;
+
+import io.netty.handler.codec.mqtt.MqttProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MqttPropertiesUtilTest {
+
+    private static final long CREATED_TIME = 1_000_000L;
+
+    @Test
+    public void givenMsgWithoutWaiting_whenGetRemainingMsgExpiryInterval_thenReceivedIntervalReturned() {
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(CREATED_TIME, 60, CREATED_TIME)).isEqualTo(60);
+    }
+
+    @Test
+    public void givenMsgWaitedInBroker_whenGetRemainingMsgExpiryInterval_thenWaitedFullSecondsSubtracted() {
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(CREATED_TIME, 60, CREATED_TIME + 10_999)).isEqualTo(50);
+    }
+
+    @Test
+    public void givenMsgWaitedLongerThanInterval_whenGetRemainingMsgExpiryInterval_thenZeroReturned() {
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(CREATED_TIME, 60, CREATED_TIME + 120_000)).isEqualTo(0);
+    }
+
+    @Test
+    public void givenUnknownCreatedTime_whenGetRemainingMsgExpiryInterval_thenReceivedIntervalReturned() {
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(0, 60, CREATED_TIME)).isEqualTo(60);
+    }
+
+    @Test
+    public void givenClockMovedBack_whenGetRemainingMsgExpiryInterval_thenReceivedIntervalReturned() {
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(CREATED_TIME, 60, CREATED_TIME - 5_000)).isEqualTo(60);
+    }
+
+    @Test
+    public void givenUnsignedInterval_whenGetRemainingMsgExpiryInterval_thenIntervalTreatedAsUnsigned() {
+        int maxUnsignedInterval = -1;
+        assertThat(MqttPropertiesUtil.getRemainingMsgExpiryInterval(CREATED_TIME, maxUnsignedInterval, CREATED_TIME + 1_000))
+                .isEqualTo((int) (Integer.toUnsignedLong(maxUnsignedInterval) - 1));
+    }
+
+    @Test
+    public void givenMsgWithExpiryInterval_whenSetRemainingMsgExpiryInterval_thenRemainingIntervalSet() {
+        MqttProperties properties = new MqttProperties();
+        MqttPropertiesUtil.setRemainingMsgExpiryInterval(properties, CREATED_TIME, 30, CREATED_TIME + 5_000);
+        assertThat(MqttPropertiesUtil.getMsgExpiryInterval(properties)).isEqualTo(25);
+    }
+
+    @Test
+    public void givenMsgWithoutExpiryInterval_whenSetRemainingMsgExpiryInterval_thenNothingSet() {
+        MqttProperties properties = new MqttProperties();
+        MqttPropertiesUtil.setRemainingMsgExpiryInterval(properties, CREATED_TIME, null, CREATED_TIME + 5_000);
+        assertThat(MqttPropertiesUtil.getMsgExpiryInterval(properties)).isNull();
+    }
+
+    @Test
+    public void givenExpiryInterval_whenIsExpired_thenExpiredOnlyOnceIntervalPassed() {
+        assertThat(MqttPropertiesUtil.isExpired(CREATED_TIME, 10, CREATED_TIME + 9_999)).isFalse();
+        assertThat(MqttPropertiesUtil.isExpired(CREATED_TIME, 10, CREATED_TIME + 10_000)).isTrue();
+        assertThat(MqttPropertiesUtil.isExpired(CREATED_TIME, null, CREATED_TIME + 10_000)).isFalse();
+        assertThat(MqttPropertiesUtil.isExpired(0, 10, CREATED_TIME)).isFalse();
+    }
+}
@@ -16,8 +16,8 @@
 package org.thingsboard.mqtt.broker.queue;
 
 import org.thingsboard.mqtt.broker.common.data.BasicCallback;
-import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.page.SnapshotPageData;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
@@ -38,12 +38,12 @@ public interface TbQueueAdmin {
 
     int getNumberOfPartitions(String topic);
 
-    PageData<KafkaBroker> getClusterInfo();
+    SnapshotPageData<KafkaBroker> getClusterInfo();
 
-    PageData<KafkaTopic> getTopics(PageLink pageLink);
+    SnapshotPageData<KafkaTopic> getTopics(PageLink pageLink);
 
     List<String> getBrokerServiceIds();
 
-    PageData<KafkaConsumerGroup> getConsumerGroups(PageLink pageLink);
+    SnapshotPageData<KafkaConsumerGroup> getConsumerGroups(PageLink pageLink);
 
 }
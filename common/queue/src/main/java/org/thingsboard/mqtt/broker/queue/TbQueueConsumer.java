@@ -29,6 +29,11 @@ public interface TbQueueConsumer<T extends TbQueueMsg> {
 
     void commitSync();
 
+    /**
+     * @return the number of msgs behind the end of the assigned partitions, as known after the last poll
+     */
+    long getLag();
+
     String getConsumerGroupId();
 
 }
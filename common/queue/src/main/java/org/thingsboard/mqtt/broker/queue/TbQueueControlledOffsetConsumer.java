@@ -26,7 +26,14 @@ public interface TbQueueControlledOffsetConsumer<T extends TbQueueMsg> extends T
 
     void seekToTheBeginning();
 
+    void seek(int partition, long offset);
+
     long getEndOffset(String topic, int partition);
 
+    /**
+     * @return the offset of the next msg to be polled from the assigned partition
+     */
+    long getPosition(int partition);
+
     Optional<Long> getCommittedOffset(String topic, int partition);
 }
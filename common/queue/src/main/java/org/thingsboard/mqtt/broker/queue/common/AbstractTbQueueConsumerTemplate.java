@@ -155,6 +155,16 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
         }
     }
 
+    @Override
+    public long getLag() {
+        consumerLock.lock();
+        try {
+            return doGetLag();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
     @Override
     public void commit(int partition, long offset) {
         consumerLock.lock();
@@ -175,6 +185,16 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
         }
     }
 
+    @Override
+    public void seek(int partition, long offset) {
+        consumerLock.lock();
+        try {
+            doSeek(topic, partition, offset);
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
     @Override
     public long getEndOffset(String topic, int partition) {
         consumerLock.lock();
@@ -185,6 +205,16 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
         }
     }
 
+    @Override
+    public long getPosition(int partition) {
+        consumerLock.lock();
+        try {
+            return doGetPosition(topic, partition);
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
     @Override
     public Optional<Long> getCommittedOffset(String topic, int partition) {
         consumerLock.lock();
@@ -209,12 +239,18 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
 
     abstract protected void doCommit(String topic, int partition, long offset);
 
+    abstract protected long doGetLag();
+
     abstract protected void doUnsubscribeAndClose();
 
     abstract protected void doSeekToTheBeginning();
 
+    abstract protected void doSeek(String topic, int partition, long offset);
+
     abstract protected long doGetEndOffset(String topic, int partition);
 
+    abstract protected long doGetPosition(String topic, int partition);
+
     abstract protected Optional<Long> doGetCommittedOffset(String topic, int partition);
 
 }
@@ -26,5 +26,6 @@ public class QueueConstants {
 
     public static final QueueProtos.ClientSessionInfoProto EMPTY_CLIENT_SESSION_INFO_PROTO = QueueProtos.ClientSessionInfoProto.newBuilder().build();
     public static final QueueProtos.RetainedMsgProto EMPTY_RETAINED_MSG_PROTO = QueueProtos.RetainedMsgProto.newBuilder().build();
+    public static final QueueProtos.MqttClientCredentialsProto EMPTY_CLIENT_CREDENTIALS_PROTO = QueueProtos.MqttClientCredentialsProto.newBuilder().build();
 
 }
@@ -17,55 +17,35 @@ package org.thingsboard.mqtt.broker.queue.kafka;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.AdminClient;
-import org.apache.kafka.clients.admin.ConsumerGroupDescription;
 import org.apache.kafka.clients.admin.ConsumerGroupListing;
 import org.apache.kafka.clients.admin.DeleteConsumerGroupsResult;
 import org.apache.kafka.clients.admin.DeleteTopicsResult;
-import org.apache.kafka.clients.admin.DescribeClusterResult;
-import org.apache.kafka.clients.admin.DescribeConsumerGroupsResult;
-import org.apache.kafka.clients.admin.DescribeLogDirsResult;
-import org.apache.kafka.clients.admin.LogDirDescription;
 import org.apache.kafka.clients.admin.NewTopic;
-import org.apache.kafka.clients.admin.ReplicaInfo;
-import org.apache.kafka.clients.admin.TopicDescription;
-import org.apache.kafka.clients.consumer.Consumer;
-import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.kafka.common.ConsumerGroupState;
-import org.apache.kafka.common.Node;
-import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.TopicExistsException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.thingsboard.mqtt.broker.common.data.BasicCallback;
-import org.thingsboard.mqtt.broker.common.data.page.PageData;
 import org.thingsboard.mqtt.broker.common.data.page.PageLink;
+import org.thingsboard.mqtt.broker.common.data.page.SnapshotPageData;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
-import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroupState;
 import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
 import org.thingsboard.mqtt.broker.common.util.BrokerConstants;
 import org.thingsboard.mqtt.broker.queue.TbQueueAdmin;
 import org.thingsboard.mqtt.broker.queue.constants.QueueConstants;
-import org.thingsboard.mqtt.broker.queue.kafka.settings.HomePageConsumerKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.kafka.stats.TbKafkaMetadataCollector;
 import org.thingsboard.mqtt.broker.queue.kafka.settings.TbKafkaAdminSettings;
-import org.thingsboard.mqtt.broker.queue.kafka.settings.TbKafkaConsumerSettings;
 
 import javax.annotation.PreDestroy;
-import java.time.Duration;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -79,10 +59,9 @@ public class TbKafkaAdmin implements TbQueueAdmin {
 
     private final AdminClient client;
     private final Set<String> topics = ConcurrentHashMap.newKeySet();
-    private final Consumer<String, byte[]> consumer;
-    private final Duration timeoutDuration;
+    private final TbKafkaMetadataCollector metadataCollector;
 
-    public TbKafkaAdmin(TbKafkaAdminSettings adminSettings, TbKafkaConsumerSettings consumerSettings, HomePageConsumerKafkaSettings homePageConsumerKafkaSettings) {
+    public TbKafkaAdmin(TbKafkaAdminSettings adminSettings, TbKafkaMetadataCollector metadataCollector) {
         client = AdminClient.create(adminSettings.toProps());
         deleteOldConsumerGroups();
         try {
@@ -90,17 +69,7 @@ public class TbKafkaAdmin implements TbQueueAdmin {
         } catch (InterruptedException | ExecutionException e) {
             log.error("Failed to get all topics.", e);
         }
-        this.consumer = createConsumer(consumerSettings, homePageConsumerKafkaSettings);
-        this.timeoutDuration = Duration.ofMillis(homePageConsumerKafkaSettings.getKafkaResponseTimeoutMs());
-    }
-
-    private Consumer<String, byte[]> createConsumer(TbKafkaConsumerSettings consumerSettings, HomePageConsumerKafkaSettings homePageConsumerKafkaSettings) {
-        Properties consumerProps = consumerSettings.toProps("kafka_admin_home_page", homePageConsumerKafkaSettings.getConsumerProperties());
-        consumerProps.put(ConsumerConfig.CLIENT_ID_CONFIG, "home-page-client");
-        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, "home-page-client-group");
-        consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
-        consumerProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
-        return new KafkaConsumer<>(consumerProps);
+        this.metadataCollector = metadataCollector;
     }
 
     @Override
@@ -123,9 +92,11 @@ public class TbKafkaAdmin implements TbQueueAdmin {
             NewTopic newTopic = new NewTopic(topic, extractPartitionsNumber(configs), extractReplicationFactor(configs)).configs(configs);
             client.createTopics(Collections.singletonList(newTopic)).values().get(topic).get();
             topics.add(topic);
+            metadataCollector.onTopicCreated(topic);
         } catch (ExecutionException ee) {
             if (ee.getCause() instanceof TopicExistsException) {
                 topics.add(topic);
+                metadataCollector.onTopicCreated(topic);
             } else {
                 log.warn("[{}] Failed to create topic", topic, ee);
                 throw new RuntimeException(ee);
@@ -152,6 +123,7 @@ public class TbKafkaAdmin implements TbQueueAdmin {
         DeleteTopicsResult result = client.deleteTopics(Collections.singletonList(topic));
         result.all().whenComplete((unused, throwable) -> {
             if (throwable == null) {
+                metadataCollector.onTopicDeleted(topic);
                 callback.onSuccess();
             } else {
                 callback.onFailure(throwable);
@@ -170,6 +142,7 @@ public class TbKafkaAdmin implements TbQueueAdmin {
         try {
             DeleteConsumerGroupsResult result = client.deleteConsumerGroups(consumerGroups);
             result.all().get();
+            metadataCollector.onConsumerGroupsDeleted(consumerGroups);
         } catch (Exception e) {
             log.warn("Failed to delete consumer groups {}", consumerGroups, e);
         }
@@ -185,101 +158,32 @@ public class TbKafkaAdmin implements TbQueueAdmin {
     }
 
     @Override
-    public PageData<KafkaBroker> getClusterInfo() {
-        try {
-            DescribeClusterResult describeClusterResult = client.describeCluster();
-            Map<Integer, Node> brokerNodes = describeClusterResultToNodes(describeClusterResult);
-            DescribeLogDirsResult describeLogDirsResult = client.describeLogDirs(brokerNodes.keySet());
-            Map<Integer, Map<String, LogDirDescription>> logDirDescriptionsPerBroker = describeLogDirsResult.allDescriptions().get();
-
-            List<KafkaBroker> kafkaBrokers = new ArrayList<>();
-
-            for (Map.Entry<Integer, Map<String, LogDirDescription>> entry : logDirDescriptionsPerBroker.entrySet()) {
-                int brokerId = entry.getKey();
-                long brokerTotalSize = 0L;
-                for (LogDirDescription logDirDescription : entry.getValue().values()) {
-                    for (ReplicaInfo replicaInfo : logDirDescription.replicaInfos().values()) {
-                        brokerTotalSize += replicaInfo.size();
-                    }
-                }
-                kafkaBrokers.add(new KafkaBroker(brokerId, brokerNodes.get(brokerId).host(), brokerTotalSize));
-            }
-            return new PageData<>(kafkaBrokers, 1, kafkaBrokers.size(), false);
-        } catch (InterruptedException | ExecutionException e) {
-            log.warn("Failed to get Kafka cluster info", e);
-            throw new RuntimeException(e);
-        }
+    public SnapshotPageData<KafkaBroker> getClusterInfo() {
+        List<KafkaBroker> kafkaBrokers = metadataCollector.getBrokers();
+        return new SnapshotPageData<>(kafkaBrokers, 1, kafkaBrokers.size(), false, metadataCollector.getSnapshotTime());
     }
 
     @Override
-    public PageData<KafkaTopic> getTopics(PageLink pageLink) {
-        try {
-            Map<String, KafkaTopic> kafkaTopicsMap = new HashMap<>();
-
-            Set<String> topics = client.listTopics().names().get();
-            Map<String, TopicDescription> topicDescriptionsMap = client.describeTopics(topics).all().get();
-
-            for (Map.Entry<String, TopicDescription> topicDescriptionEntry : topicDescriptionsMap.entrySet()) {
-                String topic = topicDescriptionEntry.getKey();
-                TopicDescription topicDescription = topicDescriptionEntry.getValue();
-                kafkaTopicsMap.put(topic, createKafkaTopic(topic, topicDescription));
-            }
-
-            Map<Integer, Node> brokerNodes = describeClusterResultToNodes(client.describeCluster());
-            DescribeLogDirsResult describeLogDirsResult = client.describeLogDirs(brokerNodes.keySet());
-            Map<Integer, Map<String, LogDirDescription>> logDirDescriptionsPerBroker = describeLogDirsResult.allDescriptions().get();
-
-            Map<String, Long> kafkaTopicSizesMap = new HashMap<>();
-
-            for (Map.Entry<Integer, Map<String, LogDirDescription>> logDirDescriptionsEntry : logDirDescriptionsPerBroker.entrySet()) {
-                for (LogDirDescription logDirDescription : logDirDescriptionsEntry.getValue().values()) {
-                    for (Map.Entry<TopicPartition, ReplicaInfo> topicReplicaInfoEntry : logDirDescription.replicaInfos().entrySet()) {
-
-                        String topic = topicReplicaInfoEntry.getKey().topic();
-                        long size = topicReplicaInfoEntry.getValue().size();
-
-                        kafkaTopicSizesMap.compute(topic, (s, currentSize) -> {
-                            if (currentSize == null) {
-                                currentSize = 0L;
-                            }
-                            return currentSize + size;
-                        });
-                    }
-                }
-            }
-
-            for (Map.Entry<String, Long> kafkaTopicSizeEntry : kafkaTopicSizesMap.entrySet()) {
-                KafkaTopic kafkaTopic = kafkaTopicsMap.get(kafkaTopicSizeEntry.getKey());
-                if (kafkaTopic != null) {
-                    kafkaTopic.setSize(kafkaTopicSizeEntry.getValue());
-                }
-            }
-
-            List<KafkaTopic> kafkaTopics;
-            if (pageLink.getTextSearch() != null) {
-                kafkaTopics = kafkaTopicsMap
-                        .values()
-                        .stream()
-                        .filter(kafkaTopic -> kafkaTopic.getName().toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))
-                        .collect(Collectors.toList());
-            } else {
-                kafkaTopics = new ArrayList<>(kafkaTopicsMap.values());
-            }
-
-            List<KafkaTopic> data = kafkaTopics.stream()
-                    .sorted(KafkaTopic.sorted(pageLink))
-                    .skip((long) pageLink.getPage() * pageLink.getPageSize())
-                    .limit(pageLink.getPageSize())
+    public SnapshotPageData<KafkaTopic> getTopics(PageLink pageLink) {
+        List<KafkaTopic> kafkaTopics = metadataCollector.getTopics();
+        if (pageLink.getTextSearch() != null) {
+            kafkaTopics = kafkaTopics
+                    .stream()
+                    .filter(kafkaTopic -> kafkaTopic.getName().toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))
                     .collect(Collectors.toList());
-
-            return new PageData<>(data,
-                    kafkaTopics.size() / pageLink.getPageSize(),
-                    kafkaTopics.size(),
-                    pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < kafkaTopics.size());
-        } catch (Exception e) {
-            log.warn("Failed to get Kafka topic infos", e);
-            throw new RuntimeException(e);
         }
+
+        List<KafkaTopic> data = kafkaTopics.stream()
+                .sorted(KafkaTopic.sorted(pageLink))
+                .skip((long) pageLink.getPage() * pageLink.getPageSize())
+                .limit(pageLink.getPageSize())
+                .collect(Collectors.toList());
+
+        return new SnapshotPageData<>(data,
+                kafkaTopics.size() / pageLink.getPageSize(),
+                kafkaTopics.size(),
+                pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < kafkaTopics.size(),
+                metadataCollector.getSnapshotTime());
     }
 
     @Override
@@ -298,85 +202,26 @@ public class TbKafkaAdmin implements TbQueueAdmin {
     }
 
     @Override
-    public PageData<KafkaConsumerGroup> getConsumerGroups(PageLink pageLink) {
-        try {
-            List<KafkaConsumerGroup> kafkaConsumerGroups = client.listConsumerGroups().all().get()
+    public SnapshotPageData<KafkaConsumerGroup> getConsumerGroups(PageLink pageLink) {
+        List<KafkaConsumerGroup> kafkaConsumerGroups = metadataCollector.getConsumerGroups();
+        if (pageLink.getTextSearch() != null) {
+            kafkaConsumerGroups = kafkaConsumerGroups
                     .stream()
-                    .map(consumerGroupListing -> {
-                        KafkaConsumerGroup kafkaConsumerGroup = new KafkaConsumerGroup();
-                        kafkaConsumerGroup.setGroupId(consumerGroupListing.groupId());
-                        kafkaConsumerGroup.setState(getKafkaConsumerGroupState(consumerGroupListing));
-                        return kafkaConsumerGroup;
-                    }).collect(Collectors.toList());
-
-            List<String> groupIds = kafkaConsumerGroups.stream().map(KafkaConsumerGroup::getGroupId).collect(Collectors.toList());
-            DescribeConsumerGroupsResult describeConsumerGroupsResult = client.describeConsumerGroups(groupIds);
-            Map<String, ConsumerGroupDescription> consumerGroupDescriptionsMap = describeConsumerGroupsResult.all().get();
-
-            for (KafkaConsumerGroup kafkaConsumerGroup : kafkaConsumerGroups) {
-                String groupId = kafkaConsumerGroup.getGroupId();
-                ConsumerGroupDescription consumerGroupDescription = consumerGroupDescriptionsMap.get(groupId);
-                if (consumerGroupDescription != null) {
-                    kafkaConsumerGroup.setMembers(consumerGroupDescription.members().size());
-                }
-
-                Map<TopicPartition, OffsetAndMetadata> groupOffsets = client.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata().get();
-                Map<TopicPartition, Long> endOffsets = consumer.endOffsets(groupOffsets.keySet(), timeoutDuration);
-
-                long lag = getConsumerGroupLag(groupOffsets, endOffsets);
-                kafkaConsumerGroup.setLag(lag);
-            }
-
-            if (pageLink.getTextSearch() != null) {
-                kafkaConsumerGroups = kafkaConsumerGroups
-                        .stream()
-                        .filter(kafkaTopic -> kafkaTopic.getGroupId().toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))
-                        .collect(Collectors.toList());
-            }
-
-            List<KafkaConsumerGroup> data = kafkaConsumerGroups.stream()
-                    .sorted(KafkaConsumerGroup.sorted(pageLink))
-                    .skip((long) pageLink.getPage() * pageLink.getPageSize())
-                    .limit(pageLink.getPageSize())
+                    .filter(kafkaTopic -> kafkaTopic.getGroupId().toLowerCase().contains(pageLink.getTextSearch().toLowerCase()))
                     .collect(Collectors.toList());
-
-            return new PageData<>(data,
-                    kafkaConsumerGroups.size() / pageLink.getPageSize(),
-                    kafkaConsumerGroups.size(),
-                    pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < kafkaConsumerGroups.size());
-        } catch (Exception e) {
-            log.warn("Failed to get Kafka consumer groups", e);
-            throw new RuntimeException(e);
-        }
-    }
-
-    private KafkaConsumerGroupState getKafkaConsumerGroupState(ConsumerGroupListing consumerGroupListing) {
-        ConsumerGroupState consumerGroupState = consumerGroupListing.state().orElse(ConsumerGroupState.UNKNOWN);
-        return KafkaConsumerGroupState.toState(consumerGroupState.toString());
-    }
-
-    private long getConsumerGroupLag(Map<TopicPartition, OffsetAndMetadata> groupOffsets,
-                                     Map<TopicPartition, Long> endOffsets) {
-        long totalLag = 0L;
-        for (Map.Entry<TopicPartition, OffsetAndMetadata> groupOffsetEntry : groupOffsets.entrySet()) {
-            long endOffset = endOffsets.get(groupOffsetEntry.getKey());
-            long committedOffset = groupOffsetEntry.getValue().offset();
-            long lag = endOffset - committedOffset;
-            totalLag += lag;
         }
-        return totalLag;
-    }
-
-    private Map<Integer, Node> describeClusterResultToNodes(DescribeClusterResult describeClusterResult) throws InterruptedException, ExecutionException {
-        return describeClusterResult.nodes().get().stream().collect(Collectors.toMap(Node::id, Function.identity()));
-    }
 
-    private KafkaTopic createKafkaTopic(String topic, TopicDescription topicDescription) {
-        KafkaTopic kafkaTopic = new KafkaTopic();
-        kafkaTopic.setName(topic);
-        kafkaTopic.setPartitions(topicDescription.partitions().size());
-        kafkaTopic.setReplicationFactor(topicDescription.partitions().get(0).replicas().size());
-        return kafkaTopic;
+        List<KafkaConsumerGroup> data = kafkaConsumerGroups.stream()
+                .sorted(KafkaConsumerGroup.sorted(pageLink))
+                .skip((long) pageLink.getPage() * pageLink.getPageSize())
+                .limit(pageLink.getPageSize())
+                .collect(Collectors.toList());
+
+        return new SnapshotPageData<>(data,
+                kafkaConsumerGroups.size() / pageLink.getPageSize(),
+                kafkaConsumerGroups.size(),
+                pageLink.getPageSize() + pageLink.getPage() * pageLink.getPageSize() < kafkaConsumerGroups.size(),
+                metadataCollector.getSnapshotTime());
     }
 
     private int extractPartitionsNumber(Map<String, String> topicConfigs) {
@@ -170,6 +170,16 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         });
     }
 
+    @Override
+    protected long doGetLag() {
+        long lag = 0;
+        for (TopicPartition topicPartition : consumer.assignment()) {
+            // cached by the fetcher, no request to the broker is made
+            lag += consumer.currentLag(topicPartition).orElse(0);
+        }
+        return lag;
+    }
+
     @Override
     protected void doUnsubscribeAndClose() {
         if (consumer != null) {
@@ -187,6 +197,11 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         return consumer.endOffsets(Collections.singletonList(topicPartition)).getOrDefault(topicPartition, 0L);
     }
 
+    @Override
+    protected long doGetPosition(String topic, int partition) {
+        return consumer.position(newTopicPartition(topic, partition));
+    }
+
     @Override
     public Optional<Long> doGetCommittedOffset(String topic, int partition) {
         TopicPartition topicPartition = newTopicPartition(topic, partition);
@@ -209,4 +224,9 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
     public void doSeekToTheBeginning() {
         consumer.seekToBeginning(Collections.emptyList());
     }
+
+    @Override
+    public void doSeek(String topic, int partition, long offset) {
+        consumer.seek(newTopicPartition(topic, partition), offset);
+    }
 }
@@ -27,4 +27,7 @@ public class PublishMsgKafkaSettings {
     private String topicProperties;
     private String additionalProducerConfig;
     private String additionalConsumerConfig;
+    // QoS 1 and 2 lane, used when the priority lane is enabled
+    private String priorityTopic;
+    private String priorityTopicProperties;
 }
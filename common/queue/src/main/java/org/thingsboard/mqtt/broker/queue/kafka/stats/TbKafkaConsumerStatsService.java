@@ -20,6 +20,7 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsSpec;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -36,6 +37,8 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -81,28 +84,37 @@ public class TbKafkaConsumerStatsService {
     private void startLogScheduling() {
         Duration timeoutDuration = Duration.ofMillis(statsConfig.getKafkaResponseTimeoutMs());
         statsPrintScheduler.scheduleWithFixedDelay(() -> {
-            if (!isStatsPrintRequired()) {
+            if (!isStatsPrintRequired() || monitoredGroups.isEmpty()) {
                 return;
             }
-            for (String groupId : monitoredGroups) {
-                try {
-                    Map<TopicPartition, OffsetAndMetadata> groupOffsets = adminClient.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata()
-                            .get(statsConfig.getKafkaResponseTimeoutMs(), TimeUnit.MILLISECONDS);
-                    Map<TopicPartition, Long> endOffsets = consumer.endOffsets(groupOffsets.keySet(), timeoutDuration);
-
-                    List<GroupTopicStats> lagTopicsStats = getTopicsStatsWithLag(groupOffsets, endOffsets);
-                    if (!lagTopicsStats.isEmpty()) {
-                        StringBuilder builder = new StringBuilder();
-                        for (int i = 0; i < lagTopicsStats.size(); i++) {
-                            builder.append(lagTopicsStats.get(i).toString());
-                            if (i != lagTopicsStats.size() - 1) {
-                                builder.append(", ");
-                            }
+            Map<String, Map<TopicPartition, OffsetAndMetadata>> groupsOffsets;
+            Map<TopicPartition, Long> endOffsets;
+            try {
+                // all monitored groups are fetched with one request and their end offsets with another one
+                Map<String, ListConsumerGroupOffsetsSpec> offsetsSpecs = new HashMap<>();
+                for (String groupId : monitoredGroups) {
+                    offsetsSpecs.put(groupId, new ListConsumerGroupOffsetsSpec());
+                }
+                groupsOffsets = adminClient.listConsumerGroupOffsets(offsetsSpecs).all()
+                        .get(statsConfig.getKafkaResponseTimeoutMs(), TimeUnit.MILLISECONDS);
+                Set<TopicPartition> topicPartitions = new HashSet<>();
+                groupsOffsets.values().forEach(groupOffsets -> topicPartitions.addAll(groupOffsets.keySet()));
+                endOffsets = consumer.endOffsets(topicPartitions, timeoutDuration);
+            } catch (Exception e) {
+                log.warn("Failed to get consumer groups stats for {}.", monitoredGroups, e);
+                return;
+            }
+            for (Map.Entry<String, Map<TopicPartition, OffsetAndMetadata>> entry : groupsOffsets.entrySet()) {
+                List<GroupTopicStats> lagTopicsStats = getTopicsStatsWithLag(entry.getValue(), endOffsets);
+                if (!lagTopicsStats.isEmpty()) {
+                    StringBuilder builder = new StringBuilder();
+                    for (int i = 0; i < lagTopicsStats.size(); i++) {
+                        builder.append(lagTopicsStats.get(i).toString());
+                        if (i != lagTopicsStats.size() - 1) {
+                            builder.append(", ");
                         }
-                        log.info("[{}] Topic partitions with lag: [{}].", groupId, builder);
                     }
-                } catch (Exception e) {
-                    log.warn("[{}] Failed to get consumer group stats.", groupId, e);
+                    log.info("[{}] Topic partitions with lag: [{}].", entry.getKey(), builder);
                 }
             }
 
@@ -116,8 +128,12 @@ public class TbKafkaConsumerStatsService {
     private List<GroupTopicStats> getTopicsStatsWithLag(Map<TopicPartition, OffsetAndMetadata> groupOffsets, Map<TopicPartition, Long> endOffsets) {
         List<GroupTopicStats> consumerGroupStats = new ArrayList<>();
         for (TopicPartition topicPartition : groupOffsets.keySet()) {
-            long endOffset = endOffsets.get(topicPartition);
-            long committedOffset = groupOffsets.get(topicPartition).offset();
+            Long endOffset = endOffsets.get(topicPartition);
+            OffsetAndMetadata offsetAndMetadata = groupOffsets.get(topicPartition);
+            if (endOffset == null || offsetAndMetadata == null) {
+                continue;
+            }
+            long committedOffset = offsetAndMetadata.offset();
             long lag = endOffset - committedOffset;
             if (lag != 0) {
                 GroupTopicStats groupTopicStats = GroupTopicStats.builder()
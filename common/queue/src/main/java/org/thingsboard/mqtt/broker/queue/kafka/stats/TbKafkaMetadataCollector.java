@@ -0,0 +1,395 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.kafka.stats;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.ConsumerGroupListing;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsSpec;
+import org.apache.kafka.clients.admin.LogDirDescription;
+import org.apache.kafka.clients.admin.ReplicaInfo;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.ConsumerGroupState;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroupState;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
+import org.thingsboard.mqtt.broker.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.HomePageConsumerKafkaSettings;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.TbKafkaAdminSettings;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.TbKafkaConsumerSettings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a snapshot of the Kafka brokers, topics and consumer groups (with lag) for the home page and the REST API,
+ * so that requests do not describe every topic and group of the cluster.
+ * <p>
+ * The snapshot is refreshed in the background while it is being read. Only new, re-created or changed topics and
+ * groups are described on a regular refresh, everything is re-described on a full refresh. Broker and topic sizes
+ * (log dirs of every broker) and consumer group lags (offsets of every group and end offsets of their partitions)
+ * are the expensive part, so they are collected on their own slower schedule; only new groups get their lag in between.
+ * Topic and group deletions done by this broker are applied to the snapshot right away.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TbKafkaMetadataCollector {
+
+    private final ConcurrentMap<String, KafkaTopic> topics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, KafkaConsumerGroup> consumerGroups = new ConcurrentHashMap<>();
+    private final Set<String> invalidatedTopics = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshRequested = new AtomicBoolean();
+
+    private final TbKafkaAdminSettings adminSettings;
+    private final TbKafkaConsumerSettings consumerSettings;
+    private final HomePageConsumerKafkaSettings homePageConsumerKafkaSettings;
+
+    @Setter
+    @Value("${queue.kafka.home-page.snapshot.refresh-interval-ms:30000}")
+    private long refreshIntervalMs;
+    @Setter
+    @Value("${queue.kafka.home-page.snapshot.full-refresh-interval-ms:300000}")
+    private long fullRefreshIntervalMs;
+    @Setter
+    @Value("${queue.kafka.home-page.snapshot.stats-refresh-interval-ms:120000}")
+    private long statsRefreshIntervalMs;
+    @Setter
+    @Value("${queue.kafka.home-page.snapshot.idle-timeout-ms:600000}")
+    private long idleTimeoutMs;
+
+    private Admin client;
+    private Consumer<String, byte[]> consumer;
+    private Duration timeoutDuration;
+    private ScheduledExecutorService scheduler;
+
+    private volatile List<KafkaBroker> brokers = Collections.emptyList();
+    private volatile long snapshotTime;
+    private volatile long lastReadTime;
+    private long lastFullRefreshTime;
+    private long lastStatsRefreshTime;
+    private Map<Integer, Long> brokerSizes = Collections.emptyMap();
+    private Map<String, Long> topicSizes = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        init(AdminClient.create(adminSettings.toProps()), createConsumer());
+    }
+
+    void init(Admin client, Consumer<String, byte[]> consumer) {
+        this.client = client;
+        this.consumer = consumer;
+        this.timeoutDuration = Duration.ofMillis(homePageConsumerKafkaSettings.getKafkaResponseTimeoutMs());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("kafka-metadata-collector"));
+        scheduler.scheduleWithFixedDelay(this::refreshIfRead, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private Consumer<String, byte[]> createConsumer() {
+        Properties consumerProps = consumerSettings.toProps("kafka_admin_home_page", homePageConsumerKafkaSettings.getConsumerProperties());
+        consumerProps.put(ConsumerConfig.CLIENT_ID_CONFIG, "home-page-client");
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, "home-page-client-group");
+        consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
+        consumerProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+        return new KafkaConsumer<>(consumerProps);
+    }
+
+    public List<KafkaBroker> getBrokers() {
+        onRead();
+        return brokers;
+    }
+
+    public List<KafkaTopic> getTopics() {
+        onRead();
+        return new ArrayList<>(topics.values());
+    }
+
+    public List<KafkaConsumerGroup> getConsumerGroups() {
+        onRead();
+        return new ArrayList<>(consumerGroups.values());
+    }
+
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public void onTopicCreated(String topic) {
+        invalidatedTopics.add(topic);
+    }
+
+    public void onTopicDeleted(String topic) {
+        invalidatedTopics.remove(topic);
+        topics.remove(topic);
+    }
+
+    public void onConsumerGroupsDeleted(Collection<String> groupIds) {
+        consumerGroups.keySet().removeAll(groupIds);
+    }
+
+    private void onRead() {
+        long now = System.currentTimeMillis();
+        boolean idle = now - lastReadTime > idleTimeoutMs;
+        lastReadTime = now;
+        if (snapshotTime == 0) {
+            try {
+                scheduler.submit(() -> {
+                    if (snapshotTime == 0) {
+                        refresh();
+                    }
+                    return null;
+                }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Failed to collect Kafka metadata", e);
+            }
+        } else if (idle && refreshRequested.compareAndSet(false, true)) {
+            // the snapshot was not refreshed while nobody read it, serve the stale one and refresh it right away
+            scheduler.execute(this::refreshIfRead);
+        }
+    }
+
+    private void refreshIfRead() {
+        refreshRequested.set(false);
+        if (snapshotTime != 0 && System.currentTimeMillis() - lastReadTime > idleTimeoutMs) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Failed to refresh Kafka metadata snapshot", e);
+        }
+    }
+
+    void refresh() throws ExecutionException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        boolean fullRefresh = startTime - lastFullRefreshTime >= fullRefreshIntervalMs;
+        boolean statsRefresh = startTime - lastStatsRefreshTime >= statsRefreshIntervalMs;
+        refreshTopicsAndBrokers(fullRefresh, statsRefresh);
+        refreshConsumerGroups(fullRefresh, statsRefresh);
+        if (fullRefresh) {
+            lastFullRefreshTime = startTime;
+        }
+        if (statsRefresh) {
+            lastStatsRefreshTime = startTime;
+        }
+        snapshotTime = startTime;
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed Kafka metadata snapshot in {} ms, full refresh - {}, stats refresh - {}, topics - {}, consumer groups - {}",
+                    System.currentTimeMillis() - startTime, fullRefresh, statsRefresh, topics.size(), consumerGroups.size());
+        }
+    }
+
+    private void refreshTopicsAndBrokers(boolean fullRefresh, boolean statsRefresh) throws ExecutionException, InterruptedException {
+        Set<String> topicNames = client.listTopics().names().get();
+        topics.keySet().retainAll(topicNames);
+
+        Set<String> topicsToDescribe = new HashSet<>();
+        for (String topic : topicNames) {
+            if (fullRefresh || !topics.containsKey(topic)) {
+                topicsToDescribe.add(topic);
+            }
+        }
+        for (Iterator<String> iterator = invalidatedTopics.iterator(); iterator.hasNext(); ) {
+            String topic = iterator.next();
+            iterator.remove();
+            if (topicNames.contains(topic)) {
+                topicsToDescribe.add(topic);
+            }
+        }
+        Map<String, TopicDescription> topicDescriptions = topicsToDescribe.isEmpty() ? Collections.emptyMap() :
+                client.describeTopics(topicsToDescribe).allTopicNames().get();
+
+        Map<Integer, Node> brokerNodes = client.describeCluster().nodes().get().stream()
+                .collect(Collectors.toMap(Node::id, Function.identity(), (first, second) -> first, TreeMap::new));
+        if (statsRefresh) {
+            refreshSizes(brokerNodes.keySet());
+        }
+
+        List<KafkaBroker> kafkaBrokers = new ArrayList<>(brokerNodes.size());
+        for (Node brokerNode : brokerNodes.values()) {
+            kafkaBrokers.add(new KafkaBroker(brokerNode.id(), brokerNode.host(), brokerSizes.getOrDefault(brokerNode.id(), 0L)));
+        }
+        brokers = Collections.unmodifiableList(kafkaBrokers);
+
+        for (String topic : topicNames) {
+            KafkaTopic previous = topics.get(topic);
+            TopicDescription topicDescription = topicDescriptions.get(topic);
+            if (previous == null && topicDescription == null) {
+                continue;
+            }
+            // readers sort the snapshot values, so they are replaced instead of being modified in place
+            KafkaTopic kafkaTopic = new KafkaTopic();
+            kafkaTopic.setName(topic);
+            if (topicDescription != null) {
+                kafkaTopic.setPartitions(topicDescription.partitions().size());
+                kafkaTopic.setReplicationFactor(topicDescription.partitions().get(0).replicas().size());
+            } else {
+                kafkaTopic.setPartitions(previous.getPartitions());
+                kafkaTopic.setReplicationFactor(previous.getReplicationFactor());
+            }
+            kafkaTopic.setSize(topicSizes.getOrDefault(topic, 0L));
+            topics.put(topic, kafkaTopic);
+        }
+    }
+
+    private void refreshSizes(Collection<Integer> brokerIds) throws ExecutionException, InterruptedException {
+        Map<Integer, Map<String, LogDirDescription>> logDirDescriptionsPerBroker = client.describeLogDirs(brokerIds).allDescriptions().get();
+        Map<Integer, Long> newBrokerSizes = new HashMap<>();
+        Map<String, Long> newTopicSizes = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, LogDirDescription>> entry : logDirDescriptionsPerBroker.entrySet()) {
+            long brokerTotalSize = 0L;
+            for (LogDirDescription logDirDescription : entry.getValue().values()) {
+                for (Map.Entry<TopicPartition, ReplicaInfo> replicaInfoEntry : logDirDescription.replicaInfos().entrySet()) {
+                    long size = replicaInfoEntry.getValue().size();
+                    brokerTotalSize += size;
+                    newTopicSizes.merge(replicaInfoEntry.getKey().topic(), size, Long::sum);
+                }
+            }
+            newBrokerSizes.put(entry.getKey(), brokerTotalSize);
+        }
+        brokerSizes = newBrokerSizes;
+        topicSizes = newTopicSizes;
+    }
+
+    private void refreshConsumerGroups(boolean fullRefresh, boolean statsRefresh) throws ExecutionException, InterruptedException {
+        Map<String, KafkaConsumerGroupState> groupStates = new HashMap<>();
+        for (ConsumerGroupListing consumerGroupListing : client.listConsumerGroups().all().get()) {
+            groupStates.put(consumerGroupListing.groupId(), getKafkaConsumerGroupState(consumerGroupListing));
+        }
+        consumerGroups.keySet().retainAll(groupStates.keySet());
+        if (groupStates.isEmpty()) {
+            return;
+        }
+
+        List<String> groupsToDescribe = new ArrayList<>();
+        for (Map.Entry<String, KafkaConsumerGroupState> entry : groupStates.entrySet()) {
+            KafkaConsumerGroup previous = consumerGroups.get(entry.getKey());
+            if (fullRefresh || previous == null || previous.getState() != entry.getValue()) {
+                groupsToDescribe.add(entry.getKey());
+            }
+        }
+        Map<String, ConsumerGroupDescription> groupDescriptions = groupsToDescribe.isEmpty() ? Collections.emptyMap() :
+                client.describeConsumerGroups(groupsToDescribe).all().get();
+
+        Map<String, ListConsumerGroupOffsetsSpec> offsetsSpecs = new HashMap<>();
+        for (String groupId : groupStates.keySet()) {
+            if (statsRefresh || !consumerGroups.containsKey(groupId)) {
+                offsetsSpecs.put(groupId, new ListConsumerGroupOffsetsSpec());
+            }
+        }
+        Map<String, Long> lags = offsetsSpecs.isEmpty() ? Collections.emptyMap() : getConsumerGroupLags(offsetsSpecs);
+
+        for (Map.Entry<String, KafkaConsumerGroupState> entry : groupStates.entrySet()) {
+            String groupId = entry.getKey();
+            KafkaConsumerGroup previous = consumerGroups.get(groupId);
+            ConsumerGroupDescription groupDescription = groupDescriptions.get(groupId);
+
+            KafkaConsumerGroup kafkaConsumerGroup = new KafkaConsumerGroup();
+            kafkaConsumerGroup.setGroupId(groupId);
+            kafkaConsumerGroup.setState(entry.getValue());
+            if (groupDescription != null) {
+                kafkaConsumerGroup.setMembers(groupDescription.members().size());
+            } else if (previous != null) {
+                kafkaConsumerGroup.setMembers(previous.getMembers());
+            }
+            Long lag = lags.get(groupId);
+            if (lag != null) {
+                kafkaConsumerGroup.setLag(lag);
+            } else if (previous != null) {
+                kafkaConsumerGroup.setLag(previous.getLag());
+            }
+            consumerGroups.put(groupId, kafkaConsumerGroup);
+        }
+    }
+
+    private Map<String, Long> getConsumerGroupLags(Map<String, ListConsumerGroupOffsetsSpec> offsetsSpecs) throws ExecutionException, InterruptedException {
+        Map<String, Map<TopicPartition, OffsetAndMetadata>> groupsOffsets = client.listConsumerGroupOffsets(offsetsSpecs).all().get();
+        Set<TopicPartition> topicPartitions = new HashSet<>();
+        for (Map<TopicPartition, OffsetAndMetadata> groupOffsets : groupsOffsets.values()) {
+            topicPartitions.addAll(groupOffsets.keySet());
+        }
+        Map<TopicPartition, Long> endOffsets = topicPartitions.isEmpty() ? Collections.emptyMap() :
+                consumer.endOffsets(topicPartitions, timeoutDuration);
+        Map<String, Long> lags = new HashMap<>();
+        for (String groupId : offsetsSpecs.keySet()) {
+            lags.put(groupId, getConsumerGroupLag(groupsOffsets.getOrDefault(groupId, Collections.emptyMap()), endOffsets));
+        }
+        return lags;
+    }
+
+    private KafkaConsumerGroupState getKafkaConsumerGroupState(ConsumerGroupListing consumerGroupListing) {
+        ConsumerGroupState consumerGroupState = consumerGroupListing.state().orElse(ConsumerGroupState.UNKNOWN);
+        return KafkaConsumerGroupState.toState(consumerGroupState.toString());
+    }
+
+    private long getConsumerGroupLag(Map<TopicPartition, OffsetAndMetadata> groupOffsets,
+                                     Map<TopicPartition, Long> endOffsets) {
+        long totalLag = 0L;
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> groupOffsetEntry : groupOffsets.entrySet()) {
+            Long endOffset = endOffsets.get(groupOffsetEntry.getKey());
+            if (endOffset == null || groupOffsetEntry.getValue() == null) {
+                continue;
+            }
+            totalLag += endOffset - groupOffsetEntry.getValue().offset();
+        }
+        return totalLag;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (client != null) {
+            client.close();
+        }
+        if (consumer != null) {
+            consumer.close();
+        }
+    }
+}
@@ -52,32 +52,55 @@ public class KafkaPublishMsgQueueFactory implements PublishMsgQueueFactory {
     private ConsumerStatsManager consumerStatsManager;
 
     private Map<String, String> topicConfigs;
+    private Map<String, String> priorityTopicConfigs;
 
     @PostConstruct
     public void init() {
         this.topicConfigs = QueueUtil.getConfigs(publishMsgSettings.getTopicProperties());
+        this.priorityTopicConfigs = QueueUtil.getConfigs(publishMsgSettings.getPriorityTopicProperties());
     }
 
     @Override
     public TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createProducer() {
+        return createProducer("msg-all-producer", publishMsgSettings.getTopic(), topicConfigs);
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id) {
+        return createConsumer("msg-all-consumer-" + id, "msg-all-consumer-group", publishMsgSettings.getTopic(), topicConfigs);
+    }
+
+    @Override
+    public TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createPriorityProducer() {
+        return createProducer("msg-all-priority-producer", publishMsgSettings.getPriorityTopic(), priorityTopicConfigs);
+    }
+
+    @Override
+    public TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createPriorityConsumer(String id) {
+        return createConsumer("msg-all-priority-consumer-" + id, "msg-all-priority-consumer-group",
+                publishMsgSettings.getPriorityTopic(), priorityTopicConfigs);
+    }
+
+    private TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createProducer(String clientId, String topic,
+                                                                                          Map<String, String> topicConfigs) {
         TbKafkaProducerTemplate.TbKafkaProducerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> producerBuilder = TbKafkaProducerTemplate.builder();
         producerBuilder.properties(producerSettings.toProps(publishMsgSettings.getAdditionalProducerConfig()));
-        producerBuilder.clientId("msg-all-producer");
-        producerBuilder.defaultTopic(publishMsgSettings.getTopic());
+        producerBuilder.clientId(clientId);
+        producerBuilder.defaultTopic(topic);
         producerBuilder.topicConfigs(topicConfigs);
         producerBuilder.admin(queueAdmin);
         producerBuilder.statsManager(producerStatsManager);
         return producerBuilder.build();
     }
 
-    @Override
-    public TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id) {
+    private TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String clientId, String groupId, String topic,
+                                                                                          Map<String, String> topicConfigs) {
         TbKafkaConsumerTemplate.TbKafkaConsumerTemplateBuilder<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> consumerBuilder = TbKafkaConsumerTemplate.builder();
-        consumerBuilder.properties(consumerSettings.toProps(publishMsgSettings.getTopic(), publishMsgSettings.getAdditionalConsumerConfig()));
-        consumerBuilder.topic(publishMsgSettings.getTopic());
+        consumerBuilder.properties(consumerSettings.toProps(topic, publishMsgSettings.getAdditionalConsumerConfig()));
+        consumerBuilder.topic(topic);
         consumerBuilder.topicConfigs(topicConfigs);
-        consumerBuilder.clientId("msg-all-consumer-" + id);
-        consumerBuilder.groupId("msg-all-consumer-group");
+        consumerBuilder.clientId(clientId);
+        consumerBuilder.groupId(groupId);
         consumerBuilder.decoder(msg -> new TbProtoQueueMsg<>(msg.getKey(), QueueProtos.PublishMsgProto.parseFrom(msg.getData()), msg.getHeaders()));
         consumerBuilder.admin(queueAdmin);
         consumerBuilder.statsService(consumerStatsService);
@@ -27,4 +27,8 @@ public interface PublishMsgQueueFactory {
 
     TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createConsumer(String id);
 
+    TbQueueProducer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createPriorityProducer();
+
+    TbQueueConsumer<TbProtoQueueMsg<QueueProtos.PublishMsgProto>> createPriorityConsumer(String id);
+
 }
@@ -0,0 +1,270 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.queue.kafka.stats;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.ConsumerGroupListing;
+import org.apache.kafka.clients.admin.DescribeClusterResult;
+import org.apache.kafka.clients.admin.DescribeConsumerGroupsResult;
+import org.apache.kafka.clients.admin.DescribeLogDirsResult;
+import org.apache.kafka.clients.admin.DescribeTopicsResult;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsSpec;
+import org.apache.kafka.clients.admin.ListConsumerGroupsResult;
+import org.apache.kafka.clients.admin.ListTopicsResult;
+import org.apache.kafka.clients.admin.LogDirDescription;
+import org.apache.kafka.clients.admin.MemberAssignment;
+import org.apache.kafka.clients.admin.MemberDescription;
+import org.apache.kafka.clients.admin.ReplicaInfo;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.ConsumerGroupState;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaBroker;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaConsumerGroup;
+import org.thingsboard.mqtt.broker.common.data.queue.KafkaTopic;
+import org.thingsboard.mqtt.broker.queue.kafka.settings.HomePageConsumerKafkaSettings;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TbKafkaMetadataCollectorTest {
+
+    private static final Node BROKER = new Node(1, "kafka-1", 9092);
+
+    private Admin admin;
+    private Consumer<String, byte[]> consumer;
+    private TbKafkaMetadataCollector collector;
+
+    private Set<String> topicNames;
+    private Map<TopicPartition, Long> replicaSizes;
+    private List<String> groupIds;
+    private Map<TopicPartition, Long> committedOffsets;
+    private Map<TopicPartition, Long> endOffsets;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        admin = mock(Admin.class);
+        consumer = mock(Consumer.class);
+        HomePageConsumerKafkaSettings homePageConsumerKafkaSettings = mock(HomePageConsumerKafkaSettings.class);
+        when(homePageConsumerKafkaSettings.getKafkaResponseTimeoutMs()).thenReturn(1000L);
+
+        topicNames = Set.of("topic-a");
+        replicaSizes = Map.of(new TopicPartition("topic-a", 0), 100L, new TopicPartition("topic-a", 1), 50L);
+        groupIds = List.of("group-a");
+        committedOffsets = Map.of(new TopicPartition("topic-a", 0), 10L);
+        endOffsets = Map.of(new TopicPartition("topic-a", 0), 25L);
+        mockAdmin();
+
+        collector = new TbKafkaMetadataCollector(null, null, homePageConsumerKafkaSettings);
+        collector.setRefreshIntervalMs(TimeUnit.HOURS.toMillis(1));
+        collector.setFullRefreshIntervalMs(TimeUnit.HOURS.toMillis(1));
+        collector.setStatsRefreshIntervalMs(TimeUnit.HOURS.toMillis(1));
+        collector.setIdleTimeoutMs(TimeUnit.HOURS.toMillis(1));
+        collector.init(admin, consumer);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        collector.destroy();
+    }
+
+    @Test
+    public void givenNoSnapshot_whenRead_thenSnapshotCollectedWithSizesAndLags() {
+        List<KafkaTopic> topics = collector.getTopics();
+
+        assertThat(collector.getSnapshotTime()).isPositive();
+        assertThat(topics).hasSize(1);
+        assertThat(topics.get(0).getName()).isEqualTo("topic-a");
+        assertThat(topics.get(0).getPartitions()).isEqualTo(2);
+        assertThat(topics.get(0).getSize()).isEqualTo(150L);
+
+        List<KafkaBroker> brokers = collector.getBrokers();
+        assertThat(brokers).hasSize(1);
+        assertThat(brokers.get(0).getBrokerId()).isEqualTo(1);
+        assertThat(brokers.get(0).getAddress()).isEqualTo("kafka-1");
+        assertThat(brokers.get(0).getBrokerSize()).isEqualTo(150L);
+
+        List<KafkaConsumerGroup> consumerGroups = collector.getConsumerGroups();
+        assertThat(consumerGroups).hasSize(1);
+        assertThat(consumerGroups.get(0).getMembers()).isEqualTo(1);
+        assertThat(consumerGroups.get(0).getLag()).isEqualTo(15L);
+    }
+
+    @Test
+    public void givenStatsRefreshIntervalNotPassed_whenRefresh_thenSizesAndLagsKeptWithoutExpensiveCalls() throws Exception {
+        collector.getTopics();
+        replicaSizes = Map.of(new TopicPartition("topic-a", 0), 500L);
+        endOffsets = Map.of(new TopicPartition("topic-a", 0), 100L);
+
+        collector.refresh();
+
+        verify(admin, times(1)).describeLogDirs(anyCollection());
+        verify(admin, times(1)).listConsumerGroupOffsets(anyMap());
+        verify(consumer, times(1)).endOffsets(anyCollection(), any(Duration.class));
+        assertThat(collector.getTopics().get(0).getSize()).isEqualTo(150L);
+        assertThat(collector.getBrokers().get(0).getBrokerSize()).isEqualTo(150L);
+        assertThat(collector.getConsumerGroups().get(0).getLag()).isEqualTo(15L);
+    }
+
+    @Test
+    public void givenStatsRefreshIntervalPassed_whenRefresh_thenSizesAndLagsUpdated() throws Exception {
+        collector.getTopics();
+        collector.setStatsRefreshIntervalMs(0);
+        replicaSizes = Map.of(new TopicPartition("topic-a", 0), 500L);
+        endOffsets = Map.of(new TopicPartition("topic-a", 0), 100L);
+
+        collector.refresh();
+
+        verify(admin, times(2)).describeLogDirs(anyCollection());
+        verify(admin, times(2)).listConsumerGroupOffsets(anyMap());
+        assertThat(collector.getTopics().get(0).getSize()).isEqualTo(500L);
+        assertThat(collector.getBrokers().get(0).getBrokerSize()).isEqualTo(500L);
+        assertThat(collector.getConsumerGroups().get(0).getLag()).isEqualTo(90L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenNewTopicAndGroup_whenRefresh_thenOnlyNewOnesDescribedAndMeasured() throws Exception {
+        collector.getTopics();
+        topicNames = Set.of("topic-a", "topic-b");
+        groupIds = List.of("group-a", "group-b");
+
+        collector.refresh();
+
+        ArgumentCaptor<Collection<String>> describedTopicsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(admin, times(2)).describeTopics(describedTopicsCaptor.capture());
+        assertThat(describedTopicsCaptor.getAllValues().get(1)).containsExactly("topic-b");
+
+        ArgumentCaptor<Collection<String>> describedGroupsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(admin, times(2)).describeConsumerGroups(describedGroupsCaptor.capture());
+        assertThat(describedGroupsCaptor.getAllValues().get(1)).containsExactly("group-b");
+
+        ArgumentCaptor<Map<String, ListConsumerGroupOffsetsSpec>> offsetsSpecsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(admin, times(2)).listConsumerGroupOffsets(offsetsSpecsCaptor.capture());
+        assertThat(offsetsSpecsCaptor.getAllValues().get(1)).containsOnlyKeys("group-b");
+        assertThat(collector.getConsumerGroups()).extracting(KafkaConsumerGroup::getLag).containsOnly(15L);
+    }
+
+    @Test
+    public void givenTopicDeleted_whenRead_thenTopicRemovedFromSnapshot() {
+        collector.getTopics();
+
+        collector.onTopicDeleted("topic-a");
+
+        assertThat(collector.getTopics()).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockAdmin() {
+        ListTopicsResult listTopicsResult = mock(ListTopicsResult.class);
+        when(listTopicsResult.names()).thenAnswer(invocation -> KafkaFuture.completedFuture(topicNames));
+        when(admin.listTopics()).thenReturn(listTopicsResult);
+
+        when(admin.describeTopics(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            DescribeTopicsResult describeTopicsResult = mock(DescribeTopicsResult.class);
+            Map<String, TopicDescription> descriptions = names.stream()
+                    .collect(Collectors.toMap(Function.identity(), this::newTopicDescription));
+            when(describeTopicsResult.allTopicNames()).thenReturn(KafkaFuture.completedFuture(descriptions));
+            return describeTopicsResult;
+        });
+
+        DescribeClusterResult describeClusterResult = mock(DescribeClusterResult.class);
+        when(describeClusterResult.nodes()).thenReturn(KafkaFuture.completedFuture(List.of(BROKER)));
+        when(admin.describeCluster()).thenReturn(describeClusterResult);
+
+        when(admin.describeLogDirs(anyCollection())).thenAnswer(invocation -> {
+            Map<TopicPartition, ReplicaInfo> replicaInfos = new HashMap<>();
+            replicaSizes.forEach((topicPartition, size) -> replicaInfos.put(topicPartition, new ReplicaInfo(size, 0, false)));
+            DescribeLogDirsResult describeLogDirsResult = mock(DescribeLogDirsResult.class);
+            when(describeLogDirsResult.allDescriptions()).thenReturn(KafkaFuture.completedFuture(
+                    Map.of(BROKER.id(), Map.of("/data", new LogDirDescription(null, replicaInfos)))));
+            return describeLogDirsResult;
+        });
+
+        when(admin.listConsumerGroups()).thenAnswer(invocation -> {
+            ListConsumerGroupsResult listConsumerGroupsResult = mock(ListConsumerGroupsResult.class);
+            Collection<ConsumerGroupListing> listings = groupIds.stream()
+                    .map(groupId -> new ConsumerGroupListing(groupId, false, Optional.of(ConsumerGroupState.STABLE)))
+                    .collect(Collectors.toList());
+            when(listConsumerGroupsResult.all()).thenReturn(KafkaFuture.completedFuture(listings));
+            return listConsumerGroupsResult;
+        });
+
+        when(admin.describeConsumerGroups(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            DescribeConsumerGroupsResult describeConsumerGroupsResult = mock(DescribeConsumerGroupsResult.class);
+            Map<String, ConsumerGroupDescription> descriptions = ids.stream()
+                    .collect(Collectors.toMap(Function.identity(), this::newConsumerGroupDescription));
+            when(describeConsumerGroupsResult.all()).thenReturn(KafkaFuture.completedFuture(descriptions));
+            return describeConsumerGroupsResult;
+        });
+
+        when(admin.listConsumerGroupOffsets(anyMap())).thenAnswer(invocation -> {
+            Map<String, ListConsumerGroupOffsetsSpec> specs = invocation.getArgument(0);
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            committedOffsets.forEach((topicPartition, offset) -> offsets.put(topicPartition, new OffsetAndMetadata(offset)));
+            ListConsumerGroupOffsetsResult listConsumerGroupOffsetsResult = mock(ListConsumerGroupOffsetsResult.class);
+            when(listConsumerGroupOffsetsResult.all()).thenReturn(KafkaFuture.completedFuture(specs.keySet().stream()
+                    .collect(Collectors.toMap(Function.identity(), groupId -> offsets))));
+            return listConsumerGroupOffsetsResult;
+        });
+
+        when(consumer.endOffsets(anyCollection(), any(Duration.class))).thenAnswer(invocation -> endOffsets);
+    }
+
+    private TopicDescription newTopicDescription(String topic) {
+        List<Node> replicas = List.of(BROKER);
+        return new TopicDescription(topic, false, List.of(
+                new TopicPartitionInfo(0, BROKER, replicas, replicas),
+                new TopicPartitionInfo(1, BROKER, replicas, replicas)));
+    }
+
+    private ConsumerGroupDescription newConsumerGroupDescription(String groupId) {
+        MemberDescription member = new MemberDescription("member-" + groupId, "client-" + groupId, "host",
+                new MemberAssignment(Collections.emptySet()));
+        return new ConsumerGroupDescription(groupId, false, List.of(member), "range", ConsumerGroupState.STABLE, BROKER);
+    }
+}
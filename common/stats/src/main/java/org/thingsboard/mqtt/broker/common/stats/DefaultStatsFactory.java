@@ -15,6 +15,7 @@
  */
 package org.thingsboard.mqtt.broker.common.stats;
 
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
@@ -106,4 +107,20 @@ public class DefaultStatsFactory implements StatsFactory {
         }
         return timerBuilder.register(meterRegistry);
     }
+
+    @Override
+    public void removeMeters(String key, String... tags) {
+        Tags meterTags = Tags.of(tags);
+        meterRegistry.getMeters().stream()
+                .filter(meter -> isMeterOf(meter.getId(), key, meterTags))
+                .forEach(meterRegistry::remove);
+    }
+
+    private boolean isMeterOf(Meter.Id id, String key, Tags tags) {
+        String name = id.getName();
+        if (!name.equals(key) && !name.startsWith(key + ".")) {
+            return false;
+        }
+        return tags.stream().allMatch(tag -> tag.getValue().equals(id.getTag(tag.getKey())));
+    }
 }
@@ -32,4 +32,10 @@ public interface StatsFactory {
     MessagesStats createMessagesStats(String key, String... tags);
 
     Timer createTimer(String key, String... tags);
+
+    /**
+     * Removes the meters named by the key (or prefixed with 'key.') that have all the given tags,
+     * so that the stats of the components that are gone do not stay in the registry.
+     */
+    void removeMeters(String key, String... tags);
 }
@@ -46,12 +46,14 @@ public class BrokerConstants {
 
     public static final String MQTT_PROTOCOL_NAME = "MQTT";
     public static final String MQTT_V_3_1_PROTOCOL_NAME = "MQIsdp";
+    public static final int DEFAULT_RECEIVE_MAXIMUM = 65535;
 
     public static final char TOPIC_DELIMITER = '/';
     public static final String MULTI_LEVEL_WILDCARD = "#";
     public static final String SINGLE_LEVEL_WILDCARD = "+";
     public static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
     public static final int SHARE_NAME_IDX = SHARED_SUBSCRIPTION_PREFIX.length();
+    public static final String SHARE_WEIGHT_USER_PROPERTY = "shareWeight";
 
     public static final String SERVICE_ID_HEADER = "serviceId";
     public static final String EMPTY_STR = "";
@@ -68,4 +70,5 @@ public class BrokerConstants {
     public static final String CLIENT_SESSION_CG_PREFIX = "client-session-consumer-group-";
     public static final String CLIENT_SUBSCRIPTIONS_CG_PREFIX = "client-subscriptions-consumer-group-";
     public static final String RETAINED_MSG_CG_PREFIX = "retained-msg-consumer-group-";
+    public static final String CLIENT_CREDENTIALS_CG_PREFIX = "client-credentials-consumer-group-";
 }
@@ -17,6 +17,7 @@ package org.thingsboard.mqtt.broker.common.util;
 
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.ConsumptionProbe;
 import io.github.bucket4j.local.LocalBucket;
 import io.github.bucket4j.local.LocalBucketBuilder;
 
@@ -45,4 +46,12 @@ public class TbRateLimits {
     public boolean tryConsume() {
         return bucket.tryConsume(1);
     }
+
+    /**
+     * @return 0 if the tokens were consumed, otherwise the nanoseconds to wait until the bucket is refilled enough
+     */
+    public long tryConsumeOrGetNanosToWait(long tokens) {
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(tokens);
+        return probe.isConsumed() ? 0 : probe.getNanosToWaitForRefill();
+    }
 }
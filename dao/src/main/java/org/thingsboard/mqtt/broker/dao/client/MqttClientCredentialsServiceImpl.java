@@ -142,6 +142,15 @@ public class MqttClientCredentialsServiceImpl implements MqttClientCredentialsSe
         return new PageData<>(shortMqttCredentials, pageData.getTotalPages(), pageData.getTotalElements(), pageData.hasNext());
     }
 
+    @Override
+    public PageData<MqttClientCredentials> getFullCredentials(PageLink pageLink) {
+        if (log.isTraceEnabled()) {
+            log.trace("Executing getFullCredentials, pageLink [{}]", pageLink);
+        }
+        validatePageLink(pageLink);
+        return mqttClientCredentialsDao.findAll(pageLink);
+    }
+
     @Override
     public Optional<MqttClientCredentials> getCredentialsById(UUID id) {
         if (log.isTraceEnabled()) {
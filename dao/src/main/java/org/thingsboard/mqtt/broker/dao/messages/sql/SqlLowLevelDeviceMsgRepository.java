@@ -28,6 +28,7 @@ import org.thingsboard.mqtt.broker.dao.model.sql.DevicePublishMsgEntity;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -38,14 +39,14 @@ import java.util.stream.IntStream;
 public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgRepository {
 
     private static final String INSERT_OR_UPDATE = "INSERT INTO device_publish_msg " +
-            "(client_id, topic, serial_number, packet_id, packet_type, time, qos, payload, user_properties, retain)" +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "(client_id, topic, serial_number, packet_id, packet_type, time, qos, payload, user_properties, retain, msg_expiry_interval)" +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
             "ON CONFLICT (client_id, serial_number) DO UPDATE SET " +
-            "topic = ?, packet_id = ?, packet_type = ?, time = ?, qos = ?, payload = ?, user_properties = ?, retain = ?;";
+            "topic = ?, packet_id = ?, packet_type = ?, time = ?, qos = ?, payload = ?, user_properties = ?, retain = ?, msg_expiry_interval = ?;";
 
     private static final String INSERT = "INSERT INTO device_publish_msg " +
-            "(client_id, topic, serial_number, packet_id, packet_type, time, qos, payload, user_properties, retain) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+            "(client_id, topic, serial_number, packet_id, packet_type, time, qos, payload, user_properties, retain, msg_expiry_interval) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
 
     private static final String UPDATE_PACKET_TYPE = "UPDATE device_publish_msg SET packet_type = ? " +
             "WHERE client_id = ? AND packet_id = ?;";
@@ -74,6 +75,7 @@ public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgReposito
                 ps.setBytes(8, devicePublishMsgEntity.getPayload());
                 ps.setString(9, devicePublishMsgEntity.getUserProperties());
                 ps.setBoolean(10, devicePublishMsgEntity.isRetain());
+                ps.setObject(11, devicePublishMsgEntity.getMsgExpiryInterval(), Types.INTEGER);
             }
 
             @Override
@@ -99,14 +101,16 @@ public class SqlLowLevelDeviceMsgRepository implements LowLevelDeviceMsgReposito
                 ps.setBytes(8, devicePublishMsgEntity.getPayload());
                 ps.setString(9, devicePublishMsgEntity.getUserProperties());
                 ps.setBoolean(10, devicePublishMsgEntity.isRetain());
-                ps.setString(11, devicePublishMsgEntity.getTopic());
-                ps.setInt(12, devicePublishMsgEntity.getPacketId());
-                ps.setString(13, devicePublishMsgEntity.getPacketType().toString());
-                ps.setLong(14, devicePublishMsgEntity.getTime());
-                ps.setInt(15, devicePublishMsgEntity.getQos());
-                ps.setBytes(16, devicePublishMsgEntity.getPayload());
-                ps.setString(17, devicePublishMsgEntity.getUserProperties());
-                ps.setBoolean(18, devicePublishMsgEntity.isRetain());
+                ps.setObject(11, devicePublishMsgEntity.getMsgExpiryInterval(), Types.INTEGER);
+                ps.setString(12, devicePublishMsgEntity.getTopic());
+                ps.setInt(13, devicePublishMsgEntity.getPacketId());
+                ps.setString(14, devicePublishMsgEntity.getPacketType().toString());
+                ps.setLong(15, devicePublishMsgEntity.getTime());
+                ps.setInt(16, devicePublishMsgEntity.getQos());
+                ps.setBytes(17, devicePublishMsgEntity.getPayload());
+                ps.setString(18, devicePublishMsgEntity.getUserProperties());
+                ps.setBoolean(19, devicePublishMsgEntity.isRetain());
+                ps.setObject(20, devicePublishMsgEntity.getMsgExpiryInterval(), Types.INTEGER);
             }
 
             @Override
@@ -89,6 +89,7 @@ public class ModelConstants {
     public static final String DEVICE_PUBLISH_MSG_PACKET_TYPE_PROPERTY = "packet_type";
     public static final String DEVICE_PUBLISH_MSG_USER_PROPERTIES_PROPERTY = "user_properties";
     public static final String DEVICE_PUBLISH_MSG_RETAIN_PROPERTY = "retain";
+    public static final String DEVICE_PUBLISH_MSG_MSG_EXPIRY_INTERVAL_PROPERTY = "msg_expiry_interval";
 
 
     /**
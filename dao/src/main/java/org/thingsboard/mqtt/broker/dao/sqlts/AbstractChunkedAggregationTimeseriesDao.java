@@ -36,8 +36,11 @@ import org.thingsboard.mqtt.broker.dao.sql.SqlQueueStatsManager;
 import org.thingsboard.mqtt.broker.dao.sql.TbSqlBlockingQueuePool;
 import org.thingsboard.mqtt.broker.dao.sql.TbSqlQueueParams;
 import org.thingsboard.mqtt.broker.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.mqtt.broker.dao.sqlts.rollup.SqlTsKvRollupRepository;
+import org.thingsboard.mqtt.broker.dao.sqlts.rollup.TsKvAggregate;
 import org.thingsboard.mqtt.broker.dao.sqlts.ts.TsKvRepository;
 import org.thingsboard.mqtt.broker.dao.timeseries.TimeseriesDao;
+import org.thingsboard.mqtt.broker.dao.timeseries.TsRollupResolution;
 
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
@@ -70,6 +73,8 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends BaseAbstra
     protected TsKvRepository tsKvRepository;
     @Autowired
     protected InsertTsRepository<TsKvEntity> insertRepository;
+    @Autowired
+    protected SqlTsKvRollupRepository rollupRepository;
     @Autowired(required = false)
     private SqlQueueStatsManager statsManager;
 
@@ -115,11 +120,13 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends BaseAbstra
     @Override
     public ListenableFuture<Void> remove(String entityId, TsKvQuery query) {
         return service.submit(() -> {
+            Integer keyId = getOrSaveKeyId(query.getKey());
             tsKvRepository.delete(
                     entityId,
-                    getOrSaveKeyId(query.getKey()),
+                    keyId,
                     query.getStartTs(),
                     query.getEndTs());
+            rollupRepository.rebuild(entityId, keyId, query.getStartTs(), query.getEndTs());
             return null;
         });
     }
@@ -214,6 +221,9 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends BaseAbstra
 
     protected TsKvEntity switchAggregation(String entityId, String key, long startTs, long endTs, Aggregation aggregation) {
         var keyId = getOrSaveKeyId(key);
+        if (rollupRepository.isEnabled()) {
+            return findRollupAggregate(entityId, keyId, startTs, endTs, TsRollupResolution.coarsest()).toEntity(aggregation);
+        }
         switch (aggregation) {
             case AVG:
                 return tsKvRepository.findAvg(entityId, keyId, startTs, endTs);
@@ -239,4 +249,27 @@ public abstract class AbstractChunkedAggregationTimeseriesDao extends BaseAbstra
                 throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
         }
     }
+
+    /**
+     * Reads the widest aligned part of [startTs, endTs) from the given rollup resolution and the unaligned
+     * edges from the finer ones, down to the raw ts_kv rows. A month-long interval thus costs a few dozen
+     * rollup rows instead of every raw point.
+     */
+    private TsKvAggregate findRollupAggregate(String entityId, int keyId, long startTs, long endTs, TsRollupResolution resolution) {
+        if (startTs >= endTs) {
+            return TsKvAggregate.EMPTY;
+        }
+        if (resolution == null || startTs < 0) {
+            return rollupRepository.find(null, entityId, keyId, startTs, endTs);
+        }
+        long alignedStartTs = resolution.ceil(startTs);
+        long alignedEndTs = resolution.floor(endTs);
+        TsRollupResolution finer = resolution.getFiner();
+        if (alignedStartTs >= alignedEndTs) {
+            return findRollupAggregate(entityId, keyId, startTs, endTs, finer);
+        }
+        return findRollupAggregate(entityId, keyId, startTs, alignedStartTs, finer)
+                .merge(rollupRepository.find(resolution, entityId, keyId, alignedStartTs, alignedEndTs))
+                .merge(findRollupAggregate(entityId, keyId, alignedEndTs, endTs, finer));
+    }
 }
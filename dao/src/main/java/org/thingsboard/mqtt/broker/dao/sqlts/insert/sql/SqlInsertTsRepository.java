@@ -15,12 +15,14 @@
  */
 package org.thingsboard.mqtt.broker.dao.sqlts.insert.sql;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.thingsboard.mqtt.broker.dao.model.sqlts.TsKvEntity;
 import org.thingsboard.mqtt.broker.dao.sqlts.insert.AbstractInsertRepository;
 import org.thingsboard.mqtt.broker.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.mqtt.broker.dao.sqlts.rollup.SqlTsKvRollupRepository;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -33,6 +35,9 @@ public class SqlInsertTsRepository extends AbstractInsertRepository implements I
     private static final String INSERT_ON_CONFLICT_DO_UPDATE = "INSERT INTO ts_kv (entity_id, key, ts, long_v) VALUES (?, ?, ?, ?) " +
             "ON CONFLICT (entity_id, key, ts) DO UPDATE SET long_v = ?;";
 
+    @Autowired
+    private SqlTsKvRollupRepository rollupRepository;
+
     @Override
     public void saveOrUpdate(List<TsKvEntity> entities) {
         jdbcTemplate.batchUpdate(INSERT_ON_CONFLICT_DO_UPDATE, new BatchPreparedStatementSetter() {
@@ -52,6 +57,7 @@ public class SqlInsertTsRepository extends AbstractInsertRepository implements I
                 return entities.size();
             }
         });
+        rollupRepository.update(entities);
     }
 
 }
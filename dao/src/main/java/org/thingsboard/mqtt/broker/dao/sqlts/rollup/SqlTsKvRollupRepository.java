@@ -0,0 +1,185 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.dao.sqlts.rollup;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.mqtt.broker.dao.model.sqlts.TsKvEntity;
+import org.thingsboard.mqtt.broker.dao.timeseries.TsRollupResolution;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains the minute/hour/day rollups of ts_kv. A rollup bucket is always recomputed from the next finer level
+ * instead of being incremented, so re-saving a point with the same ts (upsert in ts_kv) does not double count it.
+ */
+@Slf4j
+@Repository
+@Transactional
+@RequiredArgsConstructor
+public class SqlTsKvRollupRepository {
+
+    private static final String RAW_TABLE = "ts_kv";
+    private static final String RAW_VALUES = "SUM(COALESCE(long_v, 0)), COUNT(long_v), MIN(long_v), MAX(long_v)";
+    private static final String ROLLUP_VALUES = "SUM(sum_v), SUM(count_v), MIN(min_v), MAX(max_v)";
+    private static final String RANGE_CONDITION = " WHERE entity_id = ? AND key = ? AND ts >= ? AND ts < ?";
+
+    private static final Comparator<RollupBucket> BUCKET_COMPARATOR = Comparator.comparing(RollupBucket::getEntityId)
+            .thenComparingInt(RollupBucket::getKey)
+            .thenComparingLong(RollupBucket::getTs);
+
+    private final Map<TsRollupResolution, String> refreshQueries = buildRefreshQueries();
+    private final JdbcTemplate jdbcTemplate;
+
+    @Setter
+    @Value("${sql.ts.rollup.enabled:true}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Recomputes every rollup bucket touched by the saved entities. Must be called after the raw rows are written.
+     */
+    public void update(List<TsKvEntity> entities) {
+        if (!enabled) {
+            return;
+        }
+        Set<RollupBucket> touched = new TreeSet<>(BUCKET_COMPARATOR);
+        for (TsKvEntity entity : entities) {
+            if (entity.getTs() >= 0) {
+                touched.add(new RollupBucket(entity.getEntityId(), entity.getKey(), entity.getTs()));
+            }
+        }
+        if (touched.isEmpty()) {
+            return;
+        }
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            refreshBuckets(resolution, touched);
+        }
+    }
+
+    /**
+     * Rebuilds the rollup buckets overlapping the range after raw rows were removed from it.
+     */
+    public void rebuild(String entityId, int keyId, long startTs, long endTs) {
+        if (!enabled) {
+            return;
+        }
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            long from = Math.max(0, resolution.floor(startTs));
+            long to = resolution.ceil(endTs);
+            jdbcTemplate.update("DELETE FROM " + resolution.getTableName() + RANGE_CONDITION, entityId, keyId, from, to);
+            jdbcTemplate.update(refreshQueries.get(resolution), entityId, keyId, from, to);
+        }
+    }
+
+    /**
+     * @param resolution rollup table to read, or null to aggregate the raw ts_kv rows
+     */
+    @Transactional(readOnly = true)
+    public TsKvAggregate find(TsRollupResolution resolution, String entityId, int keyId, long startTs, long endTs) {
+        String query = resolution == null ?
+                "SELECT " + RAW_VALUES + " FROM " + RAW_TABLE + RANGE_CONDITION :
+                "SELECT " + ROLLUP_VALUES + " FROM " + resolution.getTableName() + RANGE_CONDITION;
+        TsKvAggregate aggregate = jdbcTemplate.queryForObject(query, (rs, rowNum) -> toAggregate(rs), entityId, keyId, startTs, endTs);
+        return aggregate != null ? aggregate : TsKvAggregate.EMPTY;
+    }
+
+    @Transactional(timeout = 3600) // 1h in sec
+    public long cleanUp(TsRollupResolution resolution, long expirationTime) {
+        return jdbcTemplate.update("DELETE FROM " + resolution.getTableName() + " WHERE ts < ?", expirationTime);
+    }
+
+    private void refreshBuckets(TsRollupResolution resolution, Collection<RollupBucket> touched) {
+        Set<RollupBucket> uniqueBuckets = new LinkedHashSet<>();
+        for (RollupBucket bucket : touched) {
+            uniqueBuckets.add(new RollupBucket(bucket.getEntityId(), bucket.getKey(), resolution.floor(bucket.getTs())));
+        }
+        List<RollupBucket> buckets = new ArrayList<>(uniqueBuckets);
+        jdbcTemplate.batchUpdate(refreshQueries.get(resolution), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                RollupBucket bucket = buckets.get(i);
+                ps.setString(1, bucket.getEntityId());
+                ps.setInt(2, bucket.getKey());
+                ps.setLong(3, bucket.getTs());
+                ps.setLong(4, bucket.getTs() + resolution.getBucketMs());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return buckets.size();
+            }
+        });
+    }
+
+    private static TsKvAggregate toAggregate(ResultSet rs) throws SQLException {
+        BigDecimal sum = rs.getBigDecimal(1);
+        if (sum == null) {
+            return TsKvAggregate.EMPTY;
+        }
+        return new TsKvAggregate(sum.longValue(), rs.getLong(2), getNullableLong(rs, 3), getNullableLong(rs, 4));
+    }
+
+    private static Long getNullableLong(ResultSet rs, int columnIndex) throws SQLException {
+        long value = rs.getLong(columnIndex);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Map<TsRollupResolution, String> buildRefreshQueries() {
+        Map<TsRollupResolution, String> queries = new EnumMap<>(TsRollupResolution.class);
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            TsRollupResolution finer = resolution.getFiner();
+            String sourceTable = finer == null ? RAW_TABLE : finer.getTableName();
+            String sourceValues = finer == null ? RAW_VALUES : ROLLUP_VALUES;
+            queries.put(resolution, "INSERT INTO " + resolution.getTableName() + " (entity_id, key, ts, sum_v, count_v, min_v, max_v) " +
+                    "SELECT entity_id, key, ts - MOD(ts, " + resolution.getBucketMs() + ") AS bucket_ts, " + sourceValues +
+                    " FROM " + sourceTable + RANGE_CONDITION +
+                    " GROUP BY entity_id, key, bucket_ts " +
+                    "ON CONFLICT (entity_id, key, ts) DO UPDATE SET sum_v = EXCLUDED.sum_v, count_v = EXCLUDED.count_v, " +
+                    "min_v = EXCLUDED.min_v, max_v = EXCLUDED.max_v;");
+        }
+        return queries;
+    }
+
+    @Data
+    private static class RollupBucket {
+        private final String entityId;
+        private final int key;
+        private final long ts;
+    }
+}
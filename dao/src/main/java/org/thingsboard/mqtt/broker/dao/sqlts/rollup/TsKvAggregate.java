@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.dao.sqlts.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.thingsboard.mqtt.broker.common.data.kv.Aggregation;
+import org.thingsboard.mqtt.broker.dao.model.sqlts.TsKvEntity;
+
+/**
+ * Partial aggregate of a time range: every supported {@link Aggregation} can be derived from it,
+ * and aggregates of adjacent ranges can be merged. A null sum means the range has no rows at all.
+ */
+@Data
+@AllArgsConstructor
+public class TsKvAggregate {
+
+    public static final TsKvAggregate EMPTY = new TsKvAggregate(null, 0, null, null);
+
+    private final Long sum;
+    private final long count;
+    private final Long min;
+    private final Long max;
+
+    public boolean isEmpty() {
+        return sum == null;
+    }
+
+    public TsKvAggregate merge(TsKvAggregate other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        return new TsKvAggregate(sum + other.sum, count + other.count,
+                min == null ? other.min : other.min == null ? min : Math.min(min, other.min),
+                max == null ? other.max : other.max == null ? max : Math.max(max, other.max));
+    }
+
+    public TsKvEntity toEntity(Aggregation aggregation) {
+        Long countValue = isEmpty() ? null : count;
+        switch (aggregation) {
+            case AVG:
+                return new TsKvEntity(sum, countValue, "AVG");
+            case MAX:
+                return new TsKvEntity(max, countValue, "MAX");
+            case MIN:
+                return new TsKvEntity(min, countValue, "MIN");
+            case SUM:
+                return new TsKvEntity(sum, countValue, "SUM");
+            case COUNT:
+                return new TsKvEntity(countValue);
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+}
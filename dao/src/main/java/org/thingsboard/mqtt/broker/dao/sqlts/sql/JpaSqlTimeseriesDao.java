@@ -32,6 +32,7 @@ import org.thingsboard.mqtt.broker.dao.sqlts.AbstractChunkedAggregationTimeserie
 import org.thingsboard.mqtt.broker.dao.sqlts.insert.sql.SqlPartitioningRepository;
 import org.thingsboard.mqtt.broker.dao.timeseries.SqlPartition;
 import org.thingsboard.mqtt.broker.dao.timeseries.SqlTsPartitionDate;
+import org.thingsboard.mqtt.broker.dao.timeseries.TsRollupResolution;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -66,6 +67,18 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
     @Setter
     private String partitioning;
 
+    @Value("${sql.ttl.ts.rollup.minute_ttl:604800}")
+    @Setter
+    private long rollupMinuteTtl;
+
+    @Value("${sql.ttl.ts.rollup.hour_ttl:7776000}")
+    @Setter
+    private long rollupHourTtl;
+
+    @Value("${sql.ttl.ts.rollup.day_ttl:63072000}")
+    @Setter
+    private long rollupDayTtl;
+
     @Override
     protected void init() {
         super.init();
@@ -97,7 +110,7 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
     @Override
     public CleanUpResult cleanUp(long systemTtl) {
         int deletedPartitions = cleanUpPartitions(systemTtl);
-        long deletedRows = cleanUpData(systemTtl);
+        long deletedRows = cleanUpData(systemTtl) + cleanUpRollups();
         return new CleanUpResult(deletedPartitions, deletedRows);
     }
 
@@ -113,6 +126,40 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
         return 0;
     }
 
+    private long cleanUpRollups() {
+        if (!rollupRepository.isEnabled()) {
+            return 0;
+        }
+        long deletedRows = 0;
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            long ttl = getRollupTtl(resolution);
+            if (ttl <= 0) {
+                continue;
+            }
+            try {
+                long deleted = rollupRepository.cleanUp(resolution, getExpirationTime(ttl));
+                log.info("Total {} rollup rows removed by TTL {}!", resolution, deleted);
+                deletedRows += deleted;
+            } catch (Exception e) {
+                log.error("Failed to execute {} rollup cleanup using ttl {}", resolution, ttl, e);
+            }
+        }
+        return deletedRows;
+    }
+
+    private long getRollupTtl(TsRollupResolution resolution) {
+        switch (resolution) {
+            case MINUTE:
+                return rollupMinuteTtl;
+            case HOUR:
+                return rollupHourTtl;
+            case DAY:
+                return rollupDayTtl;
+            default:
+                throw new IllegalArgumentException("Not supported rollup resolution: " + resolution);
+        }
+    }
+
     private long getExpirationTime(long ttl) {
         return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttl);
     }
@@ -137,6 +184,7 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
                      "AND tablename like 'ts_kv_' || '%' " +
                      "AND tablename != 'ts_kv_dictionary' " +
                      "AND tablename != 'ts_kv_indefinite' " +
+                     "AND tablename NOT LIKE 'ts_kv_rollup_%' " +
                      "AND tablename != ?")) {
             stmt.setString(1, partitionByTtlDate);
             stmt.setQueryTimeout((int) TimeUnit.MINUTES.toSeconds(1));
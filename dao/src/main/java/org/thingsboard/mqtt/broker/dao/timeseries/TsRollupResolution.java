@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2023 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.mqtt.broker.dao.timeseries;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolutions of the pre-aggregated ts_kv rollup tables, ordered from the finest to the coarsest.
+ * Each resolution is built from the next finer one (MINUTE is built from the raw ts_kv table).
+ */
+public enum TsRollupResolution {
+
+    MINUTE("ts_kv_rollup_minute", TimeUnit.MINUTES.toMillis(1)),
+    HOUR("ts_kv_rollup_hour", TimeUnit.HOURS.toMillis(1)),
+    DAY("ts_kv_rollup_day", TimeUnit.DAYS.toMillis(1));
+
+    private final String tableName;
+    private final long bucketMs;
+
+    TsRollupResolution(String tableName, long bucketMs) {
+        this.tableName = tableName;
+        this.bucketMs = bucketMs;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public long getBucketMs() {
+        return bucketMs;
+    }
+
+    public long floor(long ts) {
+        return Math.floorDiv(ts, bucketMs) * bucketMs;
+    }
+
+    public long ceil(long ts) {
+        return -Math.floorDiv(-ts, bucketMs) * bucketMs;
+    }
+
+    /**
+     * @return the resolution this one is aggregated from, or null if it is built from the raw ts_kv rows
+     */
+    public TsRollupResolution getFiner() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+
+    public static TsRollupResolution coarsest() {
+        return values()[values().length - 1];
+    }
+}
@@ -83,6 +83,7 @@ CREATE TABLE IF NOT EXISTS device_publish_msg (
     payload bytea NOT NULL,
     user_properties varchar,
     retain boolean,
+    msg_expiry_interval int,
     CONSTRAINT device_publish_msg_pkey PRIMARY KEY (client_id, serial_number)
 );
 
@@ -129,3 +130,36 @@ CREATE TABLE IF NOT EXISTS ts_kv_dictionary (
     key_id serial UNIQUE,
     CONSTRAINT ts_key_id_pkey PRIMARY KEY (key)
 );
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_minute (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_minute_pkey PRIMARY KEY (entity_id, key, ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_hour (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_hour_pkey PRIMARY KEY (entity_id, key, ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_day (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_day_pkey PRIMARY KEY (entity_id, key, ts)
+);
@@ -0,0 +1,67 @@
+--
+-- Copyright © 2016-2023 The Thingsboard Authors
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+ALTER TABLE device_publish_msg ADD COLUMN IF NOT EXISTS msg_expiry_interval int;
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_minute (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_minute_pkey PRIMARY KEY (entity_id, key, ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_hour (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_hour_pkey PRIMARY KEY (entity_id, key, ts)
+);
+
+CREATE TABLE IF NOT EXISTS ts_kv_rollup_day (
+    entity_id varchar (255) NOT NULL,
+    key int NOT NULL,
+    ts bigint NOT NULL,
+    sum_v numeric NOT NULL,
+    count_v bigint NOT NULL,
+    min_v bigint,
+    max_v bigint,
+    CONSTRAINT ts_kv_rollup_day_pkey PRIMARY KEY (entity_id, key, ts)
+);
+
+-- Backfill the rollups from the rows written before they existed. Each level is built from the next finer one,
+-- the same way the broker refreshes them on save.
+INSERT INTO ts_kv_rollup_minute (entity_id, key, ts, sum_v, count_v, min_v, max_v)
+SELECT entity_id, key, ts - MOD(ts, 60000) AS bucket_ts, SUM(COALESCE(long_v, 0)), COUNT(long_v), MIN(long_v), MAX(long_v)
+FROM ts_kv WHERE ts >= 0 GROUP BY entity_id, key, bucket_ts
+ON CONFLICT (entity_id, key, ts) DO UPDATE SET sum_v = EXCLUDED.sum_v, count_v = EXCLUDED.count_v, min_v = EXCLUDED.min_v, max_v = EXCLUDED.max_v;
+
+INSERT INTO ts_kv_rollup_hour (entity_id, key, ts, sum_v, count_v, min_v, max_v)
+SELECT entity_id, key, ts - MOD(ts, 3600000) AS bucket_ts, SUM(sum_v), SUM(count_v), MIN(min_v), MAX(max_v)
+FROM ts_kv_rollup_minute GROUP BY entity_id, key, bucket_ts
+ON CONFLICT (entity_id, key, ts) DO UPDATE SET sum_v = EXCLUDED.sum_v, count_v = EXCLUDED.count_v, min_v = EXCLUDED.min_v, max_v = EXCLUDED.max_v;
+
+INSERT INTO ts_kv_rollup_day (entity_id, key, ts, sum_v, count_v, min_v, max_v)
+SELECT entity_id, key, ts - MOD(ts, 86400000) AS bucket_ts, SUM(sum_v), SUM(count_v), MIN(min_v), MAX(max_v)
+FROM ts_kv_rollup_hour GROUP BY entity_id, key, bucket_ts
+ON CONFLICT (entity_id, key, ts) DO UPDATE SET sum_v = EXCLUDED.sum_v, count_v = EXCLUDED.count_v, min_v = EXCLUDED.min_v, max_v = EXCLUDED.max_v;
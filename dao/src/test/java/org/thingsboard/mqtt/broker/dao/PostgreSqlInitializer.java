@@ -73,6 +73,7 @@ public class PostgreSqlInitializer {
                     "          AND tablename like 'ts_kv_' || '%'\n" +
                     "          AND tablename != 'ts_kv_dictionary'\n" +
                     "          AND tablename != 'ts_kv_indefinite' \n" +
+                    "          AND tablename NOT LIKE 'ts_kv_rollup_%'\n" +
                     "    LOOP\n" +
                     "        EXECUTE format('DROP TABLE IF EXISTS %I CASCADE', table_name);\n" +
                     "    END LOOP;\n" +
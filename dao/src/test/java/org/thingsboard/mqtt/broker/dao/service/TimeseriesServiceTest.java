@@ -26,6 +26,7 @@ import org.thingsboard.mqtt.broker.common.data.kv.Aggregation;
 import org.thingsboard.mqtt.broker.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.mqtt.broker.common.data.kv.BaseTsKvQuery;
 import org.thingsboard.mqtt.broker.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.mqtt.broker.common.data.kv.DoubleDataEntry;
 import org.thingsboard.mqtt.broker.common.data.kv.KvEntry;
 import org.thingsboard.mqtt.broker.common.data.kv.LongDataEntry;
 import org.thingsboard.mqtt.broker.common.data.kv.ReadTsKvQuery;
@@ -367,6 +368,44 @@ public class TimeseriesServiceTest extends AbstractServiceTest {
         assertEquals(3, list.size());
     }
 
+    @Test
+    public void testFindAggregatedAcrossRollupResolutions() throws Exception {
+        String entityId = RandomStringUtils.randomAlphabetic(20);
+        long day = TimeUnit.DAYS.toMillis(1);
+        long startTs = day - 45000;
+        long endTs = 3 * day + 30000;
+
+        save(entityId, startTs - 1, 1000);
+        save(entityId, day - 30000, 10);
+        save(entityId, day + TimeUnit.HOURS.toMillis(1) + 10000, 20);
+        save(entityId, 2 * day + TimeUnit.HOURS.toMillis(1), 30);
+        save(entityId, 3 * day + 15000, 40);
+        save(entityId, endTs, 1000);
+
+        // re-saving the same point must not be counted twice
+        save(entityId, 3 * day + 15000, 40);
+
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.COUNT, new LongDataEntry(LONG_KEY, 4L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.SUM, new LongDataEntry(LONG_KEY, 100L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.MIN, new LongDataEntry(LONG_KEY, 10L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.MAX, new LongDataEntry(LONG_KEY, 40L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.AVG, new DoubleDataEntry(LONG_KEY, 25.0));
+
+        tsService.remove(entityId, Collections.singletonList(
+                new BaseTsKvQuery(LONG_KEY, 2 * day, 2 * day + TimeUnit.HOURS.toMillis(2)))).get(MAX_TIMEOUT, TimeUnit.SECONDS);
+
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.COUNT, new LongDataEntry(LONG_KEY, 3L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.MAX, new LongDataEntry(LONG_KEY, 40L));
+        assertSingleInterval(entityId, startTs, endTs, Aggregation.SUM, new LongDataEntry(LONG_KEY, 70L));
+    }
+
+    private void assertSingleInterval(String entityId, long startTs, long endTs, Aggregation aggregation, KvEntry expected) throws Exception {
+        List<TsKvEntry> list = tsService.findAll(entityId, Collections.singletonList(new BaseReadTsKvQuery(LONG_KEY, startTs,
+                endTs, endTs - startTs, 1, aggregation))).get(MAX_TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(1, list.size());
+        assertEquals(toTsEntry(startTs + (endTs - startTs) / 2, expected), list.get(0));
+    }
+
     private void save(String entityId, long ts, long value) throws Exception {
         TsKvEntry entry = new BasicTsKvEntry(ts, new LongDataEntry(LONG_KEY, value));
         tsService.save(entityId, entry).get(MAX_TIMEOUT, TimeUnit.SECONDS);
@@ -9,3 +9,6 @@ DROP TABLE IF EXISTS generic_client_session_ctx;
 DROP TABLE IF EXISTS application_shared_subscription;
 DROP TABLE IF EXISTS ts_kv;
 DROP TABLE IF EXISTS ts_kv_dictionary;
+DROP TABLE IF EXISTS ts_kv_rollup_minute;
+DROP TABLE IF EXISTS ts_kv_rollup_hour;
+DROP TABLE IF EXISTS ts_kv_rollup_day;
@@ -19,7 +19,7 @@ import { defaultHttpOptionsFromConfig, RequestConfig } from './http-utils';
 import { Observable, of } from 'rxjs';
 import { HttpClient } from '@angular/common/http';
 import { PageLink } from '@shared/models/page/page-link';
-import { PageData } from '@shared/models/page/page-data';
+import { SnapshotPageData } from '@shared/models/page/page-data';
 import { KafkaBroker, KafkaConsumerGroup, KafkaTopic } from '@shared/models/kafka.model';
 
 @Injectable({
@@ -32,15 +32,15 @@ export class KafkaService {
   ) {
   }
 
-  public getKafkaBrokers(pageLink: PageLink, config?: RequestConfig): Observable<PageData<KafkaBroker>> {
-    return this.http.get<PageData<KafkaBroker>>(`/api/app/cluster-info${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
+  public getKafkaBrokers(pageLink: PageLink, config?: RequestConfig): Observable<SnapshotPageData<KafkaBroker>> {
+    return this.http.get<SnapshotPageData<KafkaBroker>>(`/api/app/cluster-info${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
   }
 
-  public getKafkaTopics(pageLink: PageLink, config?: RequestConfig): Observable<PageData<KafkaTopic>> {
-    return this.http.get<PageData<KafkaTopic>>(`/api/app/kafka-topics${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
+  public getKafkaTopics(pageLink: PageLink, config?: RequestConfig): Observable<SnapshotPageData<KafkaTopic>> {
+    return this.http.get<SnapshotPageData<KafkaTopic>>(`/api/app/kafka-topics${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
   }
 
-  public getKafkaConsumerGroups(pageLink: PageLink, config?: RequestConfig): Observable<PageData<KafkaConsumerGroup>> {
-    return this.http.get<PageData<KafkaConsumerGroup>>(`/api/app/consumer-groups${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
+  public getKafkaConsumerGroups(pageLink: PageLink, config?: RequestConfig): Observable<SnapshotPageData<KafkaConsumerGroup>> {
+    return this.http.get<SnapshotPageData<KafkaConsumerGroup>>(`/api/app/consumer-groups${pageLink.toQuery()}`, defaultHttpOptionsFromConfig(config));
   }
 }
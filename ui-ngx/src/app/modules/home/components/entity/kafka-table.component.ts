@@ -58,6 +58,7 @@ export abstract class KafkaTableComponent<T extends BaseData> implements OnInit,
   cellTooltipCache: Array<string> = [];
   cellStyleCache: Array<any> = [];
   totalElements: number;
+  snapshotTime: number;
   searchEnabled = true;
   textSearchMode = false;
 
@@ -139,6 +140,7 @@ export abstract class KafkaTableComponent<T extends BaseData> implements OnInit,
     this.fetchEntities$().subscribe(
       data => {
         this.totalElements = data.totalElements;
+        this.snapshotTime = data.snapshotTime;
         this.dataSource = new MatTableDataSource(data.data);
       }
     );
@@ -21,6 +21,10 @@ export interface PageData<T> {
   hasNext: boolean;
 }
 
+export interface SnapshotPageData<T> extends PageData<T> {
+  snapshotTime: number;
+}
+
 export function emptyPageData<T>(): PageData<T> {
   return {
     data: [],